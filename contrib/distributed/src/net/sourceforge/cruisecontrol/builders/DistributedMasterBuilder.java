@@ -47,6 +47,7 @@ import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.StringTokenizer;
 import java.util.Arrays;
+import java.util.zip.Deflater;
 
 import net.jini.core.lookup.ServiceItem;
 import net.jini.core.entry.Entry;
@@ -63,15 +64,18 @@ import net.sourceforge.cruisecontrol.Builder;
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.Progress;
 import net.sourceforge.cruisecontrol.distributed.BuildAgentService;
+import net.sourceforge.cruisecontrol.distributed.core.AgentDispatchQueue;
 import net.sourceforge.cruisecontrol.distributed.core.BuildOutputLoggerRemote;
 import net.sourceforge.cruisecontrol.distributed.core.MulticastDiscovery;
 import net.sourceforge.cruisecontrol.distributed.core.PropertiesHelper;
 import net.sourceforge.cruisecontrol.distributed.core.ReggieUtil;
 import net.sourceforge.cruisecontrol.distributed.core.ZipUtil;
+import net.sourceforge.cruisecontrol.distributed.core.ChunkedResultInputStream;
 import net.sourceforge.cruisecontrol.distributed.core.FileUtil;
 import net.sourceforge.cruisecontrol.distributed.core.ProgressRemoteImpl;
 import net.sourceforge.cruisecontrol.distributed.core.ProgressRemote;
 import net.sourceforge.cruisecontrol.distributed.core.RemoteResult;
+import net.sourceforge.cruisecontrol.distributed.core.ResultManifest;
 import net.sourceforge.cruisecontrol.util.BuildOutputLogger;
 import net.sourceforge.cruisecontrol.util.IO;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
@@ -102,6 +106,10 @@ public class DistributedMasterBuilder extends Builder {
     private String masterLogDir;
     private String masterOutputDir;
 
+    private Integer compressionLevel;
+
+    private int priority;
+
     private RemoteResult[] remoteResults;
 
     private final List<Builder> tmpNestedBuilders = new ArrayList<Builder>();
@@ -200,6 +208,12 @@ public class DistributedMasterBuilder extends Builder {
                 remoteResult.validate();
             }
         }
+
+        if (compressionLevel != null) {
+            ValidationHelper.assertTrue(compressionLevel >= Deflater.DEFAULT_COMPRESSION
+                    && compressionLevel <= Deflater.BEST_COMPRESSION,
+                    "compressionlevel must be between 0 and 9, or -1 for the default", getClass());
+        }
     }
 
 
@@ -276,6 +290,12 @@ public class DistributedMasterBuilder extends Builder {
                 distributedAgentProps.put(PropertiesHelper.DISTRIBUTED_OVERRIDE_TARGET, overrideTarget);
                 distributedAgentProps.put(PropertiesHelper.DISTRIBUTED_AGENT_LOGDIR, agentLogDir);
                 distributedAgentProps.put(PropertiesHelper.DISTRIBUTED_AGENT_OUTPUTDIR, agentOutputDir);
+                if (compressionLevel != null) {
+                    distributedAgentProps.put(PropertiesHelper.DISTRIBUTED_AGENT_COMPRESSION_LEVEL,
+                            compressionLevel.toString());
+                }
+                // results are retrieved by getResultsFiles() and getRemoteResult() only if changed
+                distributedAgentProps.put(PropertiesHelper.DISTRIBUTED_AGENT_RESULTS_DELTA, "true");
 
                 // set Build Agent logging to debug if the Master has debug enabled
                 if (LOG.isDebugEnabled()) {
@@ -459,9 +479,40 @@ public class DistributedMasterBuilder extends Builder {
 
         if (agent.resultsExist(resultsType)) {
 
-            final byte[] remoteResultBytes = agent.retrieveResultsAsZip(resultsType);
+            Map<String, String> manifest = null;
+            try {
+                manifest = agent.getResultsManifest(resultsType);
+            } catch (RemoteException e) {
+                if (ChunkedResultInputStream.isMissingOnAgent(e)) {
+                    LOG.info(projectName + ": Agent is an older version, retrieving " + resultsType
+                            + " results as a whole zip.");
+                    extractBytesToMaster(workDir, projectName, resultsType, agent.retrieveResultsAsZip(resultsType),
+                            masterDestDir);
+                    return;
+                }
+                LOG.info(projectName + ": Retrieval of changed " + resultsType
+                        + " files failed, retrieving all of them.", e);
+            }
+            if (manifest != null) {
+                final String[] changed = findChangedFiles(projectName, resultsType, manifest, masterDestDir);
+                if (changed.length == 0) {
+                    return;
+                }
+                agent.prepareResultsDelta(resultsType, changed);
+            }
+
+            final boolean isStreamed = extractChunksToMaster(projectName, resultsType, masterDestDir,
+                    new ChunkedResultInputStream.ChunkSource() {
+                        public byte[] retrieveChunk(final long offset, final int maxLength) throws RemoteException {
+                            return agent.retrieveResultsChunk(resultsType, offset, maxLength);
+                        }
+                    });
 
-            extractBytesToMaster(workDir, projectName, resultsType, remoteResultBytes, masterDestDir);
+            if (!isStreamed) {
+                final byte[] remoteResultBytes = agent.retrieveResultsAsZip(resultsType);
+
+                extractBytesToMaster(workDir, projectName, resultsType, remoteResultBytes, masterDestDir);
+            }
         } else {
             final String message = projectName + ": No results returned for " + resultsType;
             LOG.info(message);
@@ -483,15 +534,98 @@ public class DistributedMasterBuilder extends Builder {
 
         if (agent.remoteResultExists(remoteResult.getIdx())) {
 
-            final byte[] remoteResultBytes = agent.retrieveRemoteResult(remoteResult.getIdx());
+            Map<String, String> manifest = null;
+            try {
+                manifest = agent.getRemoteResultManifest(remoteResult.getIdx());
+            } catch (RemoteException e) {
+                if (ChunkedResultInputStream.isMissingOnAgent(e)) {
+                    LOG.info(projectName + ": Agent is an older version, retrieving remote result "
+                            + remoteResult.getIdx() + " as a whole zip.");
+                    extractBytesToMaster(workDir, projectName, resultsType,
+                            agent.retrieveRemoteResult(remoteResult.getIdx()), remoteResult.getMasterDir());
+                    return;
+                }
+                LOG.info(projectName + ": Retrieval of changed remote result files failed, retrieving all of them.",
+                        e);
+            }
+            if (manifest != null) {
+                final String[] changed = findChangedFiles(projectName, resultsType, manifest,
+                        remoteResult.getMasterDir());
+                if (changed.length == 0) {
+                    return;
+                }
+                agent.prepareRemoteResultDelta(remoteResult.getIdx(), changed);
+            }
+
+            final boolean isStreamed = extractChunksToMaster(projectName, resultsType, remoteResult.getMasterDir(),
+                    new ChunkedResultInputStream.ChunkSource() {
+                        public byte[] retrieveChunk(final long offset, final int maxLength) throws RemoteException {
+                            return agent.retrieveRemoteResultChunk(remoteResult.getIdx(), offset, maxLength);
+                        }
+                    });
 
-            extractBytesToMaster(workDir, projectName, resultsType, remoteResultBytes, remoteResult.getMasterDir());
+            if (!isStreamed) {
+                final byte[] remoteResultBytes = agent.retrieveRemoteResult(remoteResult.getIdx());
+
+                extractBytesToMaster(workDir, projectName, resultsType, remoteResultBytes,
+                        remoteResult.getMasterDir());
+            }
         } else {
             final String message = projectName + ": Nothing returned for remote result: " + remoteResult;
             LOG.info(message);
         }
     }
 
+    /**
+     * @param manifest the manifest of the result files on the agent
+     * @param masterDestDir destination directory on master into which the result files are expanded
+     * @return the result files which are missing or differ in the destination directory
+     * @throws RemoteException if the files in the destination directory can't be hashed
+     */
+    private static String[] findChangedFiles(final String projectName, final String resultsType,
+                                             final Map<String, String> manifest, final File masterDestDir)
+            throws RemoteException {
+        final String[] changed;
+        try {
+            changed = ResultManifest.findChanged(manifest, masterDestDir);
+        } catch (IOException e) {
+            throw new RemoteException(projectName + ": Failed comparing " + resultsType + " results with "
+                    + masterDestDir.getAbsolutePath(), e);
+        }
+        LOG.info(projectName + ": " + changed.length + " of " + manifest.size() + " " + resultsType
+                + " files changed");
+        return changed;
+    }
+
+    /**
+     * Explodes a result zip into the master directory while it is being retrieved from the agent.
+     * @return false if the agent is an older version without chunked retrieval, in which case nothing
+     * was retrieved and the caller should fall back to retrieving the whole zip.
+     * @throws RemoteException if the transfer fails, even after retrying
+     */
+    private static boolean extractChunksToMaster(final String projectName, final String resultsType,
+                                                 final File masterDestDir,
+                                                 final ChunkedResultInputStream.ChunkSource chunkSource)
+            throws RemoteException {
+
+        final ChunkedResultInputStream in = new ChunkedResultInputStream(chunkSource);
+        try {
+            LOG.info("unzip " + resultsType + " while retrieving from agent to: " + masterDestDir);
+            final int entries = ZipUtil.unzipStreamToLocation(in, masterDestDir.getAbsolutePath());
+            LOG.info(projectName + ": Retrieved " + entries + " " + resultsType + " entries in "
+                    + in.getPosition() + " bytes");
+            return true;
+        } catch (IOException e) {
+            if (in.getPosition() == 0 && ChunkedResultInputStream.isMissingOnAgent(e)) {
+                LOG.info(projectName + ": Agent is an older version without chunked retrieval, retrieving "
+                        + resultsType + " results as a whole zip.");
+                return false;
+            }
+            throw new RemoteException(projectName + ": Failed retrieving " + resultsType + " results after "
+                    + in.getPosition() + " bytes", e);
+        }
+    }
+
     private static void extractBytesToMaster(final File workDir, final String projectName, final String resultsType,
                                              final byte[] remoteResultBytes, final File masterDestDir) {
         
@@ -526,45 +660,67 @@ public class DistributedMasterBuilder extends Builder {
             progress.setValue(msgProgress);
         }
 
-        while (agent == null) {
-            final ServiceItem serviceItem;
+        final ServiceItem serviceItem;
+        if (isFailFast()) {
             try {
-                serviceItem = MulticastDiscovery.findMatchingServiceAndClaim(entries,
-                        // Non-zero failfast value avoids intermittent failures in unit tests
-                        (isFailFast ? 2000 : MulticastDiscovery.DEFAULT_FIND_WAIT_DUR_MILLIS));
-
+                // Non-zero failfast value avoids intermittent failures in unit tests
+                serviceItem = MulticastDiscovery.findMatchingServiceAndClaim(entries, 2000);
             } catch (RemoteException e) {
                 throw new CruiseControlException("Error finding matching agent.", e);
             }
-
-            if (serviceItem != null) {
-                agent = (BuildAgentService) serviceItem.service;
-                try {
-                    LOG.info("Found available agent on: " + agent.getMachineName());
-                } catch (RemoteException e) {
-                    throw new CruiseControlException("Error calling agent method.", e);
-                }
-            } else if (isFailFast()) {
+            if (serviceItem == null) {
                 LOG.warn("pickAgent: Agent not found. Should only occur in unit tests.");
-                break;
-            } else {
-                // wait a bit and try again
-                LOG.info("Couldn't find available agent with: "
-                        + MulticastDiscovery.toStringEntries(entries) 
-                        + " to build project: " + projectName + ". Waiting "
-                        + (DEFAULT_CACHE_MISS_WAIT / 1000) + " seconds before retry.");
-                try {
-                    Thread.sleep(DEFAULT_CACHE_MISS_WAIT);
-                } catch (InterruptedException e) {
-                    LOG.error("Lookup Cache Miss Wait was interrupted");
-                    break;
-                }
+            }
+        } else {
+            serviceItem = waitForAgent(projectName);
+        }
+
+        if (serviceItem != null) {
+            agent = (BuildAgentService) serviceItem.service;
+            try {
+                LOG.info("Found available agent on: " + agent.getMachineName());
+            } catch (RemoteException e) {
+                throw new CruiseControlException("Error calling agent method.", e);
             }
         }
 
         return agent;
     }
 
+    /**
+     * Waits in the dispatch queue of this Master until a matching agent has been claimed for this build.
+     * @param projectName the project to build
+     * @return the claimed agent, or null if interrupted while waiting
+     * @throws CruiseControlException if the dispatch queue cannot be started
+     */
+    private ServiceItem waitForAgent(final String projectName) throws CruiseControlException {
+        final AgentDispatchQueue queue;
+        try {
+            queue = AgentDispatchQueue.getQueue();
+        } catch (RemoteException e) {
+            throw new CruiseControlException("Error starting agent dispatch queue.", e);
+        }
+
+        final AgentDispatchQueue.Request request = queue.enqueue(projectName, entries, priority);
+        ServiceItem serviceItem = null;
+        try {
+            while (serviceItem == null) {
+                serviceItem = queue.await(request, DEFAULT_CACHE_MISS_WAIT);
+                if (serviceItem == null) {
+                    LOG.info("Still waiting for an available agent with: "
+                            + MulticastDiscovery.toStringEntries(entries)
+                            + " to build project: " + projectName + " after "
+                            + (request.getWaitMillis() / 1000) + " seconds, "
+                            + queue.getDepth() + " builds waiting.");
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.error("Waiting for an available agent was interrupted");
+            queue.cancel(request);
+        }
+        return serviceItem;
+    }
+
     public void setEntries(final String entries) {
         entriesRaw = entries;
         this.entries = ReggieUtil.convertStringEntries(entries);
@@ -593,6 +749,18 @@ public class DistributedMasterBuilder extends Builder {
         this.masterOutputDir = masterOutputDir;
     }
 
+    public void setCompressionLevel(final int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * @param priority builds of higher priority get an available agent first, builds of the same priority
+     * get them in the order they started waiting. Defaults to 0.
+     */
+    public void setPriority(final int priority) {
+        this.priority = priority;
+    }
+
 
     private int remoteResultIdxCounter;
     
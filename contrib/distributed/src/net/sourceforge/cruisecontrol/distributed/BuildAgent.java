@@ -37,6 +37,7 @@
 
 package net.sourceforge.cruisecontrol.distributed;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.URL;
@@ -44,6 +45,7 @@ import java.net.MalformedURLException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
 import java.rmi.server.ExportException;
+import java.lang.management.ManagementFactory;
 import java.util.prefs.Preferences;
 import java.util.prefs.BackingStoreException;
 import java.util.Iterator;
@@ -54,6 +56,7 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.awt.GraphicsEnvironment;
 
+import net.jini.core.entry.Entry;
 import net.jini.core.lookup.ServiceID;
 import net.jini.core.lookup.ServiceRegistrar;
 import net.jini.core.discovery.LookupLocator;
@@ -92,6 +95,23 @@ public class BuildAgent implements DiscoveryListener,
      * A Unicast Lookup Locater is useful if multicast isn't working. */
     private static final String REGISTRY_URL = "registry.url";
 
+    /**
+     * Name of the entry through which the agent publishes whether it is busy (as "true" or "false"),
+     * so Masters waiting for an agent are notified when it becomes available.
+     */
+    public static final String ENTRY_NAME_BUSY = "agent.busy";
+    /** Name of the entry through which the agent publishes its number of processors. */
+    public static final String ENTRY_NAME_CPUS = "agent.cpus";
+    /** Name of the entry through which the agent publishes the system load average of its host, if available. */
+    public static final String ENTRY_NAME_LOAD = "agent.load";
+    /** Name of the entry through which the agent publishes the bytes available on the disk it builds on. */
+    public static final String ENTRY_NAME_FREE_DISK = "agent.freeDisk";
+    /**
+     * Name of the entries through which the agent publishes the projects it built recently, one entry per project,
+     * so Masters can prefer the agent which already has a workspace for the project.
+     */
+    public static final String ENTRY_NAME_WORKSPACE = "agent.workspace";
+
     private final BuildAgentServiceImpl serviceImpl;
     private final PropertyEntry[] origEntries;
     private final Exporter exporter;
@@ -202,11 +222,11 @@ public class BuildAgent implements DiscoveryListener,
 
         try {
             if (serviceID == null) {
-                joinManager = new JoinManager(getProxy(), getEntries(), this, lld, null);
+                joinManager = new JoinManager(getProxy(), getPublishedEntries(), this, lld, null);
             } else {
                 LOG.warn("Didn't expect to have a serviceID: " + serviceID + " (agentID: " + testAgentID
                         + "). Are we storing and re-using the serviceID now?");
-                joinManager = new JoinManager(getProxy(), getEntries(), serviceID, lld, null);
+                joinManager = new JoinManager(getProxy(), getPublishedEntries(), serviceID, lld, null);
             }
         } catch (IOException e) {
             final String message = "Error starting discovery";
@@ -215,6 +235,7 @@ public class BuildAgent implements DiscoveryListener,
         }
 
         getJoinManager().getDiscoveryManager().addDiscoveryListener(this);
+        serviceImpl.addAgentStatusListener(new BusyStatePublisher());
     }
 
     /**
@@ -263,7 +284,7 @@ public class BuildAgent implements DiscoveryListener,
         putEntryOverrides(prefsEntryOverrides, entryOverrides);
 
         // publish using entries reloaded via getEntries, which adds entry overrides from prefs
-        joinManager.setAttributes(getEntries());
+        joinManager.setAttributes(getPublishedEntries());
     }
 
     /**
@@ -286,7 +307,7 @@ public class BuildAgent implements DiscoveryListener,
         clearOverridePrefs();
 
         // publish using entries reloaded via getEntries, which adds entry overrides from prefs
-        joinManager.setAttributes(getEntries());
+        joinManager.setAttributes(getPublishedEntries());
     }
 
     private void clearOverridePrefs() {
@@ -387,6 +408,44 @@ public class BuildAgent implements DiscoveryListener,
         return currentEntries;
     }
 
+    /** @return the entries, plus the busy state, capacity and workspaces of the agent */
+    private Entry[] getPublishedEntries() {
+        final List<Entry> publishedEntries = new ArrayList<Entry>(Arrays.asList(getEntries()));
+        publishedEntries.add(new PropertyEntry(ENTRY_NAME_BUSY, String.valueOf(serviceImpl.isBusy())));
+
+        publishedEntries.add(new PropertyEntry(ENTRY_NAME_CPUS,
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        final double load = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+        if (load >= 0) {
+            publishedEntries.add(new PropertyEntry(ENTRY_NAME_LOAD, String.valueOf(load)));
+        }
+        publishedEntries.add(new PropertyEntry(ENTRY_NAME_FREE_DISK,
+                String.valueOf(new File(System.getProperty("user.dir")).getUsableSpace())));
+
+        for (final String projectName : serviceImpl.getBuiltProjects()) {
+            publishedEntries.add(new PropertyEntry(ENTRY_NAME_WORKSPACE, projectName));
+        }
+        return publishedEntries.toArray(new Entry[publishedEntries.size()]);
+    }
+
+    /**
+     * Publishes the busy state of the agent whenever it changes, along with its current capacity and workspaces,
+     * which are up to date when Masters pick an agent that just became available.
+     */
+    private final class BusyStatePublisher implements AgentStatusListener {
+        private static final long serialVersionUID = 5265381916318339375L;
+
+        private boolean isPublishedBusy;
+
+        public synchronized void statusChanged(final BuildAgentService buildAgentServiceImpl) {
+            final boolean isBusy = serviceImpl.isBusy();
+            if (isBusy != isPublishedBusy) {
+                isPublishedBusy = isBusy;
+                getJoinManager().setAttributes(getPublishedEntries());
+            }
+        }
+    }
+
     void addAgentStatusListener(final BuildAgent.AgentStatusListener listener) {
         serviceImpl.addAgentStatusListener(listener);
     }
@@ -96,10 +96,72 @@ public interface BuildAgentService extends LiveOutputReaderRemote {
 
 
     boolean resultsExist(String resultsType) throws RemoteException;
+    /**
+     * Holds the entire results zip in memory on both ends, use {@link #retrieveResultsChunk} instead.
+     * Kept for Masters that predate chunked retrieval.
+     * @param resultsType the type of results, logs or output
+     * @return the content of the results zip
+     * @throws RemoteException if the remote call fails
+     */
     byte[] retrieveResultsAsZip(String resultsType) throws RemoteException;
+    /**
+     * @param resultsType the type of results, logs or output
+     * @param offset position in the results zip of the first byte to return
+     * @param maxLength maximum number of bytes to return
+     * @return up to maxLength bytes of the results zip, or an empty array if offset is at the end of the zip
+     * @throws RemoteException if the remote call fails
+     */
+    byte[] retrieveResultsChunk(String resultsType, long offset, int maxLength) throws RemoteException;
 
     boolean remoteResultExists(int idx) throws RemoteException;
+    /**
+     * Holds the entire result zip in memory on both ends, use {@link #retrieveRemoteResultChunk} instead.
+     * Kept for Masters that predate chunked retrieval.
+     * @param resultIdx index of the remote result
+     * @return the content of the remote result zip
+     * @throws RemoteException if the remote call fails
+     */
     byte[] retrieveRemoteResult(int resultIdx) throws RemoteException;
+    /**
+     * @param resultIdx index of the remote result
+     * @param offset position in the remote result zip of the first byte to return
+     * @param maxLength maximum number of bytes to return
+     * @return up to maxLength bytes of the remote result zip, or an empty array if offset is at the end of the zip
+     * @throws RemoteException if the remote call fails
+     */
+    byte[] retrieveRemoteResultChunk(int resultIdx, long offset, int maxLength) throws RemoteException;
+
+    /**
+     * @param resultsType the type of results, logs or output
+     * @return the manifest of the results files,
+     * see {@link net.sourceforge.cruisecontrol.distributed.core.ResultManifest}
+     * @throws RemoteException if the remote call fails
+     */
+    Map<String, String> getResultsManifest(String resultsType) throws RemoteException;
+    /**
+     * Replaces the results zip by one holding only the given files, to be retrieved with
+     * {@link #retrieveResultsChunk}.
+     * @param resultsType the type of results, logs or output
+     * @param paths the paths of the files to zip, from the manifest
+     * @throws RemoteException if the remote call fails
+     */
+    void prepareResultsDelta(String resultsType, String[] paths) throws RemoteException;
+
+    /**
+     * @param resultIdx index of the remote result
+     * @return the manifest of the remote result files,
+     * see {@link net.sourceforge.cruisecontrol.distributed.core.ResultManifest}
+     * @throws RemoteException if the remote call fails
+     */
+    Map<String, String> getRemoteResultManifest(int resultIdx) throws RemoteException;
+    /**
+     * Replaces the remote result zip by one holding only the given files, to be retrieved with
+     * {@link #retrieveRemoteResultChunk}.
+     * @param resultIdx index of the remote result
+     * @param paths the paths of the files to zip, from the manifest
+     * @throws RemoteException if the remote call fails
+     */
+    void prepareRemoteResultDelta(int resultIdx, String[] paths) throws RemoteException;
 
     void clearOutputFiles() throws RemoteException;
 
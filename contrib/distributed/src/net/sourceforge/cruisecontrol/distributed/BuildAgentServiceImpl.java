@@ -50,6 +50,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.zip.Deflater;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 
@@ -61,6 +63,7 @@ import net.sourceforge.cruisecontrol.builders.AntBuilder;
 import net.sourceforge.cruisecontrol.builders.AntScript;
 import net.sourceforge.cruisecontrol.builders.CompositeBuilder;
 import net.sourceforge.cruisecontrol.distributed.core.PropertiesHelper;
+import net.sourceforge.cruisecontrol.distributed.core.ResultManifest;
 import net.sourceforge.cruisecontrol.distributed.core.ZipUtil;
 import net.sourceforge.cruisecontrol.distributed.core.FileUtil;
 import net.sourceforge.cruisecontrol.distributed.core.CCDistVersion;
@@ -103,6 +106,9 @@ public class BuildAgentServiceImpl implements BuildAgentService {
     /** Name of system property who's value, if defined, will override the default delay. */
     static final String SYSPROP_CCDIST_DELAY_MS_KILLRESTART = "cc.dist.delayMSKillRestart";
 
+    /** Maximum number of recently built projects published as workspace entries. */
+    static final int MAX_BUILT_PROJECTS = 20;
+
     /** Cache host name. */
     private final String machineName;
 
@@ -117,6 +123,8 @@ public class BuildAgentServiceImpl implements BuildAgentService {
     private Properties configProperties;
 
     private String projectName;
+    /** Projects built by this agent, least recently built first. Guarded by itself. */
+    private final LinkedHashSet<String> builtProjects = new LinkedHashSet<String>();
     private ProgressRemote buildProgressRemote;
     private final Map<String, String> distributedAgentProps = new HashMap<String, String>();
 
@@ -126,6 +134,8 @@ public class BuildAgentServiceImpl implements BuildAgentService {
     private File buildRootDir;
     private File zippedLogs;
     private File zippedOutput;
+    /** True if the Master retrieves only changed result files, so result zips are filled on demand. */
+    private boolean isZippedOnDemand;
 
     private final List<BuildAgent.AgentStatusListener> agentStatusListeners
             = new ArrayList<BuildAgent.AgentStatusListener>();
@@ -204,6 +214,15 @@ public class BuildAgentServiceImpl implements BuildAgentService {
         return projectName;
     }
 
+    /**
+     * @return the projects most recently built by this agent, whose workspace is likely still in place.
+     */
+    String[] getBuiltProjects() {
+        synchronized (builtProjects) {
+            return builtProjects.toArray(new String[builtProjects.size()]);
+        }
+    }
+
     void setAgentPropertiesFilename(final String filename) {
         agentPropertiesFilename = filename;
     }
@@ -349,6 +368,13 @@ public class BuildAgentServiceImpl implements BuildAgentService {
             throw new RemoteException("Missing required property: " + PropertiesHelper.PROJECT_NAME
                     + " in projectProperties");
         }
+        synchronized (builtProjects) {
+            builtProjects.remove(projectName);
+            builtProjects.add(projectName);
+            while (builtProjects.size() > MAX_BUILT_PROJECTS) {
+                builtProjects.remove(builtProjects.iterator().next());
+            }
+        }
 
         final Level origLogLevel = Logger.getRootLogger().getLevel();
         final boolean isDebugBuild = Boolean.valueOf(
@@ -571,7 +597,8 @@ public class BuildAgentServiceImpl implements BuildAgentService {
     }
 
     /**
-     * Zip any build artifacts found in the logDir and/or outputDir.
+     * Zip any build artifacts found in the logDir and/or outputDir, unless the Master retrieves only changed
+     * result files, in which case the zips are only created here and filled on demand.
      */
     void prepareLogsAndArtifacts() {
         final String buildDirProperty = configProperties.getProperty(CRUISE_BUILD_DIR);
@@ -592,11 +619,15 @@ public class BuildAgentServiceImpl implements BuildAgentService {
                 PropertiesHelper.DISTRIBUTED_AGENT_OUTPUTDIR);
 
 
-        zippedLogs = ZipUtil.getTempResultsZipFile(buildRootDir, projectName, PropertiesHelper.RESULT_TYPE_LOGS);
-        ZipUtil.zipFolderContents(zippedLogs.getAbsolutePath(), logDir.getAbsolutePath());
+        isZippedOnDemand = Boolean.valueOf(
+                distributedAgentProps.get(PropertiesHelper.DISTRIBUTED_AGENT_RESULTS_DELTA));
 
+        zippedLogs = ZipUtil.getTempResultsZipFile(buildRootDir, projectName, PropertiesHelper.RESULT_TYPE_LOGS);
         zippedOutput = ZipUtil.getTempResultsZipFile(buildRootDir, projectName, PropertiesHelper.RESULT_TYPE_OUTPUT);
-        ZipUtil.zipFolderContents(zippedOutput.getAbsolutePath(), outputDir.getAbsolutePath());
+        if (!isZippedOnDemand) {
+            zipAll(zippedLogs, logDir);
+            zipAll(zippedOutput, outputDir);
+        }
 
         if (remoteResults != null) {
             for (int i = 0; i < remoteResults.length; i++) {
@@ -607,13 +638,44 @@ public class BuildAgentServiceImpl implements BuildAgentService {
                 remoteResults[i].storeTempZippedFile(
                         ZipUtil.getTempResultsZipFile(buildRootDir, projectName, "remoteResult" + i));
 
-                ZipUtil.zipFolderContents(remoteResults[i].fetchTempZippedFile().getAbsolutePath(),
-                        agentResultDir.getAbsolutePath());
+                if (!isZippedOnDemand) {
+                    zipAll(remoteResults[i].fetchTempZippedFile(), agentResultDir);
+                }
             }
         }
 
     }
 
+    private void zipAll(final File zipFile, final File resultDir) {
+        ZipUtil.zipFolderContents(zipFile.getAbsolutePath(), resultDir.getAbsolutePath(), getCompressionLevel());
+    }
+
+    /**
+     * Fills a result zip not filled yet with all result files, for a Master falling back to retrieving all of them.
+     * @param zipFile the result zip
+     * @param resultDir the directory of the result files
+     * @return the result zip
+     */
+    private File zipAllIfOnDemand(final File zipFile, final File resultDir) {
+        if (isZippedOnDemand && zipFile != null && zipFile.length() == 0) {
+            zipAll(zipFile, resultDir);
+        }
+        return zipFile;
+    }
+
+    private int getCompressionLevel() {
+        final String level = distributedAgentProps.get(PropertiesHelper.DISTRIBUTED_AGENT_COMPRESSION_LEVEL);
+        if (level == null || "".equals(level)) {
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+        try {
+            return Integer.parseInt(level);
+        } catch (NumberFormatException e) {
+            logPrefixError("Invalid compression level: " + level + ", using default.", e);
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+    }
+
     private File getAgentResultDir(final String resultType, final String resultProperty) {
         String resultDir = distributedAgentProps.get(resultProperty);
         logPrefixDebug("Result: " + resultType + "Prop value: " + resultDir);
@@ -753,7 +815,69 @@ public class BuildAgentServiceImpl implements BuildAgentService {
         } else {
             throw new RemoteException("Unrecognized result type: " + resultsType);
         }
-        return zipFile;
+        return zipAllIfOnDemand(zipFile, getResultsDir(resultsType));
+    }
+
+    private File getResultsDir(final String resultsType) throws RemoteException {
+        if (PropertiesHelper.RESULT_TYPE_LOGS.equals(resultsType)) {
+            return logDir;
+        } else if (PropertiesHelper.RESULT_TYPE_OUTPUT.equals(resultsType)) {
+            return outputDir;
+        } else {
+            throw new RemoteException("Unrecognized result type: " + resultsType);
+        }
+    }
+
+    public Map<String, String> getResultsManifest(final String resultsType) throws RemoteException {
+        final File resultsDir = getResultsDir(resultsType);
+        try {
+            return ResultManifest.create(resultsDir);
+        } catch (IOException e) {
+            final String message = "Unable to hash " + resultsType + " results in " + resultsDir.getAbsolutePath();
+            logPrefixError(message, e);
+            throw new RemoteException(message, e);
+        }
+    }
+
+    public void prepareResultsDelta(final String resultsType, final String[] paths) throws RemoteException {
+        final File resultsDir = getResultsDir(resultsType);
+        final File zipFile = PropertiesHelper.RESULT_TYPE_LOGS.equals(resultsType) ? zippedLogs : zippedOutput;
+        zipDelta(zipFile, resultsDir, paths);
+    }
+
+    public Map<String, String> getRemoteResultManifest(final int resultIdx) throws RemoteException {
+        final RemoteResult remoteResult = findRemoteResult(resultIdx);
+        try {
+            return ResultManifest.create(remoteResult.getAgentDir());
+        } catch (IOException e) {
+            final String message = "Unable to hash remote result files in "
+                    + remoteResult.getAgentDir().getAbsolutePath();
+            logPrefixError(message, e);
+            throw new RemoteException(message, e);
+        }
+    }
+
+    public void prepareRemoteResultDelta(final int resultIdx, final String[] paths) throws RemoteException {
+        final RemoteResult remoteResult = findRemoteResult(resultIdx);
+        zipDelta(remoteResult.fetchTempZippedFile(), remoteResult.getAgentDir(), paths);
+    }
+
+    /**
+     * Zips the given result files, which must lie under the result directory as the paths come from the Master.
+     */
+    private void zipDelta(final File zipFile, final File resultsDir, final String[] paths) throws RemoteException {
+        try {
+            ZipUtil.zipFiles(zipFile.getAbsolutePath(), resultsDir.getAbsolutePath(), paths, getCompressionLevel());
+        } catch (IllegalArgumentException e) {
+            final String message = "Refusing to zip results from " + resultsDir.getAbsolutePath() + ": "
+                    + e.getMessage();
+            logPrefixError(message, e);
+            throw new RemoteException(message, e);
+        }
+    }
+
+    private File getRemoteResultZip(final RemoteResult remoteResult) {
+        return zipAllIfOnDemand(remoteResult.fetchTempZippedFile(), remoteResult.getAgentDir());
     }
 
     public byte[] retrieveResultsAsZip(final String resultsType) throws RemoteException {
@@ -773,28 +897,40 @@ public class BuildAgentServiceImpl implements BuildAgentService {
         return response;
     }
 
-    public byte[] retrieveRemoteResult(final int resultIdx) throws RemoteException {
+    public byte[] retrieveResultsChunk(final String resultsType, final long offset, final int maxLength)
+            throws RemoteException {
 
-        RemoteResult remoteResult = null;
-        if (remoteResults != null) {
-            for (final RemoteResult remoteResultTry : remoteResults) {
-                if (resultIdx == remoteResultTry.getIdx()) {
-                    remoteResult = remoteResultTry;
-                    break;
-                }
-            }
+        final File zipFile = getResultsZip(resultsType);
+        try {
+            return FileUtil.getFileChunk(zipFile, offset, maxLength);
+        } catch (IOException e) {
+            final String message = "Unable to read chunk at " + offset + " of file " + zipFile.getAbsolutePath();
+            logPrefixError(message, e);
+            throw new RemoteException(message, e);
         }
+    }
 
-        if (remoteResult == null) {
-            final String message = "Invalid remote result index: " + resultIdx;
-            logPrefixError(message);
-            System.err.println(message);
-            throw new RuntimeException(message);
+    public byte[] retrieveRemoteResultChunk(final int resultIdx, final long offset, final int maxLength)
+            throws RemoteException {
+
+        final RemoteResult remoteResult = findRemoteResult(resultIdx);
+        try {
+            return FileUtil.getFileChunk(getRemoteResultZip(remoteResult), offset, maxLength);
+        } catch (IOException e) {
+            final String message = "Unable to read chunk at " + offset + " of remote result file: "
+                    + remoteResult.getAgentDir().getAbsolutePath();
+            logPrefixError(message, e);
+            throw new RemoteException(message, e);
         }
-        
+    }
+
+    public byte[] retrieveRemoteResult(final int resultIdx) throws RemoteException {
+
+        final RemoteResult remoteResult = findRemoteResult(resultIdx);
+
         final byte[] response;
         try {
-            response = FileUtil.getFileAsBytes(remoteResult.fetchTempZippedFile());
+            response = FileUtil.getFileAsBytes(getRemoteResultZip(remoteResult));
         } catch (IOException e) {
             final String message = "Unable to get remote result file: " + remoteResult.getAgentDir().getAbsolutePath();
             logPrefixError(message, e);
@@ -805,6 +941,21 @@ public class BuildAgentServiceImpl implements BuildAgentService {
         return response;
     }
 
+    private RemoteResult findRemoteResult(final int resultIdx) {
+        if (remoteResults != null) {
+            for (final RemoteResult remoteResult : remoteResults) {
+                if (resultIdx == remoteResult.getIdx()) {
+                    return remoteResult;
+                }
+            }
+        }
+
+        final String message = "Invalid remote result index: " + resultIdx;
+        logPrefixError(message);
+        System.err.println(message);
+        throw new RuntimeException(message);
+    }
+
     public void clearOutputFiles() {
         try {
             if (logDir != null) {
@@ -0,0 +1,509 @@
+/****************************************************************************
+* CruiseControl, a Continuous Integration Toolkit
+* Copyright (c) 2001, ThoughtWorks, Inc.
+* 200 E. Randolph, 25th Floor
+* Chicago, IL 60601 USA
+* All rights reserved.
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+*
+*     + Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*
+*     + Redistributions in binary form must reproduce the above
+*       copyright notice, this list of conditions and the following
+*       disclaimer in the documentation and/or other materials provided
+*       with the distribution.
+*
+*     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+*       names of its contributors may be used to endorse or promote
+*       products derived from this software without specific prior
+*       written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+* CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+* EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+* PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+* PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+* LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+* NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+****************************************************************************/
+
+package net.sourceforge.cruisecontrol.distributed.core;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.jini.core.entry.Entry;
+import net.jini.core.lookup.ServiceID;
+import net.jini.core.lookup.ServiceItem;
+import net.jini.lookup.LookupCache;
+import net.jini.lookup.ServiceDiscoveryEvent;
+import net.jini.lookup.ServiceDiscoveryListener;
+import net.sourceforge.cruisecontrol.distributed.BuildAgent;
+import net.sourceforge.cruisecontrol.distributed.BuildAgentService;
+import net.sourceforge.cruisecontrol.distributed.PropertyEntry;
+
+import org.apache.log4j.Logger;
+
+import com.sun.jini.lookup.entry.LookupAttributes;
+
+/**
+ * Queue of the builds waiting for an available Build Agent on this Master. Builds are matched with agents
+ * by a single dispatcher thread, highest priority first then in arrival order, whenever a lookup service
+ * reports an agent registered or changed (agents publish their busy state as an entry, see
+ * {@link BuildAgent#ENTRY_NAME_BUSY}). The waiting builds are also matched again every now and then,
+ * to pick up agents of older releases which don't publish their busy state.
+ */
+public final class AgentDispatchQueue {
+
+    private static final Logger LOG = Logger.getLogger(AgentDispatchQueue.class);
+
+    /** How often the waiting builds are matched again, without any event from the lookup services. */
+    static final long DEFAULT_RECHECK_MILLIS = 30000;
+
+    /** The agents known to this Master. */
+    interface AgentSource {
+        /** @return the agents known, without remote calls */
+        ServiceItem[] getAgents();
+    }
+
+    /** A build waiting for an agent. */
+    public static final class Request {
+        private final String projectName;
+        private final Entry[] entries;
+        private final int priority;
+        private final long sequence;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private ServiceItem agent;
+        private boolean isWaiting = true;
+
+        private Request(final String projectName, final Entry[] entries, final int priority, final long sequence) {
+            this.projectName = projectName;
+            this.entries = entries;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        /** @return the milliseconds this request has been waiting */
+        public long getWaitMillis() {
+            return System.currentTimeMillis() - enqueuedAt;
+        }
+    }
+
+    /** Highest priority first, then in arrival order. */
+    private static final Comparator<Request> DISPATCH_ORDER = new Comparator<Request>() {
+        public int compare(final Request r1, final Request r2) {
+            if (r1.priority != r2.priority) {
+                return r1.priority > r2.priority ? -1 : 1;
+            }
+            return r1.sequence < r2.sequence ? -1 : (r1.sequence == r2.sequence ? 0 : 1);
+        }
+    };
+
+    private static AgentDispatchQueue queue;
+
+    /**
+     * @return the queue of this Master, started on first use
+     * @throws RemoteException if the lookup cache cannot be created
+     */
+    public static synchronized AgentDispatchQueue getQueue() throws RemoteException {
+        if (queue == null) {
+            final CachedAgents agents = new CachedAgents();
+            queue = new AgentDispatchQueue(agents, DEFAULT_RECHECK_MILLIS);
+            agents.start(queue);
+        }
+        return queue;
+    }
+
+    private final AgentSource agentSource;
+    private final long recheckMillis;
+    /** Guarded by itself, kept in {@link #DISPATCH_ORDER} */
+    private final List<Request> waiting = new ArrayList<Request>();
+    private long nextSequence;
+    private boolean isDispatchNeeded;
+    private volatile boolean isStopped;
+    private final Thread dispatcher;
+
+    AgentDispatchQueue(final AgentSource agentSource, final long recheckMillis) {
+        this.agentSource = agentSource;
+        this.recheckMillis = recheckMillis;
+
+        dispatcher = new Thread("AgentDispatcher") {
+            public void run() {
+                dispatchLoop();
+            }
+        };
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Queues a build waiting for an agent.
+     * @param projectName the project to build, agents which already have a workspace for it are preferred
+     * @param entries the entries the agent must match
+     * @param priority builds of higher priority get agents first
+     * @return the request to wait on
+     */
+    public Request enqueue(final String projectName, final Entry[] entries, final int priority) {
+        synchronized (waiting) {
+            final Request request = new Request(projectName, entries, priority, nextSequence++);
+            // after all requests of the same or higher priority
+            int index = waiting.size();
+            while (index > 0 && DISPATCH_ORDER.compare(waiting.get(index - 1), request) > 0) {
+                index--;
+            }
+            waiting.add(index, request);
+            isDispatchNeeded = true;
+            waiting.notifyAll();
+            return request;
+        }
+    }
+
+    /**
+     * Waits for an agent to be claimed for the request.
+     * @param request the request to wait on
+     * @param timeoutMillis maximum milliseconds to wait
+     * @return the agent claimed, or null if none was claimed in time and the request is still waiting
+     * @throws InterruptedException if interrupted while waiting, the request is still waiting
+     */
+    public ServiceItem await(final Request request, final long timeoutMillis) throws InterruptedException {
+        final long end = System.currentTimeMillis() + timeoutMillis;
+        synchronized (waiting) {
+            long remaining = timeoutMillis;
+            while (request.agent == null && remaining > 0) {
+                waiting.wait(remaining);
+                remaining = end - System.currentTimeMillis();
+            }
+            return request.agent;
+        }
+    }
+
+    /**
+     * Removes the request from the queue, releasing the agent claimed for it meanwhile if any.
+     * @param request the request which is no longer waiting
+     */
+    public void cancel(final Request request) {
+        final ServiceItem agent;
+        synchronized (waiting) {
+            waiting.remove(request);
+            request.isWaiting = false;
+            agent = request.agent;
+        }
+        if (agent != null) {
+            release(agent);
+        }
+    }
+
+    /** @return the number of builds waiting for an agent */
+    public int getDepth() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * @return for each set of entries requested, the number of builds waiting and the longest wait,
+     * in dispatch order
+     */
+    public String[] getWaitsPerEntries() {
+        final Map<String, List<Request>> perEntries = new LinkedHashMap<String, List<Request>>();
+        synchronized (waiting) {
+            for (final Request request : waiting) {
+                final String key = toStringEntries(request.entries);
+                List<Request> requests = perEntries.get(key);
+                if (requests == null) {
+                    requests = new ArrayList<Request>();
+                    perEntries.put(key, requests);
+                }
+                requests.add(request);
+            }
+        }
+
+        final List<String> waits = new ArrayList<String>();
+        for (final Map.Entry<String, List<Request>> entry : perEntries.entrySet()) {
+            long longestWait = 0;
+            for (final Request request : entry.getValue()) {
+                longestWait = Math.max(longestWait, request.getWaitMillis());
+            }
+            waits.add(entry.getValue().size() + " waiting, longest for " + (longestWait / 1000) + " seconds: "
+                    + entry.getKey());
+        }
+        return waits.toArray(new String[waits.size()]);
+    }
+
+    private static String toStringEntries(final Entry[] entries) {
+        if (entries == null) {
+            return "[]";
+        }
+        // not MulticastDiscovery.toStringEntries(), which would start discovery to format entries
+        return Arrays.asList(entries).toString().replaceAll(PropertyEntry.class.getName(), "");
+    }
+
+    /** Makes the dispatcher match the waiting builds again, because agents may have become available. */
+    void agentsChanged() {
+        synchronized (waiting) {
+            isDispatchNeeded = true;
+            waiting.notifyAll();
+        }
+    }
+
+    /** Stops the dispatcher thread, intended only for unit tests. */
+    void stop() {
+        isStopped = true;
+        dispatcher.interrupt();
+    }
+
+    private void dispatchLoop() {
+        while (!isStopped) {
+            final List<Request> requests;
+            synchronized (waiting) {
+                try {
+                    if (!isDispatchNeeded) {
+                        waiting.wait(recheckMillis);
+                    }
+                } catch (InterruptedException e) {
+                    LOG.debug("Agent dispatcher interrupted");
+                    continue;
+                }
+                isDispatchNeeded = false;
+                requests = new ArrayList<Request>(waiting);
+            }
+
+            if (!requests.isEmpty()) {
+                try {
+                    dispatch(requests);
+                } catch (RuntimeException e) {
+                    LOG.error("Error dispatching agents", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims matching agents for the given requests, in order, each getting the agent it prefers among
+     * the available ones.
+     * @param requests the waiting requests, in dispatch order
+     */
+    private void dispatch(final List<Request> requests) {
+        final ServiceItem[] agents = agentSource.getAgents();
+        final Set<ServiceID> claimed = new HashSet<ServiceID>();
+
+        for (final Request request : requests) {
+            final List<ServiceItem> candidates = new ArrayList<ServiceItem>();
+            for (final ServiceItem agent : agents) {
+                if (!claimed.contains(agent.serviceID) && matches(request.entries, agent.attributeSets)
+                        && !isPublishedBusy(agent)) {
+                    candidates.add(agent);
+                }
+            }
+            Collections.sort(candidates, new AgentPreference(request.projectName));
+
+            for (final ServiceItem agent : candidates) {
+                if (tryClaim(agent)) {
+                    claimed.add(agent.serviceID);
+                    assign(agent, request);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands the claimed agent to the request, or to the next waiting request it matches if the request was
+     * cancelled since, or releases it.
+     */
+    private void assign(final ServiceItem agent, final Request request) {
+        synchronized (waiting) {
+            final List<Request> candidates = new ArrayList<Request>();
+            candidates.add(request);
+            candidates.addAll(waiting);
+            for (final Request candidate : candidates) {
+                if (candidate.isWaiting && candidate.agent == null && matches(candidate.entries, agent.attributeSets)) {
+                    candidate.agent = agent;
+                    candidate.isWaiting = false;
+                    waiting.remove(candidate);
+                    waiting.notifyAll();
+                    LOG.debug("Agent dispatched after waiting " + candidate.getWaitMillis() + " millis");
+                    return;
+                }
+            }
+        }
+        release(agent);
+    }
+
+    private static void release(final ServiceItem agent) {
+        try {
+            ((BuildAgentService) agent.service).clearOutputFiles();
+        } catch (Exception e) {
+            LOG.warn("Error releasing unused agent claim", e);
+        }
+    }
+
+    /**
+     * @param template the entries to match
+     * @param attributes the entries of an agent
+     * @return true if each entry of the template matches an entry of the agent, like for a Jini lookup
+     */
+    static boolean matches(final Entry[] template, final Entry[] attributes) {
+        if (template == null) {
+            return true;
+        }
+        if (attributes == null) {
+            return template.length == 0;
+        }
+        for (final Entry templateEntry : template) {
+            boolean isMatched = false;
+            for (final Entry attribute : attributes) {
+                if (LookupAttributes.matches(templateEntry, attribute)) {
+                    isMatched = true;
+                    break;
+                }
+            }
+            if (!isMatched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param attributes the entries of an agent
+     * @param name the name of the property entry
+     * @return the value of the first property entry with the given name, or null if the agent doesn't publish it
+     */
+    static String getEntryValue(final Entry[] attributes, final String name) {
+        if (attributes != null) {
+            for (final Entry attribute : attributes) {
+                if (attribute instanceof PropertyEntry && name.equals(((PropertyEntry) attribute).name)) {
+                    return ((PropertyEntry) attribute).value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static double getEntryNumber(final Entry[] attributes, final String name, final double defaultValue) {
+        final String value = getEntryValue(attributes, name);
+        if (value != null) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                LOG.debug("Ignoring invalid agent entry " + name + "=" + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Orders the agents from the most to the least preferred for building a project: first the agents which
+     * already have a workspace for the project, then by the number of idle processors, then by free disk space.
+     * Agents which don't publish their capacity come last, in the order found, even after overloaded ones.
+     */
+    static final class AgentPreference implements Comparator<ServiceItem> {
+        private final String projectName;
+        private final Entry[] workspaceTemplate;
+
+        AgentPreference(final String projectName) {
+            this.projectName = projectName;
+            workspaceTemplate = new Entry[] {new PropertyEntry(BuildAgent.ENTRY_NAME_WORKSPACE, projectName)};
+        }
+
+        public int compare(final ServiceItem agent1, final ServiceItem agent2) {
+            final boolean hasWorkspace1 = hasWorkspace(agent1);
+            if (hasWorkspace1 != hasWorkspace(agent2)) {
+                return hasWorkspace1 ? -1 : 1;
+            }
+            final boolean hasCapacity1 = hasCapacity(agent1);
+            if (hasCapacity1 != hasCapacity(agent2)) {
+                return hasCapacity1 ? -1 : 1;
+            }
+            final int byHeadroom = Double.compare(getHeadroom(agent2), getHeadroom(agent1));
+            if (byHeadroom != 0) {
+                return byHeadroom;
+            }
+            return Double.compare(getEntryNumber(agent2.attributeSets, BuildAgent.ENTRY_NAME_FREE_DISK, 0),
+                    getEntryNumber(agent1.attributeSets, BuildAgent.ENTRY_NAME_FREE_DISK, 0));
+        }
+
+        private boolean hasWorkspace(final ServiceItem agent) {
+            // a null project name would match any workspace
+            return projectName != null && matches(workspaceTemplate, agent.attributeSets);
+        }
+
+        private static boolean hasCapacity(final ServiceItem agent) {
+            return !Double.isNaN(getEntryNumber(agent.attributeSets, BuildAgent.ENTRY_NAME_CPUS, Double.NaN));
+        }
+
+        /**
+         * @param agent the agent
+         * @return the number of processors of the agent not used by the load of its host, negative when overloaded
+         */
+        private static double getHeadroom(final ServiceItem agent) {
+            final double cpus = getEntryNumber(agent.attributeSets, BuildAgent.ENTRY_NAME_CPUS, 0);
+            return cpus - getEntryNumber(agent.attributeSets, BuildAgent.ENTRY_NAME_LOAD, 0);
+        }
+    }
+
+    private static boolean isPublishedBusy(final ServiceItem agent) {
+        return matches(new Entry[] {new PropertyEntry(BuildAgent.ENTRY_NAME_BUSY, "true")}, agent.attributeSets);
+    }
+
+    private static boolean tryClaim(final ServiceItem agent) {
+        final BuildAgentService agentService = (BuildAgentService) agent.service;
+        try {
+            if (agentService.isBusy()) {
+                return false;
+            }
+            agentService.claim();
+            return true;
+        } catch (IllegalStateException e) {
+            LOG.debug("Agent claimed by another Master", e);
+        } catch (Exception e) {
+            LOG.debug("Error claiming agent, skipping it", e);
+        }
+        return false;
+    }
+
+    /** The agents of the lookup cache of the Master, notifying the queue of registration events. */
+    private static final class CachedAgents implements AgentSource, ServiceDiscoveryListener {
+        private volatile LookupCache cache;
+        private volatile AgentDispatchQueue dispatchQueue;
+
+        void start(final AgentDispatchQueue agentDispatchQueue) throws RemoteException {
+            dispatchQueue = agentDispatchQueue;
+            cache = MulticastDiscovery.createBuildAgentCache(this);
+        }
+
+        public ServiceItem[] getAgents() {
+            final ServiceItem[] agents = cache.lookup(null, Integer.MAX_VALUE);
+            return agents != null ? agents : new ServiceItem[0];
+        }
+
+        public void serviceAdded(final ServiceDiscoveryEvent event) {
+            dispatchQueue.agentsChanged();
+        }
+
+        public void serviceChanged(final ServiceDiscoveryEvent event) {
+            dispatchQueue.agentsChanged();
+        }
+
+        public void serviceRemoved(final ServiceDiscoveryEvent event) {
+            // nothing to dispatch
+        }
+    }
+}
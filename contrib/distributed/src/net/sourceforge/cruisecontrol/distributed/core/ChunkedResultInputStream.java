@@ -0,0 +1,170 @@
+/****************************************************************************
+* CruiseControl, a Continuous Integration Toolkit
+* Copyright (c) 2001, ThoughtWorks, Inc.
+* 200 E. Randolph, 25th Floor
+* Chicago, IL 60601 USA
+* All rights reserved.
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+*
+*     + Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*
+*     + Redistributions in binary form must reproduce the above
+*       copyright notice, this list of conditions and the following
+*       disclaimer in the documentation and/or other materials provided
+*       with the distribution.
+*
+*     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+*       names of its contributors may be used to endorse or promote
+*       products derived from this software without specific prior
+*       written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+* CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+* EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+* PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+* PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+* LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+* NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+****************************************************************************/
+
+package net.sourceforge.cruisecontrol.distributed.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Reads a result zip from a Build Agent one chunk at a time, so neither the Agent nor the Master
+ * ever holds the whole zip in memory. A failed remote call is retried from the same offset, resuming
+ * the transfer instead of starting over; the transfer fails once the retries are used up. A call
+ * rejected by an older Agent without chunked retrieval fails right away, see {@link #isMissingOnAgent}.
+ */
+public class ChunkedResultInputStream extends InputStream {
+
+    private static final Logger LOG = Logger.getLogger(ChunkedResultInputStream.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    static final int MAX_RETRIES = 3;
+
+    private static final long DEFAULT_RETRY_WAIT = 5000;
+
+    /** Retrieves part of a result zip from an Agent. */
+    public interface ChunkSource {
+        /**
+         * @param offset position in the zip of the first byte to return
+         * @param maxLength maximum number of bytes to return
+         * @return up to maxLength bytes, or an empty array at the end of the zip
+         * @throws RemoteException if the remote call fails
+         */
+        byte[] retrieveChunk(long offset, int maxLength) throws RemoteException;
+    }
+
+    private final ChunkSource source;
+    private final int chunkSize;
+    private final long retryWait;
+
+    private byte[] chunk = new byte[0];
+    private int chunkPos;
+    private long position;
+    private boolean isEOF;
+
+    public ChunkedResultInputStream(final ChunkSource source) {
+        this(source, DEFAULT_CHUNK_SIZE, DEFAULT_RETRY_WAIT);
+    }
+
+    ChunkedResultInputStream(final ChunkSource source, final int chunkSize, final long retryWait) {
+        this.source = source;
+        this.chunkSize = chunkSize;
+        this.retryWait = retryWait;
+    }
+
+    /**
+     * @param e failure of a remote call to an Agent
+     * @return true if the Agent rejected the call because it doesn't have the method at all, being an
+     * older version: retrying won't help
+     */
+    public static boolean isMissingOnAgent(final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UnmarshalException && cause.getMessage() != null
+                    && cause.getMessage().indexOf("unrecognized method hash") >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the number of bytes received so far. */
+    public long getPosition() {
+        return position;
+    }
+
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return chunk[chunkPos++] & 0xff;
+    }
+
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int count = Math.min(len, chunk.length - chunkPos);
+        System.arraycopy(chunk, chunkPos, b, off, count);
+        chunkPos += count;
+        return count;
+    }
+
+    public int available() {
+        return chunk.length - chunkPos;
+    }
+
+    private boolean fill() throws IOException {
+        if (chunkPos < chunk.length) {
+            return true;
+        }
+        if (isEOF) {
+            return false;
+        }
+        chunk = retrieveChunk();
+        chunkPos = 0;
+        position += chunk.length;
+        isEOF = chunk.length == 0;
+        return !isEOF;
+    }
+
+    private byte[] retrieveChunk() throws IOException {
+        int attempt = 0;
+        while (true) {
+            try {
+                return source.retrieveChunk(position, chunkSize);
+            } catch (RemoteException e) {
+                if (isMissingOnAgent(e) || ++attempt > MAX_RETRIES) {
+                    throw new IOException("Failed to retrieve result chunk at offset " + position, e);
+                }
+                LOG.warn("Failed to retrieve result chunk at offset " + position + ", retry " + attempt
+                        + " of " + MAX_RETRIES, e);
+                try {
+                    Thread.sleep(retryWait * attempt);
+                } catch (InterruptedException ie) {
+                    throw new IOException("Interrupted while resuming result transfer", ie);
+                }
+            }
+        }
+    }
+}
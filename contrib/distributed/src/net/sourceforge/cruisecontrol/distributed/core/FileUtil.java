@@ -43,6 +43,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -94,6 +95,32 @@ public final class FileUtil {
         return bytes;
     }
 
+    /**
+     * @param file the file to read from
+     * @param offset position in the file of the first byte to return
+     * @param maxLength maximum number of bytes to return
+     * @return up to maxLength bytes of the file, or an empty array if offset is at or beyond the end of the file
+     * @throws IOException if the file can not be read
+     */
+    public static byte[] getFileChunk(final File file, final long offset, final int maxLength) throws IOException {
+        if (offset < 0 || maxLength < 0) {
+            throw new IllegalArgumentException("Invalid chunk, offset: " + offset + ", maxLength: " + maxLength);
+        }
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long remaining = raf.length() - offset;
+            if (remaining <= 0) {
+                return new byte[0];
+            }
+            final byte[] bytes = new byte[(int) Math.min(remaining, maxLength)];
+            raf.seek(offset);
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+
     public static void bytesToFile(final byte[] data, final File outFile) {
         try {
             final FileOutputStream fos = new FileOutputStream(outFile);
@@ -53,6 +53,8 @@ import net.jini.discovery.LookupDiscovery;
 import net.jini.discovery.LookupDiscoveryManager;
 import net.jini.discovery.DiscoveryListener;
 import net.jini.discovery.DiscoveryEvent;
+import net.jini.lookup.LookupCache;
+import net.jini.lookup.ServiceDiscoveryListener;
 import net.jini.lookup.ServiceDiscoveryManager;
 import net.jini.lookup.ServiceItemFilter;
 import net.jini.admin.Administrable;
@@ -232,6 +234,20 @@ public final class MulticastDiscovery {
     }
 
 
+    private LookupCache createBuildAgentCacheImpl(final ServiceDiscoveryListener listener) throws RemoteException {
+        final ServiceTemplate tmpl = new ServiceTemplate(null, SERVICE_CLASSES_BUILDAGENT, null);
+        return clientMgr.createLookupCache(tmpl, null, listener);
+    }
+    /**
+     * @param listener notified when Build Agents are registered, changed or removed
+     * @return a cache of all BuildAgent services, kept up to date by the lookup services
+     * @throws RemoteException if the cache cannot be created
+     */
+    static LookupCache createBuildAgentCache(final ServiceDiscoveryListener listener) throws RemoteException {
+        return getDiscovery().createBuildAgentCacheImpl(listener);
+    }
+
+
     private ServiceItem findAvailableBuildAgentService(final Entry[] entries, final long waitDurMillis)
             throws RemoteException {
 
@@ -56,6 +56,10 @@ public final class PropertiesHelper {
 
     public static final String DISTRIBUTED_AGENT_DEBUG = "distributed.agentdebug";
 
+    public static final String DISTRIBUTED_AGENT_COMPRESSION_LEVEL = "distributed.agentcompressionlevel";
+    /** Set by Masters which retrieve only changed result files, so the agent zips results only on demand. */
+    public static final String DISTRIBUTED_AGENT_RESULTS_DELTA = "distributed.agentresultsdelta";
+
     public static final String RESULT_TYPE_LOGS = "logs";
     public static final String RESULT_TYPE_OUTPUT = "output";
     public static final String RESULT_TYPE_DIR = "dir";
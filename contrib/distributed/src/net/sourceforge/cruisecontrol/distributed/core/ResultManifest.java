@@ -0,0 +1,205 @@
+/****************************************************************************
+* CruiseControl, a Continuous Integration Toolkit
+* Copyright (c) 2001, ThoughtWorks, Inc.
+* 200 E. Randolph, 25th Floor
+* Chicago, IL 60601 USA
+* All rights reserved.
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+*
+*     + Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*
+*     + Redistributions in binary form must reproduce the above
+*       copyright notice, this list of conditions and the following
+*       disclaimer in the documentation and/or other materials provided
+*       with the distribution.
+*
+*     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+*       names of its contributors may be used to endorse or promote
+*       products derived from this software without specific prior
+*       written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+* CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+* EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+* PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+* PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+* LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+* NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+****************************************************************************/
+
+package net.sourceforge.cruisecontrol.distributed.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Content hashes of the files of a result directory, used to retrieve from an agent only the result files
+ * which differ from those already on the master.
+ * A manifest maps the path of each file, relative to the result directory and separated by '/', to
+ * the length and the MD5 hash of the file, as "length:hash".
+ */
+public final class ResultManifest {
+
+    private static final Logger LOG = Logger.getLogger(ResultManifest.class);
+
+    /** Files are hashed by a few threads, since hashing is mostly bound by disk reads. */
+    private static final int MAX_HASH_THREADS = 4;
+
+    private ResultManifest() { }
+
+    /**
+     * @param dir the result directory
+     * @return the manifest of all files under the directory, empty if the directory doesn't exist
+     * @throws IOException if a file cannot be read
+     */
+    public static Map<String, String> create(final File dir) throws IOException {
+        final List<String> paths = new ArrayList<String>();
+        listFiles(dir, "", paths);
+
+        final List<String> hashes = hash(dir, paths);
+        final Map<String, String> manifest = new TreeMap<String, String>();
+        for (int i = 0; i < paths.size(); i++) {
+            manifest.put(paths.get(i), new File(dir, paths.get(i)).length() + ":" + hashes.get(i));
+        }
+        return manifest;
+    }
+
+    /**
+     * @param manifest the manifest of the result directory on the agent
+     * @param dir the directory on the master into which the result files are retrieved
+     * @return the paths of the files in the manifest which are missing or differ in the given directory
+     * @throws IOException if a file cannot be read
+     */
+    public static String[] findChanged(final Map<String, String> manifest, final File dir) throws IOException {
+        final List<String> changed = new ArrayList<String>();
+        // only files of the same length need to be hashed
+        final List<String> sameLength = new ArrayList<String>();
+        for (final Map.Entry<String, String> entry : manifest.entrySet()) {
+            final File file = new File(dir, entry.getKey());
+            if (file.isFile() && entry.getValue().startsWith(file.length() + ":")) {
+                sameLength.add(entry.getKey());
+            } else {
+                changed.add(entry.getKey());
+            }
+        }
+
+        final List<String> hashes = hash(dir, sameLength);
+        for (int i = 0; i < sameLength.size(); i++) {
+            final String path = sameLength.get(i);
+            if (!manifest.get(path).endsWith(":" + hashes.get(i))) {
+                changed.add(path);
+            }
+        }
+        return changed.toArray(new String[changed.size()]);
+    }
+
+    private static void listFiles(final File dir, final String prefix, final List<String> paths) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                listFiles(file, prefix + file.getName() + "/", paths);
+            } else {
+                paths.add(prefix + file.getName());
+            }
+        }
+    }
+
+    private static List<String> hash(final File dir, final List<String> paths) throws IOException {
+        final List<String> hashes = new ArrayList<String>(paths.size());
+        if (paths.isEmpty()) {
+            return hashes;
+        }
+
+        final ExecutorService hashers = Executors.newFixedThreadPool(
+                Math.min(MAX_HASH_THREADS, Math.min(paths.size(), Runtime.getRuntime().availableProcessors())),
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "ResultManifest hasher");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            final List<Future<String>> futures = new ArrayList<Future<String>>(paths.size());
+            for (final String path : paths) {
+                futures.add(hashers.submit(new Callable<String>() {
+                    public String call() throws IOException {
+                        return hash(new File(dir, path));
+                    }
+                }));
+            }
+            for (final Future<String> future : futures) {
+                hashes.add(future.get());
+            }
+            return hashes;
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while hashing files in " + dir.getAbsolutePath(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Error hashing files in " + dir.getAbsolutePath(), e.getCause());
+        } finally {
+            hashers.shutdownNow();
+        }
+    }
+
+    /**
+     * @param file the file to hash
+     * @return the MD5 hash of the file content, in hex
+     * @throws IOException if the file cannot be read
+     */
+    static String hash(final File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("MD5 not supported", e);
+        }
+
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                digest.update(buf, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+
+        final StringBuilder hex = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        LOG.debug("Hashed " + file.getAbsolutePath() + ": " + hex);
+        return hex.toString();
+    }
+}
@@ -45,10 +45,13 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Enumeration;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import net.sourceforge.cruisecontrol.Builder;
@@ -62,6 +65,16 @@ public final class ZipUtil {
     private ZipUtil() { }
 
     public static void zipFolderContents(final String outFilename, final String folderToZip) {
+        zipFolderContents(outFilename, folderToZip, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param outFilename the zip file to create
+     * @param folderToZip the directory whose contents will be zipped
+     * @param compressionLevel 0-9, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public static void zipFolderContents(final String outFilename, final String folderToZip,
+                                         final int compressionLevel) {
         validateParams(outFilename, folderToZip);
         BufferedOutputStream bos = null;
         ZipOutputStream zipOut = null;
@@ -70,6 +83,7 @@ public final class ZipUtil {
         try {
             bos = new BufferedOutputStream(new FileOutputStream(outFilename));
             zipOut = new ZipOutputStream(bos);
+            zipOut.setLevel(compressionLevel);
             final File folder = new File(folderToZip);
             String message = "Zipping files from: " + folderToZip + " to: " + outFilename;
             LOG.info(message);
@@ -121,6 +135,49 @@ public final class ZipUtil {
         }
     }
 
+    /**
+     * Zips only some of the files of a folder, for instance those which changed since they were last retrieved.
+     * @param outFilename the zip file to create
+     * @param folderToZip the directory containing the files
+     * @param relativePaths the paths of the files to zip, relative to folderToZip and separated by '/'
+     * @param compressionLevel 0-9, or {@link Deflater#DEFAULT_COMPRESSION}
+     * @throws IllegalArgumentException if one of the paths leads out of folderToZip
+     */
+    public static void zipFiles(final String outFilename, final String folderToZip, final String[] relativePaths,
+                                final int compressionLevel) {
+        validateParams(outFilename, folderToZip);
+        validateRelativePaths(folderToZip, relativePaths);
+        LOG.info("Zipping " + relativePaths.length + " files from: " + folderToZip + " to: " + outFilename);
+        final byte[] buf = new byte[8192];
+        try {
+            final ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(outFilename)));
+            try {
+                zipOut.setLevel(compressionLevel);
+                for (final String relativePath : relativePaths) {
+                    final InputStream in = new FileInputStream(new File(folderToZip, relativePath));
+                    try {
+                        zipOut.putNextEntry(new ZipEntry(relativePath));
+                        int len;
+                        while ((len = in.read(buf)) > 0) {
+                            zipOut.write(buf, 0, len);
+                        }
+                        zipOut.closeEntry();
+                    } finally {
+                        in.close();
+                    }
+                }
+            } finally {
+                zipOut.close();
+            }
+        } catch (IOException ioe) {
+            final String message = "Error occured while zipping files to: " + outFilename;
+            LOG.error(message, ioe);
+            throw new RuntimeException(message, ioe);
+        }
+        LOG.info("Finished zipping files");
+    }
+
     private static void zipFiles(final File rootDir, final File folderToZip, final ZipOutputStream zipOutputStream) {
         final byte[] buf = new byte[1024];
 
@@ -185,6 +242,26 @@ public final class ZipUtil {
         }
     }
 
+    /**
+     * Rejects paths which lead out of the folder to zip, as they may come from a remote caller.
+     */
+    private static void validateRelativePaths(final String folderToZip, final String[] relativePaths) {
+        try {
+            final String folderPath = new File(folderToZip).getCanonicalPath() + File.separator;
+            for (final String relativePath : relativePaths) {
+                if (!new File(folderToZip, relativePath).getCanonicalPath().startsWith(folderPath)) {
+                    final String message = "Path is outside the folder to zip: " + relativePath;
+                    LOG.error(message);
+                    throw new IllegalArgumentException(message);
+                }
+            }
+        } catch (IOException ioe) {
+            final String message = "Error resolving the files to zip in: " + folderToZip;
+            LOG.error(message, ioe);
+            throw new RuntimeException(message, ioe);
+        }
+    }
+
     /**
      * @param zipFilePath the file to unzip
      * @param toDirName the directory into which to put unziped contents
@@ -236,6 +313,40 @@ public final class ZipUtil {
         LOG.info(infoMessage);
     }
 
+    /**
+     * Explodes a zip as it is read, so the zip never has to be stored on disk or held in memory.
+     * @param zipStream the content of the zip file, not closed by this method
+     * @param toDirName the directory into which to put unziped contents
+     * @return the number of entries exploded
+     * @throws IOException if errors occur reading the zip or writing files
+     */
+    public static int unzipStreamToLocation(final InputStream zipStream, final String toDirName) throws IOException {
+        final ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(zipStream));
+        final byte[] buf = new byte[8192];
+        int count = 0;
+        ZipEntry entry;
+        while ((entry = zipIn.getNextEntry()) != null) {
+            LOG.debug("Exploding: " + entry.getName());
+            final File file = new File(toDirName, entry.getName());
+            if (entry.isDirectory()) {
+                Util.doMkDirs(file);
+            } else {
+                Util.doMkDirs(file.getParentFile());
+                final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+                try {
+                    int len;
+                    while ((len = zipIn.read(buf)) > 0) {
+                        out.write(buf, 0, len);
+                    }
+                } finally {
+                    out.close();
+                }
+            }
+            count++;
+        }
+        return count;
+    }
+
     private static void saveItem(final ZipFile zipFile, final String rootDirName, final ZipEntry entry)
             throws IOException {
         final InputStream is;
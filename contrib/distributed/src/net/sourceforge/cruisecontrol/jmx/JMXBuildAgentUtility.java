@@ -4,6 +4,7 @@ import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.builders.DistributedMasterBuilder;
 import net.sourceforge.cruisecontrol.distributed.util.BuildAgentUtility;
 import net.sourceforge.cruisecontrol.distributed.BuildAgentService;
+import net.sourceforge.cruisecontrol.distributed.core.AgentDispatchQueue;
 import net.jini.core.lookup.ServiceRegistrar;
 import net.jini.core.lookup.ServiceItem;
 
@@ -122,6 +123,14 @@ public class JMXBuildAgentUtility implements JMXBuildAgentUtilityMBean {
         return agentServiceIds.toArray(new String[agentServiceIds.size()]);
     }
 
+    public int getDispatchQueueDepth() throws RemoteException {
+        return AgentDispatchQueue.getQueue().getDepth();
+    }
+
+    public String[] getDispatchQueueWaits() throws RemoteException {
+        return AgentDispatchQueue.getQueue().getWaitsPerEntries();
+    }
+
     public boolean isKillOrRestartAfterBuildFinished() { return isAfterBuildFinished; }
     public void setKillOrRestartAfterBuildFinished(final boolean afterBuildFinished) {
         isAfterBuildFinished = afterBuildFinished;
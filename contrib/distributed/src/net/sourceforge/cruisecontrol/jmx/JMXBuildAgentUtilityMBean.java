@@ -21,6 +21,9 @@ public interface JMXBuildAgentUtilityMBean {
 
     String[] getBuildAgentServiceIds() throws RemoteException;
 
+    int getDispatchQueueDepth() throws RemoteException;
+    String[] getDispatchQueueWaits() throws RemoteException;
+
     boolean isKillOrRestartAfterBuildFinished();
     void setKillOrRestartAfterBuildFinished(final boolean afterBuildFinished);
     void kill(final String agentServiceId) throws CruiseControlException, RemoteException;
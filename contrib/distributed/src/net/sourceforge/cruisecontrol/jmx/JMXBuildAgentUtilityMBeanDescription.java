@@ -64,6 +64,9 @@ public class JMXBuildAgentUtilityMBeanDescription extends MBeanDescriptionAdapte
         ATTR_DESCRIPTIONS.put("BuildAgents", "A big knarly string representation of all Build Agents found.");
         ATTR_DESCRIPTIONS.put("BuildAgentServiceIds", "Use the ServiceId (the part after '<hostname>: ') as the "
                 + "parameter value to kill() or restart() calls. The ServiceId uniquely identifies a Build Agent.");
+        ATTR_DESCRIPTIONS.put("DispatchQueueDepth", "The number of builds waiting for an available Build Agent.");
+        ATTR_DESCRIPTIONS.put("DispatchQueueWaits", "For each set of entries requested by the builds waiting for an "
+                + "available Build Agent, the number of builds waiting and the longest wait.");
         ATTR_DESCRIPTIONS.put("KillOrRestartAfterBuildFinished",
                 "If true, any invocation of kill or restart on a busy agent will wait until the currently running "
                 + "build finishes. If false, invocation of kill or restart will occur immediately, even if the agent "
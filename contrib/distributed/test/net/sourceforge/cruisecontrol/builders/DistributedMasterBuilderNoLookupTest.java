@@ -3,13 +3,26 @@ package net.sourceforge.cruisecontrol.builders;
 import junit.framework.TestCase;
 import net.sourceforge.cruisecontrol.Builder;
 import net.sourceforge.cruisecontrol.CruiseControlException;
+import net.sourceforge.cruisecontrol.distributed.BuildAgentService;
 import net.sourceforge.cruisecontrol.distributed.core.MulticastDiscoveryTest;
 import net.sourceforge.cruisecontrol.distributed.core.PropertiesHelper;
 import net.sourceforge.cruisecontrol.distributed.core.RemoteResult;
 import net.sourceforge.cruisecontrol.distributed.core.RemoteResultTest;
-
+import net.sourceforge.cruisecontrol.util.IO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * @author Dan Rollo
@@ -149,6 +162,73 @@ public class DistributedMasterBuilderNoLookupTest extends TestCase {
         assertNull("Shouldn't find any available agents", masterBuilder.pickAgent(null, null));
     }
 
+    public void testShouldRetrieveWholeZipFromAgentWithoutChunkedRetrieval() throws Exception {
+        final File rootDir = File.createTempFile("olderAgent", "test");
+        rootDir.delete();
+        rootDir.mkdirs();
+        try {
+            final List<String> calls = new ArrayList<String>();
+            final BuildAgentService agent = createOlderAgent(calls);
+
+            final File logsDir = new File(rootDir, "logs");
+            DistributedMasterBuilder.getResultsFiles(agent, rootDir, "project", PropertiesHelper.RESULT_TYPE_LOGS,
+                    logsDir);
+            assertEquals("log", IO.readLines(new File(logsDir, "log.txt")).get(0));
+            assertTrue(calls.contains("retrieveResultsAsZip"));
+
+            final RemoteResult remoteResult = new RemoteResult(0);
+            final File resultDir = new File(rootDir, "result");
+            remoteResult.setMasterDir(resultDir.getAbsolutePath());
+            DistributedMasterBuilder.getRemoteResult(agent, rootDir, "project", remoteResult);
+            assertEquals("result", IO.readLines(new File(resultDir, "result.txt")).get(0));
+            assertTrue(calls.contains("retrieveRemoteResult"));
+            // the agent doesn't have chunked retrieval either, once found older it isn't asked for chunks
+            assertFalse(calls.contains("retrieveResultsChunk"));
+            assertFalse(calls.contains("retrieveRemoteResultChunk"));
+        } finally {
+            IO.delete(rootDir);
+        }
+    }
+
+    /**
+     * @param calls receives the name of each method called on the agent
+     * @return an agent predating chunked retrieval and result manifests, rejecting calls to them
+     * as a remote agent would
+     */
+    private static BuildAgentService createOlderAgent(final List<String> calls) {
+        final List<String> missing = Arrays.asList("retrieveResultsChunk", "retrieveRemoteResultChunk",
+                "getResultsManifest", "getRemoteResultManifest", "prepareResultsDelta", "prepareRemoteResultDelta");
+        return (BuildAgentService) Proxy.newProxyInstance(BuildAgentService.class.getClassLoader(),
+                new Class[] {BuildAgentService.class}, new InvocationHandler() {
+                    public Object invoke(final Object proxy, final Method method, final Object[] args)
+                            throws Throwable {
+                        calls.add(method.getName());
+                        if (missing.contains(method.getName())) {
+                            throw new UnmarshalException(
+                                    "unrecognized method hash: method not supported by remote object");
+                        } else if ("resultsExist".equals(method.getName())
+                                || "remoteResultExists".equals(method.getName())) {
+                            return Boolean.TRUE;
+                        } else if ("retrieveResultsAsZip".equals(method.getName())) {
+                            return zipOf("log.txt", "log");
+                        } else if ("retrieveRemoteResult".equals(method.getName())) {
+                            return zipOf("result.txt", "result");
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static byte[] zipOf(final String name, final String content) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.close();
+        return bytes.toByteArray();
+    }
+
     public void testGetBuildOutputConsumerFails() throws Exception {
         final DistributedMasterBuilder masterBuilder = new DistributedMasterBuilder();
         try {
@@ -8,7 +8,9 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.zip.ZipInputStream;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 
@@ -576,6 +578,8 @@ public class BuildAgentServiceImplTest extends TestCase {
 
         agentImpl.setBusy(false); // fake build finish
         assertNull(agentImpl.getProjectName());
+        // the workspace of the project is still published once the build is finished
+        assertEquals(Arrays.asList(testProjectName), Arrays.asList(agentImpl.getBuiltProjects()));
     }
 
     public void testKillNoWait() throws Exception {
@@ -962,6 +966,39 @@ public class BuildAgentServiceImplTest extends TestCase {
         assertFalse(agentImpl.isBusy());
     }
 
+    public void testRetrieveResultsDelta() throws Exception {
+        final Map<String, String> distributedAgentProps = new HashMap<String, String>();
+        distributedAgentProps.put(PropertiesHelper.DISTRIBUTED_AGENT_RESULTS_DELTA, "true");
+        final BuildAgentServiceImpl agentImpl = createTestAgentDoBuild(false, distributedAgentProps,
+                REMOTE_RESULTS_ONE);
+        try {
+            final Map<String, String> manifest = agentImpl.getResultsManifest(PropertiesHelper.RESULT_TYPE_LOGS);
+            assertFalse(manifest.isEmpty());
+            final String changedPath = manifest.keySet().iterator().next();
+            agentImpl.prepareResultsDelta(PropertiesHelper.RESULT_TYPE_LOGS, new String[] {changedPath});
+            final ZipInputStream zipIn = new ZipInputStream(new ByteArrayInputStream(
+                    agentImpl.retrieveResultsAsZip(PropertiesHelper.RESULT_TYPE_LOGS)));
+            assertEquals(changedPath, zipIn.getNextEntry().getName());
+            assertNull(zipIn.getNextEntry());
+
+            try {
+                agentImpl.prepareResultsDelta(PropertiesHelper.RESULT_TYPE_LOGS, new String[] {"../" + changedPath});
+                fail("Should not zip a path outside the results");
+            } catch (RemoteException e) {
+                assertTrue(e.getMessage(), e.getMessage().indexOf("outside the folder to zip") > -1);
+            }
+
+            assertFalse(agentImpl.getRemoteResultManifest(0).isEmpty());
+
+            // a Master falling back to retrieving all results gets all of them
+            assertNonEmptyResultsZip(agentImpl, PropertiesHelper.RESULT_TYPE_OUTPUT);
+            assertNonEmptyResultsZip(agentImpl, PropertiesHelper.RESULT_TYPE_DIR);
+        } finally {
+            // cleanup left over files
+            agentImpl.clearOutputFiles();
+        }
+    }
+
     private static void assertNonEmptyResultsZip(final BuildAgentServiceImpl agentImpl, final String resultType)
             throws RemoteException {
 
@@ -0,0 +1,220 @@
+/****************************************************************************
+* CruiseControl, a Continuous Integration Toolkit
+* Copyright (c) 2001, ThoughtWorks, Inc.
+* 200 E. Randolph, 25th Floor
+* Chicago, IL 60601 USA
+* All rights reserved.
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+*
+*     + Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*
+*     + Redistributions in binary form must reproduce the above
+*       copyright notice, this list of conditions and the following
+*       disclaimer in the documentation and/or other materials provided
+*       with the distribution.
+*
+*     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+*       names of its contributors may be used to endorse or promote
+*       products derived from this software without specific prior
+*       written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+* CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+* EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+* PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+* PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+* LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+* NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+****************************************************************************/
+
+package net.sourceforge.cruisecontrol.distributed.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.jini.core.entry.Entry;
+import net.jini.core.lookup.ServiceID;
+import net.jini.core.lookup.ServiceItem;
+import net.sourceforge.cruisecontrol.distributed.BuildAgent;
+import net.sourceforge.cruisecontrol.distributed.BuildAgentServiceImpl;
+import net.sourceforge.cruisecontrol.distributed.BuildAgentServiceImplTest;
+import net.sourceforge.cruisecontrol.distributed.PropertyEntry;
+
+public class AgentDispatchQueueTest extends TestCase {
+
+    private static final long NO_RECHECK = 60000;
+    private static final long AWAIT = 5000;
+    private static final String PROJECT = "testproject";
+
+    private final Entry[] linuxEntries = new Entry[] { new PropertyEntry("os.name", "Linux") };
+    private final Entry[] windowsEntries = new Entry[] { new PropertyEntry("os.name", "Windows") };
+
+    private final FakeAgentSource agentSource = new FakeAgentSource();
+    private AgentDispatchQueue queue;
+
+    protected void setUp() throws Exception {
+        queue = new AgentDispatchQueue(agentSource, NO_RECHECK);
+    }
+
+    protected void tearDown() throws Exception {
+        queue.stop();
+    }
+
+    public void testHandsIdleAgentToWaitingBuild() throws Exception {
+        final ServiceItem agent = createAgent(1, linuxEntries);
+        agentSource.agents = new ServiceItem[] { agent };
+
+        final AgentDispatchQueue.Request request = queue.enqueue(PROJECT, linuxEntries, 0);
+        assertSame(agent, queue.await(request, AWAIT));
+        assertTrue(((BuildAgentServiceImpl) agent.service).isBusy());
+        assertEquals(0, queue.getDepth());
+    }
+
+    public void testWaitsForMatchingAgent() throws Exception {
+        agentSource.agents = new ServiceItem[] { createAgent(1, windowsEntries) };
+
+        final AgentDispatchQueue.Request request = queue.enqueue(PROJECT, linuxEntries, 0);
+        assertNull(queue.await(request, 200));
+        assertEquals(1, queue.getDepth());
+
+        final ServiceItem linuxAgent = createAgent(2, linuxEntries);
+        agentSource.agents = new ServiceItem[] { agentSource.agents[0], linuxAgent };
+        queue.agentsChanged();
+        assertSame(linuxAgent, queue.await(request, AWAIT));
+    }
+
+    public void testSkipsBusyAgent() throws Exception {
+        final ServiceItem agent = createAgent(1, linuxEntries);
+        ((BuildAgentServiceImpl) agent.service).claim();
+        agentSource.agents = new ServiceItem[] { agent };
+
+        final AgentDispatchQueue.Request request = queue.enqueue(PROJECT, linuxEntries, 0);
+        assertNull(queue.await(request, 200));
+
+        ((BuildAgentServiceImpl) agent.service).clearOutputFiles();
+        queue.agentsChanged();
+        assertSame(agent, queue.await(request, AWAIT));
+    }
+
+    public void testDispatchesByPriorityThenArrival() throws Exception {
+        final AgentDispatchQueue.Request first = queue.enqueue(PROJECT, linuxEntries, 0);
+        final AgentDispatchQueue.Request second = queue.enqueue(PROJECT, linuxEntries, 0);
+        final AgentDispatchQueue.Request urgent = queue.enqueue(PROJECT, linuxEntries, 5);
+        assertNull(queue.await(first, 100));
+
+        final ServiceItem agent1 = createAgent(1, linuxEntries);
+        agentSource.agents = new ServiceItem[] { agent1 };
+        queue.agentsChanged();
+        assertSame(agent1, queue.await(urgent, AWAIT));
+        assertNull(queue.await(first, 100));
+
+        final ServiceItem agent2 = createAgent(2, linuxEntries);
+        agentSource.agents = new ServiceItem[] { agent1, agent2 };
+        queue.agentsChanged();
+        assertSame(agent2, queue.await(first, AWAIT));
+        assertNull(queue.await(second, 100));
+        assertEquals(1, queue.getDepth());
+    }
+
+    public void testCancelReleasesClaimedAgent() throws Exception {
+        final ServiceItem agent = createAgent(1, linuxEntries);
+        agentSource.agents = new ServiceItem[] { agent };
+
+        final AgentDispatchQueue.Request request = queue.enqueue(PROJECT, linuxEntries, 0);
+        assertSame(agent, queue.await(request, AWAIT));
+        queue.cancel(request);
+        assertFalse(((BuildAgentServiceImpl) agent.service).isBusy());
+    }
+
+    public void testWaitsPerEntries() throws Exception {
+        queue.enqueue(PROJECT, linuxEntries, 0);
+        queue.enqueue(PROJECT, windowsEntries, 0);
+        queue.enqueue(PROJECT, linuxEntries, 0);
+
+        final String[] waits = queue.getWaitsPerEntries();
+        assertEquals(2, waits.length);
+        assertTrue(waits[0], waits[0].startsWith("2 waiting, longest for 0 seconds: "));
+        assertTrue(waits[0], waits[0].indexOf("Linux") > 0);
+        assertTrue(waits[1], waits[1].startsWith("1 waiting, longest for 0 seconds: "));
+        assertTrue(waits[1], waits[1].indexOf("Windows") > 0);
+        assertEquals(3, queue.getDepth());
+    }
+
+    public void testPrefersAgentWithWorkspace() throws Exception {
+        final ServiceItem idleAgent = createAgent(1, withCapacity(linuxEntries, "8", "0.0", null));
+        final ServiceItem warmAgent = createAgent(2, withCapacity(linuxEntries, "2", "1.5", PROJECT));
+        agentSource.agents = new ServiceItem[] { idleAgent, warmAgent };
+
+        final AgentDispatchQueue.Request request = queue.enqueue(PROJECT, linuxEntries, 0);
+        assertSame(warmAgent, queue.await(request, AWAIT));
+    }
+
+    public void testPrefersAgentWithMostHeadroom() throws Exception {
+        final ServiceItem unknownAgent = createAgent(1, linuxEntries);
+        final ServiceItem loadedAgent = createAgent(2, withCapacity(linuxEntries, "8", "7.5", "otherproject"));
+        final ServiceItem idleAgent = createAgent(3, withCapacity(linuxEntries, "4", "0.5", null));
+        agentSource.agents = new ServiceItem[] { unknownAgent, loadedAgent, idleAgent };
+
+        final AgentDispatchQueue.Request request = queue.enqueue(PROJECT, linuxEntries, 0);
+        assertSame(idleAgent, queue.await(request, AWAIT));
+    }
+
+    public void testAgentPreference() {
+        final ServiceItem unknownAgent = createAgent(1, linuxEntries);
+        final ServiceItem smallAgent = createAgent(2, withCapacity(linuxEntries, "2", "0.0", null));
+        final ServiceItem bigAgent = createAgent(3, withCapacity(linuxEntries, "16", null, null));
+        final ServiceItem warmAgent = createAgent(4, withCapacity(linuxEntries, "1", "0.9", PROJECT));
+        final ServiceItem overloadedAgent = createAgent(5, withCapacity(linuxEntries, "4", "6.0", null));
+
+        final List<ServiceItem> agents = new ArrayList<ServiceItem>(
+                Arrays.asList(unknownAgent, overloadedAgent, smallAgent, bigAgent, warmAgent));
+        Collections.sort(agents, new AgentDispatchQueue.AgentPreference(PROJECT));
+        assertEquals(Arrays.asList(warmAgent, bigAgent, smallAgent, overloadedAgent, unknownAgent), agents);
+
+        Collections.sort(agents, new AgentDispatchQueue.AgentPreference(null));
+        assertEquals(Arrays.asList(bigAgent, smallAgent, warmAgent, overloadedAgent, unknownAgent), agents);
+    }
+
+    public void testMatches() {
+        assertTrue(AgentDispatchQueue.matches(linuxEntries,
+                new Entry[] { new PropertyEntry("user.name", "build"), new PropertyEntry("os.name", "Linux") }));
+        assertFalse(AgentDispatchQueue.matches(linuxEntries, windowsEntries));
+        assertTrue(AgentDispatchQueue.matches(null, windowsEntries));
+    }
+
+    private static Entry[] withCapacity(final Entry[] entries, final String cpus, final String load,
+                                        final String workspace) {
+        final List<Entry> published = new ArrayList<Entry>(Arrays.asList(entries));
+        published.add(new PropertyEntry(BuildAgent.ENTRY_NAME_CPUS, cpus));
+        if (load != null) {
+            published.add(new PropertyEntry(BuildAgent.ENTRY_NAME_LOAD, load));
+        }
+        if (workspace != null) {
+            published.add(new PropertyEntry(BuildAgent.ENTRY_NAME_WORKSPACE, workspace));
+        }
+        return published.toArray(new Entry[published.size()]);
+    }
+
+    private static ServiceItem createAgent(final long id, final Entry[] entries) {
+        return new ServiceItem(new ServiceID(0, id), BuildAgentServiceImplTest.createTestAgentImpl(), entries);
+    }
+
+    private static final class FakeAgentSource implements AgentDispatchQueue.AgentSource {
+        private volatile ServiceItem[] agents = new ServiceItem[0];
+
+        public ServiceItem[] getAgents() {
+            return agents;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package net.sourceforge.cruisecontrol.distributed.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+
+import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.util.IO;
+
+public class ChunkedResultInputStreamTest extends TestCase {
+
+    private static final String CONTENT = "The quick brown fox, yadda, yadda, yadda...";
+
+    private File rootDir;
+
+    protected void setUp() throws Exception {
+        rootDir = File.createTempFile("chunked", "test");
+        rootDir.delete();
+        rootDir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        IO.delete(rootDir);
+    }
+
+    public void testShouldResumeTransferAfterRemoteFailure() throws Exception {
+        final File resultsDir = new File(rootDir, "results");
+        IO.write(new File(resultsDir, "data.txt"), CONTENT);
+        IO.write(new File(resultsDir, "nested/more.txt"), CONTENT + CONTENT);
+        final File zipFile = new File(rootDir, "results.zip");
+        ZipUtil.zipFolderContents(zipFile.getAbsolutePath(), resultsDir.getAbsolutePath(), 0);
+
+        final int[] calls = new int[1];
+        final ChunkedResultInputStream in = new ChunkedResultInputStream(new ChunkedResultInputStream.ChunkSource() {
+            public byte[] retrieveChunk(final long offset, final int maxLength) throws RemoteException {
+                if (++calls[0] == 3) {
+                    throw new RemoteException("connection dropped");
+                }
+                try {
+                    return FileUtil.getFileChunk(zipFile, offset, maxLength);
+                } catch (IOException e) {
+                    throw new RemoteException("read failed", e);
+                }
+            }
+        }, 16, 0);
+
+        final File unzipDir = new File(rootDir, "unzip");
+        assertEquals(2, ZipUtil.unzipStreamToLocation(in, unzipDir.getAbsolutePath()));
+        assertEquals(CONTENT, IO.readLines(new File(unzipDir, "data.txt")).get(0));
+        assertEquals(CONTENT + CONTENT, IO.readLines(new File(unzipDir, "nested/more.txt")).get(0));
+    }
+
+    public void testShouldRetryWhenFirstChunkFails() throws Exception {
+        final int[] calls = new int[1];
+        final ChunkedResultInputStream in = new ChunkedResultInputStream(new ChunkedResultInputStream.ChunkSource() {
+            public byte[] retrieveChunk(final long offset, final int maxLength) throws RemoteException {
+                if (calls[0]++ == 0) {
+                    throw new RemoteException("connection refused");
+                }
+                return offset == 0 ? new byte[] {42} : new byte[0];
+            }
+        }, 16, 0);
+
+        assertEquals(42, in.read());
+        assertEquals(-1, in.read());
+        assertEquals(3, calls[0]);
+    }
+
+    public void testShouldFailWhenFirstChunkKeepsFailing() throws Exception {
+        final int[] calls = new int[1];
+        final ChunkedResultInputStream in = new ChunkedResultInputStream(new ChunkedResultInputStream.ChunkSource() {
+            public byte[] retrieveChunk(final long offset, final int maxLength) throws RemoteException {
+                calls[0]++;
+                throw new RemoteException("unrecognized method hash");
+            }
+        }, 16, 0);
+
+        try {
+            in.read();
+            fail("Should have failed");
+        } catch (IOException expected) {
+            assertTrue(expected.getCause() instanceof RemoteException);
+        }
+        assertEquals(0, in.getPosition());
+        assertEquals(1 + ChunkedResultInputStream.MAX_RETRIES, calls[0]);
+    }
+
+    public void testShouldNotRetryWhenAgentDoesNotHaveChunkedRetrieval() throws Exception {
+        final int[] calls = new int[1];
+        final ChunkedResultInputStream in = new ChunkedResultInputStream(new ChunkedResultInputStream.ChunkSource() {
+            public byte[] retrieveChunk(final long offset, final int maxLength) throws RemoteException {
+                calls[0]++;
+                throw new UnmarshalException("unrecognized method hash: method not supported by remote object");
+            }
+        }, 16, 0);
+
+        try {
+            in.read();
+            fail("Should have failed");
+        } catch (IOException expected) {
+            assertTrue(ChunkedResultInputStream.isMissingOnAgent(expected));
+        }
+        assertEquals(1, calls[0]);
+        assertFalse(ChunkedResultInputStream.isMissingOnAgent(new RemoteException("agent gone")));
+    }
+
+    public void testShouldGiveUpAfterMaxRetries() throws Exception {
+        final int[] calls = new int[1];
+        final ChunkedResultInputStream in = new ChunkedResultInputStream(new ChunkedResultInputStream.ChunkSource() {
+            public byte[] retrieveChunk(final long offset, final int maxLength) throws RemoteException {
+                if (calls[0]++ == 0) {
+                    return new byte[maxLength];
+                }
+                throw new RemoteException("agent gone");
+            }
+        }, 16, 0);
+
+        assertEquals(16, in.read(new byte[32]));
+        try {
+            in.read();
+            fail("Should have failed");
+        } catch (IOException expected) {
+            assertEquals(16, in.getPosition());
+        }
+        assertEquals(1 + 1 + ChunkedResultInputStream.MAX_RETRIES, calls[0]);
+    }
+}
@@ -0,0 +1,115 @@
+/****************************************************************************
+* CruiseControl, a Continuous Integration Toolkit
+* Copyright (c) 2001, ThoughtWorks, Inc.
+* 200 E. Randolph, 25th Floor
+* Chicago, IL 60601 USA
+* All rights reserved.
+*
+* Redistribution and use in source and binary forms, with or without
+* modification, are permitted provided that the following conditions
+* are met:
+*
+*     + Redistributions of source code must retain the above copyright
+*       notice, this list of conditions and the following disclaimer.
+*
+*     + Redistributions in binary form must reproduce the above
+*       copyright notice, this list of conditions and the following
+*       disclaimer in the documentation and/or other materials provided
+*       with the distribution.
+*
+*     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+*       names of its contributors may be used to endorse or promote
+*       products derived from this software without specific prior
+*       written permission.
+*
+* THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+* "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+* LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+* A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+* CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+* EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+* PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+* PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+* LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+* NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+* SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+****************************************************************************/
+
+package net.sourceforge.cruisecontrol.distributed.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.util.IO;
+
+public class ResultManifestTest extends TestCase {
+
+    private File rootDir;
+    private File agentDir;
+    private File masterDir;
+
+    protected void setUp() throws Exception {
+        rootDir = File.createTempFile("manifest", "test");
+        rootDir.delete();
+        agentDir = new File(rootDir, "agent");
+        masterDir = new File(rootDir, "master");
+        agentDir.mkdirs();
+        masterDir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        IO.delete(rootDir);
+    }
+
+    public void testCreate() throws Exception {
+        IO.write(new File(agentDir, "data.txt"), "abc");
+        IO.write(new File(agentDir, "nested/more.txt"), "");
+
+        final Map<String, String> manifest = ResultManifest.create(agentDir);
+        assertEquals(Arrays.asList("data.txt", "nested/more.txt"), Arrays.asList(manifest.keySet().toArray()));
+        assertEquals("3:900150983cd24fb0d6963f7d28e17f72", manifest.get("data.txt"));
+        assertEquals("0:d41d8cd98f00b204e9800998ecf8427e", manifest.get("nested/more.txt"));
+
+        assertTrue(ResultManifest.create(new File(rootDir, "missing")).isEmpty());
+    }
+
+    public void testFindChanged() throws Exception {
+        IO.write(new File(agentDir, "same.txt"), "unchanged");
+        IO.write(new File(agentDir, "changed.txt"), "new content");
+        IO.write(new File(agentDir, "sameLength.txt"), "abc");
+        IO.write(new File(agentDir, "nested/added.txt"), "added");
+
+        IO.write(new File(masterDir, "same.txt"), "unchanged");
+        IO.write(new File(masterDir, "changed.txt"), "old");
+        IO.write(new File(masterDir, "sameLength.txt"), "xyz");
+        IO.write(new File(masterDir, "masterOnly.txt"), "kept");
+
+        final String[] changed = ResultManifest.findChanged(ResultManifest.create(agentDir), masterDir);
+        Arrays.sort(changed);
+        assertEquals(Arrays.asList("changed.txt", "nested/added.txt", "sameLength.txt"), Arrays.asList(changed));
+    }
+
+    public void testDeltaRoundTrip() throws Exception {
+        IO.write(new File(agentDir, "same.txt"), "unchanged");
+        IO.write(new File(agentDir, "nested/changed.txt"), "new content");
+        IO.write(new File(masterDir, "same.txt"), "unchanged");
+
+        final String[] changed = ResultManifest.findChanged(ResultManifest.create(agentDir), masterDir);
+        assertEquals(Arrays.asList("nested/changed.txt"), Arrays.asList(changed));
+
+        final File zipFile = new File(rootDir, "delta.zip");
+        ZipUtil.zipFiles(zipFile.getAbsolutePath(), agentDir.getAbsolutePath(), changed, 0);
+        final InputStream in = new FileInputStream(zipFile);
+        try {
+            assertEquals(1, ZipUtil.unzipStreamToLocation(in, masterDir.getAbsolutePath()));
+        } finally {
+            in.close();
+        }
+
+        assertEquals(0, ResultManifest.findChanged(ResultManifest.create(agentDir), masterDir).length);
+    }
+}
@@ -45,6 +45,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Properties;
 import java.util.Arrays;
+import java.util.zip.Deflater;
 
 import junit.framework.TestCase;
 import net.sourceforge.cruisecontrol.util.IO;
@@ -162,6 +163,20 @@ public class ZipUtilTest extends TestCase {
         }
     }
 
+    public void testZipFilesRejectsPathsOutsideFolder() {
+        final String zipFilePath = rootTempDir + File.separator + "delta.zip";
+        final String[] outsidePaths = {"../" + DIR_NAME_FILLED + "/" + TEMP_FILE, "../" + DIR_NAME_EMPTY + "2/file"};
+        for (final String outsidePath : outsidePaths) {
+            try {
+                ZipUtil.zipFiles(zipFilePath, emptyDirPath, new String[] {outsidePath}, Deflater.DEFAULT_COMPRESSION);
+                fail("Should not zip " + outsidePath);
+            } catch (IllegalArgumentException e) {
+                assertEquals("Path is outside the folder to zip: " + outsidePath, e.getMessage());
+            }
+            assertFalse(new File(zipFilePath).exists());
+        }
+    }
+
     public void testUnzip() {
         String zipFilePath = null;
         String dirToZip = null;
@@ -0,0 +1,187 @@
+package net.sourceforge.cruisecontrol.builders;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.net.Socket;
+import java.util.Properties;
+
+import org.apache.tools.ant.Main;
+import org.apache.tools.ant.launch.AntMain;
+
+/**
+ * Entry point of a warm Ant VM kept between builds by an AntBuilder in daemon mode. Ant's launcher
+ * starts it with <code>-main</code>, passing the local port to connect back to as its only argument.
+ * For each request read from the socket (the Ant command line arguments of one build) it runs the
+ * build, sends the console output of Ant back line by line, and ends with the exit code of the build.
+ * The VM exits once the socket is closed.
+ *
+ * NOTE: The protocol constants must be the exact same as those defined in AntDaemon, but are kept
+ * separate to avoid dependence on CruiseControl classes in the Ant VM.
+ */
+public class AntDaemonMain implements AntMain {
+
+    static final byte FRAME_OUT = 1;
+    static final byte FRAME_ERR = 2;
+    static final byte FRAME_EXIT = 3;
+
+    public void startAnt(final String[] args, final Properties additionalUserProperties,
+                         final ClassLoader coreLoader) {
+        final PrintStream consoleErr = System.err;
+        try {
+            final Socket socket = new Socket("127.0.0.1", Integer.parseInt(args[0]));
+            try {
+                serve(new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+                        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())), coreLoader);
+            } finally {
+                socket.close();
+            }
+        } catch (EOFException parentGone) {
+            // CruiseControl closed the connection, this VM is no longer needed
+        } catch (IOException e) {
+            e.printStackTrace(consoleErr);
+        }
+        // don't let threads left behind by a build keep this VM alive
+        System.exit(0);
+    }
+
+    private static void serve(final DataInputStream in, final DataOutputStream out, final ClassLoader coreLoader)
+            throws IOException {
+        final LineOutputStream buildOut = new LineOutputStream(out, FRAME_OUT);
+        final LineOutputStream buildErr = new LineOutputStream(out, FRAME_ERR);
+        final PrintStream outStream = new PrintStream(buildOut, true);
+        final PrintStream errStream = new PrintStream(buildErr, true);
+
+        while (true) {
+            final int argCount = in.readInt();
+            final String[] buildArgs = new String[argCount];
+            for (int i = 0; i < argCount; i++) {
+                buildArgs[i] = in.readUTF();
+            }
+
+            final int exitCode = runBuild(buildArgs, outStream, errStream, coreLoader);
+            outStream.flush();
+            errStream.flush();
+            buildOut.flushLine();
+            buildErr.flushLine();
+            synchronized (out) {
+                out.writeByte(FRAME_EXIT);
+                out.writeInt(exitCode);
+                out.writeBoolean(isHealthy());
+                out.flush();
+            }
+        }
+    }
+
+    private static int runBuild(final String[] args, final PrintStream out, final PrintStream err,
+                                final ClassLoader coreLoader) {
+        resetMain(out, err);
+        System.setOut(out);
+        System.setErr(err);
+        final BuildMain main = new BuildMain();
+        try {
+            main.startAnt(args, null, coreLoader);
+        } catch (Throwable unexpected) {
+            unexpected.printStackTrace(err);
+        } finally {
+            // -logfile replaces both, and closes them once the build is over
+            System.setOut(out);
+            System.setErr(err);
+        }
+        return main.exitCode;
+    }
+
+    /**
+     * Ant's Main keeps the console streams, and whether they were replaced by -logfile, in static fields
+     * that are meant to live for one build only.
+     * @param out console output for the next build
+     * @param err console error for the next build
+     */
+    private static void resetMain(final PrintStream out, final PrintStream err) {
+        setStaticField("out", out);
+        setStaticField("err", err);
+        setStaticField("isLogFileUsed", Boolean.FALSE);
+    }
+
+    private static void setStaticField(final String name, final Object value) {
+        try {
+            final Field field = Main.class.getDeclaredField(name);
+            field.setAccessible(true);
+            field.set(null, value);
+        } catch (Exception notInThisAntVersion) {
+            // nothing to reset
+        }
+    }
+
+    /**
+     * @return false once less than a quarter of the heap is left after a build, so the VM gets replaced
+     */
+    private static boolean isHealthy() {
+        final Runtime runtime = Runtime.getRuntime();
+        if (getUsedMemory(runtime) * 4 <= runtime.maxMemory() * 3) {
+            return true;
+        }
+        System.gc();
+        return getUsedMemory(runtime) * 4 <= runtime.maxMemory() * 3;
+    }
+
+    private static long getUsedMemory(final Runtime runtime) {
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /** Ant's Main, without calling System.exit() once the build is over. */
+    private static final class BuildMain extends Main {
+        private int exitCode = 1;
+
+        protected void exit(final int code) {
+            exitCode = code;
+        }
+    }
+
+    /** Sends whatever is written to it as one frame per line. */
+    private static final class LineOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte frameType;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        LineOutputStream(final DataOutputStream out, final byte frameType) {
+            this.out = out;
+            this.frameType = frameType;
+        }
+
+        public synchronized void write(final int b) throws IOException {
+            if (b == '\n') {
+                sendLine();
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        /**
+         * Sends the line written so far, if any.
+         * @throws IOException if the frame can't be sent
+         */
+        synchronized void flushLine() throws IOException {
+            if (line.size() > 0) {
+                sendLine();
+            }
+        }
+
+        private void sendLine() throws IOException {
+            synchronized (out) {
+                out.writeByte(frameType);
+                out.writeInt(line.size());
+                line.writeTo(out);
+                out.flush();
+            }
+            line.reset();
+        }
+    }
+}
@@ -39,7 +39,7 @@ package net.sourceforge.cruisecontrol.builders;
 import java.io.File;
 import java.io.PrintStream;
 import java.io.FileOutputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 
 import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Project;
@@ -62,9 +62,9 @@ public class AntOutputLogger extends DefaultLogger {
     protected void printMessage(final String message, final PrintStream stream, final int priority) {
         PrintStream mystream = null;
         try {
-            mystream = new PrintStream(new FileOutputStream(outfile, true));
+            mystream = new PrintStream(new FileOutputStream(outfile, true), false, "UTF-8");
             super.printMessage(message, mystream, priority);
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             if (stream != null) {
                 super.printMessage("Error (" + e.getMessage() + "): " + message, stream, priority);
             }
@@ -37,11 +37,16 @@
 package net.sourceforge.cruisecontrol;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EventListener;
 import java.util.LinkedList;
 import java.util.List;
 
+import net.sourceforge.cruisecontrol.util.DateUtil;
 import net.sourceforge.cruisecontrol.util.threadpool.ThreadQueue;
+import net.sourceforge.cruisecontrol.util.threadpool.ThreadQueueProperties;
+import net.sourceforge.cruisecontrol.util.threadpool.WorkerThread;
 
 import org.apache.log4j.Logger;
 
@@ -49,6 +54,9 @@ import org.apache.log4j.Logger;
  * Provides an independent thread of execution that knows how to
  * build Projects.  Passes {@link ProjectInterface} objects to a thread
  * queue.  The number of worker threads is defined in config.xml
+ * <p>
+ * Requests are only handed to the thread queue when a worker thread is free; until then they
+ * wait here, ordered by the queue {@link Policy}. A project is never queued twice.
  *
  * @author Peter Mei {@literal <pmei@users.sourceforge.net>}
  * @author jfredrick
@@ -57,7 +65,14 @@ import org.apache.log4j.Logger;
 public class BuildQueue implements Runnable {
     private static final Logger LOG = Logger.getLogger(BuildQueue.class);
 
-    private final LinkedList<ProjectInterface> queue = new LinkedList<ProjectInterface>();
+    private final LinkedList<QueuedBuild> queue = new LinkedList<QueuedBuild>();
+
+    /** number of builds handed to the thread queue that have not finished yet; guarded by queue */
+    private int buildsInProgress = 0;
+
+    private Policy policy = new DefaultPolicy();
+
+    private long requestCounter = 0;
 
     private boolean waiting = false;
 
@@ -73,7 +88,12 @@ public class BuildQueue implements Runnable {
 
         notifyListeners();
         synchronized (queue) {
-            queue.add(project);
+            if (indexOf(project) >= 0) {
+                LOG.debug("project " + project.getName() + " is already queued, ignoring duplicate request");
+            } else {
+                queue.add(new QueuedBuild(project, System.currentTimeMillis(), requestCounter++));
+            }
+            sortQueue();
             queue.notifyAll();
         }
     }
@@ -86,7 +106,8 @@ public class BuildQueue implements Runnable {
         final int position;
         final int length;
         synchronized (queue) {
-            position = queue.indexOf(project);
+            sortQueue();
+            position = indexOf(project);
             length = queue.size();
         }
         if (position < 0) {
@@ -96,25 +117,69 @@ public class BuildQueue implements Runnable {
         return "BUILD_REQUESTED[ " + (position + 1) + " / " + length + " ]";
     }
 
+    /**
+     * Replaces the policy used to order waiting build requests.
+     * @param newPolicy the policy to use from now on
+     */
+    public void setPolicy(final Policy newPolicy) {
+        if (newPolicy == null) {
+            throw new IllegalArgumentException("policy can't be null");
+        }
+        synchronized (queue) {
+            policy = newPolicy;
+            sortQueue();
+        }
+    }
+
+    private int indexOf(final ProjectInterface project) {
+        int position = 0;
+        for (final QueuedBuild request : queue) {
+            if (request.project.equals(project)) {
+                return position;
+            }
+            position++;
+        }
+        return -1;
+    }
+
+    /** Orders the waiting requests by policy; must be called holding the queue lock. */
+    private void sortQueue() {
+        final long now = System.currentTimeMillis();
+        for (final QueuedBuild request : queue) {
+            request.sortKey = policy.getSortKey(request.project, request.requestTime, now);
+        }
+        Collections.sort(queue, REQUEST_ORDER);
+    }
+
+    private boolean canStartBuild() {
+        return !queue.isEmpty() && buildsInProgress < ThreadQueueProperties.getMaxThreadCount();
+    }
+
     private void serviceQueue() {
         synchronized (queue) {
-            while (!queue.isEmpty()) {
-                final ProjectInterface nextProject = queue.remove(0);
-                if (nextProject != null) {
-                    LOG.info("now adding to the thread queue: " + nextProject.getName());
-                    final ProjectWrapper pw = new ProjectWrapper(nextProject);
-                    ThreadQueue.addTask(pw);
-                }
+            sortQueue();
+            while (canStartBuild()) {
+                final ProjectInterface nextProject = queue.remove(0).project;
+                LOG.info("now adding to the thread queue: " + nextProject.getName());
+                buildsInProgress++;
+                ThreadQueue.addTask(new QueuedBuildWorker(new ProjectWrapper(nextProject)));
             }
         }
     }
 
+    private void buildFinished() {
+        synchronized (queue) {
+            buildsInProgress--;
+            queue.notifyAll();
+        }
+    }
+
     public void run() {
         try {
             LOG.info("BuildQueue started");
             while (true) {
                 synchronized (queue) {
-                    while (queue.isEmpty()) {
+                    while (!canStartBuild()) {
                         waiting = true;
                         queue.wait();
                     }
@@ -186,4 +251,107 @@ public class BuildQueue implements Runnable {
     public static interface Listener extends EventListener {
         void buildRequested();
     }
+
+    /**
+     * Decides the order in which waiting build requests are started.
+     */
+    public static interface Policy {
+        /**
+         * @param project the project waiting to be built
+         * @param requestTime when the build was requested, in millis
+         * @param now the current time, in millis
+         * @return the sort key of the request; requests with lower keys are started first, requests
+         *         with equal keys in the order they were made
+         */
+        long getSortKey(ProjectInterface project, long requestTime, long now);
+    }
+
+    /**
+     * Orders requests by the time they were made, moved forward by the project priority (one minute of
+     * head start per priority level by default) and by a fixed amount for forced builds. All requests age
+     * at the same rate, so a request can only be overtaken by a later one that has a higher priority, and
+     * only by that many minutes: nothing waits forever.
+     */
+    public static class DefaultPolicy implements Policy {
+        /** the priority a forced build gets on top of the project priority */
+        public static final int FORCED_BUILD_PRIORITY = 60;
+
+        private final long millisPerPriorityLevel;
+
+        public DefaultPolicy() {
+            this(DateUtil.ONE_MINUTE);
+        }
+
+        /**
+         * @param millisPerPriorityLevel how long a request has to wait to catch up with a request made
+         *        at the same time for a project with one priority level more
+         */
+        public DefaultPolicy(final long millisPerPriorityLevel) {
+            this.millisPerPriorityLevel = millisPerPriorityLevel;
+        }
+
+        public long getSortKey(final ProjectInterface project, final long requestTime, final long now) {
+            int priority = 0;
+            if (project instanceof ProjectConfig) {
+                final ProjectConfig config = (ProjectConfig) project;
+                priority = config.getPriority();
+                if (config.isBuildForced()) {
+                    priority += FORCED_BUILD_PRIORITY;
+                }
+            }
+            return requestTime - priority * millisPerPriorityLevel;
+        }
+    }
+
+    private static final Comparator<QueuedBuild> REQUEST_ORDER = new Comparator<QueuedBuild>() {
+        public int compare(final QueuedBuild first, final QueuedBuild second) {
+            if (first.sortKey != second.sortKey) {
+                return first.sortKey < second.sortKey ? -1 : 1;
+            }
+            return first.sequence < second.sequence ? -1 : (first.sequence == second.sequence ? 0 : 1);
+        }
+    };
+
+    /**
+     * A project waiting in the queue.
+     */
+    private static final class QueuedBuild {
+        private final ProjectInterface project;
+        private final long requestTime;
+        private final long sequence;
+        private long sortKey;
+
+        private QueuedBuild(final ProjectInterface project, final long requestTime, final long sequence) {
+            this.project = project;
+            this.requestTime = requestTime;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Lets the queue know when a build it handed to the thread queue is done.
+     */
+    private final class QueuedBuildWorker implements WorkerThread {
+        private final WorkerThread worker;
+
+        private QueuedBuildWorker(final WorkerThread worker) {
+            this.worker = worker;
+        }
+
+        public void run() {
+            try {
+                worker.run();
+            } finally {
+                buildFinished();
+            }
+        }
+
+        public Object getResult() {
+            return worker.getResult();
+        }
+
+        public String getName() {
+            return worker.getName();
+        }
+    }
 }
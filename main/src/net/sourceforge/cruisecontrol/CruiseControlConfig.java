@@ -36,6 +36,8 @@
  ********************************************************************************/
 package net.sourceforge.cruisecontrol;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -60,6 +62,9 @@ import net.sourceforge.cruisecontrol.util.Util;
 
 import org.apache.log4j.Logger;
 import org.jdom2.Element;
+import org.jdom2.output.XMLOutputter;
+
+import com.twmacinta.util.MD5OutputStream;
 
 /**
  * @author <a href="mailto:jerome@coffeebreaks.org">Jerome Lacoste</a>
@@ -95,6 +100,12 @@ public class CruiseControlConfig {
     private final Set<String> projfails = new HashSet<String>(); // Value get by #getFailedNames()
     // for test purposes only
     private final Map<String, PluginRegistry> projectPluginRegistries = new TreeMap<String, PluginRegistry>();
+    /** MD5 of the resolved configuration of each project, mapped by the project name */
+    private final Map<String, String> projectDigests = new HashMap<String, String>();
+    /** MD5 of the root plugins the projects are configured with */
+    private String pluginsDigest = "";
+    /** The config being replaced by this one, set while parsing only */
+    private CruiseControlConfig previous;
 
     private final ResolverHolder resolvers;
 
@@ -150,10 +161,33 @@ public class CruiseControlConfig {
 
     public CruiseControlConfig(final Element ccElement, final ResolverHolder resolvers,
             final CruiseControlController controller) throws CruiseControlException {
+        this(ccElement, resolvers, controller, null);
+    }
+
+    /**
+     * Creates the config replacing another one, when the config file is reloaded. The projects whose
+     * configuration (after resolving the properties) didn't change are not configured again, the
+     * instances of the previous config are kept instead.
+     *
+     * @param ccElement the root element of the config file
+     * @param resolvers the resolvers of the files included
+     * @param controller the controller of the projects
+     * @param previous the config being replaced, <code>null</code> if none
+     * @throws CruiseControlException if the config is not valid
+     */
+    public CruiseControlConfig(final Element ccElement, final ResolverHolder resolvers,
+            final CruiseControlController controller, final CruiseControlConfig previous)
+            throws CruiseControlException {
         this.resolvers = resolvers;
         this.controller = controller;
+        this.previous = previous;
         setLaunchProperties();
-        parse(ccElement);
+        try {
+            parse(ccElement);
+        } finally {
+            // don't keep the whole chain of configs alive
+            this.previous = null;
+        }
     }
 
     private void parse(final Element ccElement) throws CruiseControlException {
@@ -167,6 +201,7 @@ public class CruiseControlConfig {
         for (final Object o : ccElement.getChildren("plugin")) {
             handleRootPlugin((Element) o);
         }
+        pluginsDigest = calculateMD5(pluginsDigest, ccElement.getChildren("plugin"));
 
         // handle custom properties after plugin registration and before projects
         for (final Object o : ccElement.getChildren()) {
@@ -208,6 +243,8 @@ public class CruiseControlConfig {
 
         this.controller = parent.controller;
         resolvers = parent.resolvers;
+        previous = parent.previous;
+        pluginsDigest = parent.pluginsDigest;
         rootPlugins = PluginRegistry.createRegistry(parent.rootPlugins);
         rootProperties = new HashMap<String, String>(parent.rootProperties);
         templatePluginProperties = new HashMap<String, List>(parent.templatePluginProperties);
@@ -368,6 +405,7 @@ public class CruiseControlConfig {
             final ProjectInterface projobj = includedConfig.getProject(name);
             projects.put(name, projobj);
             PROJECTS_REGISTRY.put(name, projobj);
+            projectDigests.put(name, includedConfig.projectDigests.get(name));
         }
     }
 
@@ -512,6 +550,18 @@ public class CruiseControlConfig {
         // Parse the entire element tree, expanding all property macros
         ProjectXMLHelper.parsePropertiesInElement(projectElement, thisProperties, FAIL_UPON_MISSING_PROPERTY);
 
+        final String projectDigest = calculateMD5(pluginsDigest, Collections.singletonList(projectElement));
+        if (previous != null && previous.projects.containsKey(projectName)
+                && projectDigest.equals(previous.projectDigests.get(projectName))) {
+            LOG.debug("configuration of project " + projectName + " didn't change, keeping it");
+            final ProjectInterface project = previous.projects.get(projectName);
+            this.projects.put(projectName, project);
+            this.PROJECTS_REGISTRY.put(projectName, project);
+            this.projectPluginRegistries.put(projectName, previous.projectPluginRegistries.get(projectName));
+            this.projectDigests.put(projectName, projectDigest);
+            return;
+        }
+
         // Register any custom plugins
         final ProjectXMLHelper helper = new ProjectXMLHelper(resolvers);
         final PluginRegistry projectPlugins = PluginRegistry.createRegistry(rootPlugins);
@@ -564,6 +614,27 @@ public class CruiseControlConfig {
         this.projects.put(projectName, project);
         this.PROJECTS_REGISTRY.put(projectName, project);
         this.projectPluginRegistries.put(projectName, projectPlugins);
+        this.projectDigests.put(projectName, projectDigest);
+    }
+
+    /**
+     * @param prefix digest the elements depend on
+     * @param elements the elements to digest
+     * @return the MD5 of the prefix and the elements
+     */
+    private static String calculateMD5(final String prefix, final List< ? > elements) {
+        final MD5OutputStream stream = new MD5OutputStream(new ByteArrayOutputStream());
+        final XMLOutputter outputter = new XMLOutputter();
+        try {
+            stream.write(prefix.getBytes("UTF-8"));
+            for (final Object element : elements) {
+                outputter.output((Element) element, stream);
+            }
+        } catch (IOException e) {
+            // can't happen when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return stream.getMD5().asHex();
     }
 
     /**
@@ -244,6 +244,10 @@ public class CruiseControlController {
 
     private void updateProject(ProjectInterface oldProject) throws CruiseControlException {
         ProjectInterface newProject = getConfigManager().getProject(oldProject.getName());
+        if (newProject == oldProject) {
+            LOG.debug("project " + oldProject.getName() + " unchanged");
+            return;
+        }
         projects.remove(oldProject);
         newProject.getStateFromOldProject(oldProject);
         projects.add(newProject);
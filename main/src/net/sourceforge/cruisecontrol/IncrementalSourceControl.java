@@ -0,0 +1,74 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+
+package net.sourceforge.cruisecontrol;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A SourceControl that can report only the changes committed after a known revision. When the
+ * modificationset is configured with <code>incremental="true"</code> it remembers the newest revision
+ * each of these source controls has reported, together with the modifications found so far, and asks
+ * only for newer changes on quiet period retries and on later checks made against the same last build.
+ *
+ * The revision is opaque to the modificationset: it is whatever {@link #getHighWaterMark()} returned
+ * and is only ever handed back to the same source control.
+ */
+public interface IncrementalSourceControl extends SourceControl {
+
+    /**
+     * Get the modifications committed after the given revision and no later than now. The revision itself
+     * must not be included. Properties should only be set for the returned modifications, as the
+     * modificationset keeps the properties reported for the earlier ones.
+     *
+     * @param revision high-water mark previously returned by {@link #getHighWaterMark()}
+     * @param lastBuild date of last build
+     * @param now current date
+     * @return List of Modification objects, or null if the changes can't be queried incrementally in the
+     * current configuration, in which case the modificationset falls back to
+     * {@link #getModifications(Date, Date)}
+     */
+    public List<Modification> getModificationsSince(String revision, Date lastBuild, Date now);
+
+    /**
+     * @return the revision of the newest modification returned by the last call to
+     * {@link #getModifications(Date, Date)} or {@link #getModificationsSince(String, Date, Date)},
+     * or null if that call found no modifications
+     */
+    public String getHighWaterMark();
+}
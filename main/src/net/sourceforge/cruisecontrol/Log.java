@@ -43,6 +43,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -51,6 +52,7 @@ import java.util.List;
 import net.sourceforge.cruisecontrol.gendoc.annotations.SkipDoc;
 import net.sourceforge.cruisecontrol.util.BuildOutputLogger;
 import net.sourceforge.cruisecontrol.util.DateUtil;
+import net.sourceforge.cruisecontrol.util.FileBackedElement;
 import net.sourceforge.cruisecontrol.util.IO;
 import net.sourceforge.cruisecontrol.util.Util;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
@@ -61,6 +63,9 @@ import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
+import org.jdom2.output.support.AbstractXMLOutputProcessor;
+import org.jdom2.output.support.FormatStack;
+import org.jdom2.util.NamespaceStack;
 
 /**
  * Handles the Log element, and subelements, of the CruiseControl configuration file. Also represents the Build Log used
@@ -249,7 +254,7 @@ public class Log implements Serializable {
             if (!isTrimWhitespace) {
                 format.setTextMode(Format.TextMode.TRIM_FULL_WHITE);
             }
-            final XMLOutputter outputter = new XMLOutputter(format);
+            final XMLOutputter outputter = new XMLOutputter(format, new FileBackedElementProcessor());
             final OutputStream logStream = new BufferedOutputStream(new FileOutputStream(file));
             try {
                 outputter.output(new Document(element), logStream);
@@ -261,6 +266,29 @@ public class Log implements Serializable {
         }
     }
 
+    /**
+     * Streams the content of {@link FileBackedElement}s in place of the stand-ins, using the same
+     * formatting as the rest of the log so the file is identical to one merged in memory.
+     */
+    private static final class FileBackedElementProcessor extends AbstractXMLOutputProcessor {
+        @Override
+        protected void printElement(final Writer out, final FormatStack fstack, final NamespaceStack nstack,
+                                    final Element element) throws IOException {
+            if (element instanceof FileBackedElement) {
+                final FileBackedElement.StreamedElement streamed = ((FileBackedElement) element).openStream();
+                if (streamed != null) {
+                    try {
+                        super.printElement(out, fstack, nstack, streamed);
+                    } finally {
+                        streamed.close();
+                    }
+                }
+            } else {
+                super.printElement(out, fstack, nstack, element);
+            }
+        }
+    }
+
     private String decideLogfileName(final Date now) throws CruiseControlException {
         final XMLLogHelper helper = new XMLLogHelper(buildLog);
         if (helper.isBuildSuccessful()) {
@@ -305,6 +333,14 @@ public class Log implements Serializable {
         return (Element) buildLog.clone();
     }
 
+    /**
+     * @return the build log itself rather than a copy of it. Callers must not modify it in any way.
+     * @see ReadOnlyLogPublisher
+     */
+    public Element getReadOnlyContent() {
+        return buildLog;
+    }
+
     public boolean wasBuildSuccessful() {
         return new XMLLogHelper(buildLog).isBuildSuccessful();
     }
@@ -45,15 +45,26 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import net.sourceforge.cruisecontrol.util.DateUtil;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
+import net.sourceforge.cruisecontrol.util.threadpool.TimedCallable;
 
 import org.apache.log4j.Logger;
 import org.apache.oro.io.GlobFilenameFilter;
@@ -76,6 +87,20 @@ public class ModificationSet implements Serializable {
     private final List<SourceControl> sourceControls = new ArrayList<SourceControl>();
     private int quietPeriod = 60 * ONE_SECOND;
     private Date timeOfCheck;
+    private boolean parallel = false;
+    private int pollThreads = DEFAULT_POLL_THREADS;
+    private int pollTimeout = 0;
+    private boolean incremental = false;
+    private final Map<SourceControl, HighWaterMark> highWaterMarks
+            = new IdentityHashMap<SourceControl, HighWaterMark>();
+    private Map<String, Long> pollTimes = new LinkedHashMap<String, Long>();
+
+    static final int DEFAULT_POLL_THREADS = 4;
+
+    static final int POOL_SIZE = Math.max(DEFAULT_POLL_THREADS, Runtime.getRuntime().availableProcessors() * 2);
+
+    /** Polls the source controls of all the projects in parallel mode, each check using pollThreads at most. */
+    private static final ThreadPoolExecutor POOL = createPool();
 
     /**
      * File-Patterns (as org.apache.oro.io.GlobFilenameFilter) to be ignored
@@ -84,6 +109,13 @@ public class ModificationSet implements Serializable {
 
     static final String MSG_PROGRESS_PREFIX_QUIETPERIOD_MODIFICATION_SLEEP = "quiet period modification, sleep ";
 
+    private static ThreadPoolExecutor createPool() {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("ModificationSetPoll"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     /**
      * Set the amount of time in which there is no source control activity after which it is assumed that it is safe to
      * update from the source control system and initiate a build.
@@ -93,6 +125,37 @@ public class ModificationSet implements Serializable {
         quietPeriod = seconds * ONE_SECOND;
     }
 
+    /**
+     * Poll all source controls at the same time instead of one after another. The modifications are
+     * still merged in the order the source controls are configured.
+     * @param parallel true to poll concurrently
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param threads maximum number of source controls polled at the same time in parallel mode
+     */
+    public void setPollThreads(int threads) {
+        pollThreads = threads;
+    }
+
+    /**
+     * @param seconds maximum time a single source control may take to poll in parallel mode, 0 for no limit
+     */
+    public void setPollTimeout(int seconds) {
+        pollTimeout = seconds;
+    }
+
+    /**
+     * @param incremental if true, source controls that support it are only asked for the changes after the
+     * newest revision they already reported, for as long as the last build date stays the same
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     /**
      * Set the list of Glob-File-Patterns to be ignored
      *
@@ -166,13 +229,13 @@ public class ModificationSet implements Serializable {
     public Map<String, String> getProperties() {
         final Map<String, String> table = new HashMap<String, String>();
         for (final SourceControl control : sourceControls) {
-            mergeProperties(table, control);
+            final HighWaterMark mark = getHighWaterMark(control, false);
+            mergeProperties(table, mark != null ? mark.getProperties() : control.getProperties());
         }
         return table;
     }
 
-    private void mergeProperties(final Map<String, String> properties, final SourceControl control) {
-        final Map<String, String> newProperties = control.getProperties();
+    private void mergeProperties(final Map<String, String> properties, final Map<String, String> newProperties) {
         final Set<String> existingKeys = properties.keySet();
         final Set<String> newKeys = newProperties.keySet();
         if (Collections.disjoint(existingKeys, newKeys)) {
@@ -261,10 +324,18 @@ public class ModificationSet implements Serializable {
         Element modificationsElement;
         do {
             timeOfCheck = new Date();
-            modifications = new ArrayList<Modification>();
-            for (final SourceControl sourceControl : sourceControls) {
-                modifications.addAll(sourceControl.getModifications(lastBuild, timeOfCheck));
+            final Map<String, Long> times = new LinkedHashMap<String, Long>();
+            if (parallel && sourceControls.size() > 1) {
+                modifications = pollInParallel(lastBuild, timeOfCheck, progress, times);
+            } else {
+                modifications = new ArrayList<Modification>();
+                for (final SourceControl sourceControl : sourceControls) {
+                    final long start = System.currentTimeMillis();
+                    modifications.addAll(poll(sourceControl, lastBuild, timeOfCheck));
+                    recordPollTime(times, sourceControl, System.currentTimeMillis() - start);
+                }
             }
+            pollTimes = times;
 
             // Postfilter all modifications of ignored files
             filterIgnoredModifications(modifications);
@@ -310,6 +381,118 @@ public class ModificationSet implements Serializable {
         return modificationsElement;
     }
 
+    /**
+     * Polls a single source control, only asking for the changes after its high-water mark when
+     * incremental polling is enabled and the source control supports it.
+     */
+    private List<Modification> poll(final SourceControl sourceControl, final Date lastBuild, final Date now) {
+        if (!incremental || !(sourceControl instanceof IncrementalSourceControl)) {
+            return sourceControl.getModifications(lastBuild, now);
+        }
+        return getHighWaterMark(sourceControl, true).poll((IncrementalSourceControl) sourceControl, lastBuild, now);
+    }
+
+    private HighWaterMark getHighWaterMark(final SourceControl sourceControl, final boolean create) {
+        synchronized (highWaterMarks) {
+            HighWaterMark mark = highWaterMarks.get(sourceControl);
+            if (mark == null && create) {
+                mark = new HighWaterMark();
+                highWaterMarks.put(sourceControl, mark);
+            }
+            return mark;
+        }
+    }
+
+    /**
+     * Polls the source controls on the shared pool, never more than pollThreads of them at a time. Results are
+     * merged in the order the source controls are configured, regardless of which finishes first.
+     * @throws IllegalStateException if a source control takes longer than the poll timeout
+     */
+    private List<Modification> pollInParallel(final Date lastBuild, final Date now, final Progress progress,
+                                              final Map<String, Long> times) {
+        final int count = sourceControls.size();
+        final List<PollTask> tasks = new ArrayList<PollTask>(count);
+        final PollBatch batch = new PollBatch();
+        for (final SourceControl sourceControl : sourceControls) {
+            final PollTask task = new PollTask(sourceControl, lastBuild, now);
+            tasks.add(task);
+            batch.add(task);
+        }
+        try {
+            batch.start(Math.min(pollThreads, count));
+            if (progress != null) {
+                progress.setValue("polling " + count + " source controls");
+            }
+
+            final List<Modification> result = new ArrayList<Modification>();
+            for (int i = 0; i < count; i++) {
+                final PollTask task = tasks.get(i);
+                result.addAll(awaitPoll(task, batch.get(i)));
+                recordPollTime(times, task.sourceControl, task.getElapsed());
+                if (progress != null) {
+                    progress.setValue("polled " + describe(task.sourceControl) + " in " + task.getElapsed()
+                            + " ms (" + (i + 1) + " of " + count + ")");
+                }
+            }
+            return result;
+        } finally {
+            batch.cancel();
+        }
+    }
+
+    private List<Modification> awaitPoll(final PollTask task, final Future<List<Modification>> future) {
+        try {
+            return task.await(future, pollTimeout * (long) ONE_SECOND);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("polling " + describe(task.sourceControl)
+                    + " timed out after " + pollTimeout + " seconds");
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("interrupted while polling " + describe(task.sourceControl), e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("error polling " + describe(task.sourceControl), cause);
+        }
+    }
+
+    private static void recordPollTime(final Map<String, Long> times, final SourceControl sourceControl,
+                                       final long elapsed) {
+        final String sourceControlName = describe(sourceControl);
+        String key = sourceControlName;
+        for (int n = 2; times.containsKey(key); n++) {
+            key = sourceControlName + " (" + n + ")";
+        }
+        times.put(key, elapsed);
+        LOG.info("polled " + key + " in " + elapsed + " ms");
+    }
+
+    /**
+     * @return the time each source control took to poll during the last check, as a sourcecontrols element
+     * for the build log, or null if no source control was polled
+     */
+    Element getPollTimesElement() {
+        if (pollTimes.isEmpty()) {
+            return null;
+        }
+        final Element sourceControlsElement = new Element("sourcecontrols");
+        for (final Map.Entry<String, Long> entry : pollTimes.entrySet()) {
+            final Element sourceControlElement = new Element("sourcecontrol");
+            sourceControlElement.setAttribute("name", entry.getKey());
+            sourceControlElement.setAttribute("millis", entry.getValue().toString());
+            sourceControlsElement.addContent(sourceControlElement);
+        }
+        return sourceControlsElement;
+    }
+
+    private static String describe(final SourceControl sourceControl) {
+        final String name = sourceControl.getClass().getSimpleName();
+        return name.length() > 0 ? name : sourceControl.getClass().getName();
+    }
+
     /**
      * Remove all Modifications that match any of the ignoreFiles-patterns
      * @param modifications the list of modifications to be filtered (altered).
@@ -381,10 +564,113 @@ public class ModificationSet implements Serializable {
         for (final SourceControl sc : sourceControls) {
             sc.validate();
         }
+
+        ValidationHelper.assertTrue(pollThreads > 0, "modificationset pollthreads must be greater than 0");
+        ValidationHelper.assertFalse(pollTimeout < 0, "modificationset polltimeout must not be negative");
     }
 
     int getQuietPeriod() {
         return quietPeriod;
     }
 
+    private final class PollTask extends TimedCallable<List<Modification>> {
+        private final SourceControl sourceControl;
+        private final Date lastBuild;
+        private final Date now;
+
+        private PollTask(final SourceControl sourceControl, final Date lastBuild, final Date now) {
+            this.sourceControl = sourceControl;
+            this.lastBuild = lastBuild;
+            this.now = now;
+        }
+
+        protected List<Modification> execute() {
+            return poll(sourceControl, lastBuild, now);
+        }
+    }
+
+    /**
+     * The polls of a single check. Each poll finishing, or being cancelled, submits the next one to the
+     * shared pool, so the check never runs more polls at a time than it started with.
+     */
+    private static final class PollBatch {
+        private final List<FutureTask<List<Modification>>> futures = new ArrayList<FutureTask<List<Modification>>>();
+        private int next;
+
+        void add(final PollTask task) {
+            futures.add(new FutureTask<List<Modification>>(task) {
+                protected void done() {
+                    submitNext();
+                }
+            });
+        }
+
+        synchronized void start(final int threads) {
+            while (next < threads) {
+                POOL.execute(futures.get(next++));
+            }
+        }
+
+        Future<List<Modification>> get(final int index) {
+            return futures.get(index);
+        }
+
+        private synchronized void submitNext() {
+            if (next < futures.size()) {
+                POOL.execute(futures.get(next++));
+            }
+        }
+
+        /** Cancels the polls still running or waiting, none is submitted anymore. */
+        void cancel() {
+            synchronized (this) {
+                next = futures.size();
+            }
+            for (final FutureTask<List<Modification>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The modifications and properties an incremental source control has reported since a given last build,
+     * and the newest revision among them.
+     */
+    private static final class HighWaterMark implements Serializable {
+        private static final long serialVersionUID = 5402871195360253642L;
+
+        private Date lastBuild;
+        private String revision;
+        private final List<Modification> modifications = new ArrayList<Modification>();
+        private final Map<String, String> properties = new HashMap<String, String>();
+
+        synchronized List<Modification> poll(final IncrementalSourceControl sourceControl, final Date since,
+                                             final Date now) {
+            List<Modification> delta = null;
+            if (revision != null && since.equals(lastBuild)) {
+                delta = sourceControl.getModificationsSince(revision, since, now);
+            }
+            if (delta == null) {
+                lastBuild = since;
+                revision = null;
+                modifications.clear();
+                properties.clear();
+                delta = sourceControl.getModifications(since, now);
+            } else {
+                LOG.debug(delta.size() + " new modifications after revision " + revision);
+            }
+            modifications.addAll(delta);
+            properties.putAll(sourceControl.getProperties());
+            final String newest = sourceControl.getHighWaterMark();
+            if (newest != null) {
+                revision = newest;
+            }
+            return new ArrayList<Modification>(modifications);
+        }
+
+        synchronized Map<String, String> getProperties() {
+            return new HashMap<String, String>(properties);
+        }
+    }
+
 }
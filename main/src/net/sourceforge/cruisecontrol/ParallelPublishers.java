@@ -0,0 +1,162 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
+import net.sourceforge.cruisecontrol.util.threadpool.TimedCallable;
+
+import org.apache.log4j.Logger;
+import org.jdom2.Element;
+
+/**
+ * Runs the publishers of a project concurrently on a pool shared by all projects.
+ * Publishers that modify the log each get their own copy of it, since JDOM trees are not safe
+ * for concurrent modification; {@link ReadOnlyLogPublisher}s all share a single copy, which is
+ * left alone by the build even if a publisher outlives its timeout. Publishers that depend on
+ * each other's results should be grouped in a
+ * {@link net.sourceforge.cruisecontrol.publishers.CompoundPublisher}, which runs as a single task.
+ */
+final class ParallelPublishers {
+    private static final Logger LOG = Logger.getLogger(ParallelPublishers.class);
+
+    static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final ThreadPoolExecutor POOL = createPool();
+
+    private ParallelPublishers() {
+    }
+
+    private static ThreadPoolExecutor createPool() {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("Publisher"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Publishes the log with every publisher and waits until all of them finished, or timed out and
+     * stopped. A publisher that ignores being interrupted is waited for as long again as its timeout,
+     * then left running.
+     * @param publishers the publishers to run
+     * @param buildLog the content to publish
+     * @param timeoutSeconds maximum time a single publisher may run, 0 for no limit
+     * @param projectName name of the project, used for logging
+     * @return the wall time in milliseconds each publisher took, in the order of the given list
+     */
+    static long[] publish(final List<Publisher> publishers, final Log buildLog, final long timeoutSeconds,
+                          final String projectName) {
+        final int count = publishers.size();
+        final List<PublishTask> tasks = new ArrayList<PublishTask>(count);
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>(count);
+        Element sharedContent = null;
+        for (final Publisher publisher : publishers) {
+            final Element content;
+            if (publisher instanceof ReadOnlyLogPublisher) {
+                if (sharedContent == null) {
+                    sharedContent = buildLog.getContent();
+                }
+                content = sharedContent;
+            } else {
+                content = buildLog.getContent();
+            }
+            final PublishTask task = new PublishTask(publisher, content, projectName);
+            tasks.add(task);
+            futures.add(POOL.submit(task));
+        }
+
+        final long timeoutMillis = timeoutSeconds * 1000;
+        final long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = await(tasks.get(i), futures.get(i), timeoutMillis, projectName);
+        }
+        return times;
+    }
+
+    private static long await(final PublishTask task, final Future<Object> future, final long timeoutMillis,
+                              final String projectName) {
+        try {
+            task.await(future, timeoutMillis);
+        } catch (TimeoutException e) {
+            LOG.error(task.getPublisherName() + " for project " + projectName
+                    + " timed out after " + timeoutMillis + " ms and was interrupted");
+            try {
+                if (!task.awaitStopped(timeoutMillis)) {
+                    LOG.warn(task.getPublisherName() + " for project " + projectName
+                            + " is still running after being interrupted");
+                }
+            } catch (InterruptedException stop) {
+                Thread.currentThread().interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.error("exception publishing results with " + task.getPublisherName()
+                    + " for project " + projectName, e.getCause());
+        }
+        return task.getElapsed();
+    }
+
+    private static final class PublishTask extends TimedCallable<Object> {
+        private final Publisher publisher;
+        private final Element content;
+        private final String projectName;
+
+        PublishTask(final Publisher publisher, final Element content, final String projectName) {
+            this.publisher = publisher;
+            this.content = content;
+            this.projectName = projectName;
+        }
+
+        protected Object execute() {
+            Project.publishQuietly(publisher, content, projectName);
+            return null;
+        }
+
+        String getPublisherName() {
+            return publisher.getClass().getName();
+        }
+    }
+}
@@ -42,11 +42,13 @@ import org.jdom2.Element;
 import org.jdom2.Text;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.sourceforge.cruisecontrol.config.PluginPlugin;
 
@@ -58,6 +60,9 @@ import net.sourceforge.cruisecontrol.config.PluginPlugin;
  */
 public class PluginXMLHelper {
     private static final Logger LOG = Logger.getLogger(PluginXMLHelper.class);
+    /** The methods used to configure the instances of each class, found once per class */
+    private static final Map<Class< ? >, ConfigMethods> CONFIG_METHODS
+            = new ConcurrentHashMap<Class< ? >, ConfigMethods>();
     private final ProjectHelper projectHelper;
     private final CruiseControlController controller;
 
@@ -167,24 +172,10 @@ public class PluginXMLHelper {
         LOG.debug("configuring object " + objectElement.getName()
             + " object " + object.getClass() + " skip " + skipChildElements);
 
-        final Map<String, Method> setters = new HashMap<String, Method>();
-        final Map<String, Method> creators = new HashMap<String, Method>();
-        final Set<Method> adders = new HashSet<Method>();
-
-        final Method[] methods = object.getClass().getMethods();
-        for (final Method method : methods) {
-            final String name = method.getName();
-            final Class[] params = method.getParameterTypes();
-            if (name.startsWith("set") && params.length == 1) {
-                setters.put(name.substring("set".length()).toLowerCase(Locale.US), method);
-            } else if (name.startsWith("create") && params.length == 0) {
-                creators.put(name.substring("create".length()).toLowerCase(Locale.US), method);
-            } else if (name.equals("add") && params.length == 1) {
-                adders.add(method);
-            } else if (name.equals("xmltext") && params.length == 1 && Text.class.isAssignableFrom(params[0])) {
-                setters.put("XMLTEXT", method);
-            }
-        }
+        final ConfigMethods configMethods = getConfigMethods(object.getClass());
+        final Map<String, Method> setters = configMethods.getSetters();
+        final Map<String, Method> creators = configMethods.getCreators();
+        final Set<Method> adders = configMethods.getAdders();
 
         setFromAttributes(objectElement, setters, object);
 
@@ -249,6 +240,16 @@ public class PluginXMLHelper {
         }
     }
 
+    private static ConfigMethods getConfigMethods(final Class< ? > objectClass) {
+        ConfigMethods configMethods = CONFIG_METHODS.get(objectClass);
+        if (configMethods == null) {
+            // finding them twice in a race is harmless
+            configMethods = new ConfigMethods(objectClass);
+            CONFIG_METHODS.put(objectClass, configMethods);
+        }
+        return configMethods;
+    }
+
     private void setFromAttributes(final Element objectElement, final Map<String, Method> setters, final Object object)
             throws CruiseControlException {
 
@@ -289,4 +290,53 @@ public class PluginXMLHelper {
         }
     }
 
+    /**
+     * The setters, <code>createXxx()</code> and <code>add(Xxx)</code> methods of a class. Looking them up
+     * by reflection is costly when configuring a lot of plugins, so they are found once per class.
+     */
+    private static final class ConfigMethods {
+        private final Map<String, Method> setters;
+        private final Map<String, Method> creators;
+        private final Set<Method> adders;
+
+        ConfigMethods(final Class< ? > objectClass) {
+            final Map<String, Method> setterMethods = new HashMap<String, Method>();
+            final Map<String, Method> creatorMethods = new HashMap<String, Method>();
+            final Set<Method> adderMethods = new HashSet<Method>();
+
+            final Method[] methods = objectClass.getMethods();
+            for (final Method method : methods) {
+                final String name = method.getName();
+                final Class[] params = method.getParameterTypes();
+                if (name.startsWith("set") && params.length == 1) {
+                    setterMethods.put(name.substring("set".length()).toLowerCase(Locale.US), method);
+                } else if (name.startsWith("create") && params.length == 0) {
+                    creatorMethods.put(name.substring("create".length()).toLowerCase(Locale.US), method);
+                } else if (name.equals("add") && params.length == 1) {
+                    adderMethods.add(method);
+                } else if (name.equals("xmltext") && params.length == 1 && Text.class.isAssignableFrom(params[0])) {
+                    setterMethods.put("XMLTEXT", method);
+                }
+            }
+
+            setters = Collections.unmodifiableMap(setterMethods);
+            creators = Collections.unmodifiableMap(creatorMethods);
+            adders = Collections.unmodifiableSet(adderMethods);
+        }
+
+        /** @return the setters, mapped by the lower case property name */
+        Map<String, Method> getSetters() {
+            return setters;
+        }
+
+        /** @return the <code>createXxx()</code> methods, mapped by the lower case element name */
+        Map<String, Method> getCreators() {
+            return creators;
+        }
+
+        /** @return the <code>add(Xxx)</code> methods */
+        Set<Method> getAdders() {
+            return adders;
+        }
+    }
 }
@@ -46,6 +46,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -71,7 +72,7 @@ import net.sourceforge.cruisecontrol.util.XMLLogHelper;
  * be built.  Project is associated with bootstrappers that run before builds
  * and a Schedule that determines when builds occur.
  */
-public class Project implements Serializable, Runnable, ProjectQuery {
+public class Project implements Serializable, ProjectQuery {
     private static final long serialVersionUID = 2656877748476842326L;
     private static final Logger LOG = Logger.getLogger(Project.class);
 
@@ -90,11 +91,12 @@ public class Project implements Serializable, Runnable, ProjectQuery {
     private transient Date buildStartTime;
     private transient Object pausedMutex;
     private transient Object scheduleMutex;
-    private transient Object waitMutex;
+    private transient boolean isBuildRequested;
     private transient BuildQueue queue;
     private transient List<BuildProgressListener> progressListeners;
     private transient List<BuildResultListener> resultListeners;
     private transient Progress progress;
+    private transient Map<String, Long> publisherTimes;
 
     private int buildCounter = 0;
     private Date lastBuild = DateUtil.getMidnight();
@@ -120,12 +122,12 @@ public class Project implements Serializable, Runnable, ProjectQuery {
 
         pausedMutex = new Object();
         scheduleMutex = new Object();
-        waitMutex = new Object();
         progressListeners = new ArrayList<BuildProgressListener>();
         resultListeners = new ArrayList<BuildResultListener>();
         queue = new BuildQueue();
 
         progress = new ProgressImpl(this);
+        publisherTimes = Collections.emptyMap();
     }
 
     private void readObject(final ObjectInputStream stream) throws IOException, ClassNotFoundException {
@@ -211,6 +213,12 @@ public class Project implements Serializable, Runnable, ProjectQuery {
             final Log buildLog = projectConfig.getLog();
 
             buildLog.addContent(modifications);
+            if (projectConfig.getModificationSet() != null) {
+                final Element pollTimes = projectConfig.getModificationSet().getPollTimesElement();
+                if (pollTimes != null) {
+                    buildLog.addContent(pollTimes);
+                }
+            }
 
             final Date now;
             if (projectConfig.getModificationSet() != null
@@ -296,52 +304,69 @@ public class Project implements Serializable, Runnable, ProjectQuery {
         buildStartTime = date;
     }
 
-    public void run() {
-        LOG.info("Project " + name + " started");
-        try {
-            while (!stopped) {
-                try {
-                    waitIfPaused();
-                    if (!stopped) {
-                        waitForNextBuild();
-                    }
-                    if (!stopped) {
-                        setState(ProjectState.QUEUED);
-                        synchronized (scheduleMutex) {
-                            queue.requestBuild(projectConfig);
-                            waitForBuildToFinish();
-                        }
-                    }
-                } catch (InterruptedException e) {
-                    final String message = "Project " + name + ".run() interrupted";
-                    LOG.error(message, e);
-                    throw new RuntimeException(message);
-                }
+    /**
+     * Called by the {@link ProjectScheduler} when this project is due: stays paused, waits for the next
+     * build time or queues a build. Once a build is queued the project is not checked again until
+     * {@link #buildFinished()}.
+     */
+    void checkSchedule() {
+        synchronized (scheduleMutex) {
+            if (stopped || isBuildRequested) {
+                return;
             }
-        } finally {
-            stopped = true;
-            LOG.info("Project " + name + " stopped");
         }
+        if (isPaused()) {
+            ProjectScheduler.schedule(this, 10 * DateUtil.ONE_MINUTE);
+            setState(ProjectState.PAUSED);
+            return;
+        }
+
+        final long waitTime = getTimeToNextBuild(new Date());
+        if (needToWaitForNextBuild(waitTime) && !buildForced) {
+            final String msg = "next build in " + DateUtil.formatTime(waitTime);
+            info(msg);
+            ProjectScheduler.schedule(this, waitTime);
+            setState(ProjectState.WAITING);
+            progress.setValue(msg);
+            return;
+        }
+
+        synchronized (scheduleMutex) {
+            if (stopped) {
+                return;
+            }
+            isBuildRequested = true;
+        }
+        setState(ProjectState.QUEUED);
+        ProjectScheduler.requestBuild(this);
     }
 
-    void waitIfPaused() throws InterruptedException {
-        synchronized (pausedMutex) {
-            while (isPaused) {
-                setState(ProjectState.PAUSED);
-                pausedMutex.wait(10 * DateUtil.ONE_MINUTE);
+    /**
+     * Hands the build to the queue, called by the {@link ProjectScheduler} off its own thread. If the
+     * request fails the project is checked again in a minute.
+     */
+    void requestBuild() {
+        try {
+            queue.requestBuild(projectConfig);
+        } catch (RuntimeException e) {
+            LOG.error("error requesting build of project " + name + ", will check again in a minute", e);
+            synchronized (scheduleMutex) {
+                isBuildRequested = false;
+                if (!stopped) {
+                    ProjectScheduler.schedule(this, DateUtil.ONE_MINUTE);
+                }
             }
         }
     }
 
-    void waitForNextBuild() throws InterruptedException {
-        long waitTime = getTimeToNextBuild(new Date());
-        if (needToWaitForNextBuild(waitTime) && !buildForced) {
-            final String msg = "next build in " + DateUtil.formatTime(waitTime);
-            info(msg);
-            synchronized (waitMutex) {
-                setState(ProjectState.WAITING);
-                progress.setValue(msg);
-                waitMutex.wait(waitTime);
+    /**
+     * Has the scheduler check this project right away, unless it is stopped or a build is already
+     * queued or running.
+     */
+    private void checkScheduleNow() {
+        synchronized (scheduleMutex) {
+            if (!stopped && !isBuildRequested) {
+                ProjectScheduler.schedule(this, 0);
             }
         }
     }
@@ -374,9 +399,7 @@ public class Project implements Serializable, Runnable, ProjectQuery {
     }
 
     void forceBuild() {
-        synchronized (waitMutex) {
-            waitMutex.notify();
-        }
+        checkScheduleNow();
     }
 
     public void forceBuildWithTarget(String buildTarget) {
@@ -389,18 +412,12 @@ public class Project implements Serializable, Runnable, ProjectQuery {
         forceBuildWithTarget(buildTarget);
     }
 
-    void waitForBuildToFinish() throws InterruptedException {
-        synchronized (scheduleMutex) {
-            debug("waiting for build to finish");
-            scheduleMutex.wait();
-        }
-    }
-
     void buildFinished() {
         synchronized (scheduleMutex) {
             debug("build finished");
-            scheduleMutex.notify();
+            isBuildRequested = false;
         }
+        checkScheduleNow();
     }
 
     /**
@@ -609,15 +626,18 @@ public class Project implements Serializable, Runnable, ProjectQuery {
     }
 
     public boolean isPaused() {
-        return isPaused;
+        synchronized (pausedMutex) {
+            return isPaused;
+        }
     }
 
     public void setPaused(final boolean paused) {
         synchronized (pausedMutex) {
-            if (isPaused && !paused) {
-                pausedMutex.notifyAll();
-            }
+            final boolean wasPaused = isPaused;
             isPaused = paused;
+            if (wasPaused && !paused) {
+                checkScheduleNow();
+            }
         }
     }
 
@@ -687,7 +707,7 @@ public class Project implements Serializable, Runnable, ProjectQuery {
             debug("requireModifcation     = [" + requiremodification + "]");
             debug("forceOnly              = [" + forceOnly + "]");
             debug("buildCounter           = [" + buildCounter + "]");
-            debug("isPaused               = [" + isPaused + "]");
+            debug("isPaused               = [" + isPaused() + "]");
             debug("label                  = [" + label + "]");
             debug("lastBuild              = [" + DateUtil.getFormattedTime(lastBuild) + "]");
             debug("lastSuccessfulBuild    = [" + DateUtil.getFormattedTime(lastSuccessfulBuild) + "]");
@@ -757,23 +777,73 @@ public class Project implements Serializable, Runnable, ProjectQuery {
 
     /**
      * Iterate over all of the registered <code>Publisher</code>s and call
-     * their respective <code>publish</code> methods.
+     * their respective <code>publish</code> methods. Publishers that only read the log share it,
+     * all others get their own copy. When the publishers are configured to run in parallel they
+     * are handed to {@link ParallelPublishers} instead. The wall time of every publisher is logged
+     * and kept for {@link #getPublisherTimes()}.
      * @param buildLog the content to publish
      * @throws CruiseControlException if an error occurs during publishing
      */
     protected void publish(final Log buildLog) throws CruiseControlException {
         setState(ProjectState.PUBLISHING);
-        for (final Publisher publisher : projectConfig.getPublishers()) {
-            // catch all errors, Publishers shouldn't cause failures in the build method
-            try {
-                publisher.publish(buildLog.getContent());
-            } catch (Throwable t) {
-                final StringBuilder message = new StringBuilder("exception publishing results");
-                message.append(" with ").append(publisher.getClass().getName());
-                message.append(" for project ").append(name);
-                LOG.error(message.toString(), t);
+        final List<Publisher> publishers = projectConfig.getPublishers();
+        final long[] times;
+        if (projectConfig.isPublishInParallel()) {
+            times = ParallelPublishers.publish(publishers, buildLog, projectConfig.getPublishTimeout(), name);
+        } else {
+            times = new long[publishers.size()];
+            for (int i = 0; i < times.length; i++) {
+                final Publisher publisher = publishers.get(i);
+                final long start = System.currentTimeMillis();
+                if (publisher instanceof ReadOnlyLogPublisher) {
+                    publishQuietly(publisher, buildLog.getReadOnlyContent(), name);
+                } else {
+                    publishQuietly(publisher, buildLog.getContent(), name);
+                }
+                times[i] = System.currentTimeMillis() - start;
+            }
+        }
+        recordPublisherTimes(publishers, times);
+    }
+
+    /**
+     * Publishes with the given publisher, logging instead of throwing anything that goes wrong.
+     * @param publisher the publisher to run
+     * @param content the log content to publish
+     * @param projectName name of the project, used for logging
+     */
+    static void publishQuietly(final Publisher publisher, final Element content, final String projectName) {
+        // catch all errors, Publishers shouldn't cause failures in the build method
+        try {
+            publisher.publish(content);
+        } catch (Throwable t) {
+            final StringBuilder message = new StringBuilder("exception publishing results");
+            message.append(" with ").append(publisher.getClass().getName());
+            message.append(" for project ").append(projectName);
+            LOG.error(message.toString(), t);
+        }
+    }
+
+    private void recordPublisherTimes(final List<Publisher> publishers, final long[] times) {
+        final Map<String, Long> recorded = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < times.length; i++) {
+            final String publisherName = publishers.get(i).getClass().getSimpleName();
+            String key = publisherName;
+            for (int n = 2; recorded.containsKey(key); n++) {
+                key = publisherName + " (" + n + ")";
             }
+            recorded.put(key, times[i]);
+            info(key + " published in " + times[i] + " ms");
         }
+        publisherTimes = Collections.unmodifiableMap(recorded);
+    }
+
+    /**
+     * @return the wall time in milliseconds each publisher took during the last publishing
+     * stage, keyed by publisher class name, in configuration order
+     */
+    public Map<String, Long> getPublisherTimes() {
+        return publisherTimes;
     }
 
     /**
@@ -835,35 +905,27 @@ public class Project implements Serializable, Runnable, ProjectQuery {
             stopped = false;
             LOG.info("Project " + name + " starting");
             setState(ProjectState.IDLE);
-            createNewSchedulingThread();
+            startScheduling();
         }
     }
 
-    protected void createNewSchedulingThread() {
-        final Thread projectSchedulingThread = new Thread(this, "Project " + getName() + " thread");
-        projectSchedulingThread.start();
-
-        // brief nap to allow thread to start
-        try {
-            Thread.sleep(100);
-        } catch (InterruptedException ie) {
-            LOG.warn("interrupted while waiting for scheduling thread to start", ie);
+    /**
+     * Hands this project to the {@link ProjectScheduler}, which checks it right away.
+     */
+    protected void startScheduling() {
+        synchronized (scheduleMutex) {
+            isBuildRequested = false;
         }
+        checkScheduleNow();
     }
 
     public void stop() {
         LOG.info("Project " + name + " stopping");
-        stopped = true;
-        setState(ProjectState.STOPPED);
-        synchronized (pausedMutex) {
-            pausedMutex.notifyAll();
-        }
-        synchronized (waitMutex) {
-            waitMutex.notifyAll();
-        }
         synchronized (scheduleMutex) {
-            scheduleMutex.notifyAll();
+            stopped = true;
+            ProjectScheduler.cancel(this);
         }
+        setState(ProjectState.STOPPED);
     }
 
     @Override
@@ -872,7 +934,7 @@ public class Project implements Serializable, Runnable, ProjectQuery {
         sb.append(getName());
         sb.append(": ");
         sb.append(getStatus());
-        if (isPaused) {
+        if (isPaused()) {
             sb.append(" (paused)");
         }
         return sb.toString();
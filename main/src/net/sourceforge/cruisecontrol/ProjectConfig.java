@@ -84,6 +84,7 @@ public class ProjectConfig implements ProjectInterface {
     private boolean forceOnly = false;
     private boolean requiremodification = true;
     private boolean forceBuildNewProject = true; // default to current behavior
+    private int priority = 0;
 
     private transient Bootstrappers bootstrappers;
     private transient LabelIncrementer labelIncrementer;
@@ -160,6 +161,30 @@ public class ProjectConfig implements ProjectInterface {
         this.forceBuildNewProject = forceBuildNewProject;
     }
 
+    @Description("Relative importance of this project in the build queue. When more builds are "
+        + "requested than there are <a href='#threads'>threads</a>, each priority level moves the "
+        + "request one minute ahead of requests made at the same time; forced builds get 60 extra "
+        + "levels. Requests keep aging while they wait, so low priority projects are never starved.")
+    @Default("0")
+    @Optional
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return the priority of the project in the build queue
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return true if a build of the project has been forced and has not run yet
+     */
+    public boolean isBuildForced() {
+        return project != null && project.getBuildForced();
+    }
+
     @Description("Registers a general plug-in inherrited from PropertiesPlugin interface.")
     public void add(PropertiesPlugin plugin) {
         // Must be empty, plugin is registered somewhere else
@@ -253,6 +278,20 @@ public class ProjectConfig implements ProjectInterface {
         return publishers == null ? Collections.<Publisher>emptyList() : publishers.getPublishers();
     }
 
+    /**
+     * @return true if the publishers should be run concurrently
+     */
+    public boolean isPublishInParallel() {
+        return publishers != null && publishers.isParallel();
+    }
+
+    /**
+     * @return maximum number of seconds a single publisher may run in parallel mode, 0 for no limit
+     */
+    public long getPublishTimeout() {
+        return publishers == null ? 0 : publishers.getTimeout();
+    }
+
     public ModificationSet getModificationSet() {
         return modificationSet;
     }
@@ -320,6 +359,8 @@ public class ProjectConfig implements ProjectInterface {
     public static class Publishers implements Serializable {
         private static final long serialVersionUID = -410933401108345152L;
         private final List<Publisher> publishers = new ArrayList<Publisher>();
+        private boolean parallel = false;
+        private long timeout = 0;
 
         public void add(Publisher publisher) {
             publishers.add(publisher);
@@ -329,7 +370,35 @@ public class ProjectConfig implements ProjectInterface {
             return publishers;
         }
 
+        @Description("If true, the publishers are run concurrently on a shared thread pool instead of one "
+            + "after the other. Publishers that must run in a given order should be grouped in a "
+            + "<a href='#compound'><code>&lt;compound&gt;</code></a> publisher, whose children still run "
+            + "sequentially.")
+        @Optional
+        @Default("false")
+        public void setParallel(boolean parallel) {
+            this.parallel = parallel;
+        }
+
+        public boolean isParallel() {
+            return parallel;
+        }
+
+        @Description("Maximum number of seconds a single publisher may run when publishing in parallel. "
+            + "A publisher exceeding it is interrupted and the remaining publishers are not affected. "
+            + "0 means no limit.")
+        @Optional
+        @Default("0")
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
         public void validate() throws CruiseControlException {
+            ValidationHelper.assertFalse(timeout < 0, "timeout must not be negative");
             for (final Publisher nextPublisher : publishers) {
                 nextPublisher.validate();
             }
@@ -0,0 +1,187 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.cruisecontrol.util.DateUtil;
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the time of the next schedule check of every running project and calls
+ * {@link Project#checkSchedule()} when it is due, all from a single thread. Projects never
+ * block this thread: a due project either reschedules itself or hands a build to its
+ * {@link BuildQueue} and is scheduled again once the build finished. Build requests are passed on
+ * to the queue from another thread, since the queue listeners may take a while (reloading the
+ * configuration file for instance).
+ */
+final class ProjectScheduler {
+    private static final Logger LOG = Logger.getLogger(ProjectScheduler.class);
+
+    private static final DelayQueue<ScheduledCheck> CHECKS = new DelayQueue<ScheduledCheck>();
+
+    /** The only valid check of each project, older checks still in the queue are ignored when they expire. */
+    private static final Map<Project, ScheduledCheck> PENDING = new IdentityHashMap<Project, ScheduledCheck>();
+
+    /** Passes build requests on to the build queues, one at a time so they are queued in order. */
+    private static final ExecutorService REQUESTS
+            = Executors.newSingleThreadExecutor(new DaemonThreadFactory("ProjectBuildRequests"));
+
+    private static long sequence;
+
+    static {
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                runChecks();
+            }
+        }, "ProjectSchedulerThread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private ProjectScheduler() {
+    }
+
+    /**
+     * Schedules the next check of a project, replacing any later check scheduled before. An earlier
+     * check is kept, so a check asked for while the project is being checked isn't pushed back when
+     * that check reschedules the project.
+     * @param project the project to check
+     * @param delay milliseconds from now until the check
+     */
+    static void schedule(final Project project, final long delay) {
+        final ScheduledCheck check;
+        synchronized (PENDING) {
+            final long dueTime = System.currentTimeMillis() + delay;
+            final ScheduledCheck pending = PENDING.get(project);
+            if (pending != null && pending.dueTime <= dueTime) {
+                return;
+            }
+            check = new ScheduledCheck(project, dueTime, sequence++);
+            PENDING.put(project, check);
+        }
+        CHECKS.put(check);
+    }
+
+    /**
+     * Has the project request its build from another thread than the scheduler's.
+     * @param project the project due for a build
+     */
+    static void requestBuild(final Project project) {
+        REQUESTS.execute(new Runnable() {
+            public void run() {
+                project.requestBuild();
+            }
+        });
+    }
+
+    /**
+     * @param project the project to no longer check
+     */
+    static void cancel(final Project project) {
+        synchronized (PENDING) {
+            PENDING.remove(project);
+        }
+    }
+
+    /**
+     * @param project the project to look up
+     * @return true if a check of the project is pending
+     */
+    static boolean isScheduled(final Project project) {
+        synchronized (PENDING) {
+            return PENDING.containsKey(project);
+        }
+    }
+
+    private static void runChecks() {
+        while (true) {
+            final ScheduledCheck check;
+            try {
+                check = CHECKS.take();
+            } catch (InterruptedException e) {
+                LOG.warn("project scheduler interrupted, no more projects will be scheduled", e);
+                return;
+            }
+            synchronized (PENDING) {
+                if (PENDING.get(check.project) != check) {
+                    continue;
+                }
+                PENDING.remove(check.project);
+            }
+            try {
+                check.project.checkSchedule();
+            } catch (RuntimeException e) {
+                LOG.error("error checking schedule of project " + check.project.getName()
+                        + ", will check again in a minute", e);
+                schedule(check.project, DateUtil.ONE_MINUTE);
+            }
+        }
+    }
+
+    private static final class ScheduledCheck implements Delayed {
+        private final Project project;
+        private final long dueTime;
+        private final long order;
+
+        private ScheduledCheck(final Project project, final long dueTime, final long order) {
+            this.project = project;
+            this.dueTime = dueTime;
+            this.order = order;
+        }
+
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        public int compareTo(final Delayed other) {
+            final ScheduledCheck that = (ScheduledCheck) other;
+            if (dueTime != that.dueTime) {
+                return dueTime < that.dueTime ? -1 : 1;
+            }
+            return order < that.order ? -1 : (order == that.order ? 0 : 1);
+        }
+    }
+}
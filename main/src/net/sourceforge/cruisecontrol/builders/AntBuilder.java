@@ -81,6 +81,8 @@ public class AntBuilder extends Builder {
 
     protected static final String DEFAULT_LOGGER = "org.apache.tools.ant.XmlLogger";
 
+    static final int DEFAULT_DAEMON_MAX_BUILDS = 20;
+
     private static final Logger LOG = Logger.getLogger(AntBuilder.class);
 
     private String antWorkingDir;
@@ -104,6 +106,8 @@ public class AntBuilder extends Builder {
     private boolean wasValidated;
     private String propertyfile;
     private String progressLoggerLib;
+    private boolean daemon;
+    private int daemonMaxBuilds = DEFAULT_DAEMON_MAX_BUILDS;
 
     public void validate() throws CruiseControlException {
         super.validate();
@@ -158,6 +162,18 @@ public class AntBuilder extends Builder {
             LOG.warn("jvmargs will be ignored if you specify anthome or your own antscript!");
         }
 
+        if (daemon) {
+            ValidationHelper.assertFalse(antScript != null,
+                "'daemon' cannot be used together with 'antHome' or 'antscript'");
+            ValidationHelper.assertTrue(daemonMaxBuilds > 0, "'daemonMaxBuilds' must be greater than 0");
+            // the daemon VM runs the entry point from the progress logger jar
+            if (progressLoggerLib == null) {
+                AntScript.findDefaultProgressLoggerLib();
+            } else {
+                ValidationHelper.assertExists(new File(progressLoggerLib), "progressLoggerLib", this.getClass());
+            }
+        }
+
         wasValidated = true;
     }
 
@@ -245,6 +261,9 @@ public class AntBuilder extends Builder {
 
     boolean runScript(final AntScript script, final File workingDir, final BuildOutputLogger outputLogger)
             throws CruiseControlException {
+        if (daemon) {
+            return AntDaemon.runScript(workingDir, script, timeout, outputLogger, daemonMaxBuilds);
+        }
         return new ScriptRunner().runScript(workingDir, script, timeout, outputLogger);
     }
 
@@ -659,6 +678,27 @@ public class AntBuilder extends Builder {
         this.progressLoggerLib = progressLoggerLib;
     }
 
+    @Description(
+            "If true, builds run in a warm Ant VM kept between builds instead of in a new VM each time, "
+            + "saving the VM startup, class loading and JIT warmup of small, frequent builds. A VM is kept "
+            + "for each distinct set of jvmargs, libs, working directory and environment, and is replaced "
+            + "after daemonMaxBuilds builds, when its heap is getting full or when a build times out. A VM "
+            + "left idle for 30 minutes is stopped. Builds that rely on a fresh VM, e.g. to release resources "
+            + "held by the previous build, should not use this. Cannot be used together with antHome or "
+            + "antscript.")
+    @Optional
+    @Default("false")
+    public void setDaemon(boolean daemon) {
+        this.daemon = daemon;
+    }
+
+    @Description("Number of builds after which the warm Ant VM of a daemon builder is replaced.")
+    @Optional
+    @Default("20")
+    public void setDaemonMaxBuilds(int daemonMaxBuilds) {
+        this.daemonMaxBuilds = daemonMaxBuilds;
+    }
+
     /**
      * @return The path (including filename) to the jar file
      * ({@link AntScript#LIBNAME_PROGRESS_LOGGER cruisecontrol-antprogresslogger.jar})
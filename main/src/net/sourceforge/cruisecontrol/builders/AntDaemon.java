@@ -0,0 +1,393 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.builders;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.cruisecontrol.CruiseControlException;
+import net.sourceforge.cruisecontrol.util.BuildOutputLogger;
+import net.sourceforge.cruisecontrol.util.Commandline;
+import net.sourceforge.cruisecontrol.util.CompositeConsumer;
+import net.sourceforge.cruisecontrol.util.IO;
+import net.sourceforge.cruisecontrol.util.OSEnvironment;
+import net.sourceforge.cruisecontrol.util.ProcessSupervisor;
+import net.sourceforge.cruisecontrol.util.StreamConsumer;
+import net.sourceforge.cruisecontrol.util.StreamLogger;
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A warm Ant VM running the builds of {@link AntBuilder#setDaemon(boolean) daemon} mode ant builders, one
+ * at a time. Idle VMs are kept per command line, working directory and environment, since neither can be
+ * changed for a build once the VM runs. A VM is replaced after a configured number of builds, when it
+ * reports that its heap is getting full, or when a build times out. A VM left idle for {@link #IDLE_TIMEOUT} is
+ * stopped, so that VMs whose builder changed or went away don't stay around.
+ * <p>
+ * The VM runs AntDaemonMain from the progress logger jar, which connects back to a local socket. Each
+ * build is a request holding the Ant arguments; the console output of Ant comes back line by line,
+ * followed by the exit code. The XML log is still written by the configured logger to the temp file.
+ * </p>
+ */
+final class AntDaemon {
+    private static final Logger LOG = Logger.getLogger(AntDaemon.class);
+
+    /**
+     * NOTE: Must be the exact same values as those defined in AntDaemonMain, but kept separate
+     * to avoid dependence on Ant classes here.
+     */
+    static final String CLASSNAME_DAEMON_MAIN = "net.sourceforge.cruisecontrol.builders.AntDaemonMain";
+    static final byte FRAME_OUT = 1;
+    static final byte FRAME_ERR = 2;
+    static final byte FRAME_EXIT = 3;
+
+    /** Milliseconds to wait for a new VM to connect. */
+    static final int CONNECT_TIMEOUT = 60 * 1000;
+
+    /** Milliseconds after which an idle VM is stopped. */
+    static final long IDLE_TIMEOUT = 30 * 60 * 1000;
+
+    /** Milliseconds between two checks for VMs idle for too long. */
+    private static final long REAP_INTERVAL = 60 * 1000;
+
+    private static final Map<String, List<AntDaemon>> IDLE = new HashMap<String, List<AntDaemon>>();
+
+    /** Stops the VMs idle for too long, started along with the first idle VM. */
+    private static ScheduledExecutorService reaper;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread("AntDaemonShutdown") {
+            public void run() {
+                shutdown();
+            }
+        });
+    }
+
+    private final String key;
+    private final Process process;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private int builds;
+    private boolean healthy = true;
+    private long idleSince;
+
+    private AntDaemon(final String key, final Process process, final Socket socket) throws IOException {
+        this.key = key;
+        this.process = process;
+        this.socket = socket;
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Runs an ant build in a warm VM, starting one if none is idle. Output is passed on like
+     * {@link ScriptRunner} does for a forked VM.
+     *
+     * @param workingDir the directory to run the build from, or null for the current directory
+     * @param script the build to run
+     * @param timeout time in seconds after which the build is killed, if still running
+     * @param buildOutputConsumer optional consumer of the build output
+     * @param maxBuilds number of builds after which the VM is replaced
+     * @return true if the build completed, false if it was killed due to timeout expiring
+     * @throws CruiseControlException if the VM can't be started or dies during the build
+     */
+    static boolean runScript(final File workingDir, final AntScript script, final long timeout,
+                             final BuildOutputLogger buildOutputConsumer, final int maxBuilds)
+            throws CruiseControlException {
+
+        final Commandline commandline = script.buildDaemonCommandline();
+        if (workingDir != null) {
+            commandline.setWorkingDir(workingDir);
+        }
+        final String key = getKey(commandline, script.getAntEnv());
+
+        AntDaemon daemon = takeIdle(key);
+        if (daemon == null) {
+            daemon = start(key, commandline);
+        }
+
+        final CompositeConsumer consumerForError = new CompositeConsumer(StreamLogger.getWarnLogger(LOG));
+        final CompositeConsumer consumerForOut = new CompositeConsumer(StreamLogger.getInfoLogger(LOG));
+        if (buildOutputConsumer != null) {
+            buildOutputConsumer.clear();
+            consumerForError.add(buildOutputConsumer);
+            consumerForOut.add(buildOutputConsumer);
+        }
+        consumerForError.add(script);
+        consumerForOut.add(script);
+
+        boolean completed = false;
+        try {
+            final Integer exitCode = daemon.build(script.buildDaemonArguments(), consumerForOut, consumerForError,
+                    timeout);
+            completed = exitCode != null;
+            script.setExitCode(completed ? exitCode.intValue() : -1);
+        } catch (IOException e) {
+            throw new CruiseControlException("Lost the connection to the Ant VM of " + key, e);
+        } finally {
+            if (completed && daemon.healthy && daemon.builds < maxBuilds) {
+                release(daemon);
+            } else {
+                daemon.destroy();
+            }
+            if (buildOutputConsumer != null) {
+                buildOutputConsumer.clear();
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * @param commandline the command starting the VM, including its working directory
+     * @param env the environment of the VM, or null to inherit ours
+     * @return the key under which the VM can be reused
+     */
+    static String getKey(final Commandline commandline, final OSEnvironment env) {
+        final StringBuilder key = new StringBuilder(commandline.toStringNoQuoting());
+        key.append(" in ").append(commandline.getWorkingDirectory());
+        if (env != null) {
+            key.append(" with ").append(new TreeSet<String>(env.getEnvironment()));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the number of idle VMs
+     */
+    static int getIdleCount() {
+        synchronized (IDLE) {
+            int count = 0;
+            for (final List<AntDaemon> idle : IDLE.values()) {
+                count += idle.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Stops all idle VMs.
+     */
+    static void shutdown() {
+        final List<AntDaemon> daemons = new ArrayList<AntDaemon>();
+        synchronized (IDLE) {
+            for (final List<AntDaemon> idle : IDLE.values()) {
+                daemons.addAll(idle);
+            }
+            IDLE.clear();
+        }
+        for (final AntDaemon daemon : daemons) {
+            daemon.destroy();
+        }
+    }
+
+    /**
+     * Stops the VMs idle for {@link #IDLE_TIMEOUT} or longer.
+     * @param now current time
+     */
+    static void stopIdle(final long now) {
+        final List<AntDaemon> expired = new ArrayList<AntDaemon>();
+        synchronized (IDLE) {
+            for (final Iterator<List<AntDaemon>> lists = IDLE.values().iterator(); lists.hasNext();) {
+                final List<AntDaemon> idle = lists.next();
+                for (final Iterator<AntDaemon> daemons = idle.iterator(); daemons.hasNext();) {
+                    final AntDaemon daemon = daemons.next();
+                    if (now - daemon.idleSince >= IDLE_TIMEOUT) {
+                        daemons.remove();
+                        expired.add(daemon);
+                    }
+                }
+                if (idle.isEmpty()) {
+                    lists.remove();
+                }
+            }
+        }
+        for (final AntDaemon daemon : expired) {
+            LOG.info("Stopping idle Ant VM of " + daemon.key);
+            daemon.destroy();
+        }
+    }
+
+    private static AntDaemon takeIdle(final String key) {
+        synchronized (IDLE) {
+            final List<AntDaemon> idle = IDLE.get(key);
+            while (idle != null && !idle.isEmpty()) {
+                final AntDaemon daemon = idle.remove(idle.size() - 1);
+                if (daemon.isAlive()) {
+                    return daemon;
+                }
+                daemon.destroy();
+            }
+            return null;
+        }
+    }
+
+    private static void release(final AntDaemon daemon) {
+        synchronized (IDLE) {
+            List<AntDaemon> idle = IDLE.get(daemon.key);
+            if (idle == null) {
+                idle = new ArrayList<AntDaemon>();
+                IDLE.put(daemon.key, idle);
+            }
+            daemon.idleSince = System.currentTimeMillis();
+            idle.add(daemon);
+            if (reaper == null) {
+                reaper = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("AntDaemonReaper"));
+                reaper.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        stopIdle(System.currentTimeMillis());
+                    }
+                }, REAP_INTERVAL, REAP_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * @param key the kind of VM started
+     * @param commandline the command starting the VM, completed here by the port to connect back to
+     * @return the VM, connected
+     * @throws CruiseControlException if the VM can't be started or doesn't connect in time
+     */
+    private static AntDaemon start(final String key, final Commandline commandline) throws CruiseControlException {
+        final String command = commandline.toStringNoQuoting();
+        LOG.info("Starting Ant VM: " + command);
+        Process process = null;
+        try {
+            final ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+            try {
+                server.setSoTimeout(CONNECT_TIMEOUT);
+                commandline.createArgument(Integer.toString(server.getLocalPort()));
+                process = commandline.execute();
+                ProcessSupervisor.pump(StreamLogger.getInfoPumper(LOG, process));
+                ProcessSupervisor.pump(StreamLogger.getWarnPumper(LOG, process));
+                return new AntDaemon(key, process, server.accept());
+            } finally {
+                server.close();
+            }
+        } catch (IOException e) {
+            if (process != null) {
+                IO.close(process);
+            }
+            throw new CruiseControlException("Could not start Ant VM: " + command, e);
+        }
+    }
+
+    /**
+     * @param args the Ant arguments of the build
+     * @param consumerForOut consumer of the console output
+     * @param consumerForError consumer of the console error
+     * @param timeout time in seconds after which the build is killed, if still running
+     * @return the exit code of the build, or null if it was killed due to timeout expiring
+     * @throws IOException if the connection to the VM is lost
+     */
+    Integer build(final String[] args, final StreamConsumer consumerForOut, final StreamConsumer consumerForError,
+                  final long timeout) throws IOException {
+        builds++;
+        out.writeInt(args.length);
+        for (final String arg : args) {
+            out.writeUTF(arg);
+        }
+        out.flush();
+
+        final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout * 1000L : 0;
+        try {
+            while (true) {
+                setReadTimeout(deadline);
+                final byte frame = in.readByte();
+                if (frame == FRAME_EXIT) {
+                    final int exitCode = in.readInt();
+                    healthy = in.readBoolean();
+                    return Integer.valueOf(exitCode);
+                }
+                final byte[] line = new byte[in.readInt()];
+                in.readFully(line);
+                (frame == FRAME_ERR ? consumerForError : consumerForOut).consumeLine(new String(line));
+            }
+        } catch (SocketTimeoutException e) {
+            LOG.warn("Build timeout timer of " + timeout + " seconds has expired, stopping Ant VM for " + key);
+            return null;
+        }
+    }
+
+    private void setReadTimeout(final long deadline) throws IOException {
+        if (deadline == 0) {
+            socket.setSoTimeout(0);
+            return;
+        }
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException();
+        }
+        socket.setSoTimeout((int) Math.min(remaining, Integer.MAX_VALUE));
+    }
+
+    private boolean isAlive() {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException running) {
+            return true;
+        }
+    }
+
+    private void destroy() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // the VM is going away anyway
+        }
+        process.destroy();
+    }
+}
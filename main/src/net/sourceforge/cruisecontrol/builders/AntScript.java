@@ -119,26 +119,66 @@ public class AntScript implements Script, StreamConsumer {
         if (useScript) {
             cmdLine.setExecutable(antScript);
         } else {
-            if (isWindows) {
-                cmdLine.setExecutable("java.exe");
-            } else {
-                cmdLine.setExecutable("java");
-            }
-            for (final AntBuilder.JVMArg jvmArg : args) {
-                final String arg = jvmArg.getArg();
-                // empty args may break the command line
-                if (arg != null && arg.length() > 0) {
-                    cmdLine.createArgument(arg);
-                }
-            }
+            addLauncher(cmdLine);
+        }
+        addAntArguments(cmdLine, true);
+        cmdLine.setEnv(env);
+        return cmdLine;
+    }
+
+    /**
+     * Construct the command starting a warm Ant VM for daemon builds, see {@link AntDaemon}. Libraries
+     * have to be given here, since they are loaded once by the Ant launcher.
+     *
+     * @return Commandline starting the VM, still missing the port to connect back to
+     * @throws CruiseControlException if ant-launcher.jar or the progress logger jar can't be found
+     */
+    Commandline buildDaemonCommandline() throws CruiseControlException {
+        final Commandline cmdLine = new Commandline();
+        addLauncher(cmdLine);
+
+        setupDefaultProgressLoggerLib();
+        cmdLine.createArguments("-lib", progressLoggerLib);
+        for (final AntBuilder.Lib lib : libs) {
+            cmdLine.createArguments("-lib", lib.getSearchPath());
+        }
+        cmdLine.createArguments("-main", AntDaemon.CLASSNAME_DAEMON_MAIN);
+        cmdLine.setEnv(env);
+        return cmdLine;
+    }
 
-            final List<String> classpathItems = getClasspathItems(systemClassPath, isWindows);
-            final String antLauncherJarLocation = getAntLauncherJarLocation(systemClassPath, classpathItems);
-            cmdLine.createArguments("-classpath", antLauncherJarLocation);
-            cmdLine.createArgument("org.apache.tools.ant.launch.Launcher");
-            cmdLine.createArguments("-lib", removeSaxonJars(classpathItems, isWindows));
+    /**
+     * @return the Ant arguments of a build run by a VM started with {@link #buildDaemonCommandline()}
+     * @throws CruiseControlException on unquotable attributes
+     */
+    String[] buildDaemonArguments() throws CruiseControlException {
+        final Commandline cmdLine = new Commandline();
+        addAntArguments(cmdLine, false);
+        return cmdLine.getArguments();
+    }
+
+    private void addLauncher(final Commandline cmdLine) throws CruiseControlException {
+        if (isWindows) {
+            cmdLine.setExecutable("java.exe");
+        } else {
+            cmdLine.setExecutable("java");
         }
+        for (final AntBuilder.JVMArg jvmArg : args) {
+            final String arg = jvmArg.getArg();
+            // empty args may break the command line
+            if (arg != null && arg.length() > 0) {
+                cmdLine.createArgument(arg);
+            }
+        }
+
+        final List<String> classpathItems = getClasspathItems(systemClassPath, isWindows);
+        final String antLauncherJarLocation = getAntLauncherJarLocation(systemClassPath, classpathItems);
+        cmdLine.createArguments("-classpath", antLauncherJarLocation);
+        cmdLine.createArgument("org.apache.tools.ant.launch.Launcher");
+        cmdLine.createArguments("-lib", removeSaxonJars(classpathItems, isWindows));
+    }
 
+    private void addAntArguments(final Commandline cmdLine, final boolean addLibs) throws CruiseControlException {
         if (progress == null) {
             if (useLogger) {
                 cmdLine.createArguments("-logger", getLoggerClassName());
@@ -171,8 +211,8 @@ public class AntScript implements Script, StreamConsumer {
             cmdLine.createArguments("-listener", CLASSNAME_DASHBOARD_LISTENER);
         }
 
-        if ((progress != null)
-                || AntBuilder.shouldAddDashboardLoggerJarToCommandLine(showAntOutput, useLogger)) {
+        if (addLibs && ((progress != null)
+                || AntBuilder.shouldAddDashboardLoggerJarToCommandLine(showAntOutput, useLogger))) {
             // we need to add the custom logger jar {@link #LIBNAME_PROGRESS_LOGGER cruisecontrol-antprogresslogger.jar}
             // to the ant VM class path as a lib
 
@@ -194,8 +234,10 @@ public class AntScript implements Script, StreamConsumer {
             cmdLine.createArgument("-keep-going");
         }
 
-        for (final AntBuilder.Lib lib : libs) {
-            cmdLine.createArguments("-lib", lib.getSearchPath());
+        if (addLibs) {
+            for (final AntBuilder.Lib lib : libs) {
+                cmdLine.createArguments("-lib", lib.getSearchPath());
+            }
         }
 
         for (final AntBuilder.Listener listener : listeners) {
@@ -218,13 +260,11 @@ public class AntScript implements Script, StreamConsumer {
         }
 
         cmdLine.createArguments("-buildfile", buildFile);
-        cmdLine.setEnv(env);
 
         final StringTokenizer targets = new StringTokenizer(target);
         while (targets.hasMoreTokens()) {
             cmdLine.createArgument(targets.nextToken());
         }
-        return cmdLine;
     }
 
     /**
@@ -567,4 +607,11 @@ public class AntScript implements Script, StreamConsumer {
         this.env = env;
     } // setAntEnv
 
+    /**
+     * @return The environment variables of the ant script, or <code>null</code> if inherited.
+     */
+    OSEnvironment getAntEnv() {
+        return env;
+    }
+
 }
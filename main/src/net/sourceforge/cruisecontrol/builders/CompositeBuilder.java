@@ -1,9 +1,18 @@
 package net.sourceforge.cruisecontrol.builders;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import net.sourceforge.cruisecontrol.Builder;
 import net.sourceforge.cruisecontrol.CruiseControlException;
@@ -12,8 +21,10 @@ import net.sourceforge.cruisecontrol.gendoc.annotations.Cardinality;
 import net.sourceforge.cruisecontrol.gendoc.annotations.Default;
 import net.sourceforge.cruisecontrol.gendoc.annotations.Description;
 import net.sourceforge.cruisecontrol.gendoc.annotations.Optional;
+import net.sourceforge.cruisecontrol.gendoc.annotations.Required;
 import net.sourceforge.cruisecontrol.util.DateUtil;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
 
 import org.apache.log4j.Logger;
 import org.jdom2.Attribute;
@@ -31,7 +42,12 @@ public class CompositeBuilder extends Builder {
 
     private static final long serialVersionUID = -3819555247003945186L;
 
+    /** How long to wait for the child builders still running to stop, once the parallel build is over. */
+    private static final long STOP_WAIT_SECONDS = 30;
+
     private final List<Builder> builders = new ArrayList<Builder>();
+    private final List<WaitFor> waitFors = new ArrayList<WaitFor>();
+    private boolean parallel = false;
 
     private long startTime = 0;
     private long timeoutSeconds = ScriptRunner.NO_TIMEOUT;
@@ -46,8 +62,22 @@ public class CompositeBuilder extends Builder {
         builders.add(builder);
     }
 
+    /**
+     * Creates the object into which {@code <waitfor />} tag will be set.
+     * @return new {@link WaitFor} object to configure.
+     */
+    @Description("Makes a child builder wait for other child builders in the parallel mode. The child "
+            + "builder is started once all the child builders it waits for finished successfully.")
+    @Cardinality(min = 0, max = -1)
+    public WaitFor createWaitFor() {
+        final WaitFor waitFor = new WaitFor();
+        waitFors.add(waitFor);
+        return waitFor;
+    }
+
     private void startBuild() {
         startTime = System.currentTimeMillis();
+        isTimedOut = false;
     }
 
     private void endBuild(Element buildResult) {
@@ -156,6 +186,14 @@ public class CompositeBuilder extends Builder {
 
         final Progress progress = getShowProgress() ? progressIn : null;
 
+        if (parallel) {
+            return buildParallel(new ChildBuild() {
+                public Element build(final Builder builder) throws CruiseControlException {
+                    return builder.build(properties, progress);
+                }
+            }, progress);
+        }
+
         boolean errorOcurred = false;
         final Element compositeBuildResult = new Element("build");
         final Iterator<Builder> iter = builders.iterator();
@@ -189,6 +227,14 @@ public class CompositeBuilder extends Builder {
 
         final Progress progress = getShowProgress() ? progressIn : null;
 
+        if (parallel) {
+            return buildParallel(new ChildBuild() {
+                public Element build(final Builder builder) throws CruiseControlException {
+                    return builder.buildWithTarget(properties, target, progress);
+                }
+            }, progress);
+        }
+
         boolean errorOcurred = false;
         final Element compositeBuildResult = new Element("build");
         final Iterator<Builder> iter = builders.iterator();
@@ -217,6 +263,175 @@ public class CompositeBuilder extends Builder {
         return compositeBuildResult;
     }
 
+    /**
+     * Runs the child builders concurrently, each one as soon as the child builders it waits for finished.
+     * Stops on the first error or once the timeout expires, stopping the child builders still running.
+     * The build logs of the child builders finished are merged in the order the child builders were declared.
+     *
+     * @param childBuild runs one child builder
+     * @param progress the progress of the composite build, <code>null</code> if not shown
+     * @return the build log
+     * @throws CruiseControlException if a child builder throws it
+     */
+    private Element buildParallel(final ChildBuild childBuild, final Progress progress)
+            throws CruiseControlException {
+
+        final int totalBuilders = builders.size();
+        final List<List<Integer>> waitForIndexes = getWaitForIndexes();
+        final Element[] results = new Element[totalBuilders];
+        final boolean[] started = new boolean[totalBuilders];
+        final Map<Future<Element>, Integer> running = new HashMap<Future<Element>, Integer>();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(totalBuilders,
+                new DaemonThreadFactory("CompositeBuilder"));
+        final CompletionService<Element> completion = new ExecutorCompletionService<Element>(executor);
+
+        String error = null;
+        int finished = 0;
+        startBuild();
+        try {
+            startReadyChildren(childBuild, progress, waitForIndexes, results, started, running, completion);
+            while (!running.isEmpty()) {
+                final Future<Element> done = waitForChild(completion);
+                if (done == null) {
+                    isTimedOut = true;
+                    break;
+                }
+
+                final int index = running.remove(done);
+                results[index] = getChildResult(done);
+                finished++;
+                if (progress != null) {
+                    progress.setValue("composite build: " + finished + " of " + totalBuilders + " finished");
+                }
+                if (!isBuildSuccessful(results[index])) {
+                    LOG.debug("CompositeBuilder: error element found in child " + (index + 1) + ", stopping");
+                    error = results[index].getAttributeValue("error");
+                    break;
+                }
+                startReadyChildren(childBuild, progress, waitForIndexes, results, started, running, completion);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CruiseControlException("Interrupted while waiting for child builders", e);
+        } finally {
+            stopChildren(executor, running.size());
+        }
+
+        final Element compositeBuildResult = new Element("build");
+        for (final Element result : results) {
+            if (result != null) {
+                compositeBuildResult.addContent(result.removeContent());
+            }
+        }
+        if (error != null) {
+            compositeBuildResult.setAttribute("error", error);
+        }
+        endBuild(compositeBuildResult);
+
+        return compositeBuildResult;
+    }
+
+    /**
+     * Starts the child builders not started yet whose child builders to wait for have finished.
+     */
+    private void startReadyChildren(final ChildBuild childBuild, final Progress progress,
+                                    final List<List<Integer>> waitForIndexes, final Element[] results,
+                                    final boolean[] started, final Map<Future<Element>, Integer> running,
+                                    final CompletionService<Element> completion) {
+
+        for (int i = 0; i < started.length; i++) {
+            if (started[i] || !allFinished(waitForIndexes.get(i), results)) {
+                continue;
+            }
+
+            final Builder builder = builders.get(i);
+            final String buildlogMsgPrefix = "composite build " + (i + 1) + " of " + started.length;
+            started[i] = true;
+            running.put(completion.submit(new Callable<Element>() {
+                public Element call() throws CruiseControlException {
+                    final long childStart = System.currentTimeMillis();
+                    final Element buildResult = childBuild.build(builder);
+                    insertBuildLogHeader(buildResult, buildlogMsgPrefix + " - " + builder.getClass().getName()
+                            + "; child", childStart, "composite", "composite-childbuilder");
+                    return buildResult;
+                }
+            }), i);
+            if (progress != null) {
+                progress.setValue(buildlogMsgPrefix + " started");
+            }
+        }
+    }
+
+    private static boolean allFinished(final List<Integer> indexes, final Element[] results) {
+        for (final int index : indexes) {
+            if (results[index] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the child builder finished, <code>null</code> if the timeout expired first
+     */
+    private Future<Element> waitForChild(final CompletionService<Element> completion) throws InterruptedException {
+        if (timeoutSeconds == ScriptRunner.NO_TIMEOUT) {
+            return completion.take();
+        }
+        final long remaining = startTime + timeoutSeconds * 1000L - System.currentTimeMillis();
+        return completion.poll(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+    }
+
+    private static Element getChildResult(final Future<Element> done) throws CruiseControlException,
+            InterruptedException {
+        try {
+            return done.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof CruiseControlException) {
+                throw (CruiseControlException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CruiseControlException(cause);
+        }
+    }
+
+    /**
+     * Interrupts the child builders still running, and gives them a while to stop.
+     */
+    private static void stopChildren(final ExecutorService executor, final int running) {
+        if (running > 0) {
+            LOG.info("CompositeBuilder: stopping " + running + " child builders still running");
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(STOP_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("CompositeBuilder: child builders still running after " + STOP_WAIT_SECONDS
+                        + " seconds, not waiting for them anymore");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return for each child builder, the indexes of the child builders it waits for
+     */
+    private List<List<Integer>> getWaitForIndexes() {
+        final List<List<Integer>> indexes = new ArrayList<List<Integer>>();
+        for (int i = 0; i < builders.size(); i++) {
+            indexes.add(new ArrayList<Integer>());
+        }
+        for (final WaitFor waitFor : waitFors) {
+            indexes.get(waitFor.getBuilder() - 1).addAll(waitFor.getOnIndexes());
+        }
+        return indexes;
+    }
+
     public void validate() throws CruiseControlException {
 
         ValidationHelper.assertFalse(builders.isEmpty(), "no builders added");
@@ -226,6 +441,43 @@ public class CompositeBuilder extends Builder {
         for (final Builder builder : builders) {
             builder.validate();
         }
+
+        ValidationHelper.assertTrue(parallel || waitFors.isEmpty(),
+                "waitfor can only be used when parallel is true", getClass());
+        for (final WaitFor waitFor : waitFors) {
+            waitFor.validate(builders.size());
+        }
+        validateNoWaitForCycle(getWaitForIndexes());
+    }
+
+    /**
+     * Checks that the child builders don't wait for each other, which would never let them start.
+     */
+    private void validateNoWaitForCycle(final List<List<Integer>> waitForIndexes) throws CruiseControlException {
+        final boolean[] startable = new boolean[waitForIndexes.size()];
+        int startableCount = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < startable.length; i++) {
+                if (!startable[i] && allStartable(waitForIndexes.get(i), startable)) {
+                    startable[i] = true;
+                    startableCount++;
+                    changed = true;
+                }
+            }
+        }
+        ValidationHelper.assertTrue(startableCount == startable.length,
+                "the child builders wait for each other in a cycle", getClass());
+    }
+
+    private static boolean allStartable(final List<Integer> indexes, final boolean[] startable) {
+        for (final int index : indexes) {
+            if (!startable[index]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /** @return array of the builders in this composite. */
@@ -234,6 +486,19 @@ public class CompositeBuilder extends Builder {
     }
 
 
+    /**
+     * @param parallel <code>true</code> to run the child builders concurrently
+     */
+    @Description(
+            "If true, the child builders are run concurrently, except those told to wait for others "
+            + "by &lt;waitfor&gt;. The build stops on the first error, stopping the child builders still "
+            + "running. The build logs are merged in the order the child builders are declared.")
+    @Optional
+    @Default("false")
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * @param timeout The timeout (in seconds) to set.
      */
@@ -269,4 +534,62 @@ public class CompositeBuilder extends Builder {
     public void setLiveOutput(boolean live) {
         super.setLiveOutput(live);
     }
+
+    /** Runs one child builder, by {@link Builder#build(Map, Progress)} or by
+     *  {@link Builder#buildWithTarget(Map, String, Progress)}. */
+    private interface ChildBuild {
+        Element build(Builder builder) throws CruiseControlException;
+    }
+
+    /**
+     * Configuration of a child builder waiting for others in the parallel mode, in the form
+     * {@code <waitfor builder="3" on="1,2" />}. The child builders are referred to by their
+     * position in the composite, the first one being 1.
+     */
+    @Description("Makes a child builder wait for other child builders.")
+    public static final class WaitFor {
+        private int builder;
+        private String on;
+
+        @Description("The position of the child builder which waits, the first child builder being 1.")
+        @Required
+        public void setBuilder(final int builder) {
+            this.builder = builder;
+        }
+
+        /** @return the value set by {@link #setBuilder(int)} */
+        public int getBuilder() {
+            return builder;
+        }
+
+        @Description("The comma-separated positions of the child builders to wait for.")
+        @Required
+        public void setOn(final String on) {
+            this.on = on;
+        }
+
+        /** @return the (0-based) indexes of the child builders to wait for */
+        List<Integer> getOnIndexes() {
+            final List<Integer> indexes = new ArrayList<Integer>();
+            for (final String position : on.split(",")) {
+                indexes.add(Integer.valueOf(position.trim()) - 1);
+            }
+            return indexes;
+        }
+
+        void validate(final int totalBuilders) throws CruiseControlException {
+            ValidationHelper.assertIsSet(on, "on", getClass());
+            ValidationHelper.assertTrue(builder >= 1 && builder <= totalBuilders,
+                    "waitfor builder must be between 1 and " + totalBuilders, getClass());
+            try {
+                for (final int index : getOnIndexes()) {
+                    ValidationHelper.assertTrue(index >= 0 && index < totalBuilders && index != builder - 1,
+                            "waitfor on must list other child builders, between 1 and " + totalBuilders,
+                            getClass());
+                }
+            } catch (NumberFormatException e) {
+                ValidationHelper.fail("waitfor on must be a comma-separated list of positions: " + on, e);
+            }
+        }
+    }
 }
@@ -203,6 +203,18 @@ public interface PipedScript extends Runnable {
      */
     Boolean getGZipStdout();
 
+    /**
+     * The number of bytes of the script's output to keep in memory within the builder at most.
+     * See {@link PipedScriptBase#setStdoutMemoryLimit(long)} for more details.
+     *
+     * @param limit the number of bytes, zero or negative to keep the whole output in memory.
+     */
+    void setStdoutMemoryLimit(long limit);
+    /**
+     * @return the value set by {@link #setStdoutMemoryLimit(long)}, zero if not set.
+     */
+    long getStdoutMemoryLimit();
+
     /**
      * Is the output content of the script in binary form?
      * See {@link PipedScriptBase#setBinaryOutput(boolean)} for more details.
@@ -36,6 +36,8 @@ public abstract class PipedScriptBase implements PipedScript {
     private boolean isDone = false;
     /** Keep STDOUT gzipped? Set by {@link #setGZipStdout(boolean)}. */
     private Boolean gzip = Boolean.FALSE;
+    /** Bytes of STDOUT to keep in memory, set by {@link #setStdoutMemoryLimit(long)}. */
+    private long stdoutMemoryLimit = 0;
     /** Is STDOUT of the script binary? Set by {@link #setBinaryOutput(boolean)} */
     private Boolean binary = Boolean.FALSE;
     /** The buffer holding the output of the command */
@@ -83,9 +85,9 @@ public abstract class PipedScriptBase implements PipedScript {
     @Override
     public void initialize() {
         if (Boolean.TRUE.equals(getGZipStdout())) {
-            outputBuffer = new GZippedStdoutBuffer(log());
+            outputBuffer = new GZippedStdoutBuffer(log(), getStdoutMemoryLimit());
         } else {
-            outputBuffer = new StdoutBuffer(log());
+            outputBuffer = new StdoutBuffer(log(), getStdoutMemoryLimit());
         }
         if (getBuildProperties() == null) {
             log().warn("Build properties has not been set, setting empty map");
@@ -107,6 +109,7 @@ public abstract class PipedScriptBase implements PipedScript {
         }
         if (outputBuffer != null) {
             outputBuffer.close();
+            outputBuffer.dispose();
             outputBuffer = null;
         }
         inputProvider = null;
@@ -139,19 +142,40 @@ public abstract class PipedScriptBase implements PipedScript {
                 buildLog.setAttribute("error", e.getMessage());
             }
         } finally {
+            /* Close the buffer to signalize that all has been written, and report how large it got */
+            this.outputBuffer.close();
+            reportOutputBuffer(buildLog);
             /* Add the element into the parent */
             synchronized (buildLogParent) {
                 this.buildLogParent.addContent(buildLog.detach());
             }
-            /* Close the buffer to signalize that all has been written, and clear STDIN
-             * provider to signalize to GC that it is not longer needed */
-            this.outputBuffer.close();
+            /* Clear STDIN provider to signalize to GC that it is not longer needed */
             this.inputProvider = null;
             this.buildLogParent = null;
             this.isDone = true;
         }
     }
 
+    /**
+     * Stores the size of the STDOUT buffer, and how much of it was held in memory at most, into the
+     * build log of the script.
+     *
+     * @param buildLog the build log of the script
+     */
+    private void reportOutputBuffer(final Element buildLog) {
+        final long size = outputBuffer.getSize();
+        final long maxMemory = outputBuffer.getMaxMemorySize();
+        final long spilled = outputBuffer.getSpilledSize();
+
+        buildLog.setAttribute("stdoutsize", Long.toString(size));
+        buildLog.setAttribute("stdoutmaxmemory", Long.toString(maxMemory));
+        if (spilled > 0) {
+            buildLog.setAttribute("stdoutspilled", Long.toString(spilled));
+        }
+        log().info("Script ID '" + this.getID() + "': STDOUT buffer of " + size + " bytes, " + maxMemory
+                + " bytes in memory at most, " + spilled + " bytes spilled to disk");
+    }
+
     @Description("The unique identifier of the command or script (any string). The value is referenced by "
             + "<code>pipefrom</code> and <code>waitfor</code> attributes.")
     @Required
@@ -307,6 +331,20 @@ public abstract class PipedScriptBase implements PipedScript {
         return this.gzip;
     }
 
+    @Description("When the STDOUT of the script may be too large to be kept in memory, set the number of "
+            + "bytes (after compression, when <code>gzipstdout</code> is set) to keep in the internal buffer at "
+            + "most. Once exceeded, the older data are moved to a temporary file, from which they are passed to "
+            + "the scripts piped from this. The sizes reached are reported in the build log of the script.")
+    @Default("no limit")
+    @Override
+    public void setStdoutMemoryLimit(long limit) {
+        this.stdoutMemoryLimit = limit;
+    }
+    @Override
+    public long getStdoutMemoryLimit() {
+        return this.stdoutMemoryLimit;
+    }
+
     @Description("When the STDOUT of the script conains binary data (as opposed to text data), it is recommended "
             + "to set this to <code>true</code>. It will adjust the handling of the internal buffers.")
     @Default("false")
@@ -40,12 +40,15 @@ package net.sourceforge.cruisecontrol.builders;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.util.BuildOutputLogger;
 import net.sourceforge.cruisecontrol.util.Commandline;
 import net.sourceforge.cruisecontrol.util.CompositeConsumer;
 import net.sourceforge.cruisecontrol.util.IO;
+import net.sourceforge.cruisecontrol.util.ProcessSupervisor;
 import net.sourceforge.cruisecontrol.util.StreamConsumer;
 import net.sourceforge.cruisecontrol.util.StreamPumper;
 import net.sourceforge.cruisecontrol.util.StreamLogger;
@@ -62,24 +65,15 @@ public class ScriptRunner  {
 
     private static class AsyncKiller implements Runnable {
         private final Process p;
-        private final long timeout;
         private boolean killed;
 
-        AsyncKiller(final Process p, final long timeout) {
+        AsyncKiller(final Process p) {
             this.p = p;
-            this.timeout = timeout;
         }
 
-        public void run() {
-            try {
-                Thread.sleep(timeout * 1000L);
-                synchronized (this) {
-                    p.destroy();
-                    killed = true;
-                }
-            } catch (InterruptedException expected) {
-                // ignore, this is expected if the script was killed
-            }
+        public synchronized void run() {
+            p.destroy();
+            killed = true;
         }
 
         public synchronized boolean processKilled() {
@@ -198,30 +192,26 @@ public class ScriptRunner  {
         final StreamPumper outPumper = getOutPumper(p, consumerForOut);
         final StreamPumper inPumper = getInPumper(p, scriptInputProvider);
 
-        final Thread stdin = new Thread(inPumper);
-        stdin.start();
-        final Thread stderr = new Thread(errorPumper);
-        stderr.start();
-        final Thread stdout = new Thread(outPumper);
-        stdout.start();
-        final AsyncKiller killer = new AsyncKiller(p, timeout);
-        final Thread asyncKillerThread;
+        final Future<Object> stdin = ProcessSupervisor.pump(inPumper);
+        final Future<Object> stderr = ProcessSupervisor.pump(errorPumper);
+        final Future<Object> stdout = ProcessSupervisor.pump(outPumper);
+        final AsyncKiller killer = new AsyncKiller(p);
+        final ScheduledFuture<Object> asyncKill;
         if (timeout > 0) {
-            asyncKillerThread = new Thread(killer);
-            asyncKillerThread.start();
+            asyncKill = ProcessSupervisor.schedule(killer, timeout);
         } else {
-            asyncKillerThread = null;
+            asyncKill = null;
         }
 
         int exitCode = -1;
         try {
             exitCode = p.waitFor();
-            if (asyncKillerThread != null) {
-                asyncKillerThread.interrupt();
+            if (asyncKill != null) {
+                ProcessSupervisor.cancel(asyncKill);
             }
-            stderr.join();
-            stdout.join();
-            stdin.join();
+            ProcessSupervisor.join(stderr);
+            ProcessSupervisor.join(stdout);
+            ProcessSupervisor.join(stdin);
         } catch (InterruptedException e) {
             LOG.info("Was interrupted while waiting for script to finish."
                     + " CruiseControl will continue, assuming that it completed");
@@ -38,6 +38,7 @@ package net.sourceforge.cruisecontrol.buildloggers;
 
 import net.sourceforge.cruisecontrol.BuildLogger;
 import net.sourceforge.cruisecontrol.CruiseControlException;
+import net.sourceforge.cruisecontrol.util.FileBackedElement;
 import net.sourceforge.cruisecontrol.util.PruneElementFilter;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 
@@ -69,6 +70,7 @@ public class MergeLogger implements BuildLogger {
     private String pattern = "*.xml";
     private GlobFilenameFilter fileNameFilter;
     private boolean removeProperties = true;
+    private boolean inMemory = true;
 
     public void setFile(String file) {
         this.file = file;
@@ -147,7 +149,10 @@ public class MergeLogger implements BuildLogger {
             if (nextLogFile.length() == 0) {
                 LOG.warn(nextLogFile.toString() + " is empty. Skipping ...");
             } else {
-                Element auxLogElement = getElement(nextLogFile);
+                Element auxLogElement = inMemory ? null : getFileBackedElement(nextLogFile);
+                if (auxLogElement == null) {
+                    auxLogElement = getElement(nextLogFile);
+                }
                 if (auxLogElement != null) {
                     buildLog.addContent(auxLogElement.detach());
                 }
@@ -179,7 +184,31 @@ public class MergeLogger implements BuildLogger {
         return null;
     }
 
+    /**
+     *  Get a stand-in for an XML file that only keeps its root element in memory.
+     *
+     *  @param xmlFile The file name to read.
+     *  @return the stand-in, or <code>null</code> if the file has to be merged in memory.
+     */
+    Element getFileBackedElement(File xmlFile) {
+        try {
+            return FileBackedElement.forFile(xmlFile, removeProperties ? "properties" : null);
+        } catch (IOException e) {
+            LOG.warn("Could not read log: " + xmlFile + ".  Merging in memory instead...", e);
+        }
+        return null;
+    }
+
     public void setRemoveProperties(boolean b) {
         removeProperties = b;
     }
+
+    /**
+     * @param inMemory if false, only the root element of each merged file is kept in the in-memory
+     * build log and the rest of the file is copied into the log file when it is written.
+     * Defaults to true.
+     */
+    public void setInMemory(boolean inMemory) {
+        this.inMemory = inMemory;
+    }
 }
@@ -43,7 +43,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import net.sourceforge.cruisecontrol.CruiseControlConfig;
@@ -55,7 +58,10 @@ import net.sourceforge.cruisecontrol.util.Util;
 
 import org.apache.log4j.Logger;
 import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.XMLOutputter;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
 
 import com.twmacinta.util.MD5OutputStream;
 
@@ -67,9 +73,17 @@ import com.twmacinta.util.MD5OutputStream;
 public class XMLConfigManager implements ResolverHolder {
 
     private static final Logger LOG = Logger.getLogger(XMLConfigManager.class);
+
+    /**
+     * Files modified less than this before their stamp was taken may be modified again without changing
+     * the stamp (the modification time has a one second resolution on some file systems).
+     */
+    private static final long STAMP_RESOLUTION_MILLIS = 2000;
+
     private final File configFile;
     private CruiseControlConfig config;
     private String hash;
+    private Map<File, FileStamp> stamps = new HashMap<File, FileStamp>();
     private final Resolver resolver = new Resolver();
     private final CruiseControlController controller;
 
@@ -85,14 +99,16 @@ public class XMLConfigManager implements ResolverHolder {
         }
         this.controller = controller;
         loadConfig(configFile);
+        stamps = getFileStamps();
         hash = calculateMD5(configFile);
     }
 
     private void loadConfig(File file) throws CruiseControlException {
         LOG.info("reading settings from config file [" + file.getAbsolutePath() + "]");
-        Element element = Util.loadRootElement(file);
         resolver.resetResolvedFiles();
-        config = new CruiseControlConfig(element, this, controller);
+        Element element = resolver.loadRootElement(file);
+        // projects whose configuration didn't change are taken over from the current config
+        config = new CruiseControlConfig(element, this, controller, config);
     }
 
     public File getConfigFile() {
@@ -109,16 +125,47 @@ public class XMLConfigManager implements ResolverHolder {
     }
 
     public boolean reloadIfNecessary() throws CruiseControlException {
+        final Map<File, FileStamp> newStamps = getFileStamps();
+        if (newStamps.equals(stamps) && !isAnyStampRacy(stamps)) {
+            LOG.debug("config files not modified [" + configFile.getAbsolutePath() + "]");
+            return false;
+        }
+
         LOG.debug("Calculating MD5 [" + configFile.getAbsolutePath() + "]");
         String newHash = calculateMD5(configFile);
         final boolean fileChanged = !newHash.equals(hash);
         if (fileChanged) {
             loadConfig(configFile);
             hash = newHash;
+            // the files read may have changed too
+            stamps = getFileStamps();
+        } else {
+            stamps = newStamps;
         }
         return fileChanged;
     }
 
+    /**
+     * @return the stamps of the config file and of all the files read while loading it
+     */
+    private Map<File, FileStamp> getFileStamps() {
+        final Map<File, FileStamp> fileStamps = new HashMap<File, FileStamp>();
+        fileStamps.put(configFile, new FileStamp(configFile));
+        for (final File file : resolver.getResolvedFiles()) {
+            fileStamps.put(file, new FileStamp(file));
+        }
+        return fileStamps;
+    }
+
+    private static boolean isAnyStampRacy(final Map<File, FileStamp> fileStamps) {
+        for (final FileStamp stamp : fileStamps.values()) {
+            if (stamp.isRacy()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** The implementation of {@link ResolverHolder#getFileResolver} */
     public FileResolver getFileResolver() {
         return resolver;
@@ -163,13 +210,83 @@ public class XMLConfigManager implements ResolverHolder {
         return "";
     }
 
+    /**
+     * The modification time and size of a file, cheap to compare in order to find out whether the file
+     * may have changed.
+     */
+    private static final class FileStamp {
+        private final long lastModified;
+        private final long length;
+        private final boolean racy;
+
+        FileStamp(final File file) {
+            lastModified = file.lastModified();
+            length = file.length();
+            racy = lastModified + STAMP_RESOLUTION_MILLIS > System.currentTimeMillis();
+        }
+
+        /**
+         * @return true if the file could have been modified since, keeping the same stamp
+         */
+        boolean isRacy() {
+            return racy;
+        }
+
+        public boolean equals(final Object o) {
+            if (!(o instanceof FileStamp)) {
+                return false;
+            }
+            final FileStamp other = (FileStamp) o;
+            return lastModified == other.lastModified && length == other.length;
+        }
+
+        public int hashCode() {
+            return (int) (lastModified ^ length);
+        }
+    }
+
     class Resolver implements XmlResolver, FileResolver {
         private final Set<File> resolvedFiles = new HashSet<File>();
 
         public Element getElement(final String path) throws CruiseControlException {
             final File file = getPath(path);
             resolvedFiles.add(file);
-            return Util.loadRootElement(file);
+            return loadRootElement(file);
+        }
+
+        /**
+         * Same as {@link Util#loadRootElement(File)}, except that the files read through external entities
+         * and XIncludes are added to the resolved files.
+         * @param file the XML file to load
+         * @return the root element of the file
+         * @throws CruiseControlException if the file cannot be loaded
+         */
+        Element loadRootElement(final File file) throws CruiseControlException {
+            try {
+                final SAXBuilder builder = new SAXBuilder();
+                builder.setFeature("http://apache.org/xml/features/xinclude", true);
+                builder.setEntityResolver(new EntityResolver() {
+                    public InputSource resolveEntity(final String publicId, final String systemId) {
+                        addResolvedSystemId(systemId);
+                        // let the parser read it
+                        return null;
+                    }
+                });
+                return builder.build(file).getRootElement();
+            } catch (Exception e) {
+                throw new CruiseControlException("failed to load file [" + file.getName() + "]", e);
+            }
+        }
+
+        private void addResolvedSystemId(final String systemId) {
+            try {
+                final URI uri = new URI(systemId);
+                if ("file".equals(uri.getScheme())) {
+                    resolvedFiles.add(new File(uri));
+                }
+            } catch (Exception e) {
+                LOG.debug("not watching changes of " + systemId, e);
+            }
         }
 
         public InputStream getInputStream(final String path) throws CruiseControlException {
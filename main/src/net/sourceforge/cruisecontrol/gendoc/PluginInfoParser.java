@@ -179,10 +179,8 @@ public class PluginInfoParser {
                     // Add a mapping for the direct superclass.
                     addSubclassMapping(subclass, superclass);
                     
-                    // Add mappings for all interfaces declared by the superclass.
-                    for (Class< ? > intrface : superclass.getInterfaces()) {
-                        addSubclassMapping(subclass, intrface);
-                    }
+                    // Add mappings for all interfaces declared by the superclass, and the ones they extend.
+                    addInterfaceMappings(subclass, superclass);
                     
                     // Move to the next superclass up in the hierarchy.
                     superclass = superclass.getSuperclass();
@@ -195,6 +193,18 @@ public class PluginInfoParser {
         }
     }
     
+    /**
+     * Adds mappings for the interfaces of a type, recursing into the interfaces those extend.
+     * @param subclass The subclass to associate with the interfaces.
+     * @param type The class or interface whose interfaces are mapped.
+     */
+    private void addInterfaceMappings(Class< ? > subclass, Class< ? > type) {
+        for (Class< ? > intrface : type.getInterfaces()) {
+            addSubclassMapping(subclass, intrface);
+            addInterfaceMappings(subclass, intrface);
+        }
+    }
+    
     /**
      * Adds a mapping to the subclassesFromRegistry Map that indicates a single inheritance
      * relationship.
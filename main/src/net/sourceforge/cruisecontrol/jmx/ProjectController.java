@@ -37,18 +37,33 @@
 package net.sourceforge.cruisecontrol.jmx;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.InstanceNotFoundException;
 import javax.management.JMException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServer;
 import javax.management.Notification;
 import javax.management.NotificationBroadcasterSupport;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
 
 import net.sourceforge.cruisecontrol.BuildOutputLoggerManager;
 import net.sourceforge.cruisecontrol.CruiseControlException;
@@ -60,6 +75,8 @@ import net.sourceforge.cruisecontrol.events.BuildProgressEvent;
 import net.sourceforge.cruisecontrol.events.BuildProgressListener;
 import net.sourceforge.cruisecontrol.events.BuildResultEvent;
 import net.sourceforge.cruisecontrol.events.BuildResultListener;
+import net.sourceforge.cruisecontrol.util.BuildOutputLogger;
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
 
 import org.apache.log4j.Logger;
 
@@ -72,12 +89,36 @@ public class ProjectController extends NotificationBroadcasterSupport
 
     public static final String OBJECT_NAME_PREFIX = "CruiseControl Project:name=";
 
+    public static final String PROGRESS_NOTIFICATION = "cruisecontrol.progress.event";
+    public static final String RESULT_NOTIFICATION = "cruisecontrol.result.event";
+    /**
+     * Pushes the lines added to the live output of the project, as composite data of
+     * {@link #OUTPUT_ITEMS}: the ID of the output logger, the number of the first line sent, and the lines.
+     * New listeners first get a notification without lines, telling where the output stands.
+     */
+    public static final String OUTPUT_NOTIFICATION = "cruisecontrol.output.event";
+    public static final String[] OUTPUT_ITEMS = new String[] {"outputID", "firstLine", "lines"};
+
+    /** Delay between two checks of the live output for lines to push, while anyone listens. */
+    static final long OUTPUT_PUSH_INTERVAL = 1000;
+
+    private static final ScheduledExecutorService OUTPUT_PUSHER
+            = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("LiveOutputPusher"));
+    private static final CompositeType OUTPUT_TYPE = createOutputType();
+
     private static final Logger LOG = Logger.getLogger(ProjectController.class);
 
     private final Project project;
     private static int sequence = 0;
     private static final Object SEQUENCE_LOCK = new Object();
 
+    /** Listeners registered, the live output is only pushed while there are some. */
+    private final List<NotificationListener> listeners = new ArrayList<NotificationListener>();
+    private ScheduledFuture< ? > outputPush;
+    /** Output logger the lines were last pushed for, and next line to push from it. */
+    private String pushedOutputID;
+    private int nextPushedLine;
+
     public ProjectController(final Project project) {
         this.project = project;
         project.addBuildProgressListener(this);
@@ -93,7 +134,7 @@ public class ProjectController extends NotificationBroadcasterSupport
     public void handleBuildProgress(final BuildProgressEvent event) {
         log("build progress event: " + event.getState().getDescription());
         if (checkSourceProject(event.getProject())) {
-            final Notification notification = new Notification("cruisecontrol.progress.event", this, nextSequence());
+            final Notification notification = new Notification(PROGRESS_NOTIFICATION, this, nextSequence());
             notification.setUserData(event.getState().getName());
             sendNotification(notification);
         }
@@ -102,12 +143,120 @@ public class ProjectController extends NotificationBroadcasterSupport
     public void handleBuildResult(final BuildResultEvent event) {
         log("build result event: build " + String.valueOf(event.isBuildSuccessful() ? "successful" : "failed"));
         if (checkSourceProject(event.getProject())) {
-            final Notification notification = new Notification("cruisecontrol.result.event", this, nextSequence());
+            final Notification notification = new Notification(RESULT_NOTIFICATION, this, nextSequence());
             notification.setUserData((event.isBuildSuccessful()) ? Boolean.TRUE : Boolean.FALSE);
             sendNotification(notification);
         }
     }
 
+    public void addNotificationListener(final NotificationListener listener, final NotificationFilter filter,
+                                        final Object handback) {
+        super.addNotificationListener(listener, filter, handback);
+        synchronized (listeners) {
+            listeners.add(listener);
+            if (outputPush == null) {
+                pushedOutputID = null;
+                outputPush = OUTPUT_PUSHER.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        // an exception escaping would cancel the push for good
+                        try {
+                            pushOutput();
+                        } catch (RuntimeException e) {
+                            LOG.error("Could not push the live output of " + getProjectName(), e);
+                        }
+                    }
+                }, OUTPUT_PUSH_INTERVAL, OUTPUT_PUSH_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    public void removeNotificationListener(final NotificationListener listener) throws ListenerNotFoundException {
+        super.removeNotificationListener(listener);
+        synchronized (listeners) {
+            listeners.removeAll(Collections.singleton(listener));
+            stopPushIfUnheard();
+        }
+    }
+
+    public void removeNotificationListener(final NotificationListener listener, final NotificationFilter filter,
+                                           final Object handback) throws ListenerNotFoundException {
+        super.removeNotificationListener(listener, filter, handback);
+        synchronized (listeners) {
+            listeners.remove(listener);
+            stopPushIfUnheard();
+        }
+    }
+
+    private void stopPushIfUnheard() {
+        if (listeners.isEmpty() && outputPush != null) {
+            outputPush.cancel(false);
+            outputPush = null;
+        }
+    }
+
+    /**
+     * Sends the lines added to the live output since the last call, starting over when the
+     * output logger changed. The first call after subscription only tells where the output stands.
+     */
+    void pushOutput() {
+        final BuildOutputLogger logger = BuildOutputLoggerManager.INSTANCE.lookup(getProjectName());
+        final String outputID = logger.getID();
+        final int firstLine;
+        final String[] lines;
+        synchronized (listeners) {
+            if (outputID.equals(pushedOutputID)) {
+                firstLine = nextPushedLine;
+                lines = logger.retrieveLines(firstLine);
+                if (lines.length == 0) {
+                    return;
+                }
+            } else if (pushedOutputID == null) {
+                // lines there already are left for listeners to read by getBuildOutput()
+                firstLine = logger.getLineCount();
+                lines = new String[0];
+            } else {
+                firstLine = 0;
+                lines = logger.retrieveLines(0);
+            }
+            pushedOutputID = outputID;
+            nextPushedLine = firstLine + lines.length;
+        }
+
+        final Notification notification = new Notification(OUTPUT_NOTIFICATION, this, nextSequence());
+        try {
+            notification.setUserData(new CompositeDataSupport(OUTPUT_TYPE, OUTPUT_ITEMS,
+                    new Object[] {outputID, firstLine, lines}));
+        } catch (OpenDataException e) {
+            LOG.error("failed to push live output of " + getProjectName(), e);
+            return;
+        }
+        sendNotification(notification);
+    }
+
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        final String notificationClass = Notification.class.getName();
+        return new MBeanNotificationInfo[] {
+            new MBeanNotificationInfo(new String[] {PROGRESS_NOTIFICATION}, notificationClass,
+                    "Build progress of the project, the user data is the name of the new state"),
+            new MBeanNotificationInfo(new String[] {RESULT_NOTIFICATION}, notificationClass,
+                    "Result of a build of the project, the user data is true for a successful build"),
+            new MBeanNotificationInfo(new String[] {OUTPUT_NOTIFICATION}, notificationClass,
+                    "Lines added to the live output of the project, pushed while there are listeners")
+        };
+    }
+
+    private static CompositeType createOutputType() {
+        try {
+            return new CompositeType("LiveOutput", "Lines added to the live output of a project", OUTPUT_ITEMS,
+                    new String[] {"ID of the output logger, changes when the output starts over",
+                            "Number of the first line sent", "Lines of output"},
+                    new OpenType[] {SimpleType.STRING, SimpleType.INTEGER,
+                            new ArrayType<String[]>(1, SimpleType.STRING)});
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private boolean checkSourceProject(final Project sourceProject) {
         boolean projectsMatch = false;
         if (project == sourceProject) {
@@ -233,6 +382,10 @@ public class ProjectController extends NotificationBroadcasterSupport
         return project.getStatusWithQueuePosition();
     }
 
+    public Map<String, Long> getPublisherTimes() {
+        return project.getPublisherTimes();
+    }
+
     private void log(final String message) {
         LOG.info(project.getName() + " Controller: " + message);
     }
@@ -139,6 +139,9 @@ public class ProjectControllerMBeanDescription extends MBeanDescriptionAdapter {
 
         ATTR_DESCRIPTIONS.put("Status", "The current status of the project");
 
+        ATTR_DESCRIPTIONS.put("PublisherTimes",
+                              "Wall time in milliseconds each publisher took during the last publishing stage");
+
         ATTR_DESCRIPTIONS.put("Paused", "Indicates if the project is paused");
 
         ATTR_DESCRIPTIONS.put("BuildStartTime",
@@ -170,6 +170,12 @@ public interface ProjectMBean {
      */
     public String getStatus();
 
+    /**
+     * @return the wall time in milliseconds each publisher took during the last publishing stage,
+     * keyed by publisher class name
+     */
+    public Map<String, Long> getPublisherTimes();
+
     /**
      * @return the commit message includes the commiter and message
      */
@@ -44,7 +44,7 @@ import org.jdom2.Attribute;
 import org.jdom2.Element;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.builders.AbstractAntBuilderDelegate;
 import net.sourceforge.cruisecontrol.gendoc.annotations.DescriptionFile;
 import net.sourceforge.cruisecontrol.gendoc.annotations.ExamplesFile;
@@ -61,7 +61,7 @@ import net.sourceforge.cruisecontrol.util.XMLLogHelper;
  */
 @DescriptionFile
 @ExamplesFile
-public class AntPublisher extends AbstractAntBuilderDelegate implements Publisher {
+public class AntPublisher extends AbstractAntBuilderDelegate implements ReadOnlyLogPublisher {
 
     private static final Logger LOG = Logger.getLogger(AntPublisher.class);
 
@@ -37,7 +37,7 @@
 package net.sourceforge.cruisecontrol.publishers;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.gendoc.annotations.Default;
 import net.sourceforge.cruisecontrol.gendoc.annotations.Description;
 import net.sourceforge.cruisecontrol.gendoc.annotations.Optional;
@@ -57,7 +57,7 @@ import java.io.IOException;
 
 @Description("Copies build products to unique destination directory based on "
         + "the build timestamp.")
-public class ArtifactsPublisher implements Publisher {
+public class ArtifactsPublisher implements ReadOnlyLogPublisher {
 
     private String destDir;
     private String targetDirectory;
@@ -63,7 +63,7 @@ import javax.mail.internet.MimeMessage;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.Modification;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.publishers.email.EmailMapper;
 import net.sourceforge.cruisecontrol.publishers.email.EmailMapperHelper;
 import net.sourceforge.cruisecontrol.publishers.email.EmailMapping;
@@ -86,7 +86,7 @@ import org.masukomi.aspirin.core.MailQue;
  * 
  * @author alden almagro, ThoughtWorks, Inc. 2002
  */
-public abstract class EmailPublisher implements Publisher {
+public abstract class EmailPublisher implements ReadOnlyLogPublisher {
     private static final Logger LOG = Logger.getLogger(EmailPublisher.class);
 
     private String mailHost;
@@ -37,7 +37,7 @@
 package net.sourceforge.cruisecontrol.publishers;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.util.Commandline;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 
@@ -51,7 +51,7 @@ import java.io.IOException;
  *
  * @author <a href="orenmnero@sourceforge.net">Oren Miller</a>
  */
-public class ExecutePublisher implements Publisher {
+public class ExecutePublisher implements ReadOnlyLogPublisher {
 
     private static final Logger LOG = Logger.getLogger(ExecutePublisher.class);
 
@@ -40,7 +40,7 @@ import java.io.File;
 import java.util.Vector;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.util.AbstractFTPClass;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
@@ -56,7 +56,7 @@ import org.jdom2.Element;
  *
  * @author <a href="groboclown@users.sourceforge.net">Matt Albrecht</a>
  */
-public class FTPPublisher extends AbstractFTPClass implements Publisher {
+public class FTPPublisher extends AbstractFTPClass implements ReadOnlyLogPublisher {
 
     private static final Logger LOG = Logger.getLogger(FTPPublisher.class);
 
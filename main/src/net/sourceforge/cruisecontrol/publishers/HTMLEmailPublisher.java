@@ -61,6 +61,7 @@ import net.sourceforge.cruisecontrol.gendoc.annotations.Description;
 import net.sourceforge.cruisecontrol.gendoc.annotations.ManualChildName;
 import net.sourceforge.cruisecontrol.gendoc.annotations.Optional;
 import net.sourceforge.cruisecontrol.gendoc.annotations.Title;
+import net.sourceforge.cruisecontrol.util.TemplatesCache;
 import net.sourceforge.cruisecontrol.util.Util;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
@@ -480,11 +481,9 @@ public class HTMLEmailPublisher extends EmailPublisher {
     protected String transform(final File inFile) throws TransformerException, IOException {
         final StringBuilder messageBuffer = new StringBuilder();
 
-        final TransformerFactory tFactory = TransformerFactory.newInstance();
-
         if (xslFile != null) {
             final File xslFileAsFile = new File(xslFile);
-            appendTransform(inFile, messageBuffer, tFactory, xslFileAsFile);
+            appendTransform(inFile, messageBuffer, xslFileAsFile);
         } else {
             appendHeader(messageBuffer);
             messageBuffer.append(createLinkLine(inFile.getName()));
@@ -494,7 +493,7 @@ public class HTMLEmailPublisher extends EmailPublisher {
             for (final String fileName : fileNames) {
                 final File xsl = new File(xslDirectory, fileName);
                 messageBuffer.append("<p>\n");
-                appendTransform(inFile, messageBuffer, tFactory, xsl);
+                appendTransform(inFile, messageBuffer, xsl);
             }
 
             appendFooter(messageBuffer);
@@ -532,19 +531,34 @@ public class HTMLEmailPublisher extends EmailPublisher {
         return linkLine.toString();
     }
 
-    protected void appendTransform(final File inFile, final StringBuilder messageBuffer,
-                                   final TransformerFactory tFactory, final File xsl) {
+    protected void appendTransform(final File inFile, final StringBuilder messageBuffer, final File xsl) {
         try {
-            final String result = transformFile(new StreamSource(inFile), tFactory, new StreamSource(xsl));
+            final String result = transformFile(new StreamSource(inFile), TemplatesCache.newTransformer(xsl));
             messageBuffer.append(result);
         } catch (Exception e) {
             LOG.error("error transforming with xslFile " + xsl.getName(), e);
         }
     }
+
+    /**
+     * @deprecated Use {@link #appendTransform(File, StringBuilder, File)} instead, the stylesheet is compiled once
+     * and cached rather than compiled by the given factory on every call, which is ignored.
+     */
+    @Deprecated
+    protected void appendTransform(final File inFile, final StringBuilder messageBuffer,
+                                   final TransformerFactory tFactory, final File xsl) {
+        appendTransform(inFile, messageBuffer, xsl);
+    }
+
     protected String transformFile(final Source logFile, final TransformerFactory tFactory, final Source xsl)
         throws IOException, TransformerException {
 
-        final Transformer transformer = tFactory.newTransformer(xsl);
+        return transformFile(logFile, tFactory.newTransformer(xsl));
+    }
+
+    protected String transformFile(final Source logFile, final Transformer transformer)
+        throws IOException, TransformerException {
+
         final CharArrayWriter writer = new CharArrayWriter();
         if (!xsltParameters.isEmpty()) {
             for (final Property param : xsltParameters) {
@@ -32,7 +32,7 @@
  ********************************************************************************/
 package net.sourceforge.cruisecontrol.publishers;
 
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.gendoc.annotations.ManualChildName;
 import net.sourceforge.cruisecontrol.util.NamedXPathAwareChild;
@@ -59,7 +59,7 @@ import java.util.Set;
  *
  * @author <a href="jonathan@indiekid.org">Jonathan Gerrish</a>
  */
-public class HTTPPublisher implements Publisher {
+public class HTTPPublisher implements ReadOnlyLogPublisher {
 
     private static final Logger LOG = Logger.getLogger(ExecutePublisher.class);
 
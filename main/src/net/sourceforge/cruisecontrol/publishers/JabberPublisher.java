@@ -37,7 +37,7 @@
 package net.sourceforge.cruisecontrol.publishers;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
 import org.apache.log4j.Logger;
@@ -57,7 +57,7 @@ import org.jivesoftware.smack.XMPPException;
  * @see LinkJabberPublisher
  */
 
-public abstract class JabberPublisher implements Publisher {
+public abstract class JabberPublisher implements ReadOnlyLogPublisher {
 
     private static final Logger LOG = Logger.getLogger(JabberPublisher.class);
 
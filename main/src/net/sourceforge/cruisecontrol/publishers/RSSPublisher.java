@@ -48,7 +48,7 @@ import org.apache.log4j.Logger;
 import org.jdom2.Element;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 import net.sourceforge.cruisecontrol.util.IO;
@@ -66,7 +66,7 @@ import net.sourceforge.cruisecontrol.publishers.rss.Item;
  * Licensed under the CruiseControl BSD license
  * @author Patrick Conant
  */
-public class RSSPublisher implements Publisher {
+public class RSSPublisher implements ReadOnlyLogPublisher {
 
     private static final Logger LOG = Logger.getLogger(RSSPublisher.class);
 
@@ -37,7 +37,7 @@
 package net.sourceforge.cruisecontrol.publishers;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.util.Commandline;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 import net.sourceforge.cruisecontrol.util.Commandline.Argument;
@@ -56,7 +56,7 @@ import java.io.InputStreamReader;
  * @author <a href="orenmnero@sourceforge.net">Oren Miller</a>
  */
 
-public class SCPPublisher implements Publisher {
+public class SCPPublisher implements ReadOnlyLogPublisher {
 
     private static final Logger LOG = Logger.getLogger(SCPPublisher.class);
 
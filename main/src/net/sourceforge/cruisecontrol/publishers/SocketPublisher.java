@@ -37,7 +37,7 @@
 package net.sourceforge.cruisecontrol.publishers;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.gendoc.annotations.SkipDoc;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
@@ -52,7 +52,7 @@ import org.apache.log4j.Logger;
 /**
  * @author <a href="mailto:dcotterill@thoughtworks.com">Darren Cotterill</a>
  */
-public class SocketPublisher implements Publisher {
+public class SocketPublisher implements ReadOnlyLogPublisher {
     private static final Logger LOG = Logger.getLogger(SocketPublisher.class);
 
     private final SocketFactory factory;
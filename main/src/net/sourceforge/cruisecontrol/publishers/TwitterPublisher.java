@@ -1,14 +1,14 @@
 package net.sourceforge.cruisecontrol.publishers;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import static net.sourceforge.cruisecontrol.util.ValidationHelper.assertIsSet;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
 import org.jdom2.Element;
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
 
-public class TwitterPublisher implements Publisher {
+public class TwitterPublisher implements ReadOnlyLogPublisher {
     private String username;
     private String password;
     private final TwitterProxy proxy;
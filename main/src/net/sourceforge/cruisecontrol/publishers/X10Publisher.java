@@ -47,7 +47,7 @@ import com.jpeterson.x10.event.X10Event;
 import com.jpeterson.x10.module.CM11A;
 import com.jpeterson.x10.module.CM17A;
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
 import org.apache.log4j.Logger;
@@ -126,7 +126,7 @@ import java.io.IOException;
  * @author <a href="mailto:pauljulius@users.sourceforge.net">Paul Julius</a>
  * @since August 26 2004
  */
-public class X10Publisher implements Publisher {
+public class X10Publisher implements ReadOnlyLogPublisher {
     private static final Logger LOG = Logger.getLogger(X10Publisher.class);
 
     private String houseCode;
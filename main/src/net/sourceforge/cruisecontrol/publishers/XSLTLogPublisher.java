@@ -37,10 +37,11 @@
 package net.sourceforge.cruisecontrol.publishers;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
-import net.sourceforge.cruisecontrol.Publisher;
+import net.sourceforge.cruisecontrol.ReadOnlyLogPublisher;
 import net.sourceforge.cruisecontrol.util.ValidationHelper;
 import net.sourceforge.cruisecontrol.util.XMLLogHelper;
 import net.sourceforge.cruisecontrol.util.IO;
+import net.sourceforge.cruisecontrol.util.TemplatesCache;
 import net.sourceforge.cruisecontrol.util.Util;
 import org.apache.log4j.Logger;
 import org.jdom2.Element;
@@ -48,11 +49,8 @@ import org.jdom2.transform.JDOMSource;
 
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -63,7 +61,7 @@ import java.io.OutputStream;
  *
  * @author David Cole
  */
-public class XSLTLogPublisher implements Publisher {
+public class XSLTLogPublisher implements ReadOnlyLogPublisher {
     private static final Logger LOG = Logger.getLogger(XSLTLogPublisher.class);
 
     private String directory;
@@ -186,14 +184,12 @@ public class XSLTLogPublisher implements Publisher {
      * @throws CruiseControlException
      */
     protected void writeFile(Element cruisecontrolLog, String path) throws CruiseControlException {
-        FileInputStream xslFileStream = null;
         OutputStream out = null;
         try {
             //Make sure that the xsltFile exists
-            try {
-                xslFileStream = new FileInputStream(this.xsltFile);
-            } catch (IOException ioe) {
-                throw new CruiseControlException("Error reading the xsltFile: " + this.xsltFile, ioe);
+            final File xsl = new File(this.xsltFile);
+            if (!xsl.isFile() || !xsl.canRead()) {
+                throw new CruiseControlException("Error reading the xsltFile: " + this.xsltFile);
             }
 
             //construct a FileWriter to the outputFile path location
@@ -203,9 +199,8 @@ public class XSLTLogPublisher implements Publisher {
                 throw new CruiseControlException("Unable to write to the file location: " + path);
             }
 
-            //Prepare the transformer
-            TransformerFactory tFactory = TransformerFactory.newInstance();
-            Transformer transformer = tFactory.newTransformer(new StreamSource(xslFileStream));
+            //Prepare the transformer, the compiled stylesheet is shared between builds
+            Transformer transformer = TemplatesCache.newTransformer(xsl);
 
             //cruisecontrolLog.get
             XMLLogHelper helper = new XMLLogHelper(cruisecontrolLog);
@@ -221,7 +216,6 @@ public class XSLTLogPublisher implements Publisher {
         } catch (Exception ioe) {
             throw new CruiseControlException("An unexpected exception occurred, unable to publish the log file.", ioe);
         } finally {
-            IO.close(xslFileStream);
             IO.close(out);
         }
     }
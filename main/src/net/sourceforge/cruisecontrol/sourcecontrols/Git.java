@@ -38,7 +38,7 @@ package net.sourceforge.cruisecontrol.sourcecontrols;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.Modification;
-import net.sourceforge.cruisecontrol.SourceControl;
+import net.sourceforge.cruisecontrol.IncrementalSourceControl;
 import net.sourceforge.cruisecontrol.util.Commandline;
 import net.sourceforge.cruisecontrol.util.IO;
 import net.sourceforge.cruisecontrol.util.StreamLogger;
@@ -66,7 +66,7 @@ import java.util.regex.Matcher;
  * @see <a href="http://git.or.cz/">git.or.cz</a>
  * @author <a href="rschiele@gmail.com">Robert Schiele</a>
  */
-public class Git implements SourceControl {
+public class Git implements IncrementalSourceControl {
     private static final Logger LOG = Logger.getLogger(Git.class);
     private static final Pattern COMMITPATTERN =
     Pattern.compile("commit ([0-9a-f]{40})");
@@ -83,6 +83,7 @@ public class Git implements SourceControl {
     private final SourceControlProperties props =
     new SourceControlProperties();
     private String lwc;
+    private String highWaterMark;
 
     public Map<String, String> getProperties() {
         return props.getPropertiesAndReset();
@@ -132,7 +133,23 @@ public class Git implements SourceControl {
      * retrieve the changes.
      */
     public List<Modification> getModifications(final Date from, final Date to) {
+        return getModifications(gitRevision(from), to);
+    }
+
+    /**
+     * Returns the commits reachable from the branch as of now that are not reachable from the given commit.
+     */
+    public List<Modification> getModificationsSince(final String commitId, final Date lastBuild, final Date now) {
+        return getModifications(commitId, now);
+    }
+
+    public String getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    private List<Modification> getModifications(final String from, final Date to) {
         final List<Modification> mods = new ArrayList<Modification>();
+        highWaterMark = null;
         final Commandline cmd = new Commandline();
         cmd.setExecutable("git");
         try {
@@ -144,14 +161,14 @@ public class Git implements SourceControl {
         cmd.createArgument("log");
         cmd.createArgument("-p");
         cmd.createArgument("--pretty=raw");
-        cmd.createArgument(gitRevision(from) + ".." + gitRevision(to));
+        cmd.createArgument(from + ".." + gitRevision(to));
         LOG.debug("Executing command: " + cmd);
         try {
             final Process p = cmd.execute();
             final Thread stderr = new
                 Thread(StreamLogger.getWarnPumper(LOG, p.getErrorStream()));
             stderr.start();
-            parseLog(new InputStreamReader(p.getInputStream(), "UTF-8"),
+            highWaterMark = parseLog(new InputStreamReader(p.getInputStream(), "UTF-8"),
                      mods, props);
             p.waitFor();
             stderr.join();
@@ -162,11 +179,15 @@ public class Git implements SourceControl {
         return mods;
     }
 
-    static void parseLog(final Reader grd, final List<Modification> mods, final SourceControlProperties props)
+    /**
+     * @return the id of the latest commit found in the log, or null if there was none
+     */
+    static String parseLog(final Reader grd, final List<Modification> mods, final SourceControlProperties props)
         throws IOException {
         final BufferedReader rd = new BufferedReader(grd);
         boolean diffmode = false;
         Modification mod = null;
+        String latestCommitId = null;
         while (true) {
             String l = rd.readLine();
             if (l == null) {
@@ -194,7 +215,8 @@ public class Git implements SourceControl {
                 /* If this is the latest modification store commit id as
                    property. */
                 if (mod == null) {
-                    props.put("gitcommitid", matcher.group(1));
+                    latestCommitId = matcher.group(1);
+                    props.put("gitcommitid", latestCommitId);
                 }
                 mod = new Modification("git");
                 mods.add(mod);
@@ -232,6 +254,7 @@ public class Git implements SourceControl {
                 //continue;  // 'contiue' is unnecessary as last statement in loop
             }
         }
+        return latestCommitId;
     }
 
     static String gitRevision(Date dt) {
@@ -59,7 +59,7 @@ import java.util.regex.Pattern;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.Modification;
-import net.sourceforge.cruisecontrol.SourceControl;
+import net.sourceforge.cruisecontrol.IncrementalSourceControl;
 import net.sourceforge.cruisecontrol.util.Commandline;
 import net.sourceforge.cruisecontrol.util.IO;
 import net.sourceforge.cruisecontrol.util.StreamLogger;
@@ -78,7 +78,7 @@ import org.jdom2.input.sax.XMLReaders;
  * @author <a href="jerome@coffeebreaks.org">Jerome Lacoste</a>
  * @see <a href="http://www.selenic.com/mercurial">Mercurial web site</a>
  */
-public class Mercurial implements SourceControl {
+public class Mercurial implements IncrementalSourceControl {
     
     static final DateFormat HG_DATE_PARSER = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss Z");
 
@@ -91,6 +91,7 @@ public class Mercurial implements SourceControl {
      */
     private String localWorkingCopy = ".";
     private String hgCommand = INCOMING_CMD;
+    private String highWaterMark;
     
     private static final String INCOMING_CMD = "incoming"; 
     private static final String LOG_CMD = "log"; 
@@ -178,9 +179,63 @@ public class Mercurial implements SourceControl {
             LOG.error("Error executing mercurial history command " + command, e);
         }
         fillPropertiesIfNeeded(modifications);
+        highWaterMark = getMaxRevision(modifications);
         return modifications;
     }
 
+    /**
+     * Returns the changesets after the given local revision number, or null when using "incoming", as
+     * the revision numbers of the remote repository aren't known locally.
+     */
+    public List<Modification> getModificationsSince(final String revision, final Date lastBuildDate,
+                                                    final Date now) {
+        if (INCOMING_CMD.equals(hgCommand)) {
+            return null;
+        }
+
+        final int since = Integer.parseInt(revision);
+        final List<Modification> modifications = new ArrayList<Modification>();
+        Commandline command = null;
+        try {
+            command = buildHistoryCommand(lastBuildDate, now);
+            command.createArguments("-r", revision + ":tip");
+
+            for (final Modification modification : execHistoryCommand(command)) {
+                if (getRevisionNumber(modification) > since) {
+                    modifications.add(modification);
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Error executing mercurial history command " + command, e);
+        }
+        fillPropertiesIfNeeded(modifications);
+        highWaterMark = getMaxRevision(modifications);
+        return modifications;
+    }
+
+    public String getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    static String getMaxRevision(final List<Modification> modifications) {
+        if (modifications.isEmpty()) {
+            return null;
+        }
+        int maxRevision = 0;
+        for (final Modification modification : modifications) {
+            maxRevision = Math.max(maxRevision, getRevisionNumber(modification));
+        }
+        return String.valueOf(maxRevision);
+    }
+
+    /**
+     * @return the local revision number of a "rev:node" revision
+     */
+    private static int getRevisionNumber(final Modification modification) {
+        final String revision = modification.revision;
+        return Integer.parseInt(revision.substring(0, revision.indexOf(':')));
+    }
+
     private String getMercurialVersion() {
         Commandline command = null;
         try {
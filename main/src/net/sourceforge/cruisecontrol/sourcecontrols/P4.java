@@ -54,7 +54,7 @@ import java.util.StringTokenizer;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.Modification;
-import net.sourceforge.cruisecontrol.SourceControl;
+import net.sourceforge.cruisecontrol.IncrementalSourceControl;
 import net.sourceforge.cruisecontrol.util.CommandExecutor;
 import net.sourceforge.cruisecontrol.util.Commandline;
 import net.sourceforge.cruisecontrol.util.DiscardConsumer;
@@ -83,7 +83,7 @@ import org.jdom2.Element;
  * Licensed under the CruiseControl BSD license
  * @author John Lussmyer
  */
-public class P4 implements SourceControl {
+public class P4 implements IncrementalSourceControl {
 
     private static final Logger LOG = Logger.getLogger(P4.class);
 
@@ -97,6 +97,7 @@ public class P4 implements SourceControl {
 
     private final SimpleDateFormat p4RevisionDateFormatter = new SimpleDateFormat("yyyy/MM/dd:HH:mm:ss");
     private final SourceControlProperties properties = new SourceControlProperties();
+    private String highWaterMark;
 
     private static final String SERVER_DATE = "Server date: ";
     private static final String P4_SERVER_DATE_FORMAT = "yyyy/MM/dd HH:mm:ss";
@@ -168,13 +169,15 @@ public class P4 implements SourceControl {
      *         method returns an empty list.
      */
     public List<Modification> getModifications(final Date lastBuild, final Date now) {
+        highWaterMark = null;
         List<Modification> mods = new ArrayList<Modification>();
         try {
-            final String[] changelistNumbers = collectChangelistSinceLastBuild(lastBuild, now);
+            final String[] changelistNumbers = collectChangelists(buildChangesCommand(lastBuild, now));
             if (changelistNumbers.length == 0) {
                 return mods;
             }
             mods = describeAllChangelistsAndBuildOutput(changelistNumbers);
+            highWaterMark = getMaxChangelist(changelistNumbers);
         } catch (Exception e) {
             LOG.error("Log command failed to execute succesfully", e);
         }
@@ -186,6 +189,54 @@ public class P4 implements SourceControl {
         return mods;
     }
 
+    /**
+     * Returns the changelists submitted after the given one.
+     */
+    public List<Modification> getModificationsSince(final String changelist, final Date lastBuild, final Date now) {
+        highWaterMark = null;
+        List<Modification> mods = new ArrayList<Modification>();
+        try {
+            final String[] changelistNumbers = newerChangelists(
+                    collectChangelists(buildChangesCommand(changelist, now)), changelist);
+            if (changelistNumbers.length == 0) {
+                return mods;
+            }
+            mods = describeAllChangelistsAndBuildOutput(changelistNumbers);
+            highWaterMark = getMaxChangelist(changelistNumbers);
+        } catch (Exception e) {
+            LOG.error("Log command failed to execute succesfully", e);
+        }
+
+        if (!mods.isEmpty()) {
+            properties.modificationFound();
+        }
+
+        return mods;
+    }
+
+    public String getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    static String[] newerChangelists(final String[] changelistNumbers, final String changelist) {
+        final int since = Integer.parseInt(changelist);
+        final List<String> newer = new ArrayList<String>();
+        for (final String number : changelistNumbers) {
+            if (Integer.parseInt(number) > since) {
+                newer.add(number);
+            }
+        }
+        return newer.toArray(new String[newer.size()]);
+    }
+
+    static String getMaxChangelist(final String[] changelistNumbers) {
+        int max = 0;
+        for (final String number : changelistNumbers) {
+            max = Math.max(max, Integer.parseInt(number));
+        }
+        return String.valueOf(max);
+    }
+
     private List<Modification> describeAllChangelistsAndBuildOutput(final String[] changelistNumbers) throws Exception {
         final Commandline command = buildDescribeCommand(changelistNumbers);
         LOG.debug(command.toString());
@@ -278,8 +329,7 @@ public class P4 implements SourceControl {
         return (emailaddr);
     }
 
-    private String[] collectChangelistSinceLastBuild(final Date lastBuild, final Date now) throws Exception {
-        final Commandline command = buildChangesCommand(lastBuild, now);
+    private String[] collectChangelists(final Commandline command) throws Exception {
         LOG.debug(command.toString());
         final Process p = command.execute();
 
@@ -430,34 +480,45 @@ public class P4 implements SourceControl {
      */
     public Commandline buildChangesCommand(Date lastBuildTime, Date now)
             throws CruiseControlException {
+        final int offset = getServerTimeOffset();
+        final Date from = new Date(lastBuildTime.getTime() + offset);
+        return buildChangesCommandFrom("@" + p4RevisionDateFormatter.format(from), new Date(now.getTime() + offset));
+    }
 
-        // If the Perforce server time is different from the CruiseControl
-        // server time, correct the parameter dates for the difference.
-        if (correctForServerTime) {
-            int offset = (int) calculateServerTimeOffset();
-            final Calendar cal = Calendar.getInstance();
-
-            cal.setTime(lastBuildTime);
-            cal.add(Calendar.MILLISECOND, offset);
-            lastBuildTime = cal.getTime();
-
-            cal.setTime(now);
-            cal.add(Calendar.MILLISECOND, offset);
-            now = cal.getTime();
-        } else {
-            LOG.debug("No server time offset determined.");
-        }
+    /**
+     * p4 -s [-c client] [-p port] [-u user] changes -s submitted [view@changelist,@now]
+     *
+     * @param changelist the changelist to start from, which is included in the output
+     * @param now current build date
+     * @return p4 -s [-c client] [-p port] [-u user] changes -s submitted [view@changelist,@now]
+     * @throws CruiseControlException if somtething breaks
+     */
+    public Commandline buildChangesCommand(String changelist, Date now) throws CruiseControlException {
+        return buildChangesCommandFrom("@" + changelist, new Date(now.getTime() + getServerTimeOffset()));
+    }
 
+    private Commandline buildChangesCommandFrom(final String from, final Date now) {
         final Commandline commandLine = buildBaseP4Command();
 
         commandLine.createArgument("changes");
         commandLine.createArguments("-s", "submitted");
-        commandLine.createArgument(p4View + "@" + p4RevisionDateFormatter.format(lastBuildTime) + ",@"
-                + p4RevisionDateFormatter.format(now));
+        commandLine.createArgument(p4View + from + ",@" + p4RevisionDateFormatter.format(now));
 
         return commandLine;
     }
 
+    /**
+     * If the Perforce server time is different from the CruiseControl
+     * server time, the dates passed to Perforce are corrected for the difference.
+     */
+    private int getServerTimeOffset() throws CruiseControlException {
+        if (correctForServerTime) {
+            return (int) calculateServerTimeOffset();
+        }
+        LOG.debug("No server time offset determined.");
+        return 0;
+    }
+
     /**
      * @param changelistNumbers change list numbers
      * @return p4 -s [-c client] [-p port] [-u user] describe -s [change number]
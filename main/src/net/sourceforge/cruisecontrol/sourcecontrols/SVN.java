@@ -38,7 +38,7 @@ package net.sourceforge.cruisecontrol.sourcecontrols;
 
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.Modification;
-import net.sourceforge.cruisecontrol.SourceControl;
+import net.sourceforge.cruisecontrol.IncrementalSourceControl;
 import net.sourceforge.cruisecontrol.util.Commandline;
 import net.sourceforge.cruisecontrol.util.IO;
 import net.sourceforge.cruisecontrol.util.StreamLogger;
@@ -80,7 +80,7 @@ import java.util.TimeZone;
  * @see    <a href="http://subversion.tigris.org/">subversion.tigris.org</a>
  * @author <a href="etienne.studer@canoo.com">Etienne Studer</a>
  */
-public class SVN implements SourceControl {
+public class SVN implements IncrementalSourceControl {
 
     /** serialVersionUID */
     private static final long serialVersionUID = -144583234813298598L;
@@ -105,6 +105,8 @@ public class SVN implements SourceControl {
 
     private boolean useLocalRevision = false;
 
+    private String highWaterMark;
+
     public Map<String, String> getProperties() {
         return properties.getPropertiesAndReset();
     }
@@ -263,9 +265,74 @@ public class SVN implements SourceControl {
             LOG.error("Error executing svn log command " + command, e);
         }
         fillPropertiesIfNeeded(modifications);
+        // externals may live in other repositories, so their revisions can't be compared with ours
+        highWaterMark = checkExternals ? null : getMaxRevision(modifications);
         return modifications;
     }
 
+    /**
+     * Returns the modifications committed after the given revision, or null when externals are checked
+     * as those can't be tracked by a single revision, and when the incremental query fails so the whole
+     * range since the last build is queried again.
+     */
+    public List<Modification> getModificationsSince(final String revision, final Date lastBuild, final Date now) {
+        if (checkExternals) {
+            return null;
+        }
+
+        final int since;
+        try {
+            since = Integer.parseInt(revision);
+        } catch (NumberFormatException e) {
+            LOG.warn("Unexpected revision " + revision + ", querying all changes since the last build");
+            return null;
+        }
+        final List<Modification> modifications = new ArrayList<Modification>();
+        Commandline command = null;
+        try {
+            final String endRevision = useLocalRevision ? execInfoCommand(buildInfoCommand(null)) : formatSVNDate(now);
+            // the revision itself is requested too, as a range starting after HEAD is an error
+            command = buildHistoryCommand(revision, endRevision);
+            for (final Modification modification : execHistoryCommand(command, lastBuild, null)) {
+                if (Integer.parseInt(modification.revision) > since) {
+                    modifications.add(modification);
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Error executing svn log command " + command + ", querying all changes since the last build", e);
+            return null;
+        }
+        if (!modifications.isEmpty()) {
+            fillPropertiesIfNeeded(modifications);
+        }
+        highWaterMark = getMaxRevision(modifications);
+        return modifications;
+    }
+
+    public String getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * @return the newest of the revisions, or null if there are none or one of them isn't a number, in which
+     * case the changes can't be queried incrementally
+     */
+    static String getMaxRevision(final List<Modification> modifications) {
+        if (modifications.isEmpty()) {
+            return null;
+        }
+        int maxRevision = 0;
+        for (final Modification modification : modifications) {
+            try {
+                maxRevision = Math.max(maxRevision, Integer.parseInt(modification.revision));
+            } catch (NumberFormatException e) {
+                LOG.warn("Unexpected revision " + modification.revision + ", not querying changes incrementally");
+                return null;
+            }
+        }
+        return String.valueOf(maxRevision);
+    }
+
     /**
      * Generates the command line for the svn propget command.
      *
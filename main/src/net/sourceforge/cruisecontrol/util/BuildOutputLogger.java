@@ -38,26 +38,47 @@ package net.sourceforge.cruisecontrol.util;
 
 import net.sourceforge.cruisecontrol.LiveOutputReader;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.PrintStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
+import org.apache.log4j.Logger;
+
 /**
  * Log all consumed lines to a file, and also provide methods to read lines from that file.
  * Can be used to log all sysout and syserr to a file.
+ * <p>
+ * Lines are buffered and appended to the file in UTF-8, whole lines at a time, so readers of the file
+ * never see partial lines; the file is only open while the buffer is being written out, so it is never
+ * left open once the build is over, and lines keep going to the file even when another process
+ * (like the forked Ant's {@code AntOutputLogger}) deletes and recreates it. A sparse index of line
+ * offsets lets {@link #retrieveLines(int)} start reading close to the requested line instead of
+ * at the beginning of the file.
  */
 public class BuildOutputLogger implements StreamConsumer, LiveOutputReader, Serializable {
 
     private static final long serialVersionUID = -1594678930828433470L;
+    private static final Logger LOG = Logger.getLogger(BuildOutputLogger.class);
 
     public static final int MAX_LINES = 1000;
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes(CHARSET);
+    private static final int BUFFER_SIZE = 8192;
+
     private final File data;
 
     /** A unique (for this VM) identifying string for this logger instance. */
@@ -65,13 +86,20 @@ public class BuildOutputLogger implements StreamConsumer, LiveOutputReader, Seri
     /** Counter used to change the id after data reset. */
     private long resetCount;
 
+    /** Lines consumed but not appended to the file yet, flushed before the file is read. */
+    private transient OutputStream out;
+    /** Offsets of every {@link LineIndex#INTERVAL}th line in the data file. */
+    private transient LineIndex index;
+
     public BuildOutputLogger(File outputFile) {
         data = outputFile;
         // use parent hashCode(), as this class overrides and is not unique per instance.
         id = "" + super.hashCode();
     }
 
-    public void clear() {
+    public synchronized void clear() {
+        flush();
+        index = null;
         if (noDataFile()) { return; }
         data.delete();
 
@@ -85,15 +113,36 @@ public class BuildOutputLogger implements StreamConsumer, LiveOutputReader, Seri
         if (data == null) { throw new RuntimeException("No log file specified"); }
 
         try {
-            final PrintStream out = new PrintStream(new FileOutputStream(data, true));
-            try {
-                out.println(line);
-            } finally {
-                out.close();
+            if (out == null) {
+                out = new BufferedOutputStream(new AppendingOutputStream(data), BUFFER_SIZE);
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+            // one write per line: the buffer is only ever written out at a line boundary
+            final byte[] text = line.getBytes(CHARSET);
+            final byte[] bytes = new byte[text.length + LINE_SEPARATOR.length];
+            System.arraycopy(text, 0, bytes, 0, text.length);
+            System.arraycopy(LINE_SEPARATOR, 0, bytes, text.length, LINE_SEPARATOR.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            LOG.warn("failed to write live output to " + data.getAbsolutePath(), e);
+            out = null;
+        }
+    }
+
+    /**
+     * Appends the lines consumed so far to the file, which is otherwise only done once enough lines were
+     * buffered, or before lines are retrieved. Nothing is kept open afterwards, as the file is only opened
+     * for the duration of each write.
+     */
+    public synchronized void flush() {
+        if (out == null) {
+            return;
         }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            LOG.warn("failed to write live output to " + data.getAbsolutePath(), e);
+        }
+        out = null;
     }
 
 
@@ -117,12 +166,33 @@ public class BuildOutputLogger implements StreamConsumer, LiveOutputReader, Seri
      * firstLine parameter set back to zero. This will allow the client to live output when the output logger is
      * changed during a build.
      */
-    public String[] retrieveLines(final int firstLine) {
-        if (noDataFile()) { return new String[0]; }
+    public synchronized String[] retrieveLines(final int firstLine) {
+        flush();
+        if (noDataFile()) {
+            index = null;
+            return new String[0];
+        }
         final List<String> lines = loadFile(firstLine);
         return lines.toArray(new String[lines.size()]);
     }
 
+    /**
+     * @return the number of lines written so far, counted without reading them again: only the part of
+     * the file appended since the last call, or since lines were last retrieved, is scanned
+     */
+    public synchronized int getLineCount() {
+        flush();
+        if (noDataFile()) {
+            index = null;
+            return 0;
+        }
+        try {
+            return updateIndex().getLineCount();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
 
     /**
      * @return true if a data output file has been specified.
@@ -139,18 +209,31 @@ public class BuildOutputLogger implements StreamConsumer, LiveOutputReader, Seri
 
     private List<String> loadFile(final int firstLine) {
         try {
-            final BufferedReader reader = new BufferedReader(new FileReader(data));
+            updateIndex();
+            final int checkpoint = index.getCheckpointBefore(firstLine);
+            final FileInputStream input = new FileInputStream(data);
             try {
-                skipLines(reader, firstLine);
+                input.getChannel().position(index.getOffset(checkpoint));
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(input, CHARSET));
+                skipLines(reader, firstLine - checkpoint * LineIndex.INTERVAL);
                 return readUptoMaxLines(reader);
             } finally {
-                reader.close();
+                input.close();
             }
         } catch (IOException e) {
             return new ArrayList<String>();
         }
     }
 
+    private LineIndex updateIndex() throws IOException {
+        if (index == null) {
+            index = new LineIndex();
+        }
+        // starts over if the file was truncated or recreated behind our back
+        index.update(data);
+        return index;
+    }
+
     private List<String> readUptoMaxLines(BufferedReader reader) throws IOException {
         List<String> result = new ArrayList<String>();
         String line = reader.readLine();
@@ -196,4 +279,142 @@ public class BuildOutputLogger implements StreamConsumer, LiveOutputReader, Seri
         final String path = data == null ? "null" : (data.getAbsolutePath());
         return "<BuildOutputLogger data=" + path + ">";
     }
+
+    /**
+     * Opens the file to append each write, and closes it right after: the file is never left open, and
+     * writes go to whichever file is at that path at the time, even if another process recreated it.
+     */
+    private static final class AppendingOutputStream extends OutputStream {
+        private final File file;
+
+        private AppendingOutputStream(final File file) {
+            this.file = file;
+        }
+
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            final OutputStream output = new FileOutputStream(file, true);
+            try {
+                output.write(bytes, offset, length);
+            } finally {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * Remembers the byte offset of every INTERVALth line of the data file. Lines are terminated the
+     * way {@link BufferedReader#readLine()} sees them: by \n, \r or \r\n. Only the part of the file
+     * appended since the last update is scanned, unless the file no longer starts and ends (up to
+     * the part scanned) with the bytes seen before, in which case it was replaced and is scanned again.
+     */
+    static final class LineIndex {
+        static final int INTERVAL = 256;
+        private static final int INITIAL_CHECKPOINTS = 64;
+        private static final int FINGERPRINT_SIZE = 64;
+
+        /** offsets[i] is the offset of line i * INTERVAL; offsets[0] is always 0 */
+        private long[] offsets = new long[INITIAL_CHECKPOINTS];
+        private int checkpoints = 1;
+        /** number of complete lines scanned so far */
+        private int lines;
+        /** number of bytes scanned so far */
+        private long indexedBytes;
+        /** true if the last byte scanned was a \r, which may be followed by the \n of the same terminator */
+        private boolean afterCarriageReturn;
+        /** first and last bytes scanned, to tell whether the file is still the one scanned */
+        private byte[] head = new byte[0];
+        private byte[] tail = new byte[0];
+
+        /**
+         * @param line the line to read from
+         * @return the number of the last checkpoint at or before the given line
+         */
+        int getCheckpointBefore(final int line) {
+            return Math.min(Math.max(line, 0) / INTERVAL, checkpoints - 1);
+        }
+
+        long getOffset(final int checkpoint) {
+            return offsets[checkpoint];
+        }
+
+        int getLineCount() {
+            return lines;
+        }
+
+        void update(final File file) throws IOException {
+            final FileInputStream input = new FileInputStream(file);
+            try {
+                final FileChannel channel = input.getChannel();
+                if (!isScanned(channel)) {
+                    reset();
+                }
+                channel.position(indexedBytes);
+                scan(new BufferedInputStream(input, BUFFER_SIZE));
+                final int fingerprint = (int) Math.min(FINGERPRINT_SIZE, indexedBytes);
+                head = read(channel, 0, fingerprint);
+                tail = read(channel, indexedBytes - fingerprint, fingerprint);
+            } finally {
+                input.close();
+            }
+        }
+
+        private boolean isScanned(final FileChannel channel) throws IOException {
+            return channel.size() >= indexedBytes
+                    && Arrays.equals(head, read(channel, 0, head.length))
+                    && Arrays.equals(tail, read(channel, indexedBytes - tail.length, tail.length));
+        }
+
+        private static byte[] read(final FileChannel channel, final long position, final int length)
+                throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) == -1) {
+                    break;
+                }
+            }
+            return buffer.array();
+        }
+
+        private void reset() {
+            checkpoints = 1;
+            lines = 0;
+            indexedBytes = 0;
+            afterCarriageReturn = false;
+            head = new byte[0];
+            tail = new byte[0];
+        }
+
+        private void scan(final InputStream input) throws IOException {
+            int next = input.read();
+            while (next != -1) {
+                indexedBytes++;
+                if (next == '\n' && afterCarriageReturn) {
+                    // second half of a \r\n, the line was already counted
+                    if (lines % INTERVAL == 0) {
+                        offsets[checkpoints - 1] = indexedBytes;
+                    }
+                } else if (next == '\n' || next == '\r') {
+                    lineEnded();
+                }
+                afterCarriageReturn = next == '\r';
+                next = input.read();
+            }
+        }
+
+        private void lineEnded() {
+            lines++;
+            if (lines % INTERVAL == 0) {
+                if (checkpoints == offsets.length) {
+                    final long[] grown = new long[offsets.length * 2];
+                    System.arraycopy(offsets, 0, grown, 0, offsets.length);
+                    offsets = grown;
+                }
+                offsets[checkpoints++] = indexedBytes;
+            }
+        }
+    }
 }
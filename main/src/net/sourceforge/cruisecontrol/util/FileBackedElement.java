@@ -0,0 +1,375 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.log4j.Logger;
+import org.jdom2.Attribute;
+import org.jdom2.CDATA;
+import org.jdom2.Comment;
+import org.jdom2.Content;
+import org.jdom2.Element;
+import org.jdom2.EntityRef;
+import org.jdom2.Namespace;
+import org.jdom2.ProcessingInstruction;
+import org.jdom2.Text;
+
+/**
+ * Stands in for the root element of an XML file in the build log. Only the name and the
+ * attributes of the root element are kept in memory; the content of the file is streamed
+ * with a StAX reader when the log is written, one child of the root element at a time.
+ * This keeps large merged reports (test results, coverage, ...) out of the heap while the
+ * build log is being assembled and written.
+ *
+ * @see net.sourceforge.cruisecontrol.Log#writeLogFile(java.io.File, Element)
+ */
+public final class FileBackedElement extends Element {
+    private static final long serialVersionUID = 4419633417425066839L;
+
+    private static final Logger LOG = Logger.getLogger(FileBackedElement.class);
+
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+    private final File file;
+    private final String prunedTagName;
+
+    private FileBackedElement(final String name, final File file, final String prunedTagName) {
+        super(name);
+        this.file = file;
+        this.prunedTagName = prunedTagName;
+    }
+
+    /**
+     * Reads the root element of the given file with a StAX reader, which stops as soon as the root
+     * element has been seen.
+     * @param file the XML file the element stands in for
+     * @param prunedTagName name of elements to leave out when the file is read, or null to keep all of them
+     * @return the stand-in, or null if the root element uses namespaces and must be merged in memory
+     * @throws IOException if the file can't be read or isn't well-formed
+     */
+    public static FileBackedElement forFile(final File file, final String prunedTagName) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            try {
+                while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if (!isWithoutNamespaces(reader)) {
+                    return null;
+                }
+                final FileBackedElement element = new FileBackedElement(reader.getLocalName(), file, prunedTagName);
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                }
+                return element;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            final IOException ioe = new IOException("Could not read root element of " + file);
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            IO.close(in);
+        }
+    }
+
+    private static boolean isWithoutNamespaces(final XMLStreamReader reader) {
+        if (reader.getNamespaceCount() > 0 || reader.getPrefix() != null && reader.getPrefix().length() > 0) {
+            return false;
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String prefix = reader.getAttributePrefix(i);
+            if (prefix != null && prefix.length() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return a factory reporting CDATA sections as such, when the StAX implementation lets it, so they
+     * are written as they would be by a file merged in memory
+     */
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        if (factory.isPropertySupported(REPORT_CDATA)) {
+            factory.setProperty(REPORT_CDATA, Boolean.TRUE);
+        }
+        return factory;
+    }
+
+    /**
+     * Opens the file again for the log to be written.
+     * @return a copy of the root element of the file, whose content is read from the file as it is written;
+     * to be written once then closed. Null if the file can no longer be read.
+     */
+    public StreamedElement openStream() {
+        final InputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (IOException e) {
+            LOG.warn("Could not read log: " + file + ".  Skipping...", e);
+            return null;
+        }
+        try {
+            final XMLStreamReader reader = createInputFactory().createXMLStreamReader(in);
+            while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            return new StreamedElement(reader, in, file, prunedTagName);
+        } catch (XMLStreamException e) {
+            LOG.warn("Could not read log: " + file + ".  Skipping...", e);
+            IO.close(in);
+            return null;
+        }
+    }
+
+    /**
+     * The root element of a merged file, whose content is read from the file while it is iterated.
+     * Each child of the root element is read as a whole just before it is written, and can be
+     * collected once written. The content can only be iterated once.
+     */
+    public static final class StreamedElement extends Element implements Closeable {
+        private static final long serialVersionUID = -3297447541863599734L;
+
+        private final transient XMLStreamReader reader;
+        private final transient InputStream in;
+        private final File file;
+        private final String prunedTagName;
+        private final transient List<Content> streamedContent = new StreamedContent();
+
+        private StreamedElement(final XMLStreamReader reader, final InputStream in, final File file,
+                                final String prunedTagName) {
+            super(reader.getLocalName());
+            this.reader = reader;
+            this.in = in;
+            this.file = file;
+            this.prunedTagName = prunedTagName;
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+            }
+        }
+
+        /**
+         * @return the content of the element, read from the file as it is iterated
+         */
+        @Override
+        public List<Content> getContent() {
+            return streamedContent;
+        }
+
+        public void close() {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                LOG.debug("Could not close reader of " + file, e);
+            }
+            IO.close(in);
+        }
+
+        /**
+         * @return the next child of the root element, or null once the end of the root element
+         * was reached, or the rest of the file can't be read
+         */
+        private Content readNext() {
+            try {
+                while (true) {
+                    final int event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        return null;
+                    }
+                    if (event == XMLStreamConstants.START_ELEMENT && isPruned()) {
+                        skipElement();
+                        continue;
+                    }
+                    final Content next = readContent(event);
+                    if (next != null) {
+                        return next;
+                    }
+                }
+            } catch (XMLStreamException e) {
+                LOG.warn("Could not read the rest of log: " + file + ".  Skipping...", e);
+                return null;
+            }
+        }
+
+        private Content readContent(final int event) throws XMLStreamException {
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return readElement();
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    return new Text(reader.getText());
+                case XMLStreamConstants.CDATA:
+                    return new CDATA(reader.getText());
+                case XMLStreamConstants.COMMENT:
+                    return new Comment(reader.getText());
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    return new ProcessingInstruction(reader.getPITarget(), valueOf(reader.getPIData()));
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    return new EntityRef(reader.getLocalName());
+                default:
+                    return null;
+            }
+        }
+
+        /** Reads the element the reader is at, up to its end, leaving out pruned elements. */
+        private Element readElement() throws XMLStreamException {
+            final Element element = new Element(reader.getLocalName(),
+                    Namespace.getNamespace(valueOf(reader.getPrefix()), valueOf(reader.getNamespaceURI())));
+            for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                final Namespace declared = Namespace.getNamespace(valueOf(reader.getNamespacePrefix(i)),
+                        valueOf(reader.getNamespaceURI(i)));
+                if (declared != element.getNamespace()) {
+                    element.addNamespaceDeclaration(declared);
+                }
+            }
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                element.setAttribute(new Attribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i),
+                        Namespace.getNamespace(valueOf(reader.getAttributePrefix(i)),
+                                valueOf(reader.getAttributeNamespace(i)))));
+            }
+            while (true) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    return element;
+                }
+                if (event == XMLStreamConstants.START_ELEMENT && isPruned()) {
+                    skipElement();
+                    continue;
+                }
+                final Content child = readContent(event);
+                if (child != null) {
+                    element.addContent(child);
+                }
+            }
+        }
+
+        private boolean isPruned() {
+            return reader.getLocalName().equals(prunedTagName);
+        }
+
+        private void skipElement() throws XMLStreamException {
+            int depth = 1;
+            while (depth > 0) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+        }
+
+        private static String valueOf(final String nullable) {
+            return nullable == null ? "" : nullable;
+        }
+
+        /**
+         * Only supports what writing needs: telling whether there is any content, and iterating it once.
+         */
+        private final class StreamedContent extends AbstractList<Content> {
+            private Content next;
+            private boolean ended;
+
+            private boolean fetch() {
+                if (next == null && !ended) {
+                    next = readNext();
+                    ended = next == null;
+                }
+                return next != null;
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return !fetch();
+            }
+
+            @Override
+            public Iterator<Content> iterator() {
+                return new Iterator<Content>() {
+                    public boolean hasNext() {
+                        return fetch();
+                    }
+
+                    public Content next() {
+                        if (!fetch()) {
+                            throw new NoSuchElementException();
+                        }
+                        final Content current = next;
+                        next = null;
+                        return current;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public Content get(final int index) {
+                throw new UnsupportedOperationException("Streamed content can only be iterated");
+            }
+
+            @Override
+            public int size() {
+                throw new UnsupportedOperationException("Streamed content can only be iterated");
+            }
+        }
+    }
+}
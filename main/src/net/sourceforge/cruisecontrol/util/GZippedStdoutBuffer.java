@@ -64,6 +64,16 @@ public final class GZippedStdoutBuffer extends StdoutBuffer {
       super(log);
   } // GZippedStdoutBuffer
 
+  /**
+   * Constructor.
+   * @param log the instance of logger through which to log.
+   * @param memoryLimit the number of compressed bytes to keep in memory, see
+   *        {@link StdoutBuffer#StdoutBuffer(Logger, long)}
+   */
+  public GZippedStdoutBuffer(Logger log, long memoryLimit) {
+      super(log, memoryLimit);
+  } // GZippedStdoutBuffer
+
   /*
    * ----------- PROTECTED BLOCK -----------
    */
@@ -0,0 +1,386 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sends a file in answer to an HTTP GET, shared by the servlets serving build artifacts and logs.
+ * Files are copied with {@link FileChannel#transferTo}, lengths above 2 GB are supported, and so are
+ * conditional requests (ETag, If-None-Match, If-Modified-Since), a single byte range (Range, If-Range)
+ * and gzip content encoding for logs:
+ * <ul>
+ * <li>logs stored compressed (.xml.gz, .log.gz) are sent as they are to clients accepting gzip, and
+ * only inflated for the others;</li>
+ * <li>.xml and .log files are sent from a pre-compressed copy (the same name with .gz appended) when
+ * it is up to date, or compressed on the fly, unless a range is asked for.</li>
+ * </ul>
+ * The request and response are reached through an {@link Exchange}, see
+ * {@link net.sourceforge.cruisecontrol.web.ServletExchange} for servlets.
+ */
+public final class HttpFileTransfer {
+
+    /**
+     * The parts of an HTTP request and response needed to send a file.
+     */
+    public interface Exchange {
+        /**
+         * @param name header name
+         * @return the value of the request header, or null if it is absent
+         */
+        String getRequestHeader(String name);
+
+        /**
+         * @param name header name
+         * @return the request header as milliseconds since the epoch, or -1 if it is absent
+         */
+        long getRequestDateHeader(String name);
+
+        void setStatus(int status);
+
+        void setHeader(String name, String value);
+
+        void setDateHeader(String name, long date);
+
+        void setContentType(String contentType);
+
+        void setContentLength(long length);
+
+        OutputStream getOutputStream() throws IOException;
+    }
+
+    static final int SC_PARTIAL_CONTENT = 206;
+    static final int SC_NOT_MODIFIED = 304;
+    static final int SC_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+    /** Smaller files are not worth compressing on the fly. */
+    static final int MIN_COMPRESSED_LENGTH = 1024;
+
+    private static final String GZIP = "gzip";
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final String BYTES_UNIT = "bytes=";
+    private static final int BUFFER_SIZE = 8192;
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private final File file;
+
+    /**
+     * @param file the file to send
+     */
+    public HttpFileTransfer(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file a file to send
+     * @return the name to derive the content type from: compressed logs are sent as the log they contain
+     */
+    public static String getServedName(final File file) {
+        final String name = file.getName();
+        return isCompressedLog(name) ? name.substring(0, name.length() - GZIP_SUFFIX.length()) : name;
+    }
+
+    /**
+     * Sends the file, or only the status and headers when the client's copy is still valid.
+     * @param contentType content type of the file as it is served
+     * @param exchange the request to answer
+     * @throws IOException if the file can't be read or the response can't be written
+     */
+    public void send(final String contentType, final Exchange exchange) throws IOException {
+        final String name = file.getName();
+        final boolean acceptsGzip = acceptsGzip(exchange.getRequestHeader("Accept-Encoding"));
+
+        if (isCompressedLog(name)) {
+            exchange.setHeader("Vary", "Accept-Encoding");
+            if (acceptsGzip) {
+                sendBytes(file, GZIP, contentType, exchange);
+            } else {
+                sendInflated(contentType, exchange);
+            }
+            return;
+        }
+
+        if (isLog(name)) {
+            exchange.setHeader("Vary", "Accept-Encoding");
+            if (acceptsGzip) {
+                final File compressed = new File(file.getPath() + GZIP_SUFFIX);
+                if (compressed.isFile() && compressed.lastModified() >= file.lastModified()) {
+                    sendBytes(compressed, GZIP, contentType, exchange);
+                    return;
+                }
+                if (file.length() >= MIN_COMPRESSED_LENGTH && exchange.getRequestHeader("Range") == null) {
+                    sendCompressed(contentType, exchange);
+                    return;
+                }
+            }
+        }
+
+        sendBytes(file, null, contentType, exchange);
+    }
+
+    private void sendBytes(final File source, final String encoding, final String contentType,
+                           final Exchange exchange) throws IOException {
+        final long length = source.length();
+        final String etag = getETag(source, encoding == null ? "" : "-" + encoding);
+        if (isNotModified(exchange, etag, source.lastModified())) {
+            return;
+        }
+
+        exchange.setHeader("Accept-Ranges", "bytes");
+        final long[] range = getRange(exchange, etag, source.lastModified(), length);
+        if (range == UNSATISFIABLE) {
+            exchange.setStatus(SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            exchange.setHeader("Content-Range", "bytes */" + length);
+            exchange.setContentLength(0);
+            return;
+        }
+
+        exchange.setContentType(contentType);
+        if (encoding != null) {
+            exchange.setHeader("Content-Encoding", encoding);
+        }
+
+        long start = 0;
+        long count = length;
+        if (range != null) {
+            start = range[0];
+            count = range[1] - range[0] + 1;
+            exchange.setStatus(SC_PARTIAL_CONTENT);
+            exchange.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
+        exchange.setContentLength(count);
+        transfer(source, start, count, exchange.getOutputStream());
+    }
+
+    private void sendCompressed(final String contentType, final Exchange exchange) throws IOException {
+        if (isNotModified(exchange, "W/" + getETag(file, "-" + GZIP), file.lastModified())) {
+            return;
+        }
+
+        exchange.setContentType(contentType);
+        exchange.setHeader("Content-Encoding", GZIP);
+        final GZIPOutputStream out = new GZIPOutputStream(exchange.getOutputStream(), BUFFER_SIZE);
+        transfer(file, 0, file.length(), out);
+        out.finish();
+        out.flush();
+    }
+
+    private void sendInflated(final String contentType, final Exchange exchange) throws IOException {
+        if (isNotModified(exchange, "W/" + getETag(file, "-identity"), file.lastModified())) {
+            return;
+        }
+
+        exchange.setContentType(contentType);
+        final OutputStream out = exchange.getOutputStream();
+        final FileInputStream fileIn = new FileInputStream(file);
+        try {
+            final InputStream in = new GZIPInputStream(fileIn, BUFFER_SIZE);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            IO.close(fileIn);
+        }
+        out.flush();
+    }
+
+    /**
+     * Sets the validators of the response, and answers 304 if the client's copy matches them.
+     */
+    private static boolean isNotModified(final Exchange exchange, final String etag, final long lastModified) {
+        exchange.setHeader("ETag", etag);
+        exchange.setDateHeader("Last-Modified", lastModified);
+
+        final String ifNoneMatch = exchange.getRequestHeader("If-None-Match");
+        final boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, etag);
+        } else {
+            final long ifModifiedSince = exchange.getRequestDateHeader("If-Modified-Since");
+            // HTTP dates have a resolution of one second
+            notModified = ifModifiedSince > 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+        if (notModified) {
+            exchange.setStatus(SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    /**
+     * @return the first and last byte asked for, null to send the whole file, or {@link #UNSATISFIABLE}.
+     * Requests for several ranges are answered with the whole file.
+     */
+    static long[] getRange(final Exchange exchange, final String etag, final long lastModified,
+                           final long length) {
+        final String header = exchange.getRequestHeader("Range");
+        if (header == null || !header.startsWith(BYTES_UNIT) || header.indexOf(',') >= 0
+                || !isRangeCurrent(exchange, etag, lastModified)) {
+            return null;
+        }
+
+        final String spec = header.substring(BYTES_UNIT.length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            return parseRange(spec.substring(0, dash).trim(), spec.substring(dash + 1).trim(), length);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return false if If-Range names another version of the file than the one that would be sent
+     */
+    private static boolean isRangeCurrent(final Exchange exchange, final String etag, final long lastModified) {
+        final String ifRange = exchange.getRequestHeader("If-Range");
+        if (ifRange == null || ifRange.equals(etag)) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return false;
+        }
+        final long date = exchange.getRequestDateHeader("If-Range");
+        return date > 0 && lastModified / 1000 <= date / 1000;
+    }
+
+    private static long[] parseRange(final String first, final String last, final long length) {
+        final long start;
+        final long end;
+        if (first.length() == 0) {
+            final long suffixLength = Long.parseLong(last);
+            if (suffixLength <= 0) {
+                return UNSATISFIABLE;
+            }
+            start = Math.max(0, length - suffixLength);
+            end = length - 1;
+        } else {
+            start = Long.parseLong(first);
+            if (last.length() == 0) {
+                end = length - 1;
+            } else if (Long.parseLong(last) < start) {
+                return null;
+            } else {
+                end = Math.min(Long.parseLong(last), length - 1);
+            }
+        }
+        if (start >= length) {
+            return UNSATISFIABLE;
+        }
+        return new long[] {start, end};
+    }
+
+    static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(final String ifNoneMatch, final String etag) {
+        final String opaque = stripWeak(etag);
+        for (final String tag : ifNoneMatch.split(",")) {
+            final String trimmed = tag.trim();
+            if ("*".equals(trimmed) || opaque.equals(stripWeak(trimmed))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(final String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static String getETag(final File source, final String suffix) {
+        return "\"" + Long.toHexString(source.length()) + "-" + Long.toHexString(source.lastModified()) + suffix
+                + "\"";
+    }
+
+    private static boolean isCompressedLog(final String name) {
+        return name.endsWith(".xml" + GZIP_SUFFIX) || name.endsWith(".log" + GZIP_SUFFIX);
+    }
+
+    private static boolean isLog(final String name) {
+        return name.endsWith(".xml") || name.endsWith(".log");
+    }
+
+    /**
+     * Copies part of a file with {@link FileChannel#transferTo}, in chunks as large as the target accepts.
+     * Stops early if the file got shorter since its length was sent.
+     */
+    static void transfer(final File source, final long start, final long count, final OutputStream out)
+            throws IOException {
+        final FileInputStream in = new FileInputStream(source);
+        try {
+            final FileChannel channel = in.getChannel();
+            final WritableByteChannel target = Channels.newChannel(out);
+            final long end = Math.min(start + count, channel.size());
+            long position = start;
+            while (position < end) {
+                final long transferred = channel.transferTo(position, end - position, target);
+                if (transferred == 0 && position >= channel.size()) {
+                    // truncated meanwhile, like the live output file when a build starts
+                    break;
+                }
+                position += transferred;
+            }
+        } finally {
+            IO.close(in);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,137 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2006, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
+
+/**
+ * Shared supervision of the external processes started by CruiseControl: the pumpers moving their
+ * streams run on one pool of reused threads, and their timeouts on a single scheduler thread,
+ * instead of creating and discarding a few threads per process.
+ *
+ * The streams of a {@link Process} can only be read by blocking, so each pumper holds its thread
+ * until the stream ends and the pool can't be bounded without risking a deadlock of the processes
+ * waiting for it. Threads left idle are reused by the next pumpers and expire after a minute. When
+ * the runtime provides virtual threads, they are used instead.
+ */
+public final class ProcessSupervisor {
+    private static final Logger LOG = Logger.getLogger(ProcessSupervisor.class);
+
+    private static final long IDLE_SECONDS = 60;
+
+    private static final ExecutorService PUMPERS = createPumperPool();
+    private static final ScheduledThreadPoolExecutor TIMEOUTS
+            = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("ProcessTimeout"));
+
+    private ProcessSupervisor() {
+        //utility methods only.
+    }
+
+    /**
+     * Starts moving data between a process and CruiseControl.
+     *
+     * @param pumper the pumper to run, typically a {@link StreamPumper}
+     * @return handle to wait for the pumper by {@link #join(Future)}
+     */
+    public static Future<Object> pump(final Runnable pumper) {
+        return PUMPERS.submit(pumper, null);
+    }
+
+    /**
+     * Waits until a pumper started by {@link #pump(Runnable)} has finished.
+     *
+     * @param pumping the handle returned by {@link #pump(Runnable)}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public static void join(final Future<Object> pumping) throws InterruptedException {
+        try {
+            pumping.get();
+        } catch (ExecutionException e) {
+            LOG.error("Pumper failed", e.getCause());
+        }
+    }
+
+    /**
+     * Runs the task once the timeout elapses, unless cancelled by {@link #cancel(ScheduledFuture)} before.
+     *
+     * @param task the task to run, typically destroying a process
+     * @param timeout the delay in seconds
+     * @return handle to cancel the task by {@link #cancel(ScheduledFuture)}
+     */
+    public static ScheduledFuture<Object> schedule(final Runnable task, final long timeout) {
+        return TIMEOUTS.schedule(Executors.callable(task), timeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Cancels a task scheduled by {@link #schedule(Runnable, long)}, if it has not run yet.
+     *
+     * @param scheduled the handle returned by {@link #schedule(Runnable, long)}
+     */
+    public static void cancel(final ScheduledFuture<Object> scheduled) {
+        if (scheduled.cancel(false)) {
+            // don't keep the cancelled task, and its process, until the timeout would have elapsed
+            TIMEOUTS.purge();
+        }
+    }
+
+    private static ExecutorService createPumperPool() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            LOG.debug("Pumping process streams on virtual threads");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            // runtime without virtual threads
+        } catch (Exception e) {
+            LOG.warn("Could not create virtual thread executor, using a thread pool", e);
+        }
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, IDLE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new DaemonThreadFactory("ProcessIO"));
+    }
+}
@@ -37,6 +37,8 @@
 package net.sourceforge.cruisecontrol.util;
 
 import java.io.IOException;
+import java.util.concurrent.Future;
+
 import org.apache.log4j.Logger;
 
 /**
@@ -60,8 +62,7 @@ public final class Processes {
 
     public static Process execute(Commandline c) throws IOException {
         Process p = runtime.exec(c);
-        StreamPumper errorPumper = StreamLogger.getWarnPumper(LOG, p);
-        new Thread(errorPumper, "ProcessThread_" + c.getExecutable()).start();
+        ProcessSupervisor.pump(StreamLogger.getWarnPumper(LOG, p));
         return p;
     }
 
@@ -87,13 +88,12 @@ public final class Processes {
             throws IOException, InterruptedException {
         proc.getOutputStream().close();
 
-        Thread stderr = new Thread(new StreamPumper(proc.getErrorStream(), error));
-        stderr.start();
+        final Future<Object> stderr = ProcessSupervisor.pump(new StreamPumper(proc.getErrorStream(), error));
 
         new StreamPumper(proc.getInputStream(), output).run();
 
         int exitValue = proc.waitFor();
-        stderr.join();
+        ProcessSupervisor.join(stderr);
         return exitValue;
     }
 
@@ -38,11 +38,17 @@
  ********************************************************************************/
 package net.sourceforge.cruisecontrol.util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -56,6 +62,9 @@ import org.apache.log4j.Logger;
  * The {@link StdoutBuffer} filling and {@link StdoutBuffer#getContent()} stream reading operations are
  * thread safe. However the individual methods of {@link StdoutBuffer} and {@link StdoutBuffer#getContent()}
  * instance are not (they are supposed to be called within one thread)!
+ * <p>
+ * When created with a memory limit, the oldest data are moved to a temporary file once the limit is
+ * exceeded, and the readers get them from the file then. The file is deleted by {@link #dispose()}.
  *
  * @author <a href="mailto:dtihelka@kky.zcu.cz">Dan Tihelka</a>
  */
@@ -69,11 +78,23 @@ public class StdoutBuffer extends OutputStream {
    * @param logger the instance of Logger through which to log.
    */
   public StdoutBuffer(Logger logger) {
-      log = logger;
-      buffer = new LinkedList<byte[]>();
+      this(logger, 0);
+  } // StdoutBuffer
+
+  /**
+   * Constructor of the buffer keeping about the given number of bytes in memory at most. When
+   * exceeded, older data are spilled to a temporary file.
+   *
+   * @param logger the instance of Logger through which to log.
+   * @param memoryLimit the number of bytes to keep in memory, zero or negative to keep all the data there.
+   */
+  public StdoutBuffer(Logger logger, long memoryLimit) {
+      log = logger != null ? logger : Logger.getLogger(StdoutBuffer.class);
+      buffer = new ArrayList<Chunk>();
       chunkSize = 1000; /* 1000 bytes in each buffer item */
       chunkBuffer = new ByteArrayOutputStream(chunkSize);
       chunkWriter = dataEncoder(chunkBuffer);
+      this.memoryLimit = memoryLimit;
   } // StdoutBuffer
 
   /**
@@ -154,8 +175,8 @@ public class StdoutBuffer extends OutputStream {
       }
 
       /* Copy the content of chunker to the array of bytes */
+      addChunk(chunkBuffer.toByteArray());
       synchronized (buffer) {
-          buffer.add(chunkBuffer.toByteArray());
           buffer.add(null);
           /* Notify all threads waiting for data */
           buffer.notifyAll();
@@ -163,6 +184,8 @@ public class StdoutBuffer extends OutputStream {
       /* Release the chunker to allow freeing it - it will not be used anymore ... */
       chunkBuffer = null;
       chunkWriter = null;
+      IO.close(spillWriter);
+      spillWriter = null;
   } // close
 
   /**
@@ -175,14 +198,58 @@ public class StdoutBuffer extends OutputStream {
           return;
       }
       /* Copy the content of chunker to the array of bytes */
-      synchronized (buffer) {
-          buffer.add(chunkBuffer.toByteArray());
-          /* Notify all threads waiting for data */
-          buffer.notifyAll();
-      }
+      addChunk(chunkBuffer.toByteArray());
       chunkBuffer.reset();
   } // flush
 
+  /**
+   * Signalizes that the buffer is not needed anymore - no more readers will be required through
+   * {@link #getContent()}. The temporary file with the spilled data, if any, is deleted as soon as all
+   * the readers already returned are closed.
+   */
+  public void dispose() {
+      synchronized (buffer) {
+          disposed = true;
+          deleteSpillFileIfUnused();
+      }
+  } // dispose
+
+  /**
+   * @return the number of bytes stored in the buffer (compressed, if compressed by {@link #dataEncoder(OutputStream)})
+   */
+  public long getSize() {
+      synchronized (buffer) {
+          return size;
+      }
+  } // getSize
+
+  /**
+   * @return the highest number of bytes held in the memory at once
+   */
+  public long getMaxMemorySize() {
+      synchronized (buffer) {
+          return maxMemorySize;
+      }
+  } // getMaxMemorySize
+
+  /**
+   * @return the number of bytes spilled to the temporary file
+   */
+  public long getSpilledSize() {
+      synchronized (buffer) {
+          return spilledSize;
+      }
+  } // getSpilledSize
+
+  /**
+   * @return the temporary file with the spilled data, <code>null</code> if nothing was spilled
+   */
+  File getSpillFile() {
+      synchronized (buffer) {
+          return spillFile;
+      }
+  } // getSpillFile
+
 
   /**
    * Returns stream from which the content of the buffer can be read. The method can be called multiple times (as many
@@ -207,6 +274,83 @@ public class StdoutBuffer extends OutputStream {
     return getClass().getName() + "[" + buffer.size() * chunkSize + " bytes in buffer (approx.)]";
   } // toString
 
+  /**
+   * Adds the chunk of data to the buffer and notifies the readers waiting for it. Spills the older
+   * data to the temporary file, if the memory limit is exceeded.
+   *
+   * @param data the chunk to add
+   */
+  private void addChunk(byte[] data) {
+      final boolean overLimit;
+      synchronized (buffer) {
+          buffer.add(new Chunk(data, size));
+          size += data.length;
+          memorySize += data.length;
+          maxMemorySize = Math.max(maxMemorySize, memorySize);
+          overLimit = memoryLimit > 0 && memorySize > memoryLimit;
+          /* Notify all threads waiting for data */
+          buffer.notifyAll();
+      }
+      if (overLimit) {
+          spill();
+      }
+  } // addChunk
+
+  /**
+   * Moves the oldest chunks held in memory to the temporary file, until no more than half of the memory
+   * limit is used. The newest chunks are kept in memory, since the readers are likely to need them soon.
+   * The chunks are written before being marked as spilled, so the readers never wait for the file.
+   */
+  private void spill() {
+      final List<Chunk> toSpill = new ArrayList<Chunk>();
+      synchronized (buffer) {
+          long keep = memorySize;
+          for (int ind = spilledCount; ind < buffer.size() && keep > memoryLimit / 2; ind++) {
+              final Chunk chunk = buffer.get(ind);
+              toSpill.add(chunk);
+              keep -= chunk.length;
+          }
+      }
+
+      try {
+          if (spillFile == null) {
+              spillFile = File.createTempFile("stdout", ".buffer");
+              spillFile.deleteOnExit();
+              spillWriter = new BufferedOutputStream(new FileOutputStream(spillFile), SPILL_BUFFER_SIZE);
+              log.info("Buffer exceeded " + memoryLimit + " bytes, spilling to " + spillFile);
+          }
+          /* Only this thread changes the data of the chunks, no need to synchronize */
+          for (Chunk chunk : toSpill) {
+              spillWriter.write(chunk.data);
+          }
+          spillWriter.flush();
+      } catch (IOException exc) {
+          log.error("Cannot spill the buffer to " + spillFile + ", keeping all data in memory", exc);
+          IO.close(spillWriter);
+          memoryLimit = 0;
+          return;
+      }
+
+      synchronized (buffer) {
+          for (Chunk chunk : toSpill) {
+              chunk.markSpilled();
+              memorySize -= chunk.length;
+              spilledSize += chunk.length;
+          }
+          spilledCount += toSpill.size();
+      }
+  } // spill
+
+  /**
+   * Deletes the temporary file once {@link #dispose()} was called and no reader needs the file anymore.
+   * Must be called in the critical section of {@link #buffer}.
+   */
+  private void deleteSpillFileIfUnused() {
+      if (disposed && openReaders == 0 && spillFile != null) {
+          IO.delete(spillFile);
+      }
+  } // deleteSpillFileIfUnused
+
   /*
    * ----------- PROTECTED BLOCK -----------
    */
@@ -269,9 +413,10 @@ public class StdoutBuffer extends OutputStream {
    * was filled and no more items will be added, see {@link #close()}.
    * <p>
    * The work with the variable MUST BE hold in critical section. However, items are added to the buffer
-   * only - once a chunk of bytes is in the buffer, it is neither changed not deleted.
+   * only - once a chunk of bytes is in the buffer, it is neither changed not deleted. Only its data
+   * may be moved to {@link #spillFile}.
    */
-  private final List<byte[]> buffer;
+  private final List<Chunk> buffer;
   /**
    * The size of buffer item chunk
    */
@@ -293,12 +438,62 @@ public class StdoutBuffer extends OutputStream {
    */
   protected Logger log;
 
+  /** The size of the buffers used to write and read {@link #spillFile} */
+  private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+  /** The number of bytes to keep in memory at most, no limit when zero or negative */
+  private long memoryLimit;
+  /** The number of bytes in {@link #buffer}, in memory or in {@link #spillFile} */
+  private long size;
+  /** The number of bytes in {@link #buffer} held in memory */
+  private long memorySize;
+  /** The highest value {@link #memorySize} had */
+  private long maxMemorySize;
+  /** The number of bytes moved to {@link #spillFile} */
+  private long spilledSize;
+  /** The number of chunks, from the beginning of {@link #buffer}, moved to {@link #spillFile} */
+  private int spilledCount;
+  /** The temporary file with the data spilled, <code>null</code> until spilled for the first time */
+  private File spillFile;
+  /** The stream writing the {@link #spillFile} */
+  private OutputStream spillWriter;
+  /** The number of readers returned by {@link #getContent()} not closed yet */
+  private int openReaders;
+  /** Set by {@link #dispose()} */
+  private boolean disposed;
+
 
 
   /*
    * ----------- INNER CLASSES -----------
    */
 
+  /**
+   * The item of {@link StdoutBuffer#buffer}: the chunk of data, either in memory or in
+   * {@link StdoutBuffer#spillFile}.
+   */
+  private static final class Chunk {
+       /** The data of the chunk, <code>null</code> once spilled. Guarded by {@link StdoutBuffer#buffer}. */
+       private byte[] data;
+       /** The number of bytes in the chunk */
+       private final int length;
+       /** The position of the chunk in the whole buffer, and so in {@link StdoutBuffer#spillFile} */
+       private final long offset;
+
+       Chunk(byte[] data, long offset) {
+           this.data = data;
+           this.length = data.length;
+           this.offset = offset;
+       }
+
+       /**
+        * Releases the data of the chunk, once written to {@link StdoutBuffer#spillFile}.
+        * Must be called in the critical section of {@link StdoutBuffer#buffer}.
+        */
+       void markSpilled() {
+           data = null;
+       }
+  } // Chunk
+
   /**
    * The stream reading data from the buffer.
    */
@@ -309,9 +504,12 @@ public class StdoutBuffer extends OutputStream {
         * @param buffer the instance holding the buffered data.
         * @throws IOException if the stream cannot be read.
         */
-       BufferReader(List<byte[]> buffer) throws IOException {
+       BufferReader(List<Chunk> buffer) throws IOException {
           bufferInst = buffer;
           reset();
+          synchronized (bufferInst) {
+              openReaders++;
+          }
        } // BufferReader
 
        /**
@@ -360,7 +558,15 @@ public class StdoutBuffer extends OutputStream {
         */
        @Override
        public final void close() {
+           if (isClosed) {
+               return;
+           }
            isClosed = true;
+           closeSpillReader();
+           synchronized (bufferInst) {
+               openReaders--;
+               deleteSpillFileIfUnused();
+           }
        } // close
 
        /**
@@ -416,6 +622,7 @@ public class StdoutBuffer extends OutputStream {
         */
        @Override
        public final int read(byte[] outBuff, int from, int len) throws IOException {
+           Chunk chunk;
            byte[] currChunk;
            int numRead = 0;
 
@@ -446,15 +653,21 @@ public class StdoutBuffer extends OutputStream {
                        }
                    }
 
-                   /* Get the current chunk. It cannot change once it is in the buffer */
-                   currChunk = bufferInst.get(chunkInd);
+                   /* Get the current chunk. It cannot change once it is in the buffer, only its data
+                    * can be spilled */
+                   chunk = bufferInst.get(chunkInd);
+                   currChunk = chunk != null ? chunk.data : null;
                } // synchronized
 
                /* If the current chunk is empty, EOF was reached. If at least something was read, return the
                 * number of Bytes read. Otherwise return -1 */
-               if (currChunk == null) {
+               if (chunk == null) {
                   return numRead > 0 ? numRead : -1;
                }
+               /* Read the chunk from the file, if spilled */
+               if (currChunk == null) {
+                  currChunk = readSpilled(chunk);
+               }
 
                /* How many items from the current buffer to read */
                int canRead = Math.min(len - numRead, currChunk.length - chunkPos);
@@ -489,8 +702,54 @@ public class StdoutBuffer extends OutputStream {
 
           chunkInd = 0;
           chunkPos = 0;
+          closeSpillReader();
        } // reset
 
+       /**
+        * Reads the data of the current chunk from the spill file. The spilled chunks are stored one after
+        * another, so the file is read sequentially while the reader moves through them.
+        *
+        * @param chunk the current chunk, already spilled
+        * @return the data of the chunk
+        * @throws IOException if the file cannot be read
+        */
+       private byte[] readSpilled(Chunk chunk) throws IOException {
+           /* Already read, only a part of the chunk was required last time */
+           if (spilledChunkInd == chunkInd) {
+               return spilledChunk;
+           }
+           if (spillReader == null || spillPos != chunk.offset) {
+               closeSpillReader();
+               spillReader = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile),
+                       SPILL_BUFFER_SIZE));
+               long toSkip = chunk.offset;
+               while (toSkip > 0) {
+                   final long skipped = spillReader.skip(toSkip);
+                   if (skipped <= 0) {
+                       throw new IOException("Cannot skip to " + chunk.offset + " in " + spillFile);
+                   }
+                   toSkip -= skipped;
+               }
+               spillPos = chunk.offset;
+           }
+
+           spilledChunk = new byte[chunk.length];
+           spillReader.readFully(spilledChunk);
+           spilledChunkInd = chunkInd;
+           spillPos += chunk.length;
+           return spilledChunk;
+       } // readSpilled
+
+       /**
+        * Closes the stream reading the spill file, if open.
+        */
+       private void closeSpillReader() {
+           IO.close(spillReader);
+           spillReader = null;
+           spilledChunk = null;
+           spilledChunkInd = -1;
+       } // closeSpillReader
+
        /**
         * Implementation of InputStream#skip()
         */
@@ -516,7 +775,7 @@ public class StdoutBuffer extends OutputStream {
        /**
         * The parent instance of the buffer from which the data are read
         */
-       private final List<byte[]> bufferInst;
+       private final List<Chunk> bufferInst;
 
        /** Flag set when {@link #close()} is called. */
        private boolean isClosed;
@@ -530,6 +789,15 @@ public class StdoutBuffer extends OutputStream {
         */
        private int chunkPos;
 
+       /** The stream reading the spill file, opened when a spilled chunk is read for the first time */
+       private DataInputStream spillReader;
+       /** The position of {@link #spillReader} in the file */
+       private long spillPos;
+       /** The data of the last spilled chunk read */
+       private byte[] spilledChunk;
+       /** The index of the chunk {@link #spilledChunk} belongs to */
+       private int spilledChunkInd = -1;
+
   } // BufferReader
 
 } // StdoutBuffer
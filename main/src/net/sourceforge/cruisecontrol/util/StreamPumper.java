@@ -90,12 +90,11 @@
 package net.sourceforge.cruisecontrol.util;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 
 import org.apache.log4j.Logger;
 
@@ -174,21 +173,15 @@ public class StreamPumper implements Runnable {
             // Well, we have binary reader defined as well ...
             // So, chunks of binary data must be read from the input stream and directly passed to the
             // binary output. Moreover, they must be passed to the text output (for non-binary only data)
-            // which is done through pipe: byte[] -> PipeOutputStream -> PipeInputStream -> BufferedReader
+            // which is done by splitting them to lines as they come: byte[] -> LineSplitter
             } else {
 
-                // For non-binary data create the binary->text conversion pipe
-                // Use the StreamPumper class
+                // For non-binary data create the binary->text conversion
                 final OutputStream tostrOutput;
-                final Thread tostrReader;
                 if (!this.isBinary) {
-                    tostrOutput = new PipedOutputStream();
-                    tostrReader = new Thread(new StreamPumper(new PipedInputStream((PipedOutputStream) tostrOutput),
-                            this.txtConsumer));
-                    tostrReader.start();
+                    tostrOutput = new LineSplitter();
                 } else {
                     tostrOutput = null;
-                    tostrReader = new Thread();
                 }
 
                 // Read binary data
@@ -204,10 +197,9 @@ public class StreamPumper implements Runnable {
                     }
 
                 } finally {
-                    // Must close, otherwise the binary->text conversion thread will never end
+                    // Must close, otherwise the last line without line separator is not passed
                     IO.close(tostrOutput);
                 }
-                tostrReader.join();
 
                 // Print summary in binary mode
                 if (this.isBinary) {
@@ -237,6 +229,49 @@ public class StreamPumper implements Runnable {
         }
     }
 
+    /**
+     * Splits the bytes written into lines passed to the text consumer, ended the same way as by
+     * {@link BufferedReader#readLine()}: by '\n', '\r' or "\r\n".
+     */
+    private final class LineSplitter extends OutputStream {
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(SIZE);
+        private boolean afterCR = false;
+
+        @Override
+        public void write(final int b) {
+            if (b == '\n' && afterCR) {
+                afterCR = false;
+                return;
+            }
+            afterCR = b == '\r';
+            if (b == '\n' || b == '\r') {
+                passLine();
+            } else {
+                line.write(b);
+            }
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int off, final int len) {
+            for (int i = off; i < off + len; i++) {
+                write(bytes[i]);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (line.size() > 0) {
+                passLine();
+            }
+        }
+
+        private void passLine() {
+            // decoded by the default charset, as the InputStreamReader used for text only data
+            consumeLine(line.toString(), txtConsumer);
+            line.reset();
+        }
+    }
+
     private void consumeBytes(final byte[] bytes, int len, final OutputStream consumer) throws IOException {
         if (consumer != null) {
             consumer.write(bytes, 0, len);
@@ -0,0 +1,206 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Compiled stylesheets shared by everything that transforms build logs with XSL files.
+ * A stylesheet is compiled again when its size or modification time changes; stylesheets it
+ * includes or imports are not checked. {@link Templates} are thread safe, so the same instance
+ * is handed out to every caller. Each stylesheet is compiled by the first caller asking for it,
+ * while others asking for the same stylesheet wait for the result; different stylesheets are
+ * compiled concurrently.
+ */
+public final class TemplatesCache {
+    private static final Logger LOG = Logger.getLogger(TemplatesCache.class);
+
+    private static final String SAXON_VERSION_WARNING = "http://saxon.sf.net/feature/version-warning";
+
+    private static final ConcurrentMap<String, Entry> TEMPLATES = new ConcurrentHashMap<String, Entry>();
+
+    private TemplatesCache() {
+    }
+
+    /**
+     * @param xsl the stylesheet
+     * @return the compiled stylesheet, compiling it first if it isn't cached or has changed
+     * @throws TransformerConfigurationException if the stylesheet can't be compiled
+     */
+    public static Templates getTemplates(final File xsl) throws TransformerConfigurationException {
+        return getTemplates(xsl.getAbsoluteFile().toURI().toString(), xsl.length(), xsl.lastModified());
+    }
+
+    /**
+     * @param xsl the stylesheet, for instance a resource of a web application
+     * @return the compiled stylesheet, compiling it first if it isn't cached or has changed
+     * @throws TransformerConfigurationException if the stylesheet can't be compiled or read
+     */
+    public static Templates getTemplates(final URL xsl) throws TransformerConfigurationException {
+        if ("file".equals(xsl.getProtocol())) {
+            try {
+                return getTemplates(new File(xsl.toURI()));
+            } catch (URISyntaxException e) {
+                LOG.debug("Not a file path, checking " + xsl + " for changes through its connection", e);
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Not a file path, checking " + xsl + " for changes through its connection", e);
+            }
+        }
+        final long lastModified;
+        try {
+            lastModified = xsl.openConnection().getLastModified();
+        } catch (IOException e) {
+            throw new TransformerConfigurationException("Cannot read stylesheet " + xsl, e);
+        }
+        return getTemplates(xsl.toExternalForm(), -1, lastModified);
+    }
+
+    private static Templates getTemplates(final String systemId, final long length, final long lastModified)
+            throws TransformerConfigurationException {
+        while (true) {
+            final Entry cached = TEMPLATES.get(systemId);
+            if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+                return cached.get();
+            }
+            final Entry created = new Entry(systemId, length, lastModified);
+            final boolean installed = cached == null
+                    ? TEMPLATES.putIfAbsent(systemId, created) == null
+                    : TEMPLATES.replace(systemId, cached, created);
+            if (installed) {
+                created.compile();
+                return created.get();
+            }
+        }
+    }
+
+    /**
+     * @param xsl the stylesheet
+     * @return a new transformer for the compiled stylesheet
+     * @throws TransformerConfigurationException if the stylesheet can't be compiled
+     */
+    public static Transformer newTransformer(final File xsl) throws TransformerConfigurationException {
+        return getTemplates(xsl).newTransformer();
+    }
+
+    /**
+     * @param xsl the stylesheet
+     * @return a new transformer for the compiled stylesheet
+     * @throws TransformerConfigurationException if the stylesheet can't be compiled or read
+     */
+    public static Transformer newTransformer(final URL xsl) throws TransformerConfigurationException {
+        return getTemplates(xsl).newTransformer();
+    }
+
+    /**
+     * Drops all compiled stylesheets.
+     */
+    public static void clear() {
+        TEMPLATES.clear();
+    }
+
+    private static Templates compile(final String systemId) throws TransformerConfigurationException {
+        LOG.debug("Compiling stylesheet " + systemId);
+        // factories aren't thread safe, and compiling is rare enough to not bother sharing one
+        final TransformerFactory factory = TransformerFactory.newInstance();
+        try {
+            factory.setAttribute(SAXON_VERSION_WARNING, Boolean.FALSE);
+        } catch (IllegalArgumentException e) {
+            LOG.debug("could not silence Saxon XSLT 2.0 warning, processor is probably not saxon: " + e.getMessage());
+        }
+        return factory.newTemplates(new StreamSource(systemId));
+    }
+
+    /** A stylesheet being compiled, or compiled, by the first caller that asked for it. */
+    private static final class Entry {
+        private final String systemId;
+        private final long length;
+        private final long lastModified;
+        private final FutureTask<Templates> templates;
+
+        private Entry(final String systemId, final long length, final long lastModified) {
+            this.systemId = systemId;
+            this.length = length;
+            this.lastModified = lastModified;
+            templates = new FutureTask<Templates>(new Callable<Templates>() {
+                public Templates call() throws TransformerConfigurationException {
+                    return TemplatesCache.compile(systemId);
+                }
+            });
+        }
+
+        private void compile() {
+            templates.run();
+        }
+
+        private Templates get() throws TransformerConfigurationException {
+            try {
+                return templates.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TransformerConfigurationException("Interrupted while compiling " + systemId, e);
+            } catch (ExecutionException e) {
+                // try again on the next request rather than caching the failure
+                TEMPLATES.remove(systemId, this);
+                final Throwable cause = e.getCause();
+                if (cause instanceof TransformerConfigurationException) {
+                    throw (TransformerConfigurationException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new TransformerConfigurationException("Cannot compile " + systemId, cause);
+            }
+        }
+    }
+}
@@ -40,9 +40,15 @@ package net.sourceforge.cruisecontrol.util.threadpool;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
@@ -53,39 +59,52 @@ import org.apache.log4j.Logger;
  * Each task may be named, but do not have to be.  You may then waitOn
  * for ever task to complete or just the named tasks you care about...
  * or not wait at all.
+ * <P>
+ * Tasks are handed to a bounded executor as soon as they are added or as soon as
+ * a running task finishes, so there is no polling loop between a task becoming
+ * runnable and being started. Busy and idle tasks are indexed by name, which keeps
+ * {@link #isActive(String)} and misses in {@link #findPosition(String)} independent
+ * of the queue length.
  *
  * @author Jared Richardson
  * @version $Id$
  */
 
-public class ThreadQueue extends Thread {
+public final class ThreadQueue {
     private static final Logger LOG = Logger.getLogger(ThreadQueue.class);
 
+    /**
+     * The amount of time (seconds) an idle pool thread is kept alive
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * A handle to the ThreadQueue singleton
+     */
+    private static ThreadQueue threadQueue;
+
     // A ThreadGroup that logs uncaught exception using Log4J
     private final ThreadGroup loggingGroup = new Log4jThreadGroup("Logging group", LOG);
 
     /**
-     * The list of WorkerThreads that are waiting to run (currently idle)
+     * The list of WorkerThreads that are waiting to run (currently idle), in arrival order
      */
-    private final List<WorkerThread> idleTasks = Collections.synchronizedList(new LinkedList<WorkerThread>());
+    private final List<WorkerThread> idleTasks = new LinkedList<WorkerThread>();
 
     /**
-     * The list of WorkerThreads that are running now (currently busy)
+     * The number of entries in idleTasks per task key; idleTasks allows duplicates
      */
-    private final List<WorkerThread> busyTasks = Collections.synchronizedList(new LinkedList<WorkerThread>());
+    private final Map<String, Integer> idleCounts = new HashMap<String, Integer>();
 
     /**
-     * the resultList from each WorkerThread's run
+     * The WorkerThreads that are running now (currently busy) by task key, in start order
      */
-    private final Map<String, Object> resultList = Collections.synchronizedMap(new HashMap<String, Object>());
+    private final Map<String, WorkerThread> busyTasks = new LinkedHashMap<String, WorkerThread>();
 
     /**
-     * Retains a handle to all the running Threads
-     * to handle all sorts of interesting situations
+     * the resultList from each WorkerThread's run
      */
-
-    private final Map<WorkerThread, Thread> runningThreads
-            = Collections.synchronizedMap(new HashMap<WorkerThread, Thread>());
+    private final Map<String, Object> resultList = Collections.synchronizedMap(new HashMap<String, Object>());
 
     /**
      * The number of java.lang.Threads to be launched by the pool at one time
@@ -93,87 +112,92 @@ public class ThreadQueue extends Thread {
     private final int threadCount = ThreadQueueProperties.getMaxThreadCount();
 
     /**
-     * The amount of time (millis) to sleep between loops
+     * Runs the busy tasks; never holds more than threadCount tasks at a time
      */
-    private static final int SLEEP_TIME = 100;
+    private final ThreadPoolExecutor executor;
 
-    /**
-     * A handle to the ThreadQueue singleton
-     */
-    private static ThreadQueue threadQueue;
+    private ThreadQueue() {
+        executor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new LoggingThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
 
-    /*
-     fetch tasks to be executed from the idle list,
-     put them on the busy list, and
-     execute them
+    /**
+     * fetch tasks to be executed from the idle list,
+     * put them on the busy list, and
+     * execute them. Called whenever a task is added or finishes.
      */
-    public void run() {
-        while (true) {
-
-            final boolean nothingWaiting = idleTasks.size() == 0;
-            final boolean maxedOut = busyTasks.size() >= threadCount;
-
-            if (nothingWaiting || maxedOut) {
-                sleep(SLEEP_TIME);
-            } else {
-                handleWaitingTask();
+    private synchronized void dispatchWaitingTasks() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        final Iterator<WorkerThread> tasks = idleTasks.iterator();
+        while (busyTasks.size() < threadCount && tasks.hasNext()) {
+            final WorkerThread task = tasks.next();
+            final String key = keyOf(task.getName());
+            //Since idleTasks allows duplicates, lets make sure this project is not already building
+            if (busyTasks.containsKey(key)) {
+                LOG.debug("The idle task " + task.getName() + " is already running, it will stay idle for now");
+                continue;
             }
+            LOG.debug("handling waiting task " + task.getName());
+            tasks.remove();
+            removeIdleCount(key);
+            busyTasks.put(key, task);
+            executor.execute(new TaskRunner(task));
+        }
+    }
 
-            cleanCompletedTasks();
+    private synchronized void taskCompleted(final WorkerThread task) {
+        final Object result = task.getResult();
+        LOG.debug("Found a finished task");
+        LOG.debug("tempTask.getName() = " + task.getName());
+        LOG.debug("tempTask.getResult() = " + result);
+
+        if (result != null) {
+            resultList.put(task.getName(), result);
         }
+        busyTasks.remove(keyOf(task.getName()));
+        dispatchWaitingTasks();
     }
 
-    private void handleWaitingTask() {
-        LOG.debug("handling waiting task");
-        synchronized (busyTasks) {
-            synchronized (idleTasks) {
-                final WorkerThread firstIdleWorkerThread = idleTasks.get(0);
-                //Since idleTasks allows duplicates, lets make sure this project is not already building
-                if (getBusyTask(firstIdleWorkerThread.getName()) != null) {
-                    LOG.debug("The idle task is already running, it will not be moved to busy tasks yet");
-                    return;
-                } else {
-                    idleTasks.remove(firstIdleWorkerThread);
-                }
-
-                final Thread thisThread = new Thread(loggingGroup, firstIdleWorkerThread);
-                busyTasks.add(firstIdleWorkerThread);
-                runningThreads.put(firstIdleWorkerThread, thisThread);
-                thisThread.start();
-            }
+    private void addIdleTask(final WorkerThread task) {
+        final String key = keyOf(task.getName());
+        synchronized (this) {
+            idleTasks.add(task);
+            final Integer count = idleCounts.get(key);
+            idleCounts.put(key, count == null ? 1 : count + 1);
         }
+        dispatchWaitingTasks();
     }
 
-    private void cleanCompletedTasks() {
-        synchronized (busyTasks) {
-            final Iterator<WorkerThread> tasks = busyTasks.iterator();
-            while (tasks.hasNext()) {
-                final WorkerThread task = tasks.next();
-                final Object result = task.getResult();
-                final boolean taskDone = result != null;
-                if (taskDone) {
-                    LOG.debug("Found a finished task");
-                    LOG.debug("tempTask.getName() = " + task.getName());
-                    LOG.debug("tempTask.getResult() = " + task.getResult());
-
-                    resultList.put(task.getName(), result);
-                    tasks.remove();
-                    runningThreads.remove(task);
-                }
-            }
+    private void removeIdleCount(final String key) {
+        final int count = idleCounts.get(key);
+        if (count > 1) {
+            idleCounts.put(key, count - 1);
+        } else {
+            idleCounts.remove(key);
         }
     }
 
+    /**
+     * Task names are matched ignoring case.
+     * @param taskName the task name
+     * @return the key used to index the task
+     */
+    private static String keyOf(final String taskName) {
+        return taskName.toLowerCase(Locale.ENGLISH);
+    }
+
     /**
      * An internal wrapper around the creation of the
      * Thread Pool singleton
      * @return ThreadQueuse singleton
      */
 
-    private static ThreadQueue getThreadQueue() {
+    private static synchronized ThreadQueue getThreadQueue() {
         if (threadQueue == null) {
             threadQueue = new ThreadQueue();
-            threadQueue.start();
         }
         return threadQueue;
     }
@@ -184,33 +208,25 @@ public class ThreadQueue extends Thread {
      */
     public static void addTask(final WorkerThread task) {
         LOG.debug("Preparing to add worker task " + task.getName());
-
-        synchronized (getThreadQueue().busyTasks) {
-            synchronized (getThreadQueue().idleTasks) {
-
-                // don't trust that 100 ms main loop managed to clean up very
-                // recently finished tasks
-                getThreadQueue().cleanCompletedTasks();
-                getThreadQueue().idleTasks.add(task);
-            }
-        }
+        getThreadQueue().addIdleTask(task);
     }
 
     /**
-     * This may not *always* work -- a task may slip by us between queue checks.
-     * That's OK.  We'd rather have transient results than block the busy queue
-     *    until we're done just to get a position report on a task.
+     * Reports where a task currently is.
      * @param taskName the taskName to look for
      * @return the tasks position in the queue
      */
     public static String findPosition(final String taskName) {
-        WorkerThread task = getIdleTask(taskName);
-        if (task != null) {
-            return getTaskPosition(task, getThreadQueue().idleTasks, "IDLE");
-        }
-        task = getBusyTask(taskName);
-        if (task != null) {
-            return getTaskPosition(task, getThreadQueue().busyTasks, "BUSY");
+        final ThreadQueue queue = getThreadQueue();
+        final String key = keyOf(taskName);
+        synchronized (queue) {
+            if (queue.idleCounts.containsKey(key)) {
+                return formatPosition(indexOf(key, queue.idleTasks), queue.idleTasks.size(), "IDLE");
+            }
+            if (queue.busyTasks.containsKey(key)) {
+                final List<WorkerThread> busy = new LinkedList<WorkerThread>(queue.busyTasks.values());
+                return formatPosition(indexOf(key, busy), busy.size(), "BUSY");
+            }
         }
         final Object result = getResult(taskName);
         if (result != null) {
@@ -219,14 +235,15 @@ public class ThreadQueue extends Thread {
         return "[ not found in queues ]";
     }
 
-    private static String getTaskPosition(final WorkerThread task, final List queue, final String queueName) {
-        final int position;
-        final int length;
-        synchronized (getThreadQueue().busyTasks) {
-            position = queue.indexOf(task);
-            length = queue.size();
+    private static int indexOf(final String key, final List<WorkerThread> queue) {
+        int position = 0;
+        for (final WorkerThread task : queue) {
+            if (keyOf(task.getName()).equals(key)) {
+                return position;
+            }
+            position++;
         }
-        return formatPosition(position, length, queueName);
+        return -1;
     }
 
     private static String formatPosition(final int position, final int length, final String queueName) {
@@ -244,9 +261,11 @@ public class ThreadQueue extends Thread {
      * @return TRUE if task is waiting or running, FALSE if it is finished
      */
     public static boolean isActive(final String taskName) {
-        synchronized (getThreadQueue().busyTasks) {
+        final ThreadQueue queue = getThreadQueue();
+        final String key = keyOf(taskName);
+        synchronized (queue) {
             // it's either busy or idle
-            return !((getBusyTask(taskName) == null) && (getIdleTask(taskName) == null));
+            return queue.busyTasks.containsKey(key) || queue.idleCounts.containsKey(key);
         }
     }
 
@@ -257,72 +276,28 @@ public class ThreadQueue extends Thread {
      * @param workerName the worker name to check
      * @return a result from a completed WorkerThread, or null if not yet done.
      */
-    private static Object getResult(final String workerName) {
+    public static Object getResult(final String workerName) {
         return getThreadQueue().resultList.get(workerName);
     }
 
-    /**
-     * retrieves an active task from the busy list.
-     *
-     * @param taskName the task name to check
-     * @return the active task (if present) or null if it cannot be found
-     */
-    private static WorkerThread getBusyTask(final String taskName) {
-        synchronized (getThreadQueue().busyTasks) {
-            return getTask(taskName, getThreadQueue().busyTasks.iterator());
-        }
-    }
-
-    /**
-     * retrieves an idle task from the idle list.
-     *
-     * @param taskName the task name to check
-     * @return the idle task (if present) or null if it cannot be found
-     */
-    private static WorkerThread getIdleTask(final String taskName) {
-        synchronized (getThreadQueue().idleTasks) {
-            return getTask(taskName, getThreadQueue().idleTasks.iterator());
-        }
-    }
-
-    /**
-     * retrieves a task from the list
-     *
-     * @param taskName the task name to get
-     * @param taskIter a WorkerThread iterator
-     * @return the task (if present) or null if it cannot be found
-     */
-    private static WorkerThread getTask(final String taskName, final Iterator<WorkerThread> taskIter) {
-        while (taskIter.hasNext()) {
-            final WorkerThread thisWorker = taskIter.next();
-            final String tempString = thisWorker.getName();
-            if (tempString.equalsIgnoreCase(taskName)) {
-                return thisWorker;
-            }
-        }
-        return null;
-    }
-
     /**
      * @return the names of the tasks in the busy list; may be empty
      */
     public static List<String> getBusyTaskNames() {
-        final List<String> names;
-        synchronized (getThreadQueue().busyTasks) {
-            names = getTaskNames(getThreadQueue().busyTasks.iterator());
+        final ThreadQueue queue = getThreadQueue();
+        synchronized (queue) {
+            return getTaskNames(queue.busyTasks.values().iterator());
         }
-        return names;
     }
 
     /**
      * @return the names of the tasks in the idle list; may be empty
      */
     public static List<String> getIdleTaskNames() {
-        final List<String> names;
-        synchronized (getThreadQueue().busyTasks) {
-            names = getTaskNames(getThreadQueue().idleTasks.iterator());
+        final ThreadQueue queue = getThreadQueue();
+        synchronized (queue) {
+            return getTaskNames(queue.idleTasks.iterator());
         }
-        return names;
     }
 
     /**
@@ -339,19 +314,44 @@ public class ThreadQueue extends Thread {
     }
 
     /**
-     * Utility call for sleeps.
-     * @param ms milliseconds to sleep.
+     * Stops the running tasks and forgets the queue, the next task starts a new one: lets tests change
+     * the thread count read from {@link ThreadQueueProperties} when the queue is created.
      */
-    private static void sleep(final int ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (Exception ignored) {
+    public static synchronized void stopQueue() {
+        if (threadQueue != null) {
+            threadQueue.executor.shutdownNow();
+            threadQueue = null;
         }
     }
 
-    static void stopQueue() {
-        threadQueue.interrupt();
-        threadQueue = null;
+    /**
+     * Runs a task on a pool thread and reports its completion back to the queue.
+     */
+    private final class TaskRunner implements Runnable {
+        private final WorkerThread task;
+
+        private TaskRunner(final WorkerThread task) {
+            this.task = task;
+        }
+
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                taskCompleted(task);
+            }
+        }
     }
 
+    /**
+     * Creates pool threads inside the logging group so uncaught exceptions end up in the log.
+     */
+    private final class LoggingThreadFactory implements ThreadFactory {
+        private int threadNumber;
+
+        public synchronized Thread newThread(final Runnable runnable) {
+            threadNumber++;
+            return new Thread(loggingGroup, runnable, "ThreadQueue-" + threadNumber);
+        }
+    }
 }
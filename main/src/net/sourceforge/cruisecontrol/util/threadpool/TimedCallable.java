@@ -0,0 +1,134 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util.threadpool;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A task run on a shared pool, which keeps track of when it ran. Its time limit only starts once it
+ * actually starts running, so tasks queued behind a busy pool are not penalized.
+ *
+ * @param <V> the result type of the task
+ */
+public abstract class TimedCallable<V> implements Callable<V> {
+    private volatile long startTime;
+    private volatile long endTime;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    public final V call() throws Exception {
+        startTime = System.currentTimeMillis();
+        try {
+            return execute();
+        } finally {
+            endTime = System.currentTimeMillis();
+            finished.countDown();
+        }
+    }
+
+    /**
+     * @return the result of the task
+     * @throws Exception if the task fails
+     */
+    protected abstract V execute() throws Exception;
+
+    /**
+     * @return when the task started running, 0 if it didn't yet
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return how long the task ran, or has been running so far, in milliseconds; 0 if it didn't start
+     */
+    public long getElapsed() {
+        if (startTime == 0) {
+            return 0;
+        }
+        final long end = endTime == 0 ? System.currentTimeMillis() : endTime;
+        return end - startTime;
+    }
+
+    /**
+     * Waits for the result of this task. The task is cancelled, interrupting it, if it runs for longer than
+     * the given time or if the waiting thread is interrupted.
+     * @param future the future this task was submitted as
+     * @param timeoutMillis maximum time the task may run once started, 0 for no limit
+     * @return the result of the task
+     * @throws InterruptedException if the waiting thread is interrupted
+     * @throws ExecutionException if the task failed
+     * @throws TimeoutException if the task ran for too long
+     */
+    public V await(final Future<V> future, final long timeoutMillis)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            if (timeoutMillis <= 0) {
+                return future.get();
+            }
+            while (true) {
+                final long started = startTime;
+                final long wait = started == 0 ? timeoutMillis : started + timeoutMillis - System.currentTimeMillis();
+                try {
+                    return future.get(Math.max(wait, 1), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (startTime != 0 && System.currentTimeMillis() - startTime >= timeoutMillis) {
+                        future.cancel(true);
+                        throw e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a task that was started, and possibly cancelled, to actually stop running.
+     * @param timeoutMillis maximum time to wait
+     * @return true if the task stopped, false if it is still running
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public boolean awaitStopped(final long timeoutMillis) throws InterruptedException {
+        return startTime == 0 || finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
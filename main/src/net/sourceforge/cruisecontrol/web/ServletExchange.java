@@ -0,0 +1,99 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import net.sourceforge.cruisecontrol.util.HttpFileTransfer;
+
+/**
+ * Lets {@link HttpFileTransfer} answer a servlet request, shared by the dashboard and the reporting
+ * application.
+ */
+public final class ServletExchange implements HttpFileTransfer.Exchange {
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+
+    public ServletExchange(final HttpServletRequest request, final HttpServletResponse response) {
+        this.request = request;
+        this.response = response;
+    }
+
+    public String getRequestHeader(final String name) {
+        return request.getHeader(name);
+    }
+
+    public long getRequestDateHeader(final String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException malformed) {
+            return -1;
+        }
+    }
+
+    public void setStatus(final int status) {
+        response.setStatus(status);
+    }
+
+    public void setHeader(final String name, final String value) {
+        response.setHeader(name, value);
+    }
+
+    public void setDateHeader(final String name, final long date) {
+        response.setDateHeader(name, date);
+    }
+
+    public void setContentType(final String contentType) {
+        response.setContentType(contentType);
+    }
+
+    public void setContentLength(final long length) {
+        if (length <= Integer.MAX_VALUE) {
+            response.setContentLength((int) length);
+        } else {
+            response.setHeader("Content-Length", Long.toString(length));
+        }
+    }
+
+    public OutputStream getOutputStream() throws IOException {
+        return response.getOutputStream();
+    }
+}
@@ -159,6 +159,10 @@ public class BuildOutputLoggerManagerTest extends TestCase {
 
         t.interrupt();
         t2.interrupt();
+        t.join();
+        t2.join();
+        loggerManager.lookup(tName1).flush();
+        loggerManager.lookup(tName2).flush();
 
 
         // read all lines into map to collection unique lines
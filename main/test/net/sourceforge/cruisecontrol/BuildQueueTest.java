@@ -36,7 +36,13 @@
  ********************************************************************************/
 package net.sourceforge.cruisecontrol;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import net.sourceforge.cruisecontrol.BuildQueue.Listener;
+import net.sourceforge.cruisecontrol.util.threadpool.ThreadQueue;
+import net.sourceforge.cruisecontrol.util.threadpool.ThreadQueueProperties;
 import junit.framework.TestCase;
 
 public class BuildQueueTest extends TestCase {
@@ -66,6 +72,101 @@ public class BuildQueueTest extends TestCase {
         queue.requestBuild(new ProjectConfig());
     }
 
+    public void testShouldNotQueueSameProjectTwice() {
+        queue.requestBuild(createProject("one", 0));
+        queue.requestBuild(createProject("two", 0));
+        queue.requestBuild(createProject("one", 0));
+
+        assertEquals("BUILD_REQUESTED[ 1 / 2 ]", queue.findPosition(createProject("one", 0)));
+        assertEquals("BUILD_REQUESTED[ 2 / 2 ]", queue.findPosition(createProject("two", 0)));
+    }
+
+    public void testHigherPriorityIsBuiltFirst() {
+        queue.requestBuild(createProject("low", 0));
+        queue.requestBuild(createProject("high", 5));
+        queue.requestBuild(createProject("lower", -1));
+
+        assertEquals("BUILD_REQUESTED[ 1 / 3 ]", queue.findPosition(createProject("high", 0)));
+        assertEquals("BUILD_REQUESTED[ 2 / 3 ]", queue.findPosition(createProject("low", 0)));
+        assertEquals("BUILD_REQUESTED[ 3 / 3 ]", queue.findPosition(createProject("lower", 0)));
+    }
+
+    public void testDefaultPolicyAgesRequests() {
+        final BuildQueue.Policy policy = new BuildQueue.DefaultPolicy(1000);
+        final long highKey = policy.getSortKey(createProject("high", 2), 10000, 10000);
+        final long oldLowKey = policy.getSortKey(createProject("low", 0), 7000, 10000);
+        final long recentLowKey = policy.getSortKey(createProject("low", 0), 9000, 10000);
+
+        assertTrue("request waiting longer than the priority difference goes first", oldLowKey < highKey);
+        assertTrue(highKey < recentLowKey);
+    }
+
+    public void testDefaultPolicyGivesForcedBuildsPrecedence() {
+        final BuildQueue.Policy policy = new BuildQueue.DefaultPolicy(1000);
+        final ProjectConfig forced = new ProjectConfig() {
+            public boolean isBuildForced() {
+                return true;
+            }
+        };
+        forced.setName("forced");
+
+        final long forcedKey = policy.getSortKey(forced, 10000, 10000);
+        final long scheduledKey = policy.getSortKey(createProject("scheduled", 10), 5000, 10000);
+        assertTrue(forcedKey < scheduledKey);
+    }
+
+    public void testShouldBuildProjectQueuedTwiceOnlyOnce() throws Exception {
+        final BuildCountingProject twice = new BuildCountingProject("twice");
+        final BuildCountingProject after = new BuildCountingProject("after");
+        queue.requestBuild(twice);
+        queue.requestBuild(twice);
+        queue.requestBuild(after);
+        final int threadCount = ThreadQueueProperties.getMaxThreadCount();
+        ThreadQueueProperties.setMaxThreadCount(1);
+        // the thread count is only read when the queue is created
+        ThreadQueue.stopQueue();
+        queue.start();
+        try {
+            // requests are built in order, a duplicate of "twice" would have been built before "after"
+            assertTrue("build timed out", after.awaitBuild());
+            assertEquals(1, twice.getBuildCount());
+        } finally {
+            queue.stop();
+            ThreadQueue.stopQueue();
+            ThreadQueueProperties.setMaxThreadCount(threadCount);
+        }
+    }
+
+    private static ProjectConfig createProject(final String name, final int priority) {
+        final ProjectConfig project = new ProjectConfig();
+        project.setName(name);
+        project.setPriority(priority);
+        return project;
+    }
+
+    private static final class BuildCountingProject extends ProjectConfig {
+        private static final long serialVersionUID = 1L;
+        private final CountDownLatch built = new CountDownLatch(1);
+        private final AtomicInteger buildCount = new AtomicInteger();
+
+        private BuildCountingProject(final String name) {
+            setName(name);
+        }
+
+        public void execute() {
+            buildCount.incrementAndGet();
+            built.countDown();
+        }
+
+        boolean awaitBuild() throws InterruptedException {
+            return built.await(10, TimeUnit.SECONDS);
+        }
+
+        int getBuildCount() {
+            return buildCount.get();
+        }
+    }
+
     class TestListener implements Listener {
         private boolean buildRequested = false;
 
@@ -93,8 +93,8 @@ public class BuilderTest extends TestCase {
 
         final String testLogData = "testLogData";
         buildOutputLogger.consumeLine(testLogData);
-        assertTrue(outputFile.exists());
         assertEquals(testLogData, buildOutputLogger.retrieveLines(0)[0]);
+        assertTrue(outputFile.exists());
         assertTrue(outputFile.delete());
     }
 
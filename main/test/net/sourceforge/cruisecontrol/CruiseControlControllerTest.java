@@ -386,6 +386,41 @@ public final class CruiseControlControllerTest extends TestCase {
         assertEquals(60 * 1000, modifiedProject.getProject().getBuildInterval());
     }
 
+    public void testShouldKeepUnchangedProjectsWhenReloading() throws Exception {
+        MyListener listener = new MyListener();
+        ccController = new CruiseControlController();
+        ccController.addListener(listener);
+
+        FileWriter configOut = new FileWriter(configFile);
+        writeHeader(configOut);
+        writeProjectDetails(configOut, "testProject1", 30);
+        writeProjectDetails(configOut, "testProject2", 30);
+        writeFooterAndClose(configOut);
+
+        ccController.setConfigFile(configFile);
+        final ProjectInterface unchangedProject = ccController.getConfigManager().getProject("testProject1");
+        final ProjectInterface changedProject = ccController.getConfigManager().getProject("testProject2");
+        listener.clear();
+
+        sleep(1200);
+        configOut = new FileWriter(configFile);
+        writeHeader(configOut);
+        writeProjectDetails(configOut, "testProject1", 30);
+        writeProjectDetails(configOut, "testProject2", 60);
+        writeFooterAndClose(configOut);
+
+        assertTrue(ccController.parseConfigFileIfNecessary());
+
+        assertEquals(2, ccController.getProjects().size());
+        assertTrue(ccController.getProjects().contains(unchangedProject));
+        assertSame(unchangedProject, ccController.getConfigManager().getProject("testProject1"));
+        final ProjectConfig modifiedProject = (ProjectConfig) ccController.getConfigManager().getProject("testProject2");
+        assertNotSame(changedProject, modifiedProject);
+        assertEquals(60 * 1000, modifiedProject.getProject().getBuildInterval());
+        assertEquals(0, listener.added.size());
+        assertEquals(0, listener.removed.size());
+    }
+
     public void testRegisterPlugins() throws IOException, CruiseControlException {
         FileWriter configOut = new FileWriter(configFile);
         writeHeader(configOut);
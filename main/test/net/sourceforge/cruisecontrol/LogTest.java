@@ -52,11 +52,15 @@ import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
 
 import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.buildloggers.MergeLogger;
 import net.sourceforge.cruisecontrol.logmanipulators.DeleteManipulator;
 import net.sourceforge.cruisecontrol.logmanipulators.GZIPManipulator;
 import net.sourceforge.cruisecontrol.testutil.TestUtil;
 import net.sourceforge.cruisecontrol.testutil.TestUtil.FilesToDelete;
 import net.sourceforge.cruisecontrol.util.DateUtil;
+import net.sourceforge.cruisecontrol.util.FileBackedElement;
+import net.sourceforge.cruisecontrol.util.IO;
+import net.sourceforge.cruisecontrol.util.Util;
 
 
 public class LogTest extends TestCase {
@@ -231,6 +235,72 @@ public class LogTest extends TestCase {
         assertEquals(expectedLogText, cdata);
     }
 
+    public void testFileBackedMergeShouldWriteIdenticalLog() throws Exception {
+        final File logDir = new File(TestUtil.getTargetDir(), LOG_DIR);
+        logDir.mkdirs();
+        final File report = new File(logDir, "TEST-report.xml");
+        IO.write(report, "<?xml version=\"1.0\"?>\n<testsuite errors=\"0\" tests=\"2\">"
+                + "<properties><property name=\"a\" value=\"b\"/></properties>\n"
+                + "  <testcase name=\"one\"/><testcase name=\"two\"><failure>boom &amp; bust"
+                + "</failure></testcase><!-- comment --><system-out><![CDATA[  out\t]]></system-out>"
+                + "<testcase name=\"three\"><properties><property name=\"c\"/></properties>text</testcase>"
+                + "<?target data?><x:other xmlns:x=\"urn:x\" x:a=\"b\"><x:nested/></x:other>"
+                + "</testsuite>");
+
+        final Element inMemory = new Element("cruisecontrol");
+        inMemory.addContent(getBuildLogInfo());
+        final MergeLogger inMemoryMerge = new MergeLogger();
+        inMemoryMerge.setFile(report.getAbsolutePath());
+        inMemoryMerge.validate();
+        inMemoryMerge.log(inMemory);
+
+        final Element fileBacked = new Element("cruisecontrol");
+        fileBacked.addContent(getBuildLogInfo());
+        final MergeLogger fileBackedMerge = new MergeLogger();
+        fileBackedMerge.setFile(report.getAbsolutePath());
+        fileBackedMerge.setInMemory(false);
+        fileBackedMerge.validate();
+        fileBackedMerge.log(fileBacked);
+
+        final Element stub = fileBacked.getChild("testsuite");
+        assertTrue(stub instanceof FileBackedElement);
+        assertEquals("2", stub.getAttributeValue("tests"));
+        assertEquals(0, stub.getContentSize());
+
+        final Log log = new Log();
+        final File inMemoryFile = new File(logDir, "inmemory.xml");
+        final File fileBackedFile = new File(logDir, "filebacked.xml");
+        log.writeLogFile(inMemoryFile, inMemory);
+        log.writeLogFile(fileBackedFile, fileBacked);
+
+        final String expected = Util.readFileToString(inMemoryFile);
+        assertTrue(expected.indexOf("boom &amp; bust") > 0);
+        assertEquals(expected, Util.readFileToString(fileBackedFile));
+    }
+
+    public void testFileBackedMergeShouldKeepLogWellFormedWhenFileBreaks() throws Exception {
+        final File logDir = new File(TestUtil.getTargetDir(), LOG_DIR);
+        logDir.mkdirs();
+        final File report = new File(logDir, "TEST-broken.xml");
+        IO.write(report, "<testsuite tests=\"2\"><testcase name=\"one\"/><testcase name=\"two\"/></testsuite>");
+
+        final Element fileBacked = new Element("cruisecontrol");
+        final MergeLogger merge = new MergeLogger();
+        merge.setFile(report.getAbsolutePath());
+        merge.setInMemory(false);
+        merge.validate();
+        merge.log(fileBacked);
+
+        // the report gets broken after being merged, the log keeps what could be read
+        IO.write(report, "<testsuite tests=\"2\"><testcase name=\"one\"/><testcase name=");
+        final File logFile = new File(logDir, "broken.xml");
+        new Log().writeLogFile(logFile, fileBacked);
+
+        final Element testsuite = new SAXBuilder().build(logFile).getRootElement().getChild("testsuite");
+        assertEquals(1, testsuite.getChildren("testcase").size());
+        assertEquals("one", testsuite.getChild("testcase").getAttributeValue("name"));
+    }
+
     public void testManipulateLog() throws Exception {
         final String testProjectName = "testBackupLog";
 
@@ -46,8 +46,6 @@ public class MockProject extends Project {
     private int buildCount = 0;
     private Date lastBuild;
     private static final long ONE_SECOND = 1000;
-    private boolean keepLooping = false;
-    private int loopCount = 0;
     private ProjectState mockState;
 
     public ProjectState getState() {
@@ -82,32 +80,6 @@ public class MockProject extends Project {
         return lastBuild;
     }
 
-    void loop() {
-        loopCount = 0;
-        keepLooping = true;
-        while (keepLooping) {
-            loopCount++;
-            try {
-                checkWait();
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                String message = "MockProject.loop() interrupted";
-                throw new RuntimeException(message);
-            }
-        }
-    }
-
-    void checkWait() throws InterruptedException {
-    }
-
-    void stopLooping() {
-        keepLooping = false;
-    }
-
-    int getLoopCount() {
-        return loopCount;
-    }
-
     /*
      * don't do anything
      *
@@ -45,6 +45,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 import net.sourceforge.cruisecontrol.sourcecontrols.MockSourceControl;
@@ -249,6 +250,170 @@ public class ModificationSetTest extends TestCase {
 
     }
 
+    public void testParallelPollingKeepsDeclarationOrder() throws Exception {
+        final MockSourceControl slow = new MockSourceControl() {
+            public List<Modification> getModifications(Date lastBuild, Date now) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    fail("slow source control was interrupted");
+                }
+                return super.getModifications(lastBuild, now);
+            }
+        };
+        slow.setType(1);
+        final MockSourceControl fast = new MockSourceControl();
+        fast.setType(2);
+
+        modSet.add(slow);
+        modSet.add(fast);
+        modSet.setParallel(true);
+
+        final Element actual = modSet.retrieveModificationsAsElement(new Date(), mockProgress);
+
+        final Element expected = new Element("modifications");
+        for (final Modification modification : slow.getModifications(new Date(), new Date())) {
+            expected.addContent(modification.toElement());
+        }
+        for (final Modification modification : fast.getModifications(new Date(), new Date())) {
+            expected.addContent(modification.toElement());
+        }
+
+        final XMLOutputter outputter = new XMLOutputter();
+        assertEquals("XML data differ", outputter.outputString(expected), outputter.outputString(actual));
+        assertTrue(mockProgress.getValue(), mockProgress.getValue().indexOf(" polled ") > -1);
+    }
+
+    public void testParallelPollingTimesOutHangingSourceControl() throws Exception {
+        final MockSourceControl hanging = new MockSourceControl() {
+            public List<Modification> getModifications(Date lastBuild, Date now) {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException expected) {
+                    // cancelled by the timeout
+                }
+                return new ArrayList<Modification>();
+            }
+        };
+        modSet.add(hanging);
+        modSet.add(new MockSourceControl());
+        modSet.setParallel(true);
+        modSet.setPollTimeout(1);
+
+        final long start = System.currentTimeMillis();
+        try {
+            modSet.retrieveModificationsAsElement(new Date(), mockProgress);
+            fail("expected the hanging source control to time out");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().indexOf("timed out after 1 seconds") > -1);
+        }
+        assertTrue("timeout took too long", System.currentTimeMillis() - start < 30000);
+    }
+
+    public void testParallelPollingRethrowsSourceControlFailure() throws Exception {
+        modSet.add(new MockSourceControl());
+        modSet.add(new MockSourceControl() {
+            public List<Modification> getModifications(Date lastBuild, Date now) {
+                throw new RuntimeException("repository unavailable");
+            }
+        });
+        modSet.setParallel(true);
+
+        try {
+            modSet.retrieveModificationsAsElement(new Date(), mockProgress);
+            fail("expected the failure of the source control to propagate");
+        } catch (RuntimeException expected) {
+            assertEquals("repository unavailable", expected.getMessage());
+        }
+    }
+
+    public void testParallelPollingRunsAtMostPollThreadsAtATime() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            modSet.add(new MockSourceControl() {
+                public List<Modification> getModifications(Date lastBuild, Date now) {
+                    final int current = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), current));
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        fail("source control was interrupted");
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    return super.getModifications(lastBuild, now);
+                }
+            });
+        }
+        modSet.setParallel(true);
+        modSet.setPollThreads(2);
+
+        modSet.retrieveModificationsAsElement(new Date(), mockProgress);
+
+        assertTrue("ran " + maxRunning.get() + " polls at a time", maxRunning.get() <= 2);
+        assertEquals(4, modSet.getPollTimesElement().getChildren("sourcecontrol").size());
+    }
+
+    public void testShouldRecordPollTimeOfEachSourceControl() throws Exception {
+        assertNull(modSet.getPollTimesElement());
+        modSet.add(new MockSourceControl());
+        modSet.add(new MockSourceControl());
+
+        modSet.retrieveModificationsAsElement(new Date(), mockProgress);
+
+        final Element times = modSet.getPollTimesElement();
+        assertEquals("sourcecontrols", times.getName());
+        final List<Element> sourceControls = times.getChildren("sourcecontrol");
+        assertEquals(2, sourceControls.size());
+        assertEquals("MockSourceControl", sourceControls.get(0).getAttributeValue("name"));
+        assertEquals("MockSourceControl (2)", sourceControls.get(1).getAttributeValue("name"));
+        assertTrue(Long.parseLong(sourceControls.get(0).getAttributeValue("millis")) >= 0);
+    }
+
+    public void testIncrementalPollingOnlyAsksForNewerChanges() throws Exception {
+        final MockIncrementalSourceControl incremental = new MockIncrementalSourceControl();
+        incremental.setProperty("changed");
+        modSet.add(incremental);
+        modSet.setIncremental(true);
+        final Date lastBuild = formatter.parse("01/01/2004 00:00:00");
+
+        incremental.commit("10");
+        assertEquals(1, modSet.retrieveModificationsAsElement(lastBuild, mockProgress).getChildren().size());
+        assertEquals(1, incremental.fullQueries);
+        assertEquals("true", modSet.getProperties().get("changed"));
+
+        incremental.commit("11");
+        incremental.commit("12");
+        final Element modifications = modSet.retrieveModificationsAsElement(lastBuild, mockProgress);
+        assertEquals(3, modifications.getChildren().size());
+        assertEquals(1, incremental.fullQueries);
+        assertEquals("10", incremental.lastSince);
+        assertEquals("true", modSet.getProperties().get("changed"));
+
+        modSet.retrieveModificationsAsElement(lastBuild, mockProgress);
+        assertEquals(1, incremental.fullQueries);
+        assertEquals("12", incremental.lastSince);
+        assertEquals("true", modSet.getProperties().get("changed"));
+
+        modSet.retrieveModificationsAsElement(formatter.parse("01/02/2004 00:00:00"), mockProgress);
+        assertEquals("a new last build requires a full query", 2, incremental.fullQueries);
+    }
+
+    public void testIncrementalPollingIsOffByDefault() throws Exception {
+        final MockIncrementalSourceControl incremental = new MockIncrementalSourceControl();
+        modSet.add(incremental);
+        final Date lastBuild = formatter.parse("01/01/2004 00:00:00");
+
+        incremental.commit("10");
+        modSet.retrieveModificationsAsElement(lastBuild, mockProgress);
+        modSet.retrieveModificationsAsElement(lastBuild, mockProgress);
+        assertEquals(2, incremental.fullQueries);
+        assertNull(incremental.lastSince);
+    }
+
     public void testGetProperties() throws Exception {
         MockSourceControl mock1 = new MockSourceControl();
         mock1.setType(1);
@@ -328,6 +493,26 @@ public class ModificationSetTest extends TestCase {
         }
     }
 
+    public void testValidatePollSettings() throws CruiseControlException {
+        modSet.add(new MockSourceControl());
+        modSet.validate();
+
+        modSet.setPollThreads(0);
+        try {
+            modSet.validate();
+            fail("pollthreads must be positive");
+        } catch (CruiseControlException expected) {
+        }
+
+        modSet.setPollThreads(2);
+        modSet.setPollTimeout(-1);
+        try {
+            modSet.validate();
+            fail("polltimeout must not be negative");
+        } catch (CruiseControlException expected) {
+        }
+    }
+
     public void testFilterIgnoredFiles() throws CruiseControlException, ParseException {
         final List<Modification> modifications = new ArrayList<Modification>();
 
@@ -497,4 +682,65 @@ public class ModificationSetTest extends TestCase {
         assertEquals("charlie", modSet.getProperties().get("name"));
         assertEquals("10/10/10", modSet.getProperties().get("date"));
     }
+
+    /**
+     * Reports commits with increasing numeric revisions, modified a day after the 01/01/2004 last build.
+     */
+    private final class MockIncrementalSourceControl extends MockSourceControl implements IncrementalSourceControl {
+        private final List<Modification> commits = new ArrayList<Modification>();
+        private final Map<String, String> properties = new HashMap<String, String>();
+        private String property;
+        private String highWaterMark;
+        private int fullQueries;
+        private String lastSince;
+
+        void commit(final String revision) throws ParseException {
+            final Modification modification = new Modification("mock");
+            modification.createModifiedFile("file" + revision, "dir").action = "modified";
+            modification.revision = revision;
+            modification.userName = "user";
+            modification.modifiedTime = formatter.parse("01/02/2004 00:00:00");
+            commits.add(modification);
+        }
+
+        public void setProperty(final String property) {
+            this.property = property;
+        }
+
+        public Map<String, String> getProperties() {
+            final Map<String, String> result = new HashMap<String, String>(properties);
+            properties.clear();
+            return result;
+        }
+
+        public List<Modification> getModifications(final Date lastBuild, final Date now) {
+            fullQueries++;
+            return report(commits);
+        }
+
+        public List<Modification> getModificationsSince(final String revision, final Date lastBuild,
+                                                        final Date now) {
+            lastSince = revision;
+            final List<Modification> newer = new ArrayList<Modification>();
+            for (final Modification modification : commits) {
+                if (Integer.parseInt(modification.revision) > Integer.parseInt(revision)) {
+                    newer.add(modification);
+                }
+            }
+            return report(newer);
+        }
+
+        public String getHighWaterMark() {
+            return highWaterMark;
+        }
+
+        private List<Modification> report(final List<Modification> modifications) {
+            highWaterMark = null;
+            if (!modifications.isEmpty()) {
+                properties.put(property, "true");
+                highWaterMark = modifications.get(modifications.size() - 1).revision;
+            }
+            return new ArrayList<Modification>(modifications);
+        }
+    }
 }
@@ -0,0 +1,146 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001-2003, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+public class ProjectSchedulerTest extends TestCase {
+
+    private final List<String> checked = new ArrayList<String>();
+
+    public void testShouldCheckProjectsInOrderOfDueTime() throws Exception {
+        final Project late = new CheckRecordingProject("late");
+        final Project early = new CheckRecordingProject("early");
+
+        ProjectScheduler.schedule(late, 200);
+        ProjectScheduler.schedule(early, 50);
+        waitForChecks(2);
+
+        assertEquals("early", checked.get(0));
+        assertEquals("late", checked.get(1));
+    }
+
+    public void testShouldReplaceEarlierCheckWhenRescheduled() throws Exception {
+        final Project project = new CheckRecordingProject("project");
+
+        ProjectScheduler.schedule(project, 100);
+        ProjectScheduler.schedule(project, 0);
+        waitForChecks(1);
+        Thread.sleep(200);
+
+        assertEquals(1, checkCount());
+        assertFalse(ProjectScheduler.isScheduled(project));
+    }
+
+    public void testShouldKeepEarlierCheckWhenRescheduledLater() throws Exception {
+        final Project project = new CheckRecordingProject("project");
+
+        ProjectScheduler.schedule(project, 100);
+        ProjectScheduler.schedule(project, 60000);
+        waitForChecks(1);
+
+        assertFalse(ProjectScheduler.isScheduled(project));
+    }
+
+    public void testShouldNotCheckCancelledProject() throws Exception {
+        final Project project = new CheckRecordingProject("project");
+
+        ProjectScheduler.schedule(project, 50);
+        assertTrue(ProjectScheduler.isScheduled(project));
+        ProjectScheduler.cancel(project);
+        Thread.sleep(200);
+
+        assertEquals(0, checkCount());
+        assertFalse(ProjectScheduler.isScheduled(project));
+    }
+
+    public void testShouldKeepCheckingWhileBuildRequestIsSlow() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Project slow = new CheckRecordingProject("slow") {
+            private static final long serialVersionUID = 1L;
+
+            void requestBuild() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final Project other = new CheckRecordingProject("other");
+
+        try {
+            ProjectScheduler.requestBuild(slow);
+            ProjectScheduler.schedule(other, 0);
+            waitForChecks(1);
+            assertEquals("other", checked.get(0));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private int checkCount() {
+        synchronized (checked) {
+            return checked.size();
+        }
+    }
+
+    private void waitForChecks(final int count) throws InterruptedException {
+        for (int i = 0; i < 50 && checkCount() < count; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, checkCount());
+    }
+
+    private class CheckRecordingProject extends Project {
+        private static final long serialVersionUID = 1L;
+
+        private CheckRecordingProject(final String name) {
+            setName(name);
+        }
+
+        void checkSchedule() {
+            synchronized (checked) {
+                checked.add(getName());
+            }
+        }
+    }
+}
@@ -39,7 +39,9 @@ package net.sourceforge.cruisecontrol;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -58,6 +60,8 @@ import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 //import java.util.zip.ZipEntry;
 //import java.util.zip.ZipInputStream;
 
@@ -279,12 +283,7 @@ public class ProjectTest {
         MockProject mockProject = new MockProject() {
             private static final long serialVersionUID = 7421208807053841468L;
 
-            public void run() {
-                loop();
-            }
-
-            void checkWait() throws InterruptedException {
-                waitIfPaused();
+            protected void startScheduling() {
             }
         };
         mockProject.setName("MockProject");
@@ -296,8 +295,6 @@ public class ProjectTest {
             fail();
         } catch (IllegalStateException expected) {
             assertEquals("project must have a schedule", expected.getMessage());
-        } finally {
-            mockProject.stopLooping();
         }
     }
     /*
@@ -308,8 +305,7 @@ public class ProjectTest {
         MockProject mockProject = new MockProject() {
             private static final long serialVersionUID = 6420860433590771835L;
 
-            public void run() {
-                loop();
+            protected void startScheduling() {
             }
             void setBuildStartTime(Date date) {
                 throw new RuntimeException("Should not run");
@@ -324,11 +320,7 @@ public class ProjectTest {
         modSet.setModified(true);
         mockProject.start();
         mockProject.init();
-        try {
-            mockProject.build();
-        } finally {
-            mockProject.stopLooping();
-        }
+        mockProject.build();
     }
 
     @Test
@@ -418,6 +410,97 @@ public class ProjectTest {
         assertEquals(2, publisher.getPublishCount());
     }
 
+    @Test
+    public void testPublishShouldShareLogWithReadOnlyPublishersOnly() throws CruiseControlException {
+        projectConfig.add(new MockSchedule());
+
+        final MockPublisher legacy = new MockPublisher();
+        final MockReadOnlyPublisher readOnly = new MockReadOnlyPublisher();
+        final MockReadOnlyPublisher otherReadOnly = new MockReadOnlyPublisher();
+
+        final ProjectConfig.Publishers publishers = new ProjectConfig.Publishers();
+        publishers.add(readOnly);
+        publishers.add(legacy);
+        publishers.add(otherReadOnly);
+        projectConfig.add(publishers);
+        project.setName("projectName");
+        project.setLabel("label.1");
+        projectConfig.add(new DefaultLabelIncrementer());
+        projectConfig.add(new Log());
+        project.init();
+
+        final Log log = projectConfig.getLog();
+        project.publish(log);
+
+        assertSame(log.getReadOnlyContent(), readOnly.getPublishedLog());
+        assertSame(readOnly.getPublishedLog(), otherReadOnly.getPublishedLog());
+        assertNotSame(log.getReadOnlyContent(), legacy.getPublishedLog());
+    }
+
+    @Test
+    public void testPublishInParallelShouldShareOneCopyWithReadOnlyPublishers() throws CruiseControlException {
+        projectConfig.add(new MockSchedule());
+
+        final MockPublisher legacy = new MockPublisher();
+        final MockReadOnlyPublisher readOnly = new MockReadOnlyPublisher();
+        final MockReadOnlyPublisher otherReadOnly = new MockReadOnlyPublisher();
+
+        final ProjectConfig.Publishers publishers = new ProjectConfig.Publishers();
+        publishers.setParallel(true);
+        publishers.add(readOnly);
+        publishers.add(legacy);
+        publishers.add(otherReadOnly);
+        projectConfig.add(publishers);
+        project.setName("projectName");
+        project.setLabel("label.1");
+        projectConfig.add(new DefaultLabelIncrementer());
+        projectConfig.add(new Log());
+        project.init();
+
+        final Log log = projectConfig.getLog();
+        project.publish(log);
+
+        assertNotSame(log.getReadOnlyContent(), readOnly.getPublishedLog());
+        assertSame(readOnly.getPublishedLog(), otherReadOnly.getPublishedLog());
+        assertNotSame(readOnly.getPublishedLog(), legacy.getPublishedLog());
+    }
+
+    @Test
+    public void testPublishInParallelShouldRunPublishersConcurrentlyAndTimeOut() throws CruiseControlException {
+        projectConfig.add(new MockSchedule());
+
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final MockConcurrentPublisher first = new MockConcurrentPublisher(bothStarted);
+        final MockConcurrentPublisher second = new MockConcurrentPublisher(bothStarted);
+        final MockConcurrentPublisher hanging = new MockConcurrentPublisher(new CountDownLatch(2));
+
+        final ProjectConfig.Publishers publishers = new ProjectConfig.Publishers();
+        publishers.setParallel(true);
+        publishers.setTimeout(1);
+        publishers.add(first);
+        publishers.add(second);
+        publishers.add(hanging);
+        projectConfig.add(publishers);
+        project.setName("projectName");
+        project.setLabel("label.1");
+        projectConfig.add(new DefaultLabelIncrementer());
+        projectConfig.add(new Log());
+        project.init();
+
+        project.publish(projectConfig.getLog());
+
+        assertTrue(first.isReleased());
+        assertTrue(second.isReleased());
+        assertFalse(hanging.isReleased());
+        assertTrue(hanging.wasInterrupted());
+
+        final Map<String, Long> times = project.getPublisherTimes();
+        assertEquals(3, times.size());
+        assertTrue(times.containsKey("MockConcurrentPublisher"));
+        assertTrue(times.containsKey("MockConcurrentPublisher (2)"));
+        assertTrue(times.get("MockConcurrentPublisher (3)") >= 1000);
+    }
+
     @Test
     public void testSetLastBuild() throws CruiseControlException {
         String lastBuild = "20000101120000";
@@ -526,107 +609,89 @@ public class ProjectTest {
     }
 
     @Test
-    public void testWaitIfPaused() throws InterruptedException, CruiseControlException {
-        MockProject mockProject = new MockProject() {
-            private static final long serialVersionUID = 4815988988116502160L;
-
-            public void run() {
-                loop();
-            }
-
-            void checkWait() throws InterruptedException {
-                waitIfPaused();
-            }
-        };
-
+    public void testShouldNotQueueBuildWhilePaused() throws Exception {
+        final RecordingBuildQueue queue = new RecordingBuildQueue();
         projectConfig.add(new MockSchedule());
-        mockProject.setProjectConfig(projectConfig);
-        mockProject.init();
-
-        new Thread(mockProject).start();
-
-        int firstLoopCount = mockProject.getLoopCount();
-        Thread.sleep(100);
-        int secondLoopCount = mockProject.getLoopCount();
-        assertTrue("loop counts should have been different when not paused",
-                   firstLoopCount != secondLoopCount);
-
-        mockProject.setPaused(true);
-        Thread.sleep(100);
-        firstLoopCount = mockProject.getLoopCount();
-        Thread.sleep(100);
-        secondLoopCount = mockProject.getLoopCount();
-        assertEquals("loop counts should be same when paused", firstLoopCount, secondLoopCount);
+        project.setProjectConfig(projectConfig);
+        project.setBuildQueue(queue);
+        project.setPaused(true);
+        project.setBuildForced(true);
 
-        mockProject.setPaused(false);
-        Thread.sleep(100);
-        int lastLoopCount = mockProject.getLoopCount();
-        assertTrue("loop count increased after pause ended", lastLoopCount > secondLoopCount);
+        project.start();
+        try {
+            waitForState(project, ProjectState.PAUSED);
+            assertEquals(0, queue.getRequestCount());
 
-        mockProject.stopLooping();
+            project.setPaused(false);
+            waitForState(project, ProjectState.QUEUED);
+            waitForRequests(queue, 1);
+        } finally {
+            project.stop();
+        }
     }
 
     @Test
-    public void testWaitForNextBuild() throws InterruptedException, CruiseControlException {
+    public void testShouldWaitForNextBuildUntilForced() throws Exception {
+        final RecordingBuildQueue queue = new RecordingBuildQueue();
         projectConfig.add(new MockSchedule());
+        project.setProjectConfig(projectConfig);
+        project.setBuildQueue(queue);
+        project.overrideBuildInterval(DateUtil.ONE_MINUTE);
 
-        MockProject mockProject = new MockProject() {
-            private static final long serialVersionUID = 4262693344992901684L;
-
-            public void run() {
-                loop();
-            }
-
-            void checkWait() throws InterruptedException {
-                waitForNextBuild();
-            }
-        };
-        mockProject.overrideBuildInterval(1000);
-        mockProject.setProjectConfig(projectConfig);
-        mockProject.init();
-
-        new Thread(mockProject).start();
-
-        Thread.sleep(100);
-        assertEquals(1, mockProject.getLoopCount());
-
-        Thread.sleep(100);
-        assertEquals(1, mockProject.getLoopCount());
-
-        mockProject.forceBuild();
-        Thread.sleep(100);
-        assertEquals(2, mockProject.getLoopCount());
+        project.start();
+        try {
+            waitForState(project, ProjectState.WAITING);
+            assertTrue(ProjectScheduler.isScheduled(project));
+            assertEquals(0, queue.getRequestCount());
 
-        mockProject.stopLooping();
+            project.setBuildForced(true);
+            waitForState(project, ProjectState.QUEUED);
+            waitForRequests(queue, 1);
+        } finally {
+            project.stop();
+        }
+        assertFalse(ProjectScheduler.isScheduled(project));
     }
 
     @Test
-    public void testWaitForBuildToFinish() throws InterruptedException {
-        MockProject mockProject = new MockProject() {
-            private static final long serialVersionUID = -8172748698812254496L;
-
-            public void run() {
-                loop();
-            }
-
-            void checkWait() throws InterruptedException {
-                waitForBuildToFinish();
-            }
-        };
+    public void testShouldNotCheckScheduleUntilBuildFinished() throws Exception {
+        final RecordingBuildQueue queue = new RecordingBuildQueue();
+        projectConfig.add(new MockSchedule());
+        project.setProjectConfig(projectConfig);
+        project.setBuildQueue(queue);
+        project.setBuildForced(true);
 
-        new Thread(mockProject).start();
+        project.start();
+        try {
+            waitForState(project, ProjectState.QUEUED);
+            waitForRequests(queue, 1);
 
-        Thread.sleep(100);
-        assertEquals(1, mockProject.getLoopCount());
+            project.forceBuild();
+            Thread.sleep(100);
+            assertFalse(ProjectScheduler.isScheduled(project));
+            assertEquals(1, queue.getRequestCount());
 
-        Thread.sleep(100);
-        assertEquals(1, mockProject.getLoopCount());
+            // still forced since the queued build never ran
+            project.buildFinished();
+            waitForRequests(queue, 2);
+        } finally {
+            project.stop();
+        }
+    }
 
-        mockProject.buildFinished();
-        Thread.sleep(100);
-        assertEquals(2, mockProject.getLoopCount());
+    private static void waitForRequests(final RecordingBuildQueue queue, final int count)
+            throws InterruptedException {
+        for (int i = 0; i < 50 && queue.getRequestCount() < count; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, queue.getRequestCount());
+    }
 
-        mockProject.stopLooping();
+    private static void waitForState(final Project project, final ProjectState state) throws InterruptedException {
+        for (int i = 0; i < 50 && project.getState() != state; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(state, project.getState());
     }
 
     @Test
@@ -762,10 +827,10 @@ public class ProjectTest {
             inObjects.close();
         }
         TestProject deserializedProject = (TestProject) p;
-        deserializedProject.resetCreateNewSchedulingThreadCalled();
+        deserializedProject.resetStartSchedulingCalled();
         deserializedProject.setProjectConfig(projectConfig);
         deserializedProject.start();
-        assertTrue("failed to create schedule thread", deserializedProject.wasCreateNewSchedulingThreadCalled());
+        assertTrue("failed to start scheduling", deserializedProject.wasStartSchedulingCalled());
     }
 
     @Test
@@ -976,17 +1041,59 @@ public class ProjectTest {
         private static final long serialVersionUID = 318946828157075347L;
 
         private int publishCount = 0;
+        private Element publishedLog;
 
         public void validate() {
         }
 
         public void publish(Element log) throws CruiseControlException {
             publishCount++;
+            publishedLog = log;
         }
 
         int getPublishCount() {
             return publishCount;
         }
+
+        Element getPublishedLog() {
+            return publishedLog;
+        }
+    }
+
+    private static class MockReadOnlyPublisher extends MockPublisher implements ReadOnlyLogPublisher {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class MockConcurrentPublisher implements Publisher {
+        private static final long serialVersionUID = 1L;
+
+        private final CountDownLatch latch;
+        private volatile boolean released = false;
+        private volatile boolean interrupted = false;
+
+        MockConcurrentPublisher(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void validate() {
+        }
+
+        public void publish(Element log) throws CruiseControlException {
+            latch.countDown();
+            try {
+                released = latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        boolean isReleased() {
+            return released;
+        }
+
+        boolean wasInterrupted() {
+            return interrupted;
+        }
     }
 
     private static class MockListener implements Listener {
@@ -1009,18 +1116,30 @@ public class ProjectTest {
     private static class TestProject extends Project {
         private static final long serialVersionUID = 8959072893967115075L;
 
-        private boolean createNewSchedulingThreadCalled = false;
+        private boolean startSchedulingCalled = false;
+
+        protected void startScheduling() {
+            startSchedulingCalled = true;
+        }
+
+        boolean wasStartSchedulingCalled() {
+            return startSchedulingCalled;
+        }
 
-        protected void createNewSchedulingThread() {
-            createNewSchedulingThreadCalled = true;
+        void resetStartSchedulingCalled() {
+            startSchedulingCalled = false;
         }
+    }
+
+    private static class RecordingBuildQueue extends BuildQueue {
+        private int requestCount;
 
-        boolean wasCreateNewSchedulingThreadCalled() {
-            return createNewSchedulingThreadCalled;
+        public synchronized void requestBuild(final ProjectInterface projectToBuild) {
+            requestCount++;
         }
 
-        void resetCreateNewSchedulingThreadCalled() {
-            createNewSchedulingThreadCalled = false;
+        synchronized int getRequestCount() {
+            return requestCount;
         }
     }
 
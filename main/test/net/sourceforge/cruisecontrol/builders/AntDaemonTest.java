@@ -0,0 +1,177 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.builders;
+
+import java.io.File;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.BuilderTest;
+import net.sourceforge.cruisecontrol.CruiseControlException;
+import net.sourceforge.cruisecontrol.testutil.TestUtil.FilesToDelete;
+import net.sourceforge.cruisecontrol.util.IO;
+
+import org.jdom2.Element;
+
+public class AntDaemonTest extends TestCase {
+    private final FilesToDelete filesToDelete = new FilesToDelete();
+    private File workingDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        workingDir = filesToDelete.adddir("antdaemon", "test");
+        IO.write(new File(workingDir, "build.xml"),
+                "<project name=\"daemon\" default=\"hello\">"
+                + "<target name=\"hello\"><echo message=\"hello ${who}\"/></target>"
+                + "<target name=\"broken\"><fail message=\"broken\"/></target>"
+                + "</project>");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        AntDaemon.shutdown();
+        filesToDelete.delete();
+    }
+
+    public void testIndependentConstantsAreEqual() {
+        assertEquals(AntDaemon.CLASSNAME_DAEMON_MAIN, AntDaemonMain.class.getName());
+        assertEquals(AntDaemon.FRAME_OUT, AntDaemonMain.FRAME_OUT);
+        assertEquals(AntDaemon.FRAME_ERR, AntDaemonMain.FRAME_ERR);
+        assertEquals(AntDaemon.FRAME_EXIT, AntDaemonMain.FRAME_EXIT);
+    }
+
+    public void testBuildsReuseWarmVM() throws Exception {
+        final AntBuilder builder = createBuilder();
+        final Map<String, String> buildProperties = BuilderTest.createPropsWithProjectName("daemon");
+
+        buildProperties.put("who", "first");
+        assertMessage("hello first", builder.build(buildProperties, null));
+        assertEquals(1, AntDaemon.getIdleCount());
+
+        buildProperties.put("who", "second");
+        assertMessage("hello second", builder.build(buildProperties, null));
+        assertEquals("second build should have reused the idle VM", 1, AntDaemon.getIdleCount());
+    }
+
+    public void testVMIsReplacedAfterMaxBuilds() throws Exception {
+        final AntBuilder builder = createBuilder();
+        builder.setDaemonMaxBuilds(1);
+        builder.validate();
+
+        builder.build(BuilderTest.createPropsWithProjectName("daemon"), null);
+        assertEquals(0, AntDaemon.getIdleCount());
+    }
+
+    public void testIdleVMIsStoppedAfterTimeout() throws Exception {
+        final AntBuilder builder = createBuilder();
+        builder.build(BuilderTest.createPropsWithProjectName("daemon"), null);
+        assertEquals(1, AntDaemon.getIdleCount());
+
+        AntDaemon.stopIdle(System.currentTimeMillis() + AntDaemon.IDLE_TIMEOUT / 2);
+        assertEquals(1, AntDaemon.getIdleCount());
+
+        AntDaemon.stopIdle(System.currentTimeMillis() + AntDaemon.IDLE_TIMEOUT);
+        assertEquals(0, AntDaemon.getIdleCount());
+    }
+
+    public void testFailedBuildKeepsVM() throws Exception {
+        final AntBuilder builder = createBuilder();
+        builder.setTarget("broken");
+
+        final Element log = builder.build(BuilderTest.createPropsWithProjectName("daemon"), null);
+        assertTrue(log.getAttributeValue("error").endsWith("broken"));
+        assertEquals(1, AntDaemon.getIdleCount());
+
+        builder.setTarget("hello");
+        assertMessage("hello ${who}", builder.build(BuilderTest.createPropsWithProjectName("daemon"), null));
+    }
+
+    public void testValidate() throws Exception {
+        final AntBuilder builder = createBuilder();
+        builder.setDaemonMaxBuilds(0);
+        try {
+            builder.validate();
+            fail("daemonMaxBuilds must be positive");
+        } catch (CruiseControlException expected) {
+        }
+
+        builder.setDaemonMaxBuilds(1);
+        builder.setAntScript("ant.sh");
+        try {
+            builder.validate();
+            fail("daemon can't run an antscript");
+        } catch (CruiseControlException expected) {
+        }
+    }
+
+    private AntBuilder createBuilder() throws CruiseControlException {
+        final AntBuilder builder = new AntBuilder();
+        // the VM runs in the current directory, where the relative test classpath resolves
+        builder.setBuildFile(new File(workingDir, "build.xml").getAbsolutePath());
+        builder.setTarget("hello");
+        builder.setUseLogger(true);
+        builder.setLiveOutput(false);
+        builder.setDaemon(true);
+        builder.setProgressLoggerLib(findProgressLoggerLib().getAbsolutePath());
+        builder.validate();
+        return builder;
+    }
+
+    private static File findProgressLoggerLib() {
+        // tests run from main/target, or from main
+        final File[] candidates = {
+            new File("../dist", AntScript.LIBNAME_PROGRESS_LOGGER),
+            new File("dist", AntScript.LIBNAME_PROGRESS_LOGGER)
+        };
+        for (final File candidate : candidates) {
+            if (candidate.exists()) {
+                return candidate;
+            }
+        }
+        fail(AntScript.LIBNAME_PROGRESS_LOGGER + " not found, run the logger.jar target first");
+        return null;
+    }
+
+    private static void assertMessage(final String expected, final Element log) {
+        for (final Object message : log.getDescendants(new org.jdom2.filter.ElementFilter("message"))) {
+            if (expected.equals(((Element) message).getTextTrim())) {
+                return;
+            }
+        }
+        fail("no message '" + expected + "' in the build log");
+    }
+}
@@ -545,6 +545,45 @@ public class AntScriptTest extends TestCase {
      * referenced by CC production classes directly. The test below ensures the common definitions
      * of constant strings in independent classes remain equal.
      */
+    public void testGetDaemonCommandLine() throws CruiseControlException {
+        final String[] launcherArgs =
+         {
+             "java.exe",
+             "-Xmx256m",
+             "-classpath " + script.getAntLauncherJarLocation(WINDOWS_PATH, IS_WINDOWS) + " org.apache.tools.ant.launch.Launcher",
+             "-lib " + windowsPathWithoutSaxonJars,
+             "-lib c:\\PathToAntProgressLogger.jar",
+             "-lib c:\\somedir",
+             "-main " + AntDaemon.CLASSNAME_DAEMON_MAIN };
+        final String[] buildArgs =
+         {
+             "-logger " + AntBuilder.DEFAULT_LOGGER,
+             "-logfile log.xml",
+             "-listener " + AntScript.CLASSNAME_DASHBOARD_LISTENER,
+             "-Dlabel=200.1.23",
+             "-buildfile buildfile",
+             "target" };
+        script.setLoggerClassName(AntBuilder.DEFAULT_LOGGER);
+        script.setWindows(IS_WINDOWS);
+        script.setSystemClassPath(WINDOWS_PATH);
+        script.setShowAntOutput(true);
+        script.setUseLogger(true);
+        script.setProgressLoggerLib("c:\\PathToAntProgressLogger.jar");
+        final AntBuilder.JVMArg arg = windowsBuilder.new JVMArg();
+        arg.setArg("-Xmx256m");
+        final List<AntBuilder.JVMArg> jvmArgs = new ArrayList<AntBuilder.JVMArg>();
+        jvmArgs.add(arg);
+        script.setArgs(jvmArgs);
+        final AntBuilder.Lib lib = windowsBuilder.new Lib();
+        lib.setSearchPath("c:\\somedir");
+        final List<AntBuilder.Lib> libs = new ArrayList<AntBuilder.Lib>();
+        libs.add(lib);
+        script.setLibs(libs);
+
+        TestUtil.assertCommandLine(launcherArgs, script.buildDaemonCommandline().getCommandline());
+        TestUtil.assertCommandLine(buildArgs, script.buildDaemonArguments());
+    }
+
     public void testIndependentContantsAreEqual() {
         assertEquals(AntScript.MSG_PREFIX_ANT_PROGRESS, AntProgressLogger.MSG_PREFIX_ANT_PROGRESS);
 
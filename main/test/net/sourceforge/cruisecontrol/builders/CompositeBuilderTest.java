@@ -36,12 +36,16 @@
  ********************************************************************************/
 package net.sourceforge.cruisecontrol.builders;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
-
+
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.Builder;
 import net.sourceforge.cruisecontrol.CruiseControlConfigIncludeTest;
@@ -385,4 +389,246 @@ public class CompositeBuilderTest extends TestCase {
         assertBuildWithTargetTimeoutError();
     }
 
+    /** Sleeps while building, and records when it started and finished. */
+    private static final class SleepingBuilder extends MockBuilder {
+        private static final long serialVersionUID = 1L;
+
+        private final long sleepMillis;
+        private final String error;
+        private final List<String> events;
+        private volatile boolean interrupted;
+
+        SleepingBuilder(final String name, final long sleepMillis, final String error, final List<String> events) {
+            super(name);
+            this.sleepMillis = sleepMillis;
+            this.error = error;
+            this.events = events;
+        }
+
+        @Override
+        public Element build(final Map<String, String> properties, final Progress progress) {
+            super.build(properties, progress);
+            events.add("start " + getName());
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            events.add("end " + getName());
+
+            final Element result = new Element("build");
+            result.addContent(new Element("target").setAttribute("name", getName()));
+            if (error != null) {
+                result.setAttribute("error", error);
+            }
+            return result;
+        }
+
+        boolean isInterrupted() {
+            return interrupted;
+        }
+    }
+
+    /** Signals a latch when it starts building, then waits for another latch before finishing. */
+    private static final class WaitingBuilder extends MockBuilder {
+        private static final long serialVersionUID = 1L;
+
+        private final transient CountDownLatch signalled;
+        private final transient CountDownLatch awaited;
+
+        WaitingBuilder(final String name, final CountDownLatch signalled, final CountDownLatch awaited) {
+            super(name);
+            this.signalled = signalled;
+            this.awaited = awaited;
+        }
+
+        @Override
+        public Element build(final Map<String, String> properties, final Progress progress) {
+            super.build(properties, progress);
+            if (signalled != null) {
+                signalled.countDown();
+            }
+            final Element result = new Element("build");
+            result.addContent(new Element("target").setAttribute("name", getName()));
+            try {
+                if (awaited != null && !awaited.await(10, TimeUnit.SECONDS)) {
+                    result.setAttribute("error", getName() + " waited in vain for the other builders");
+                }
+            } catch (InterruptedException e) {
+                result.setAttribute("error", getName() + " was interrupted");
+            }
+            return result;
+        }
+    }
+
+    private static List<String> newEvents() {
+        return Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> getTargetNames(final Element buildResult) {
+        final List<String> names = new ArrayList<String>();
+        for (final Element target : (List<Element>) buildResult.getChildren("target")) {
+            final String name = target.getAttributeValue("name");
+            if (!"composite".equals(name)) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    public void testParallelBuildRunsChildBuildersConcurrently() throws Exception {
+        // each builder only finishes once all three started
+        final CountDownLatch started = new CountDownLatch(3);
+        builder = new CompositeBuilder();
+        builder.setParallel(true);
+        builder.add(new WaitingBuilder("builder1", started, started));
+        builder.add(new WaitingBuilder("builder2", started, started));
+        builder.add(new WaitingBuilder("builder3", started, started));
+        builder.validate();
+
+        final Element result = builder.build(new HashMap<String, String>(), null);
+
+        assertNull(result.getAttributeValue("error"));
+        assertEquals(3, getTargetNames(result).size());
+    }
+
+    public void testParallelBuildMergesLogsInDeclarationOrder() throws Exception {
+        // the first builder only finishes after the second one
+        final CountDownLatch fastFinished = new CountDownLatch(1);
+        builder = new CompositeBuilder();
+        builder.setParallel(true);
+        builder.add(new WaitingBuilder("slow", null, fastFinished));
+        builder.add(new WaitingBuilder("fast", fastFinished, null));
+        builder.validate();
+
+        final Element result = builder.buildWithTarget(new HashMap<String, String>(), "target", null);
+
+        assertNull(result.getAttributeValue("error"));
+        final List<String> expected = new ArrayList<String>();
+        expected.add("slow");
+        expected.add("fast");
+        assertEquals(expected, getTargetNames(result));
+    }
+
+    public void testParallelBuildWaitsFor() throws Exception {
+        final List<String> events = newEvents();
+        builder = new CompositeBuilder();
+        builder.setParallel(true);
+        builder.add(new SleepingBuilder("compile", 300, null, events));
+        builder.add(new SleepingBuilder("docs", 0, null, events));
+        builder.add(new SleepingBuilder("test", 0, null, events));
+        final CompositeBuilder.WaitFor waitFor = builder.createWaitFor();
+        waitFor.setBuilder(3);
+        waitFor.setOn("1");
+        builder.validate();
+
+        final Element result = builder.build(new HashMap<String, String>(), null);
+
+        assertNull(result.getAttributeValue("error"));
+        assertTrue(events.toString(), events.indexOf("end compile") < events.indexOf("start test"));
+    }
+
+    public void testParallelBuildStopsOnFirstError() throws Exception {
+        final List<String> events = newEvents();
+        builder = new CompositeBuilder();
+        builder.setParallel(true);
+        final SleepingBuilder running = new SleepingBuilder("running", 10000, null, events);
+        final SleepingBuilder failing = new SleepingBuilder("failing", 100, "Mock build failed", events);
+        final SleepingBuilder notRun = new SleepingBuilder("notRun", 0, null, events);
+        builder.add(running);
+        builder.add(failing);
+        builder.add(notRun);
+        final CompositeBuilder.WaitFor waitFor = builder.createWaitFor();
+        waitFor.setBuilder(3);
+        waitFor.setOn("2");
+        builder.validate();
+
+        final long startTime = System.currentTimeMillis();
+        final Element result = builder.build(new HashMap<String, String>(), null);
+        assertTrue(System.currentTimeMillis() - startTime < 9 * 1000L);
+
+        assertEquals("Mock build failed", result.getAttributeValue("error"));
+        assertFalse(notRun.getName() + " should not have built", notRun.isBuildCalled());
+        assertTrue(running.getName() + " should have been stopped", running.isInterrupted());
+        assertEquals(Collections.singletonList("failing"), getTargetNames(result));
+    }
+
+    public void testParallelBuildTimeout() throws Exception {
+        final List<String> events = newEvents();
+        builder = new CompositeBuilder();
+        builder.setParallel(true);
+        builder.setTimeout(1);
+        final SleepingBuilder slow = new SleepingBuilder("slow", 10000, null, events);
+        builder.add(new SleepingBuilder("fast", 0, null, events));
+        builder.add(slow);
+        builder.validate();
+
+        final long startTime = System.currentTimeMillis();
+        final Element result = builder.build(new HashMap<String, String>(), null);
+        assertTrue(System.currentTimeMillis() - startTime < 9 * 1000L);
+
+        assertTrue(result.getAttributeValue("error").indexOf("timeout") >= 0);
+        assertTrue(slow.getName() + " should have been stopped", slow.isInterrupted());
+        assertEquals(Collections.singletonList("fast"), getTargetNames(result));
+    }
+
+    public void testParallelBuildRethrowsChildException() throws Exception {
+        builder = new CompositeBuilder();
+        builder.setParallel(true);
+        builder.add(new MockBuilder() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Element buildWithTarget(final Map<String, String> properties, final String target,
+                                           final Progress progress) throws CruiseControlException {
+                throw new CruiseControlException("child failed");
+            }
+        });
+
+        try {
+            builder.buildWithTarget(new HashMap<String, String>(), "target", null);
+            fail("the exception of the child builder should have been thrown");
+        } catch (CruiseControlException expected) {
+            assertEquals("child failed", expected.getMessage());
+        }
+    }
+
+    public void testValidateWaitFor() throws Exception {
+        builder = new CompositeBuilder();
+        builder.add(new MockBuilder("builder1"));
+        builder.add(new MockBuilder("builder2"));
+        final CompositeBuilder.WaitFor waitFor = builder.createWaitFor();
+        waitFor.setBuilder(2);
+        waitFor.setOn("1");
+        assertValidateFails("waitfor without parallel");
+
+        builder.setParallel(true);
+        builder.validate();
+
+        waitFor.setOn("3");
+        assertValidateFails("waitfor on unknown child builder");
+        waitFor.setOn("2");
+        assertValidateFails("waitfor on itself");
+        waitFor.setOn("one");
+        assertValidateFails("waitfor on non number");
+        waitFor.setOn("1");
+        waitFor.setBuilder(0);
+        assertValidateFails("waitfor of unknown child builder");
+
+        waitFor.setBuilder(2);
+        final CompositeBuilder.WaitFor cycle = builder.createWaitFor();
+        cycle.setBuilder(1);
+        cycle.setOn("2");
+        assertValidateFails("waitfor cycle");
+    }
+
+    private void assertValidateFails(final String message) {
+        try {
+            builder.validate();
+            fail(message + " should not be valid");
+        } catch (CruiseControlException expected) {
+        }
+    }
+
 } // CompositeBuilderTest
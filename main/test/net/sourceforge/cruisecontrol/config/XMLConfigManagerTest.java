@@ -44,6 +44,7 @@ import junit.framework.TestCase;
 import net.sourceforge.cruisecontrol.CruiseControlConfig;
 import net.sourceforge.cruisecontrol.CruiseControlException;
 import net.sourceforge.cruisecontrol.CruiseControlOptions;
+import net.sourceforge.cruisecontrol.ProjectInterface;
 import net.sourceforge.cruisecontrol.testutil.TestUtil.FilesToDelete;
 import net.sourceforge.cruisecontrol.testutil.TestUtil;
 import net.sourceforge.cruisecontrol.util.IO;
@@ -84,6 +85,48 @@ public class XMLConfigManagerTest extends TestCase {
         assertFalse(configManager.reloadIfNecessary());
     }
     
+    public void testShouldNotReloadWhenOnlyModificationTimeChanges() throws CruiseControlException {
+        XMLConfigManager configManager = new XMLConfigManager(configurationFile);
+        assertFalse(configManager.reloadIfNecessary());
+
+        assertTrue(configurationFile.setLastModified(configurationFile.lastModified() - 10000));
+        assertFalse(configManager.reloadIfNecessary());
+        assertFalse(configManager.reloadIfNecessary());
+    }
+
+    public void testShouldDetectChangesToEntityIncludedFiles() throws Exception {
+        File entityFile = new File(configurationFile.getParentFile(), "entity.xml");
+        filesToDelete.add(entityFile);
+        IO.write(entityFile, "<project name=\"ENTITY\"><schedule><ant/></schedule></project>");
+        writeConfigurationFile("<?xml version=\"1.0\"?><!DOCTYPE cruisecontrol [<!ENTITY projects SYSTEM \""
+                + entityFile.getName() + "\">]><cruisecontrol>&projects;</cruisecontrol>");
+        // let the stamps settle, so that only the change of the entity file can trigger a reload
+        assertTrue(configurationFile.setLastModified(configurationFile.lastModified() - 10000));
+        assertTrue(entityFile.setLastModified(entityFile.lastModified() - 10000));
+
+        XMLConfigManager configManager = new XMLConfigManager(configurationFile);
+        assertFalse(configManager.reloadIfNecessary());
+
+        IO.write(entityFile, "<project name=\"ENTITY\"><schedule interval=\"30\"><ant/></schedule></project>");
+        assertTrue(configManager.reloadIfNecessary());
+        assertFalse(configManager.reloadIfNecessary());
+    }
+
+    public void testShouldKeepUnchangedProjectsWhenReloading() throws CruiseControlException {
+        writeConfigurationFile("<cruisecontrol><project name=\"ONE\"><schedule><ant/></schedule></project>"
+                + "<project name=\"TWO\"><schedule><ant/></schedule></project></cruisecontrol>");
+        XMLConfigManager configManager = new XMLConfigManager(configurationFile);
+        final ProjectInterface one = configManager.getProject("ONE");
+        final ProjectInterface two = configManager.getProject("TWO");
+
+        writeConfigurationFile("<cruisecontrol><project name=\"ONE\"><schedule><ant/></schedule></project>"
+                + "<project name=\"TWO\"><schedule interval=\"30\"><ant/></schedule></project></cruisecontrol>");
+        assertTrue(configManager.reloadIfNecessary());
+
+        assertSame(one, configManager.getProject("ONE"));
+        assertNotSame(two, configManager.getProject("TWO"));
+    }
+
     public void testShouldDetectChangesToIncludedFiles() throws CruiseControlException {
         File includedFile = new File(configurationFile.getParentFile(), "foo.xml");
         filesToDelete.add(includedFile);
@@ -5,12 +5,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
 import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.BuildOutputLoggerManager;
 import net.sourceforge.cruisecontrol.BuildQueue;
 import net.sourceforge.cruisecontrol.BuildQueueTest;
 import net.sourceforge.cruisecontrol.BuilderTest;
@@ -32,6 +38,7 @@ import net.sourceforge.cruisecontrol.builders.AntOutputLogger;
 import net.sourceforge.cruisecontrol.builders.AntScriptTest;
 import net.sourceforge.cruisecontrol.events.BuildResultEvent;
 import net.sourceforge.cruisecontrol.events.BuildResultListener;
+import net.sourceforge.cruisecontrol.util.BuildOutputLogger;
 import net.sourceforge.cruisecontrol.util.IO;
 import net.sourceforge.cruisecontrol.util.Util;
 import net.sourceforge.cruisecontrol.bootstrappers.AntBootstrapper;
@@ -234,6 +241,94 @@ public class ProjectControllerTest extends TestCase {
     }
 
 
+    public void testPushesLiveOutputToListeners() throws Exception {
+        final Project project = new Project();
+        project.setName("pushproject");
+        final File outputFile = File.createTempFile("pushproject", ".tmp");
+        outputFile.deleteOnExit();
+        final BuildOutputLogger logger = BuildOutputLoggerManager.INSTANCE.lookupOrCreate(project.getName(),
+                outputFile);
+        try {
+            logger.consumeLine("before subscribing");
+            final ProjectController mbean = new ProjectController(project);
+            final List<Notification> pushed = new ArrayList<Notification>();
+            final NotificationListener listener = new NotificationListener() {
+                public void handleNotification(final Notification notification, final Object handback) {
+                    synchronized (pushed) {
+                        pushed.add(notification);
+                    }
+                }
+            };
+            mbean.addNotificationListener(listener, null, null);
+            mbean.pushOutput();
+            logger.consumeLine("one");
+            logger.consumeLine("two");
+            mbean.pushOutput();
+            mbean.pushOutput();
+            final String firstID = logger.getID();
+            logger.clear();
+            logger.consumeLine("again");
+            mbean.pushOutput();
+            mbean.removeNotificationListener(listener);
+
+            final List<String> lines = new ArrayList<String>();
+            CompositeData last = null;
+            synchronized (pushed) {
+                for (final Notification notification : pushed) {
+                    assertEquals(ProjectController.OUTPUT_NOTIFICATION, notification.getType());
+                    last = (CompositeData) notification.getUserData();
+                    final List<String> pushedLines = Arrays.asList((String[]) last.get("lines"));
+                    if (pushedLines.contains("one")) {
+                        assertEquals(firstID, last.get("outputID"));
+                        assertEquals(Integer.valueOf(1), last.get("firstLine"));
+                    }
+                    lines.addAll(pushedLines);
+                }
+            }
+            assertEquals(Arrays.asList("one", "two", "again"), lines);
+            final CompositeData first = (CompositeData) pushed.get(0).getUserData();
+            assertEquals("first push tells where the output stands", Integer.valueOf(1), first.get("firstLine"));
+            assertEquals(0, ((String[]) first.get("lines")).length);
+            assertNotNull(last);
+            assertEquals(logger.getID(), last.get("outputID"));
+            assertEquals(Integer.valueOf(0), last.get("firstLine"));
+        } finally {
+            BuildOutputLoggerManager.INSTANCE.remove(project.getName());
+            logger.clear();
+        }
+    }
+
+    public void testKeepsPushingAfterPushFailed() throws Exception {
+        final Project project = new Project();
+        project.setName("failingpushproject");
+        final int[] pushes = new int[1];
+        final ProjectController mbean = new ProjectController(project) {
+            void pushOutput() {
+                synchronized (pushes) {
+                    pushes[0]++;
+                    pushes.notifyAll();
+                }
+                throw new IllegalStateException("push failed");
+            }
+        };
+        final NotificationListener listener = new NotificationListener() {
+            public void handleNotification(final Notification notification, final Object handback) {
+            }
+        };
+        mbean.addNotificationListener(listener, null, null);
+        try {
+            final long end = System.currentTimeMillis() + 10 * ProjectController.OUTPUT_PUSH_INTERVAL;
+            synchronized (pushes) {
+                while (pushes[0] < 2 && System.currentTimeMillis() < end) {
+                    pushes.wait(ProjectController.OUTPUT_PUSH_INTERVAL);
+                }
+                assertEquals("push should be retried after a failure", 2, Math.min(pushes[0], 2));
+            }
+        } finally {
+            mbean.removeNotificationListener(listener);
+        }
+    }
+
     public void testIsLastBuildSuccessful() {
         final ProjectController mbean = new ProjectController(new Project());
         assertTrue(mbean.isLastBuildSuccessful());
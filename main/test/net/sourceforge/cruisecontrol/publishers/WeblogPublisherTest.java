@@ -41,7 +41,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.transform.TransformerFactory;
 
 import junit.framework.TestCase;
 import net.sourceforge.cruisecontrol.CruiseControlException;
@@ -395,13 +394,12 @@ public class WeblogPublisherTest extends TestCase {
         assertTrue(delegatedToTheCorrectMethod[0]);
     }
 
-    //appendTransform(inFile, xsl, messageBuffer, tFactory);
+    //appendTransform(inFile, xsl, messageBuffer);
     public void testAllStylesheetsAreUsedInTransformation() throws Exception {
         final List<String> xslFilesUsed = new ArrayList<String>();
         publisher = new WeblogPublisher() {
             @Override
-            void appendTransform(File xml, File xsl, StringBuilder buf,
-                    TransformerFactory tf) {
+            void appendTransform(File xml, File xsl, StringBuilder buf) {
                 xslFilesUsed.add(xsl.getName());
             }
         };
@@ -418,8 +416,7 @@ public class WeblogPublisherTest extends TestCase {
         File xml = createTempXmlFile();
         File xsl = createTempXslFile();
         StringBuilder buf = new StringBuilder();
-        TransformerFactory tfactory = TransformerFactory.newInstance();
-        publisher.appendTransform(xml, xsl, buf, tfactory);
+        publisher.appendTransform(xml, xsl, buf);
         assertEquals("Testing", buf.toString());
     }
 
@@ -144,7 +144,7 @@ public class GitTest extends TestCase {
         SourceControlProperties props = new SourceControlProperties();
         props.assignPropertyName("hasChanges?");
         props.assignPropertyOnDeleteName("hasDeletions?");
-        Git.parseLog(new StringReader(gitLog), mods, props);
+        assertEquals("0a033e6b51bdae14c787fc915d96441c18e3a717", Git.parseLog(new StringReader(gitLog), mods, props));
         assertEquals(3, mods.size());
 
         Modification modref = new Modification("git");
@@ -217,7 +217,7 @@ public class GitTest extends TestCase {
         SourceControlProperties props = new SourceControlProperties();
         props.assignPropertyName("hasChanges?");
         props.assignPropertyOnDeleteName("hasDeletions?");
-        Git.parseLog(new StringReader(""), mods, props);
+        assertNull(Git.parseLog(new StringReader(""), mods, props));
         assertEquals(0, mods.size());
         Map pm = props.getPropertiesAndReset();
         assertEquals(null, pm.get("hasChanges?"));
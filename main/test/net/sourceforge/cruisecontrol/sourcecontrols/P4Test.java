@@ -144,6 +144,32 @@ public class P4Test extends TestCase {
         assertEquals("p4 -s changes -s submitted foo@2004/12/30:00:00:00,@2004/12/30:00:00:00", cmd.toString());
     }
 
+    public void testBuildChangesCommandSinceChangelist() throws Exception {
+        P4 p4 = new MockP4(0);
+        p4.setView("foo");
+
+        DateFormat dateFormat = new SimpleDateFormat("MM/dd/yyyy");
+        Date date = dateFormat.parse("12/30/2004");
+        Commandline cmdLine = p4.buildChangesCommand("1234", date);
+
+        String[] args = cmdLine.getCommandline();
+        StringBuffer cmd = new StringBuffer();
+        cmd.append(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            cmd.append(" ").append(args[i]);
+        }
+
+        assertEquals("p4 -s changes -s submitted foo@1234,@2004/12/30:00:00:00", cmd.toString());
+    }
+
+    public void testNewerChangelists() {
+        final String[] newer = P4.newerChangelists(new String[] {"1237", "1235", "1234"}, "1234");
+        assertEquals(2, newer.length);
+        assertEquals("1237", newer[0]);
+        assertEquals("1235", newer[1]);
+        assertEquals("1237", P4.getMaxChangelist(newer));
+    }
+
     public void testBuildInfoCommand() {
         P4 p4 = new P4();
         Commandline command = p4.buildInfoCommand();
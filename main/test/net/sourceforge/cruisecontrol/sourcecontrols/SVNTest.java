@@ -421,6 +421,29 @@ public class SVNTest {
         assertThat(properties.get("svnrevision"), equalTo("663"));
     }
 
+    @Test
+    public void testGetMaxRevision() throws ParseException {
+        assertThat(SVN.getMaxRevision(new ArrayList<Modification>()), nullValue());
+
+        final List<Modification> modifications = new ArrayList<Modification>();
+        modifications.add(createModification(SVN.getOutDateFormatter().parse("2003-08-02T10:01:13.349"), "lee",
+                "bli", "1001", "", "/trunk/playground/bbb", "modified"));
+        modifications.add(createModification(SVN.getOutDateFormatter().parse("2003-08-02T10:01:13.349"), "lee",
+                "bli", "999", "", "/trunk/playground/aaa", "added"));
+        assertThat(SVN.getMaxRevision(modifications), equalTo("1001"));
+
+        modifications.add(createModification(SVN.getOutDateFormatter().parse("2003-08-02T10:01:13.349"), "lee",
+                "bli", "HEAD", "", "/trunk/playground/ccc", "added"));
+        assertThat(SVN.getMaxRevision(modifications), nullValue());
+    }
+
+    @Test
+    public void testGetModificationsSinceUnexpectedRevisionFallsBackToDateRange() {
+        final SVN svn = new SVN();
+        svn.setRepositoryLocation("http://svn.collab.net/repos/svn");
+        assertThat(svn.getModificationsSince("not-a-revision", new Date(), new Date()), nullValue());
+    }
+
     @Test
     public void testSetPropertyIgnoresPriorState() throws ParseException {
         testSetProperty();
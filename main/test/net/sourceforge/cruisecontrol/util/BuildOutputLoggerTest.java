@@ -190,6 +190,121 @@ public class BuildOutputLoggerTest extends TestCase {
         assertEquals("one", lines[0]);
     }
 
+    public void testShouldRetrieveLinesPastIndexCheckpoints() throws Exception {
+        final int lineCount = BuildOutputLogger.LineIndex.INTERVAL * 5 + 3;
+        final BuildOutputLogger logger = new BuildOutputLogger(prepareBufferFile(0));
+        for (int i = 0; i < lineCount; i++) {
+            logger.consumeLine(String.valueOf(1 + i));
+        }
+
+        final int firstLine = BuildOutputLogger.LineIndex.INTERVAL * 3 + 7;
+        final String[] lines = logger.retrieveLines(firstLine);
+        assertEquals(lineCount - firstLine, lines.length);
+        assertEquals(String.valueOf(firstLine + 1), lines[0]);
+        assertEquals(String.valueOf(lineCount), lines[lines.length - 1]);
+
+        assertEquals(BuildOutputLogger.MAX_LINES, logger.retrieveLines(0).length);
+        assertEquals(0, logger.retrieveLines(lineCount).length);
+    }
+
+    public void testShouldCountLinesIncludingUnflushedOnes() throws Exception {
+        final File tempFile = prepareBufferFile(0);
+        final BuildOutputLogger logger = new BuildOutputLogger(tempFile);
+        assertEquals(0, logger.getLineCount());
+
+        final int lineCount = BuildOutputLogger.LineIndex.INTERVAL * 2 + 5;
+        for (int i = 0; i < lineCount; i++) {
+            logger.consumeLine(String.valueOf(i));
+        }
+        assertEquals(lineCount, logger.getLineCount());
+        logger.consumeLine("one more");
+        assertEquals(lineCount + 1, logger.getLineCount());
+
+        logger.clear();
+        assertEquals(0, logger.getLineCount());
+    }
+
+    public void testShouldIndexAllLineTerminators() throws Exception {
+        final File tempFile = prepareBufferFile(0);
+        final StringBuilder content = new StringBuilder();
+        final int lineCount = BuildOutputLogger.LineIndex.INTERVAL * 3;
+        final String[] terminators = {"\n", "\r\n", "\r"};
+        for (int i = 0; i < lineCount; i++) {
+            content.append(i + 1).append(terminators[i % terminators.length]);
+        }
+        IO.write(tempFile, content.toString());
+
+        final BuildOutputLogger logger = new BuildOutputLogger(tempFile);
+        for (int firstLine = 0; firstLine < lineCount; firstLine += BuildOutputLogger.LineIndex.INTERVAL / 2 + 1) {
+            final String[] lines = logger.retrieveLines(firstLine);
+            assertEquals(lineCount - firstLine, lines.length);
+            assertEquals(String.valueOf(firstLine + 1), lines[0]);
+        }
+    }
+
+    public void testShouldSeeLinesConsumedAfterRetrieve() throws Exception {
+        final BuildOutputLogger logger = new BuildOutputLogger(prepareBufferFile(0));
+        logger.consumeLine("one");
+        assertEquals(1, logger.retrieveLines(0).length);
+        logger.consumeLine("two");
+        final String[] lines = logger.retrieveLines(1);
+        assertEquals(1, lines.length);
+        assertEquals("two", lines[0]);
+    }
+
+    public void testShouldStartOverAfterClear() throws Exception {
+        final File tempFile = prepareBufferFile(0);
+        final BuildOutputLogger logger = new BuildOutputLogger(tempFile);
+        logger.consumeLine("before clear");
+        assertEquals(1, logger.retrieveLines(0).length);
+        logger.clear();
+        assertFalse(tempFile.exists());
+
+        logger.consumeLine("after clear");
+        final String[] lines = logger.retrieveLines(0);
+        assertEquals(1, lines.length);
+        assertEquals("after clear", lines[0]);
+        logger.clear();
+    }
+
+    public void testShouldReindexFileRecreatedByAnotherWriter() throws Exception {
+        final File tempFile = prepareBufferFile(0);
+        final BuildOutputLogger logger = new BuildOutputLogger(tempFile);
+        IO.write(tempFile, "old one\nold two\nold three\n");
+        assertEquals(3, logger.retrieveLines(0).length);
+
+        // replaced by a longer file, as the forked Ant's AntOutputLogger does
+        assertTrue(tempFile.delete());
+        IO.write(tempFile, "new one\nnew two\nnew three\nnew four\n");
+        final String[] lines = logger.retrieveLines(0);
+        assertEquals(4, lines.length);
+        assertEquals("new one", lines[0]);
+        assertEquals("new four", lines[3]);
+    }
+
+    public void testShouldAppendToFileRecreatedByAnotherWriter() throws Exception {
+        final File tempFile = prepareBufferFile(0);
+        final BuildOutputLogger logger = new BuildOutputLogger(tempFile);
+        logger.consumeLine("one");
+        assertEquals(1, logger.retrieveLines(0).length);
+
+        assertTrue(tempFile.delete());
+        IO.write(tempFile, "recreated\n");
+        logger.consumeLine("two");
+        final String[] lines = logger.retrieveLines(0);
+        assertEquals(2, lines.length);
+        assertEquals("recreated", lines[0]);
+        assertEquals("two", lines[1]);
+    }
+
+    public void testShouldWriteLinesInUTF8() throws Exception {
+        final File tempFile = prepareBufferFile(0);
+        final BuildOutputLogger logger = new BuildOutputLogger(tempFile);
+        logger.consumeLine("caf\u00e9");
+        assertEquals("caf\u00e9", logger.retrieveLines(0)[0]);
+        assertEquals(("caf\u00e9" + System.getProperty("line.separator")).getBytes("UTF-8").length, tempFile.length());
+    }
+
     private void addLineToFile(final File file) throws FileNotFoundException {
         final PrintStream out = new PrintStream(new FileOutputStream(file, true));
         try {
@@ -0,0 +1,345 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.testutil.TestUtil.FilesToDelete;
+
+public class HttpFileTransferTest extends TestCase {
+    private static final String CONTENT = "0123456789";
+
+    private final FilesToDelete filesToDelete = new FilesToDelete();
+    private MockExchange exchange;
+
+    protected void setUp() throws Exception {
+        exchange = new MockExchange();
+    }
+
+    protected void tearDown() throws Exception {
+        filesToDelete.delete();
+    }
+
+    public void testShouldSendWholeFileWithValidators() throws Exception {
+        final File file = createFile(".txt", CONTENT);
+
+        new HttpFileTransfer(file).send("text/plain", exchange);
+
+        assertEquals(0, exchange.status);
+        assertEquals("text/plain", exchange.contentType);
+        assertEquals(10, exchange.contentLength);
+        assertEquals("bytes", exchange.responseHeaders.get("Accept-Ranges"));
+        assertNotNull(exchange.responseHeaders.get("ETag"));
+        assertEquals(Long.valueOf(file.lastModified()), exchange.dateHeaders.get("Last-Modified"));
+        assertEquals(CONTENT, exchange.getBody());
+    }
+
+    public void testShouldAnswerNotModifiedForMatchingETag() throws Exception {
+        final File file = createFile(".txt", CONTENT);
+        new HttpFileTransfer(file).send("text/plain", exchange);
+        final String etag = (String) exchange.responseHeaders.get("ETag");
+
+        exchange = new MockExchange();
+        exchange.requestHeaders.put("If-None-Match", "\"other\", " + etag);
+        new HttpFileTransfer(file).send("text/plain", exchange);
+
+        assertEquals(HttpFileTransfer.SC_NOT_MODIFIED, exchange.status);
+        assertEquals("", exchange.getBody());
+    }
+
+    public void testShouldAnswerNotModifiedSinceLastModified() throws Exception {
+        final File file = createFile(".txt", CONTENT);
+        exchange.requestDates.put("If-Modified-Since", Long.valueOf(file.lastModified() + 1000));
+
+        new HttpFileTransfer(file).send("text/plain", exchange);
+
+        assertEquals(HttpFileTransfer.SC_NOT_MODIFIED, exchange.status);
+        assertEquals("", exchange.getBody());
+
+        exchange = new MockExchange();
+        exchange.requestDates.put("If-Modified-Since", Long.valueOf(file.lastModified() - 2000));
+        new HttpFileTransfer(file).send("text/plain", exchange);
+        assertEquals(CONTENT, exchange.getBody());
+    }
+
+    public void testShouldSendRequestedRange() throws Exception {
+        final File file = createFile(".bin", CONTENT);
+
+        exchange.requestHeaders.put("Range", "bytes=2-5");
+        new HttpFileTransfer(file).send("application/octet-stream", exchange);
+        assertEquals(HttpFileTransfer.SC_PARTIAL_CONTENT, exchange.status);
+        assertEquals("bytes 2-5/10", exchange.responseHeaders.get("Content-Range"));
+        assertEquals(4, exchange.contentLength);
+        assertEquals("2345", exchange.getBody());
+
+        exchange = new MockExchange();
+        exchange.requestHeaders.put("Range", "bytes=7-");
+        new HttpFileTransfer(file).send("application/octet-stream", exchange);
+        assertEquals("789", exchange.getBody());
+
+        exchange = new MockExchange();
+        exchange.requestHeaders.put("Range", "bytes=-4");
+        new HttpFileTransfer(file).send("application/octet-stream", exchange);
+        assertEquals("bytes 6-9/10", exchange.responseHeaders.get("Content-Range"));
+        assertEquals("6789", exchange.getBody());
+
+        exchange = new MockExchange();
+        exchange.requestHeaders.put("Range", "bytes=8-100");
+        new HttpFileTransfer(file).send("application/octet-stream", exchange);
+        assertEquals("89", exchange.getBody());
+    }
+
+    public void testShouldRejectRangeBeyondEndOfFile() throws Exception {
+        final File file = createFile(".bin", CONTENT);
+        exchange.requestHeaders.put("Range", "bytes=10-");
+
+        new HttpFileTransfer(file).send("application/octet-stream", exchange);
+
+        assertEquals(HttpFileTransfer.SC_REQUESTED_RANGE_NOT_SATISFIABLE, exchange.status);
+        assertEquals("bytes */10", exchange.responseHeaders.get("Content-Range"));
+        assertEquals("", exchange.getBody());
+    }
+
+    public void testShouldNotDescribeContentWhenRejectingRange() throws Exception {
+        final File file = createFile(".xml.gz", "");
+        writeCompressed(file, "<cruisecontrol/>");
+        exchange.requestHeaders.put("Accept-Encoding", "gzip");
+        exchange.requestHeaders.put("Range", "bytes=" + file.length() + "-");
+
+        new HttpFileTransfer(file).send("text/xml", exchange);
+
+        assertEquals(HttpFileTransfer.SC_REQUESTED_RANGE_NOT_SATISFIABLE, exchange.status);
+        assertNull(exchange.responseHeaders.get("Content-Encoding"));
+        assertNull(exchange.contentType);
+    }
+
+    public void testShouldSendWholeFileForOutdatedIfRangeOrSeveralRanges() throws Exception {
+        final File file = createFile(".bin", CONTENT);
+
+        exchange.requestHeaders.put("Range", "bytes=2-5");
+        exchange.requestHeaders.put("If-Range", "\"an-older-version\"");
+        new HttpFileTransfer(file).send("application/octet-stream", exchange);
+        assertEquals(0, exchange.status);
+        assertEquals(CONTENT, exchange.getBody());
+
+        exchange = new MockExchange();
+        exchange.requestHeaders.put("Range", "bytes=0-1,4-5");
+        new HttpFileTransfer(file).send("application/octet-stream", exchange);
+        assertEquals(0, exchange.status);
+        assertEquals(CONTENT, exchange.getBody());
+    }
+
+    public void testShouldSendCompressedLogAsIsToClientsAcceptingGzip() throws Exception {
+        final File file = createFile(".xml.gz", "");
+        writeCompressed(file, "<cruisecontrol/>");
+        assertEquals("log.xml", HttpFileTransfer.getServedName(new File("log.xml.gz")));
+
+        exchange.requestHeaders.put("Accept-Encoding", "deflate, gzip");
+        new HttpFileTransfer(file).send("text/xml", exchange);
+        assertEquals("gzip", exchange.responseHeaders.get("Content-Encoding"));
+        assertEquals(file.length(), exchange.contentLength);
+        assertEquals("<cruisecontrol/>", inflate(exchange.body.toByteArray()));
+
+        exchange = new MockExchange();
+        new HttpFileTransfer(file).send("text/xml", exchange);
+        assertNull(exchange.responseHeaders.get("Content-Encoding"));
+        assertEquals("<cruisecontrol/>", exchange.getBody());
+    }
+
+    public void testShouldCompressLargeLogsOnTheFly() throws Exception {
+        final StringBuffer log = new StringBuffer();
+        while (log.length() < HttpFileTransfer.MIN_COMPRESSED_LENGTH) {
+            log.append(CONTENT);
+        }
+        final File file = createFile(".log", log.toString());
+
+        exchange.requestHeaders.put("Accept-Encoding", "gzip");
+        new HttpFileTransfer(file).send("text/plain", exchange);
+        assertEquals("gzip", exchange.responseHeaders.get("Content-Encoding"));
+        assertEquals(-1, exchange.contentLength);
+        assertEquals(log.toString(), inflate(exchange.body.toByteArray()));
+
+        exchange = new MockExchange();
+        exchange.requestHeaders.put("Accept-Encoding", "gzip;q=0");
+        new HttpFileTransfer(file).send("text/plain", exchange);
+        assertNull(exchange.responseHeaders.get("Content-Encoding"));
+        assertEquals(log.toString(), exchange.getBody());
+    }
+
+    public void testShouldPreferUpToDatePrecompressedCopy() throws Exception {
+        final File file = createFile(".xml", "<cruisecontrol/>");
+        final File compressed = new File(file.getPath() + ".gz");
+        filesToDelete.add(compressed);
+        writeCompressed(compressed, "<precompressed/>");
+        assertTrue(compressed.setLastModified(file.lastModified() + 1000));
+
+        exchange.requestHeaders.put("Accept-Encoding", "gzip");
+        new HttpFileTransfer(file).send("text/xml", exchange);
+        assertEquals("gzip", exchange.responseHeaders.get("Content-Encoding"));
+        assertEquals("<precompressed/>", inflate(exchange.body.toByteArray()));
+
+        assertTrue(compressed.setLastModified(file.lastModified() - 2000));
+        exchange = new MockExchange();
+        exchange.requestHeaders.put("Accept-Encoding", "gzip");
+        new HttpFileTransfer(file).send("text/xml", exchange);
+        assertNull("too small to compress", exchange.responseHeaders.get("Content-Encoding"));
+        assertEquals("<cruisecontrol/>", exchange.getBody());
+    }
+
+    public void testShouldStopTransferWhenFileIsTruncated() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        while (content.length() < 64 * 1024) {
+            content.append(CONTENT);
+        }
+        final File file = createFile(".log", content.toString());
+        final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        final OutputStream truncating = new OutputStream() {
+            private boolean truncated;
+
+            public void write(final int b) {
+                received.write(b);
+            }
+
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                if (!truncated) {
+                    truncated = true;
+                    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                    try {
+                        raf.setLength(len + 10);
+                    } finally {
+                        raf.close();
+                    }
+                }
+                received.write(b, off, len);
+            }
+        };
+
+        final Thread transfer = new Thread() {
+            public void run() {
+                try {
+                    HttpFileTransfer.transfer(file, 0, content.length(), truncating);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        transfer.setDaemon(true);
+        transfer.start();
+        transfer.join(10 * 1000);
+        assertFalse("transfer should stop at the new end of the file", transfer.isAlive());
+        assertEquals(file.length(), received.size());
+    }
+
+    private File createFile(final String suffix, final String content) throws Exception {
+        final File file = File.createTempFile("HttpFileTransferTest", suffix);
+        filesToDelete.add(file);
+        IO.write(file, content);
+        return file;
+    }
+
+    private static void writeCompressed(final File file, final String content) throws IOException {
+        final OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String inflate(final byte[] compressed) throws IOException {
+        return IO.readText(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    private static final class MockExchange implements HttpFileTransfer.Exchange {
+        private final Map<String, String> requestHeaders = new HashMap<String, String>();
+        private final Map<String, Long> requestDates = new HashMap<String, Long>();
+        private final Map<String, String> responseHeaders = new HashMap<String, String>();
+        private final Map<String, Long> dateHeaders = new HashMap<String, Long>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private int status;
+        private String contentType;
+        private long contentLength = -1;
+
+        public String getRequestHeader(final String name) {
+            return requestHeaders.get(name);
+        }
+
+        public long getRequestDateHeader(final String name) {
+            final Long date = requestDates.get(name);
+            return date != null ? date.longValue() : -1;
+        }
+
+        public void setStatus(final int status) {
+            this.status = status;
+        }
+
+        public void setHeader(final String name, final String value) {
+            responseHeaders.put(name, value);
+        }
+
+        public void setDateHeader(final String name, final long date) {
+            dateHeaders.put(name, Long.valueOf(date));
+        }
+
+        public void setContentType(final String contentType) {
+            this.contentType = contentType;
+        }
+
+        public void setContentLength(final long length) {
+            contentLength = length;
+        }
+
+        public OutputStream getOutputStream() {
+            return body;
+        }
+
+        String getBody() throws IOException {
+            return body.toString("UTF-8");
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2006, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+
+import junit.framework.TestCase;
+
+public class ProcessSupervisorTest extends TestCase {
+
+    public void testJoinWaitsForPumper() throws Exception {
+        final StringBuffer done = new StringBuffer();
+        final Future<Object> pumping = ProcessSupervisor.pump(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                done.append("done");
+            }
+        });
+        ProcessSupervisor.join(pumping);
+        assertEquals("done", done.toString());
+    }
+
+    public void testJoinSurvivesFailedPumper() throws Exception {
+        ProcessSupervisor.join(ProcessSupervisor.pump(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("expected");
+            }
+        }));
+    }
+
+    public void testScheduledTaskRuns() throws Exception {
+        final Flag flag = new Flag();
+        ProcessSupervisor.schedule(flag, 0).get();
+        assertTrue(flag.isSet());
+    }
+
+    public void testCancelledTaskDoesNotRun() throws Exception {
+        final Flag flag = new Flag();
+        final ScheduledFuture<Object> scheduled = ProcessSupervisor.schedule(flag, 1);
+        ProcessSupervisor.cancel(scheduled);
+        Thread.sleep(1500);
+        assertTrue(scheduled.isCancelled());
+        assertFalse(flag.isSet());
+    }
+
+    private static final class Flag implements Runnable {
+        private volatile boolean set;
+
+        public void run() {
+            set = true;
+        }
+
+        boolean isSet() {
+            return set;
+        }
+    }
+}
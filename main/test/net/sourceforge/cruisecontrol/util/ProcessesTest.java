@@ -52,36 +52,20 @@ public class ProcessesTest extends TestCase {
     }
 
     public void testShouldStartStreamPumperForErrorStream() throws Exception {
-        Processes.setRuntime(new MockExecutor());
+        MockExecutor executor = new MockExecutor();
+        Processes.setRuntime(executor);
         Commandline c = new Commandline();
         c.setExecutable("UnitTestDummyExcectuable");
 
-        // try to ensure pending thread cleanups occur, so thread counts include only threads
-        // created by this unit test
-        System.gc();
-        System.gc();
-        Runtime.getRuntime().runFinalization();
-        System.gc();
-        System.gc();
-        Thread.sleep(500);
-
-        int preCount = Thread.activeCount();
         assertNotNull(Processes.execute(c));
 
-        // allow some time for thread to spin up. can be longer in java 5
-        int postCount = Thread.activeCount();
+        // the pumper closes the error stream once read to its end
         int waitCount = 0;
-        while ((postCount <= preCount) && (waitCount < 40)) {
+        while (!executor.errorStreamClosed() && waitCount < 100) {
             waitCount++;
-            Thread.sleep(10);
-            postCount = Thread.activeCount();
+            Thread.sleep(100);
         }
-        final String msg = "A StreamPumper Thread wasn't started. postCount: " + postCount
-                + "; preCount: " + preCount + "; waitCount: " + waitCount
-                + (postCount < preCount
-                        ? "\n\tWARNING: Thread counts might include threads from prior tests."
-                        : "");
-        assertTrue(msg, postCount > preCount);
+        assertTrue("A StreamPumper wasn't started for the error stream", executor.errorStreamClosed());
     }
 
     public void testShouldCloseStreamsWhenExecutingFully() throws IOException, InterruptedException {
@@ -108,12 +92,16 @@ public class ProcessesTest extends TestCase {
         public boolean streamsClosed() {
             return error.isClosed() && input.isClosed() && output.isClosed();
         }
+
+        public boolean errorStreamClosed() {
+            return error.isClosed();
+        }
     }
 
     private static final class CloseAwareInputStream extends InputStream {
         private final int millisTillEndOfStream;
         private long starttime;
-        private boolean closed;
+        private volatile boolean closed;
 
         private CloseAwareInputStream(final int millisTillEndOfStream) {
             this.millisTillEndOfStream = millisTillEndOfStream;
@@ -170,5 +158,9 @@ public class ProcessesTest extends TestCase {
         public boolean streamsClosed() {
             return mockProcess.streamsClosed();
         }
+
+        public boolean errorStreamClosed() {
+            return mockProcess.errorStreamClosed();
+        }
     }
 }
@@ -0,0 +1,166 @@
+/********************************************************************************
+ *
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2003, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+
+
+/**
+ * Class testing the {@link StdoutBuffer} with the memory limit set. It runs the same tests
+ * as StdoutBufferTest, with the most of the data spilled to the temporary file, and checks
+ * the spilling itself.
+ */
+public final class SpillingStdoutBufferTest extends StdoutBufferTest
+{
+  /** The memory limit of the buffers tested */
+  private static final int LIMIT = 3000;
+
+  /**
+   * Creates the new instance of StdoutBuffer class spilling over {@link #LIMIT} bytes.
+   */
+  @Override
+  protected StdoutBuffer stdoutBufferFactory() {
+    return new StdoutBuffer(null, LIMIT);
+  }
+
+  /**
+   * Checks that the readers get all the data, both spilled and not, at their own pace.
+   * @throws IOException if test fails
+   */
+  public void testReadersAtIndependentPositions() throws IOException {
+    final byte[] data = randomData(100 * 1000);
+    final StdoutBuffer buffer = stdoutBufferFactory();
+
+    final InputStream early = buffer.getContent();
+    buffer.write(data, 0, data.length / 2);
+    /* read a part only, the rest gets spilled meanwhile */
+    final ByteArrayOutputStream earlyRead = new ByteArrayOutputStream();
+    copy(early, earlyRead, data.length / 4);
+    buffer.write(data, data.length / 2, data.length - data.length / 2);
+    buffer.close();
+
+    copy(early, earlyRead, Integer.MAX_VALUE);
+    Assert.assertArrayEquals(data, earlyRead.toByteArray());
+
+    final ByteArrayOutputStream lateRead = new ByteArrayOutputStream();
+    copy(buffer.getContent(), lateRead, Integer.MAX_VALUE);
+    Assert.assertArrayEquals(data, lateRead.toByteArray());
+
+    assertEquals(data.length, buffer.getSize());
+    assertTrue("nothing spilled", buffer.getSpilledSize() > data.length / 2);
+    assertTrue("too much in memory: " + buffer.getMaxMemorySize(), buffer.getMaxMemorySize() <= LIMIT + 1000);
+  }
+
+  /**
+   * Checks that the spill file is deleted once disposed and all the readers are closed.
+   * @throws IOException if test fails
+   */
+  public void testSpillFileDeletedWhenUnused() throws IOException {
+    final byte[] data = randomData(10 * LIMIT);
+    final StdoutBuffer buffer = stdoutBufferFactory();
+    buffer.write(data);
+    buffer.close();
+    final InputStream reader = buffer.getContent();
+
+    assertNotNull(buffer.getSpillFile());
+    assertTrue(buffer.getSpillFile().exists());
+    buffer.dispose();
+    assertTrue("file deleted when still read", buffer.getSpillFile().exists());
+
+    final ByteArrayOutputStream read = new ByteArrayOutputStream();
+    copy(reader, read, Integer.MAX_VALUE);
+    reader.close();
+    Assert.assertArrayEquals(data, read.toByteArray());
+    assertFalse(buffer.getSpillFile().exists());
+  }
+
+  /**
+   * Checks the spilling of compressed data.
+   * @throws IOException if test fails
+   */
+  public void testGZippedSpilling() throws IOException {
+    final byte[] data = randomData(200 * 1000);
+    final StdoutBuffer buffer = new GZippedStdoutBuffer(null, LIMIT);
+    buffer.write(data);
+    buffer.close();
+
+    final ByteArrayOutputStream read = new ByteArrayOutputStream();
+    copy(buffer.getContent(), read, Integer.MAX_VALUE);
+    Assert.assertArrayEquals(data, read.toByteArray());
+    assertTrue("nothing spilled", buffer.getSpilledSize() > 0);
+    buffer.dispose();
+  }
+
+  /** Without the limit nothing is spilled */
+  public void testNoLimit() throws IOException {
+    final byte[] data = randomData(10 * LIMIT);
+    final StdoutBuffer buffer = new StdoutBuffer(null);
+    buffer.write(data);
+    buffer.close();
+
+    assertEquals(0, buffer.getSpilledSize());
+    assertEquals(data.length, buffer.getMaxMemorySize());
+    assertNull(buffer.getSpillFile());
+  }
+
+  private static byte[] randomData(int size) {
+    final byte[] data = new byte[size];
+    final Random random = new Random(size);
+    /* Text-like data, so compressed too */
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) ('a' + random.nextInt(20));
+    }
+    return data;
+  }
+
+  private static void copy(InputStream in, ByteArrayOutputStream out, int max) throws IOException {
+    final byte[] buff = new byte[777];
+    int copied = 0;
+    int num;
+    while (copied < max && (num = in.read(buff, 0, Math.min(buff.length, max - copied))) >= 0) {
+      out.write(buff, 0, num);
+      copied += num;
+    }
+  }
+}
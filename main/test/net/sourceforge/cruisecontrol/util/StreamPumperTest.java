@@ -43,6 +43,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Assert;
@@ -221,6 +222,21 @@ public class StreamPumperTest extends TestCase {
         assertTrue(txtConsumer.wasLineConsumed(getBinDataMessage(data)));
     }
 
+    // text data with mixed line separators, both binary and text consumer: same lines as text consumer only
+    public void testTxtIn_BinTxtOut_LineSeparators() {
+        byte[] data  = "line1\r\nline2\rline3\n\nline5\r\n".getBytes();
+
+        TestConsumer txtOnlyConsumer = new TestConsumer();
+        new StreamPumper(new ByteArrayInputStream(data), txtOnlyConsumer).run();
+
+        TestConsumer txtConsumer = new TestConsumer();
+        ByteArrayOutputStream binConsumer = new ByteArrayOutputStream();
+        new StreamPumper(new ByteArrayInputStream(data), false, txtConsumer, binConsumer).run();
+
+        assertEquals(Arrays.asList("line1", "line2", "line3", "", "line5"), txtOnlyConsumer.getLines());
+        assertEquals(txtOnlyConsumer.getLines(), txtConsumer.getLines());
+        Assert.assertArrayEquals(data, binConsumer.toByteArray());
+    }
 
     // Gets the output in text consumer expected for binary data
     private String getBinDataMessage(byte[] bytes) {
@@ -251,6 +267,10 @@ class TestConsumer implements StreamConsumer {
         return false;
     }
 
+    List<String> getLines() {
+        return lines;
+    }
+
     public void consumeLine(String line) {
         lines.add(line);
     }
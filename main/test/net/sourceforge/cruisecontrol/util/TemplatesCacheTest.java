@@ -0,0 +1,127 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.CruiseControlException;
+import net.sourceforge.cruisecontrol.testutil.TestUtil.FilesToDelete;
+
+public class TemplatesCacheTest extends TestCase {
+    private final FilesToDelete filesToDelete = new FilesToDelete();
+
+    protected void tearDown() throws Exception {
+        TemplatesCache.clear();
+        filesToDelete.delete();
+    }
+
+    public void testShouldReuseCompiledStylesheetUntilItChanges() throws Exception {
+        final File xsl = File.createTempFile("TemplatesCacheTest", ".xsl");
+        filesToDelete.add(xsl);
+        writeStylesheet(xsl, "first");
+
+        final Templates first = TemplatesCache.getTemplates(xsl);
+        assertSame(first, TemplatesCache.getTemplates(xsl));
+        assertEquals("first", transform(xsl));
+
+        writeStylesheet(xsl, "second, and longer");
+        assertTrue(xsl.setLastModified(xsl.lastModified() + 2000));
+        assertNotSame(first, TemplatesCache.getTemplates(xsl));
+        assertEquals("second, and longer", transform(xsl));
+    }
+
+    public void testShouldShareStylesheetFoundByURL() throws Exception {
+        final File xsl = File.createTempFile("TemplatesCacheTest", ".xsl");
+        filesToDelete.add(xsl);
+        writeStylesheet(xsl, "by url");
+
+        final Templates byURL = TemplatesCache.getTemplates(xsl.toURI().toURL());
+        assertSame(byURL, TemplatesCache.getTemplates(xsl));
+        assertSame(byURL, TemplatesCache.getTemplates(xsl.toURI().toURL()));
+    }
+
+    public void testShouldCompileStylesheetOnceForConcurrentCallers() throws Exception {
+        final File xsl = File.createTempFile("TemplatesCacheTest", ".xsl");
+        filesToDelete.add(xsl);
+        writeStylesheet(xsl, "concurrent");
+
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Templates>> results = new ArrayList<Future<Templates>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(new Callable<Templates>() {
+                    public Templates call() throws Exception {
+                        return TemplatesCache.getTemplates(xsl);
+                    }
+                }));
+            }
+            final Templates first = results.get(0).get();
+            for (final Future<Templates> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void writeStylesheet(final File xsl, final String text) throws CruiseControlException {
+        IO.write(xsl, "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"1.0\">"
+                + "<xsl:output method='text'/>"
+                + "<xsl:template match='/'>" + text + "</xsl:template>"
+                + "</xsl:stylesheet>");
+    }
+
+    private static String transform(final File xsl) throws Exception {
+        final StringWriter writer = new StringWriter();
+        TemplatesCache.newTransformer(xsl).transform(new StreamSource(new StringReader("<cruisecontrol/>")),
+                new StreamResult(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,172 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.util.threadpool;
+
+/**
+ * Micro benchmark for {@link ThreadQueue}: measures the delay between a task finishing and the
+ * next waiting task being started, and the cost of {@link ThreadQueue#findPosition(String)}
+ * with 10, 100 and 1000 queued tasks. Not run as part of the unit tests; start it with
+ * <code>java net.sourceforge.cruisecontrol.util.threadpool.ThreadQueueBenchmark</code>
+ * and the test classpath.
+ */
+public final class ThreadQueueBenchmark {
+    private static final int[] QUEUE_SIZES = {10, 100, 1000};
+    private static final int LOOKUPS = 10000;
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    private ThreadQueueBenchmark() {
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        // the latencies measured are those of tasks started one after the other
+        final int threadCount = ThreadQueueProperties.getMaxThreadCount();
+        ThreadQueueProperties.setMaxThreadCount(1);
+        try {
+            // warm up once so class loading and JIT don't end up in the first numbers
+            run(QUEUE_SIZES[QUEUE_SIZES.length - 1], false);
+            for (final int size : QUEUE_SIZES) {
+                run(size, true);
+            }
+        } finally {
+            ThreadQueueProperties.setMaxThreadCount(threadCount);
+        }
+    }
+
+    private static void run(final int queued, final boolean report) throws InterruptedException {
+        final TimedTask blocker = new TimedTask("blocker", null);
+        blocker.hold();
+        ThreadQueue.addTask(blocker);
+
+        final TimedTask[] tasks = new TimedTask[queued];
+        TimedTask previous = blocker;
+        for (int i = 0; i < queued; i++) {
+            tasks[i] = new TimedTask("project-" + i, previous);
+            ThreadQueue.addTask(tasks[i]);
+            previous = tasks[i];
+        }
+
+        final long lookupStart = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            ThreadQueue.findPosition(tasks[i % queued].getName());
+        }
+        final long lookupNanos = (System.nanoTime() - lookupStart) / LOOKUPS;
+
+        final long missStart = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            ThreadQueue.isActive("not queued " + i);
+        }
+        final long missNanos = (System.nanoTime() - missStart) / LOOKUPS;
+
+        blocker.release();
+        while (ThreadQueue.isActive(tasks[queued - 1].getName())) {
+            Thread.sleep(1);
+        }
+
+        long totalLatency = 0;
+        long maxLatency = 0;
+        for (final TimedTask task : tasks) {
+            final long latency = task.getDispatchLatency();
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+        }
+        ThreadQueue.stopQueue();
+
+        if (report) {
+            System.out.println(queued + " queued: dispatch latency avg " + micros(totalLatency / queued)
+                    + " us, max " + micros(maxLatency) + " us; findPosition " + micros(lookupNanos)
+                    + " us; isActive miss " + micros(missNanos) + " us");
+        }
+    }
+
+    private static String micros(final long nanos) {
+        return String.valueOf(nanos / NANOS_PER_MICRO);
+    }
+
+    /**
+     * Records when it started and finished; with the single pool thread main() sets up, each task is
+     * started right after its predecessor finishes.
+     */
+    private static final class TimedTask implements WorkerThread {
+        private final String name;
+        private final TimedTask predecessor;
+        private volatile long started;
+        private volatile long finished;
+        private volatile Object result;
+        private boolean held;
+
+        private TimedTask(final String name, final TimedTask predecessor) {
+            this.name = name;
+            this.predecessor = predecessor;
+        }
+
+        public void run() {
+            started = System.nanoTime();
+            synchronized (this) {
+                while (held) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            finished = System.nanoTime();
+            result = "done";
+        }
+
+        synchronized void hold() {
+            held = true;
+        }
+
+        synchronized void release() {
+            held = false;
+            notifyAll();
+        }
+
+        long getDispatchLatency() {
+            return started - predecessor.finished;
+        }
+
+        public Object getResult() {
+            return result;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -9,7 +9,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXServiceURL;
 
 import net.sourceforge.cruisecontrol.BuildLoopInformation;
@@ -19,7 +18,7 @@ import net.sourceforge.cruisecontrol.dashboard.service.JMXConnectorFactory;
 public class BuildInformationRepositoryInMemoImpl implements BuildInformationRepository {
     private final Map<String, ProjectInfo> data = new HashMap<String, ProjectInfo>();
 
-    private final JMXConnectorFactory jmxConnectorFactory;
+    private final JmxConnectionPool jmxConnectionPool;
 
     private final Map<String, BuildLoopInformation> info = new HashMap<String, BuildLoopInformation>();
 
@@ -28,20 +27,18 @@ public class BuildInformationRepositoryInMemoImpl implements BuildInformationRep
     }
 
     BuildInformationRepositoryInMemoImpl(JMXConnectorFactory jmxConnectorFactory) {
-        this.jmxConnectorFactory = jmxConnectorFactory;
+        this.jmxConnectionPool = new JmxConnectionPool(jmxConnectorFactory);
     }
 
     public ProjectInfo getProjectInfo(String projectName) {
         return data.get(projectName);
     }
 
-    public synchronized ClosableProjectMBeanConnection getJmxConnection(final String projectName) throws IOException {
+    public ClosableProjectMBeanConnection getJmxConnection(final String projectName) throws IOException {
         if (!knowAboutProject(projectName)) {
             return null;
         }
-        final JMXConnector jmxConnector
-                = jmxConnectorFactory.connect(jmxServiceUrl(projectName), environment(projectName));
-        return new ClosableProjectMBeanConnectionImpl(jmxConnector);
+        return jmxConnectionPool.getConnection(jmxServiceUrl(projectName), environment(projectName));
     }
 
     public List<ProjectInfo> getProjectInfos() {
@@ -1,10 +1,17 @@
 package net.sourceforge.cruisecontrol.dashboard.repository;
 
 import javax.management.MBeanServerConnection;
+import javax.management.NotificationListener;
 import java.io.IOException;
 
 public interface ClosableProjectMBeanConnection {
     MBeanServerConnection getMBeanServerConnection();
 
+    /**
+     * @param listener told when the connection is closed or fails, see
+     * {@link javax.management.remote.JMXConnectionNotification}
+     */
+    void addConnectionNotificationListener(NotificationListener listener);
+
     void close() throws IOException;
 }
@@ -0,0 +1,397 @@
+package net.sourceforge.cruisecontrol.dashboard.repository;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServerConnection;
+import javax.management.NotificationListener;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXServiceURL;
+
+import net.sourceforge.cruisecontrol.dashboard.service.JMXConnectorFactory;
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
+import net.sourceforge.cruisecontrol.util.threadpool.TimedCallable;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps one JMX connection open per build loop, shared by all the requests made to its projects.
+ * Each build loop has its own lock, which is never held while talking to the build loop: requests
+ * made while a connection is being opened wait for it, other build loops aren't held up at all.
+ * Connections are checked in the background, all build loops at the same time with a time limit
+ * each: those failing or too slow to answer are dropped, as are those left unused for a while.
+ * A build loop that can't be connected to isn't tried again before a delay doubling with each
+ * failure, requests for it fail right away meanwhile.
+ */
+public class JmxConnectionPool {
+
+    private static final Logger LOGGER = Logger.getLogger(JmxConnectionPool.class);
+
+    static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+    static final long PROBE_INTERVAL = 30 * 1000;
+    static final long MIN_RETRY_DELAY = 5 * 1000;
+    static final long MAX_RETRY_DELAY = 5 * 60 * 1000;
+    static final long PROBE_TIMEOUT = 10 * 1000;
+    static final int PROBE_THREADS = 4;
+
+    private final JMXConnectorFactory jmxConnectorFactory;
+
+    private final ConcurrentMap<String, BuildLoopConnection> connections
+            = new ConcurrentHashMap<String, BuildLoopConnection>();
+
+    private ScheduledExecutorService prober;
+
+    /** Checks the connections, the time limit of each check only starts once it actually runs. */
+    private final ThreadPoolExecutor probes = createProbes();
+
+    private long probeTimeout = PROBE_TIMEOUT;
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    /** Counts when statistics were last logged, to only log them again when they changed. */
+    private String loggedStatistics = "";
+
+    public JmxConnectionPool(final JMXConnectorFactory jmxConnectorFactory) {
+        this.jmxConnectorFactory = jmxConnectorFactory;
+    }
+
+    private static ThreadPoolExecutor createProbes() {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(PROBE_THREADS, PROBE_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("JmxConnectionProbe"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** @param timeout milliseconds a build loop has to answer a check before its connection is dropped */
+    void setProbeTimeout(final long timeout) {
+        probeTimeout = timeout;
+    }
+
+    /**
+     * @param serviceURL build loop to connect to
+     * @param environment JMX environment of the connection
+     * @return the connection to the build loop, to close once done with it: it is only closed for real
+     * once evicted from the pool
+     * @throws IOException if the build loop can't be connected to, or wasn't reachable not long ago
+     */
+    public ClosableProjectMBeanConnection getConnection(final JMXServiceURL serviceURL,
+                                                        final Map<String, String> environment) throws IOException {
+        return getConnection(serviceURL, environment, System.currentTimeMillis());
+    }
+
+    ClosableProjectMBeanConnection getConnection(final JMXServiceURL serviceURL, final Map<String, String> environment,
+                                                 final long now) throws IOException {
+        final String key = serviceURL.toString();
+        BuildLoopConnection connection = connections.get(key);
+        if (connection == null) {
+            final BuildLoopConnection created = new BuildLoopConnection(serviceURL, environment);
+            connection = connections.putIfAbsent(key, created);
+            if (connection == null) {
+                connection = created;
+                startProbing();
+            }
+        }
+        return connection.lease(now);
+    }
+
+    private synchronized void startProbing() {
+        if (prober != null) {
+            return;
+        }
+        prober = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("JmxConnectionProber"));
+        prober.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                probe(System.currentTimeMillis());
+            }
+        }, PROBE_INTERVAL, PROBE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Closes the connections left unused for too long, and checks the others still work. The checks run
+     * in parallel, and a build loop not answering in time is treated as lost.
+     * @param now current time
+     */
+    void probe(final long now) {
+        final List<Probe> started = new ArrayList<Probe>();
+        final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (final BuildLoopConnection connection : connections.values()) {
+            final Probe probe = connection.startProbe(now);
+            if (probe != null) {
+                started.add(probe);
+                futures.add(probes.submit(probe));
+            }
+        }
+        for (int i = 0; i < started.size(); i++) {
+            final Probe probe = started.get(i);
+            try {
+                probe.await(futures.get(i), probeTimeout);
+            } catch (TimeoutException e) {
+                LOGGER.warn("Build loop at " + probe.connection.serviceURL + " didn't answer within "
+                        + probeTimeout + " ms");
+                probe.connection.lost(probe.connector, now);
+            } catch (ExecutionException e) {
+                LOGGER.warn("Lost connection to build loop at " + probe.connection.serviceURL, e.getCause());
+                probe.connection.lost(probe.connector, now);
+            } catch (InterruptedException e) {
+                futures.get(i).cancel(true);
+                Thread.currentThread().interrupt();
+            }
+        }
+        logStatistics();
+    }
+
+    private void logStatistics() {
+        final String statistics = "JMX connections to build loops: " + getOpenCount() + " open, " + opened
+                + " opened, " + closed + " closed, " + failed + " failed attempts, " + rejected
+                + " requests rejected while unreachable";
+        synchronized (this) {
+            if (statistics.equals(loggedStatistics)) {
+                return;
+            }
+            loggedStatistics = statistics;
+        }
+        LOGGER.info(statistics);
+    }
+
+    /** @return the number of connections currently open */
+    public int getOpenCount() {
+        int count = 0;
+        for (final BuildLoopConnection connection : connections.values()) {
+            if (connection.isOpen()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** @return the number of connections opened so far */
+    public int getOpenedCount() {
+        return opened.get();
+    }
+
+    /** @return the number of connections closed so far, for being idle or failing */
+    public int getClosedCount() {
+        return closed.get();
+    }
+
+    /** @return the number of failed attempts to connect so far */
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /** @return the number of requests rejected so far, for a build loop found unreachable not long ago */
+    public int getRejectedCount() {
+        return rejected.get();
+    }
+
+    /** The connection to one build loop, opened on demand. */
+    private final class BuildLoopConnection {
+        private final JMXServiceURL serviceURL;
+        private final Map<String, String> environment;
+
+        private JMXConnector connector;
+        private MBeanServerConnection mBeanServerConnection;
+        /** True while a thread is opening the connector, the others wait for it rather than connecting too. */
+        private boolean connecting;
+        /** Connections handed out and not closed yet, the connector isn't evicted while there are some. */
+        private int leases;
+        private long lastUsed;
+        private int failures;
+        private long retryAt;
+
+        private BuildLoopConnection(final JMXServiceURL serviceURL, final Map<String, String> environment) {
+            this.serviceURL = serviceURL;
+            this.environment = environment;
+        }
+
+        private ClosableProjectMBeanConnection lease(final long now) throws IOException {
+            synchronized (this) {
+                while (connecting) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while connecting to " + serviceURL);
+                    }
+                }
+                if (connector != null) {
+                    return newLease(now);
+                }
+                if (now < retryAt) {
+                    rejected.incrementAndGet();
+                    throw new IOException("Build loop at " + serviceURL + " is unreachable, will try again in "
+                            + ((retryAt - now + 999) / 1000) + "s");
+                }
+                connecting = true;
+            }
+
+            JMXConnector newConnector = null;
+            try {
+                newConnector = jmxConnectorFactory.connect(serviceURL, environment);
+                final MBeanServerConnection newConnection = newConnector.getMBeanServerConnection();
+                synchronized (this) {
+                    connector = newConnector;
+                    mBeanServerConnection = newConnection;
+                    opened.incrementAndGet();
+                    failures = 0;
+                    return newLease(now);
+                }
+            } catch (IOException e) {
+                if (newConnector != null) {
+                    closeQuietly(newConnector);
+                }
+                synchronized (this) {
+                    fail(now);
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    connecting = false;
+                    notifyAll();
+                }
+            }
+        }
+
+        private ClosableProjectMBeanConnection newLease(final long now) {
+            leases++;
+            lastUsed = now;
+            return new Lease(this, connector, mBeanServerConnection);
+        }
+
+        private synchronized void release(final JMXConnector leased) {
+            if (leased == connector) {
+                leases--;
+                lastUsed = System.currentTimeMillis();
+            }
+        }
+
+        private synchronized boolean isOpen() {
+            return connector != null;
+        }
+
+        /**
+         * Closes the connection if it was left unused for too long.
+         * @return the check of the connection still in use, or null if there is none to check
+         */
+        private Probe startProbe(final long now) {
+            final JMXConnector idle;
+            synchronized (this) {
+                if (connector == null) {
+                    return null;
+                }
+                if (leases > 0 || now - lastUsed <= IDLE_TIMEOUT) {
+                    return new Probe(this, connector, mBeanServerConnection);
+                }
+                LOGGER.debug("Closing idle connection to " + serviceURL);
+                idle = detach();
+            }
+            closeQuietly(idle);
+            return null;
+        }
+
+        /**
+         * Drops the connection if it is still the one found failing.
+         */
+        private void lost(final JMXConnector probed, final long now) {
+            synchronized (this) {
+                if (probed != connector) {
+                    return;
+                }
+                detach();
+                fail(now);
+            }
+            closeQuietly(probed);
+        }
+
+        private void fail(final long now) {
+            failed.incrementAndGet();
+            failures++;
+            retryAt = now + Math.min(MIN_RETRY_DELAY << Math.min(failures - 1, 16), MAX_RETRY_DELAY);
+        }
+
+        /** Forgets the connector, to be closed by the caller once the lock is released. */
+        private JMXConnector detach() {
+            final JMXConnector detached = connector;
+            connector = null;
+            mBeanServerConnection = null;
+            leases = 0;
+            closed.incrementAndGet();
+            return detached;
+        }
+
+        private void closeQuietly(final JMXConnector toClose) {
+            try {
+                toClose.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close connection to " + serviceURL, e);
+            }
+        }
+    }
+
+    /** Checks that a build loop still answers. */
+    private static final class Probe extends TimedCallable<Integer> {
+        private final BuildLoopConnection connection;
+        private final JMXConnector connector;
+        private final MBeanServerConnection mBeanServerConnection;
+
+        private Probe(final BuildLoopConnection connection, final JMXConnector connector,
+                      final MBeanServerConnection mBeanServerConnection) {
+            this.connection = connection;
+            this.connector = connector;
+            this.mBeanServerConnection = mBeanServerConnection;
+        }
+
+        protected Integer execute() throws IOException {
+            return mBeanServerConnection.getMBeanCount();
+        }
+    }
+
+    /** A connection handed out by the pool, closing it only gives it back. */
+    private static final class Lease implements ClosableProjectMBeanConnection {
+        private final BuildLoopConnection pooled;
+        private final JMXConnector connector;
+        private final MBeanServerConnection mBeanServerConnection;
+        private boolean closed;
+
+        private Lease(final BuildLoopConnection pooled, final JMXConnector connector,
+                      final MBeanServerConnection mBeanServerConnection) {
+            this.pooled = pooled;
+            this.connector = connector;
+            this.mBeanServerConnection = mBeanServerConnection;
+        }
+
+        public MBeanServerConnection getMBeanServerConnection() {
+            return mBeanServerConnection;
+        }
+
+        public void addConnectionNotificationListener(final NotificationListener listener) {
+            connector.addConnectionNotificationListener(listener, null, null);
+        }
+
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            pooled.release(connector);
+        }
+    }
+}
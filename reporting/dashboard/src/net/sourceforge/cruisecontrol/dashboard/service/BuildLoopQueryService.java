@@ -78,14 +78,24 @@ public class BuildLoopQueryService {
 
     private final BuildInformationRepository buildInformationRepository;
 
+    /** Live output pushed by the build loops, null to always ask them for it. */
+    private final LiveOutputSubscriptionService liveOutputService;
+
     public BuildLoopQueryService() {
         this(null, null);
     }
 
     public BuildLoopQueryService(EnvironmentService environmentService,
             BuildInformationRepository buildInformationRepository) {
+        this(environmentService, buildInformationRepository, null);
+    }
+
+    public BuildLoopQueryService(EnvironmentService environmentService,
+            BuildInformationRepository buildInformationRepository,
+            LiveOutputSubscriptionService liveOutputService) {
         this.environmentService = environmentService;
         this.buildInformationRepository = buildInformationRepository;
+        this.liveOutputService = liveOutputService;
     }
 
     public String getJmxHttpUrl(String projectName) {
@@ -138,6 +148,12 @@ public class BuildLoopQueryService {
     }
 
     public String[] getBuildOutput(final String projectName, final int firstLine) {
+        if (liveOutputService != null) {
+            final String[] pushed = liveOutputService.getBuildOutput(projectName, firstLine);
+            if (pushed != null) {
+                return pushed;
+            }
+        }
         try {
             final ClosableProjectMBeanConnection closableProjectMBeanConnection = getJMXConnection(projectName);
             try {
@@ -157,6 +173,12 @@ public class BuildLoopQueryService {
     }
 
     public String getLiveOutputID(final String projectName) {
+        if (liveOutputService != null) {
+            final String pushed = liveOutputService.getLiveOutputID(projectName);
+            if (pushed != null) {
+                return pushed;
+            }
+        }
         try {
             final ClosableProjectMBeanConnection closableProjectMBeanConnection = getJMXConnection(projectName);
             try {
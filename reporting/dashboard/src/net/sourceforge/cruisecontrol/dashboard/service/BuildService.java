@@ -64,6 +64,14 @@ import java.util.Map;
 public class BuildService {
     private static final Logger LOGGER = Logger.getLogger(BuildService.class);
 
+    private static final int PARSED_LOG_CACHE_SIZE = 100;
+
+    private static final SAXParserFactory PARSER_FACTORY = SAXParserFactory.newInstance();
+
+    private static final ThreadLocal<SAXParser> PARSERS = new ThreadLocal<SAXParser>();
+
+    private final ParsedLogCache parsedLogs = new ParsedLogCache(PARSED_LOG_CACHE_SIZE);
+
     private final ConfigurationService configuration;
     private final BuildLoopQueryService queryService;
 
@@ -99,8 +107,7 @@ public class BuildService {
 
     BuildDetail createBuildFromFile(LogFile logFile) {
         try {
-            Map properties = new HashMap();
-            parseLogFile(logFile, properties);
+            Map properties = new HashMap(parsedProperties(logFile));
             properties.put("artifactfolder", getArtifactsRootDir((String) properties.get("projectname")));
             return new BuildDetail(logFile, properties);
         } catch (Exception e) {
@@ -110,15 +117,34 @@ public class BuildService {
         }
     }
 
+    /**
+     * Historical logs don't change, so the extracted properties are cached and shared between the
+     * build details created for the same log.
+     */
+    private Map parsedProperties(LogFile logFile) throws Exception {
+        Map props = parsedLogs.get(logFile);
+        if (props == null) {
+            props = new HashMap();
+            parseLogFile(logFile, props);
+            parsedLogs.put(logFile, props);
+        }
+        return props;
+    }
+
     private void parseLogFile(LogFile buildLogFile, Map props) throws Exception {
         CompositeExtractor compositeExtractor = compositeExtractor(buildLogFile);
-        parse(buildLogFile.getInputStream(), compositeExtractor);
+        InputStream logFileInputStream = buildLogFile.getInputStream();
+        try {
+            parse(logFileInputStream, compositeExtractor);
+        } finally {
+            logFileInputStream.close();
+        }
         compositeExtractor.report(props);
     }
 
     private void parse(InputStream logFileInputStream, CompositeExtractor compositeExtractor)
             throws Exception {
-        SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+        SAXParser saxParser = saxParser();
         try {
             saxParser.parse(logFileInputStream, compositeExtractor);
         } catch (ShouldStopParsingException e) {
@@ -126,6 +152,22 @@ public class BuildService {
         }
     }
 
+    /**
+     * SAXParserFactory lookups are costly and parsers aren't thread safe, so each thread reuses its own.
+     */
+    private static SAXParser saxParser() throws Exception {
+        SAXParser saxParser = PARSERS.get();
+        if (saxParser == null) {
+            synchronized (PARSER_FACTORY) {
+                saxParser = PARSER_FACTORY.newSAXParser();
+            }
+            PARSERS.set(saxParser);
+        } else {
+            saxParser.reset();
+        }
+        return saxParser;
+    }
+
     private CompositeExtractor compositeExtractor(File buildLogFile) {
         List handlers = defaultExtractors();
         if (!succeeded(buildLogFile)) {
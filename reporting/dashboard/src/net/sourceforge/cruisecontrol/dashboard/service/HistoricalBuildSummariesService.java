@@ -40,18 +40,17 @@ import net.sourceforge.cruisecontrol.dashboard.Build;
 import net.sourceforge.cruisecontrol.dashboard.BuildSummary;
 import net.sourceforge.cruisecontrol.dashboard.CurrentStatus;
 import net.sourceforge.cruisecontrol.dashboard.utils.TimeConverter;
-import net.sourceforge.cruisecontrol.dashboard.utils.functors.AlphabeticalDescOrderComparator;
 import net.sourceforge.cruisecontrol.dashboard.utils.functors.BuildSummariesFilters;
-import net.sourceforge.cruisecontrol.dashboard.utils.functors.ReportableFilter;
 import org.joda.time.DateTime;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 
 public class HistoricalBuildSummariesService {
@@ -61,11 +60,10 @@ public class HistoricalBuildSummariesService {
 
     private static final FilenameFilter CCLOG_FILTER = BuildSummariesFilters.cclogFilter();
 
-    private static final AlphabeticalDescOrderComparator LOG_FILE_DESC_COMPARATOR =
-            new AlphabeticalDescOrderComparator();
-
     private final ConfigurationService configuration;
 
+    private final Map indexes = new HashMap();
+
     public HistoricalBuildSummariesService(ConfigurationService configuration,
                                            BuildSummaryService buildSummaryService) {
         this.configuration = configuration;
@@ -74,7 +72,7 @@ public class HistoricalBuildSummariesService {
 
     public List getLastest25(String projectName) {
         File pjDir = configuration.getLogRoot(projectName);
-        List buildSummariesObjects = getBuildSummariesObject(getBuildSummariesFile(pjDir, CCLOG_FILTER, LIST_MAXIUM));
+        List buildSummariesObjects = getBuildSummariesObject(getIndex(pjDir).list(CCLOG_FILTER, LIST_MAXIUM));
         for (int i = 0; i < buildSummariesObjects.size(); i++) {
             BuildSummary summary = (BuildSummary) buildSummariesObjects.get(i);
             summary.updateStatus(CurrentStatus.WAITING.getCruiseStatus());            
@@ -84,9 +82,7 @@ public class HistoricalBuildSummariesService {
 
     public BuildSummary getLatest(String projectName) {
         File pjDir = configuration.getLogRoot(projectName);
-        ReportableFilter latest = BuildSummariesFilters.lastFilter();
-        getBuildSummariesFile(pjDir, latest, 1);
-        File logFileXml = latest.report();
+        File logFileXml = getIndex(pjDir).nearest(new DateTime());
         if (logFileXml == null) {
             return buildSummaryService.createInactive(projectName);
         }
@@ -95,7 +91,7 @@ public class HistoricalBuildSummariesService {
 
     public List getAllSucceed(String projectName) {
         File pjDir = configuration.getLogRoot(projectName);
-        List buildSummariesObjects = getBuildSummariesObject(getBuildSummariesFile(pjDir,
+        List buildSummariesObjects = getBuildSummariesObject(getIndex(pjDir).list(
                 BuildSummariesFilters.succeedFilter(), Integer.MAX_VALUE));
         for (int i = 0; i < buildSummariesObjects.size(); i++) {
             BuildSummary summary = (BuildSummary) buildSummariesObjects.get(i);
@@ -106,7 +102,7 @@ public class HistoricalBuildSummariesService {
 
     public List getAll(String projectName) {
         File pjDir = configuration.getLogRoot(projectName);
-        List buildSummariesObjects = getBuildSummariesObject(getBuildSummariesFile(pjDir,
+        List buildSummariesObjects = getBuildSummariesObject(getIndex(pjDir).list(
                 CCLOG_FILTER, Integer.MAX_VALUE));
         for (int i = 0; i < buildSummariesObjects.size(); i++) {
             BuildSummary summary = (BuildSummary) buildSummariesObjects.get(i);
@@ -117,21 +113,11 @@ public class HistoricalBuildSummariesService {
     }
 
     public Build getLastSucceed(String projectName, DateTime datetime) {
-        return filterBuildSummaries(projectName, BuildSummariesFilters.lastSucceedFilter(datetime));
+        return buildSummaryService.createBuildSummary(getIndex(projectName).latestBefore(datetime, true));
     }
 
     public BuildSummary getLastFailed(String projectName, DateTime datetime) {
-        return filterBuildSummaries(projectName, BuildSummariesFilters.lastFailedFilter(datetime));
-    }
-
-    private BuildSummary filterBuildSummaries(String projectName, ReportableFilter filter) {
-        File pjDir = configuration.getLogRoot(projectName);
-        getBuildSummariesObject(getBuildSummariesFile(pjDir, filter, 1));
-        if (filter.report() == null) {
-            return null;
-        } else {
-            return buildSummaryService.createBuildSummary(filter.report());
-        }
+        return buildSummaryService.createBuildSummary(getIndex(projectName).latestBefore(datetime, false));
     }
 
     public Build getEaliestFailed(String projectName, DateTime datetime) {
@@ -140,8 +126,8 @@ public class HistoricalBuildSummariesService {
             List summaries = getAll(projectName);
             return summaries.size() == 0 ? null : (Build) summaries.get(summaries.size() - 1);
         }
-        return filterBuildSummaries(projectName, BuildSummariesFilters.earliestFailedFilter(lastSucceeded
-                .getBuildDate()));
+        return buildSummaryService.createBuildSummary(getIndex(projectName).earliestAfter(
+                lastSucceeded.getBuildDate(), false));
     }
 
     public BuildSummary getEarliestSucceeded(String projectName, DateTime datetime) {
@@ -150,8 +136,8 @@ public class HistoricalBuildSummariesService {
             List summaries = getAll(projectName);
             return summaries.size() == 0 ? null : (BuildSummary) summaries.get(summaries.size() - 1);
         }
-        return filterBuildSummaries(projectName, BuildSummariesFilters.earliestSucceededFilter(lastFailed
-                .getBuildDate()));
+        return buildSummaryService.createBuildSummary(getIndex(projectName).earliestAfter(
+                lastFailed.getBuildDate(), true));
     }
 
     public String getDurationFromLastSuccessfulBuild(String projectName, DateTime datetime) {
@@ -168,10 +154,8 @@ public class HistoricalBuildSummariesService {
         Collection discontinued = configuration.getDiscontinuedProjects();
         List allSummaries = new ArrayList();
         for (Iterator iter = discontinued.iterator(); iter.hasNext();) {
-            ReportableFilter latest = BuildSummariesFilters.lastFilter();
             File folder = (File) iter.next();
-            getBuildSummariesFile(folder, latest, 1);
-            allSummaries.add(buildSummaryService.createDiscontinued(latest.report()));
+            allSummaries.add(buildSummaryService.createDiscontinued(getIndex(folder).nearest(new DateTime())));
         }
         return allSummaries;
     }
@@ -180,10 +164,8 @@ public class HistoricalBuildSummariesService {
         Collection actives = configuration.getActiveProjects();
         List allSummaries = new ArrayList();
         for (Iterator iter = actives.iterator(); iter.hasNext();) {
-            ReportableFilter latest = BuildSummariesFilters.lastFilter();
             File folder = (File) iter.next();
-            getBuildSummariesFile(folder, latest, 1);
-            allSummaries.add(buildSummaryService.createBuildSummary(latest.report()));
+            allSummaries.add(buildSummaryService.createBuildSummary(getIndex(folder).nearest(new DateTime())));
         }
         return allSummaries;
     }
@@ -198,18 +180,19 @@ public class HistoricalBuildSummariesService {
         return allSummaries;
     }
 
-    private File[] getBuildSummariesFile(File pjDir, FilenameFilter logFilter, int maxium) {
-        String[] logFileNames = pjDir.list(logFilter);
-        if (logFileNames == null) {
-            return new File[]{};
-        }
-        Arrays.sort(logFileNames, LOG_FILE_DESC_COMPARATOR);
-        int size = Math.min(logFileNames.length, maxium);
-        File[] logFiles = new File[size];
-        for (int i = 0; i < logFiles.length; i++) {
-            logFiles[i] = new File(pjDir, logFileNames[i]);
+    private LogDirectoryIndex getIndex(String projectName) {
+        return getIndex(configuration.getLogRoot(projectName));
+    }
+
+    private LogDirectoryIndex getIndex(File pjDir) {
+        synchronized (indexes) {
+            LogDirectoryIndex index = (LogDirectoryIndex) indexes.get(pjDir);
+            if (index == null) {
+                index = new LogDirectoryIndex(pjDir);
+                indexes.put(pjDir, index);
+            }
+            return index;
         }
-        return logFiles;
     }
 
     private List getBuildSummariesObject(File[] buildSummariesFiles) {
@@ -0,0 +1,102 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.dashboard.service;
+
+import net.sourceforge.cruisecontrol.util.BuildOutputLogger;
+
+/**
+ * The most recent lines of the live output of one project, as pushed by its build loop. Lines are
+ * numbered like the build loop does: from 0, starting over when the output logger ID changes.
+ */
+final class LiveOutputBuffer {
+
+    private final String[] ring;
+
+    /** ID of the output logger the lines come from, null until anything was pushed. */
+    private String outputID;
+    /** Number of the oldest line held. */
+    private int firstLine;
+    /** Number of lines held. */
+    private int lineCount;
+
+    LiveOutputBuffer(final int capacity) {
+        ring = new String[capacity];
+    }
+
+    /**
+     * @param id ID of the output logger the lines come from
+     * @param first number of the first of the lines
+     * @param lines lines pushed by the build loop, may be empty
+     */
+    synchronized void append(final String id, final int first, final String[] lines) {
+        if (!id.equals(outputID) || first != firstLine + lineCount) {
+            // new output, or some notifications were lost: only what follows is known
+            outputID = id;
+            firstLine = first;
+            lineCount = 0;
+        }
+        for (final String line : lines) {
+            ring[(firstLine + lineCount) % ring.length] = line;
+            if (lineCount == ring.length) {
+                firstLine++;
+            } else {
+                lineCount++;
+            }
+        }
+    }
+
+    synchronized String getOutputID() {
+        return outputID;
+    }
+
+    /**
+     * @param from number of the first line wanted
+     * @return the lines from the given one (inclusive) up to {@link BuildOutputLogger#MAX_LINES}, or null if
+     * they are not all held, in which case they have to be asked for to the build loop
+     */
+    synchronized String[] getLines(final int from) {
+        final int end = firstLine + lineCount;
+        if (outputID == null || from < firstLine || from > end) {
+            return null;
+        }
+        final String[] lines = new String[Math.min(end - from, BuildOutputLogger.MAX_LINES)];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = ring[(from + i) % ring.length];
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,318 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.dashboard.service;
+
+import net.sourceforge.cruisecontrol.BuildLoopInformation.JmxInfo;
+import net.sourceforge.cruisecontrol.dashboard.repository.BuildInformationRepository;
+import net.sourceforge.cruisecontrol.dashboard.repository.ClosableProjectMBeanConnection;
+import net.sourceforge.cruisecontrol.jmx.ProjectController;
+import net.sourceforge.cruisecontrol.util.threadpool.DaemonThreadFactory;
+import org.apache.log4j.Logger;
+
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationFilterSupport;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.remote.JMXConnectionNotification;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the live output of projects in memory, as pushed by their build loops, so that browsers
+ * polling for it don't each cost a call to the build loop. The first request for the output of
+ * a project subscribes to it, through one connection per build loop kept open for all its projects.
+ * Subscribing calls the build loop, so it only locks the project subscribed to, and connecting only
+ * locks the build loop connected to. A subscription nobody asked for the output of in
+ * {@link #IDLE_TIMEOUT} is dropped, so that the build loop stops pushing it.
+ */
+public class LiveOutputSubscriptionService {
+
+    private static final Logger LOGGER = Logger.getLogger(LiveOutputSubscriptionService.class);
+
+    /** Lines of output kept per project. */
+    static final int BUFFER_CAPACITY = 5000;
+
+    /** Time after which a subscription whose output nobody asked for is dropped. */
+    static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+    private static final long SWEEP_INTERVAL = 60 * 1000;
+
+    private static final ScheduledExecutorService SWEEPER
+            = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("LiveOutputSweeper"));
+
+    private final BuildInformationRepository buildInformationRepository;
+
+    /** Open connection to each build loop subscribed to. */
+    private final ConcurrentMap<JmxInfo, ClosableProjectMBeanConnection> connections
+            = new ConcurrentHashMap<JmxInfo, ClosableProjectMBeanConnection>();
+    private final ConcurrentMap<String, Subscription> subscriptions = new ConcurrentHashMap<String, Subscription>();
+    /** Lock of each project name and build loop, held while subscribing to it or connecting to it. */
+    private final ConcurrentMap<Object, Object> locks = new ConcurrentHashMap<Object, Object>();
+    /** Periodic removal of idle subscriptions, while there are some. */
+    private ScheduledFuture< ? > sweep;
+
+    public LiveOutputSubscriptionService(final BuildInformationRepository buildInformationRepository) {
+        this.buildInformationRepository = buildInformationRepository;
+    }
+
+    /**
+     * @param projectName project to get the output of
+     * @param firstLine number of the first line wanted
+     * @return the lines from the given one on, or null if they have to be asked for to the build loop
+     */
+    public String[] getBuildOutput(final String projectName, final int firstLine) {
+        final LiveOutputBuffer buffer = subscribe(projectName);
+        return buffer == null ? null : buffer.getLines(firstLine);
+    }
+
+    /**
+     * @param projectName project to get the output logger ID of
+     * @return ID of the output logger of the project, or null if it has to be asked for to the build loop
+     */
+    public String getLiveOutputID(final String projectName) {
+        final LiveOutputBuffer buffer = subscribe(projectName);
+        return buffer == null ? null : buffer.getOutputID();
+    }
+
+    private LiveOutputBuffer subscribe(final String projectName) {
+        if (!buildInformationRepository.hasBuildLoopInfoFor(projectName)) {
+            subscriptions.remove(projectName);
+            return null;
+        }
+        final JmxInfo buildLoop = buildInformationRepository.getBuildLoopInfo(projectName).getJmxInfo();
+        final Subscription subscription = subscriptions.get(projectName);
+        if (subscription != null && subscription.buildLoop.equals(buildLoop)) {
+            subscription.lastAccess = System.currentTimeMillis();
+            return subscription.buffer;
+        }
+
+        synchronized (lockFor(projectName)) {
+            final Subscription current = subscriptions.get(projectName);
+            if (current != null && current.buildLoop.equals(buildLoop)) {
+                current.lastAccess = System.currentTimeMillis();
+                return current.buffer;
+            }
+            try {
+                final ClosableProjectMBeanConnection connection = connect(projectName, buildLoop);
+                if (connection == null) {
+                    return null;
+                }
+                final LiveOutputBuffer buffer = new LiveOutputBuffer(BUFFER_CAPACITY);
+                final NotificationFilterSupport filter = new NotificationFilterSupport();
+                filter.enableType(ProjectController.OUTPUT_NOTIFICATION);
+                final ObjectName mbeanName = ObjectName.getInstance(ProjectController.OBJECT_NAME_PREFIX + projectName);
+                final OutputListener listener = new OutputListener(buffer);
+                connection.getMBeanServerConnection().addNotificationListener(mbeanName, listener, filter, null);
+                final Subscription added = new Subscription(buildLoop, buffer, connection, mbeanName, listener);
+                subscriptions.put(projectName, added);
+                startSweep();
+                if (connections.get(buildLoop) != connection) {
+                    // the connection failed meanwhile, and was dropped with the subscriptions made through it
+                    subscriptions.remove(projectName, added);
+                    return null;
+                }
+                return buffer;
+            } catch (Exception e) {
+                LOGGER.warn("Could not subscribe to the live output of " + projectName, e);
+                return null;
+            }
+        }
+    }
+
+    private ClosableProjectMBeanConnection connect(final String projectName, final JmxInfo buildLoop)
+            throws Exception {
+        final ClosableProjectMBeanConnection open = connections.get(buildLoop);
+        if (open != null) {
+            return open;
+        }
+        synchronized (lockFor(buildLoop)) {
+            ClosableProjectMBeanConnection connection = connections.get(buildLoop);
+            if (connection == null) {
+                connection = buildInformationRepository.getJmxConnection(projectName);
+                if (connection == null) {
+                    return null;
+                }
+                final BuildLoopListener listener = new BuildLoopListener(buildLoop);
+                connection.addConnectionNotificationListener(listener);
+                final NotificationFilterSupport filter = new NotificationFilterSupport();
+                filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+                connection.getMBeanServerConnection().addNotificationListener(MBeanServerDelegate.DELEGATE_NAME,
+                        listener, filter, null);
+                connections.put(buildLoop, connection);
+            }
+            return connection;
+        }
+    }
+
+    private Object lockFor(final Object key) {
+        final Object lock = new Object();
+        final Object existing = locks.putIfAbsent(key, lock);
+        return existing != null ? existing : lock;
+    }
+
+    private void disconnect(final JmxInfo buildLoop) {
+        final ClosableProjectMBeanConnection connection = connections.remove(buildLoop);
+        for (final Iterator<Subscription> iter = subscriptions.values().iterator(); iter.hasNext();) {
+            if (iter.next().buildLoop.equals(buildLoop)) {
+                iter.remove();
+            }
+        }
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close connection to build loop", e);
+            }
+        }
+    }
+
+    private void unsubscribe(final JmxInfo buildLoop, final String projectName) {
+        final Subscription subscription = subscriptions.get(projectName);
+        if (subscription != null && subscription.buildLoop.equals(buildLoop)) {
+            // the project was reloaded, listen to the new MBean the next time
+            subscriptions.remove(projectName, subscription);
+        }
+    }
+
+    private synchronized void startSweep() {
+        if (sweep == null) {
+            sweep = SWEEPER.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    try {
+                        expireIdle(System.currentTimeMillis());
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Could not drop idle live output subscriptions", e);
+                    }
+                }
+            }, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Drops the subscriptions nobody asked for the output of in {@link #IDLE_TIMEOUT}, and stops
+     * listening to their project. The connection to the build loop is kept for the next subscription.
+     * @param now current time
+     */
+    void expireIdle(final long now) {
+        for (final Iterator<Map.Entry<String, Subscription>> iter = subscriptions.entrySet().iterator();
+             iter.hasNext();) {
+            final Map.Entry<String, Subscription> entry = iter.next();
+            final Subscription subscription = entry.getValue();
+            if (now - subscription.lastAccess >= IDLE_TIMEOUT
+                    && subscriptions.remove(entry.getKey(), subscription)) {
+                LOGGER.debug("Dropping idle subscription to the live output of " + entry.getKey());
+                subscription.stopListening();
+            }
+        }
+        synchronized (this) {
+            if (subscriptions.isEmpty() && sweep != null) {
+                sweep.cancel(false);
+                sweep = null;
+            }
+        }
+    }
+
+    private static final class Subscription {
+        private final JmxInfo buildLoop;
+        private final LiveOutputBuffer buffer;
+        private final ClosableProjectMBeanConnection connection;
+        private final ObjectName mbeanName;
+        private final NotificationListener listener;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        private Subscription(final JmxInfo buildLoop, final LiveOutputBuffer buffer,
+                             final ClosableProjectMBeanConnection connection, final ObjectName mbeanName,
+                             final NotificationListener listener) {
+            this.buildLoop = buildLoop;
+            this.buffer = buffer;
+            this.connection = connection;
+            this.mbeanName = mbeanName;
+            this.listener = listener;
+        }
+
+        private void stopListening() {
+            try {
+                connection.getMBeanServerConnection().removeNotificationListener(mbeanName, listener);
+            } catch (Exception e) {
+                LOGGER.debug("Could not stop listening to " + mbeanName, e);
+            }
+        }
+    }
+
+    private static final class OutputListener implements NotificationListener {
+        private final LiveOutputBuffer buffer;
+
+        private OutputListener(final LiveOutputBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public void handleNotification(final Notification notification, final Object handback) {
+            final CompositeData output = (CompositeData) notification.getUserData();
+            buffer.append((String) output.get("outputID"), (Integer) output.get("firstLine"),
+                    (String[]) output.get("lines"));
+        }
+    }
+
+    private final class BuildLoopListener implements NotificationListener {
+        private final JmxInfo buildLoop;
+
+        private BuildLoopListener(final JmxInfo buildLoop) {
+            this.buildLoop = buildLoop;
+        }
+
+        public void handleNotification(final Notification notification, final Object handback) {
+            final String type = notification.getType();
+            if (JMXConnectionNotification.FAILED.equals(type) || JMXConnectionNotification.CLOSED.equals(type)) {
+                disconnect(buildLoop);
+            } else if (notification instanceof MBeanServerNotification) {
+                final String mbeanName = ((MBeanServerNotification) notification).getMBeanName().toString();
+                if (mbeanName.startsWith(ProjectController.OBJECT_NAME_PREFIX)) {
+                    unsubscribe(buildLoop, mbeanName.substring(ProjectController.OBJECT_NAME_PREFIX.length()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.dashboard.service;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import net.sourceforge.cruisecontrol.dashboard.utils.CCDateFormatter;
+import net.sourceforge.cruisecontrol.dashboard.utils.functors.BuildSummariesFilters;
+
+import org.joda.time.DateTime;
+
+/**
+ * Sorted view of the build logs in a project log directory. The directory is only listed again
+ * when its modification time changes, so repeated queries don't scan directories holding
+ * thousands of logs. All lookups by build time are answered from sorted maps.
+ */
+public class LogDirectoryIndex {
+    /**
+     * File systems with a coarse timestamp resolution won't change the modification time of the
+     * directory for a log added in the same tick as the last scan, so the directory is listed
+     * again as long as its modification time is this close to the last scan.
+     */
+    static final long TIMESTAMP_RESOLUTION = 2000;
+
+    private static final FilenameFilter CCLOG_FILTER = BuildSummariesFilters.cclogFilter();
+
+    private static final FilenameFilter SUCCEED_FILTER = BuildSummariesFilters.succeedFilter();
+
+    private final File dir;
+
+    private long scannedModified = Long.MIN_VALUE;
+
+    private long scannedAt;
+
+    private final Set<String> names = new TreeSet<String>(Collections.reverseOrder());
+
+    private final TreeMap<Long, String> all = new TreeMap<Long, String>();
+
+    private final TreeMap<Long, String> succeeded = new TreeMap<Long, String>();
+
+    private final TreeMap<Long, String> failed = new TreeMap<Long, String>();
+
+    public LogDirectoryIndex(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the logs accepted by the filter, newest first, at most maximum of them
+     */
+    public synchronized File[] list(FilenameFilter filter, int maximum) {
+        refresh();
+        List<File> files = new ArrayList<File>(Math.min(names.size(), maximum));
+        for (Iterator<String> iter = names.iterator(); iter.hasNext() && files.size() < maximum;) {
+            String name = iter.next();
+            if (filter.accept(dir, name)) {
+                files.add(new File(dir, name));
+            }
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * @return the log built closest to, but not exactly at, the given time, or null if there is none
+     */
+    public synchronized File nearest(DateTime datetime) {
+        refresh();
+        long time = toKey(datetime);
+        Long before = lowerKey(all, time);
+        Long after = higherKey(all, time);
+        if (before == null) {
+            return toFile(all, after);
+        }
+        if (after == null || time - before.longValue() <= after.longValue() - time) {
+            return toFile(all, before);
+        }
+        return toFile(all, after);
+    }
+
+    /**
+     * @return the newest log built before the given time with the given result, or null if there is none
+     */
+    public synchronized File latestBefore(DateTime datetime, boolean successful) {
+        refresh();
+        TreeMap<Long, String> logs = byResult(successful);
+        return toFile(logs, lowerKey(logs, toKey(datetime)));
+    }
+
+    /**
+     * @return the oldest log built after the given time with the given result, or null if there is none
+     */
+    public synchronized File earliestAfter(DateTime datetime, boolean successful) {
+        refresh();
+        TreeMap<Long, String> logs = byResult(successful);
+        return toFile(logs, higherKey(logs, toKey(datetime)));
+    }
+
+    private TreeMap<Long, String> byResult(boolean successful) {
+        return successful ? succeeded : failed;
+    }
+
+    private File toFile(TreeMap<Long, String> logs, Long key) {
+        return key == null ? null : new File(dir, logs.get(key));
+    }
+
+    private static Long lowerKey(TreeMap<Long, String> logs, long time) {
+        SortedMap<Long, String> older = logs.headMap(new Long(time));
+        return older.isEmpty() ? null : older.lastKey();
+    }
+
+    private static Long higherKey(TreeMap<Long, String> logs, long time) {
+        SortedMap<Long, String> newer = logs.tailMap(new Long(time + 1));
+        return newer.isEmpty() ? null : newer.firstKey();
+    }
+
+    private void refresh() {
+        long modified = dir.lastModified();
+        if (modified == scannedModified && scannedAt - scannedModified >= TIMESTAMP_RESOLUTION) {
+            return;
+        }
+        scannedAt = System.currentTimeMillis();
+        scannedModified = modified;
+        String[] current = dir.list(CCLOG_FILTER);
+        Set<String> found = new HashSet<String>();
+        if (current != null) {
+            Collections.addAll(found, current);
+        }
+        if (names.retainAll(found)) {
+            rebuildMaps();
+        }
+        for (Iterator<String> iter = found.iterator(); iter.hasNext();) {
+            String name = iter.next();
+            if (names.add(name)) {
+                put(name);
+            }
+        }
+    }
+
+    private void rebuildMaps() {
+        all.clear();
+        succeeded.clear();
+        failed.clear();
+        for (Iterator<String> iter = names.iterator(); iter.hasNext();) {
+            put(iter.next());
+        }
+    }
+
+    private void put(String name) {
+        Long key = new Long(toKey(name));
+        putIfNewer(all, key, name);
+        putIfNewer(SUCCEED_FILTER.accept(dir, name) ? succeeded : failed, key, name);
+    }
+
+    /**
+     * Logs built in the same second (e.g. a log and its compressed copy) share a key; the
+     * one sorting first in the listing wins, as it would when scanning the listing.
+     */
+    private static void putIfNewer(TreeMap<Long, String> map, Long key, String name) {
+        String existing = map.get(key);
+        if (existing == null || existing.compareTo(name) < 0) {
+            map.put(key, name);
+        }
+    }
+
+    private static long toKey(String name) {
+        return Long.parseLong(CCDateFormatter.getBuildDateFromLogFileName(name));
+    }
+
+    private static long toKey(DateTime datetime) {
+        return Long.parseLong(CCDateFormatter.yyyyMMddHHmmss(datetime));
+    }
+}
@@ -0,0 +1,109 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.dashboard.service;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the properties extracted from recently viewed build logs, so a build detail page
+ * doesn't parse the whole log on every hit. Entries are keyed by the path of the log and are
+ * only used while its size and modification time are unchanged. The least recently used
+ * entries are dropped beyond the maximum size, and all of them are softly referenced so the
+ * garbage collector can reclaim the cache under memory pressure.
+ */
+class ParsedLogCache {
+    private final int maximumSize;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    ParsedLogCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @return the properties parsed from the log, or null if the log isn't cached or has changed since
+     */
+    synchronized Map get(File logFile) {
+        Entry entry = entries.get(logFile.getAbsolutePath());
+        if (entry == null) {
+            return null;
+        }
+        Map properties = entry.getProperties(logFile);
+        if (properties == null) {
+            entries.remove(logFile.getAbsolutePath());
+        }
+        return properties;
+    }
+
+    synchronized void put(File logFile, Map properties) {
+        entries.put(logFile.getAbsolutePath(), new Entry(logFile, properties));
+        Iterator<Entry> iter = entries.values().iterator();
+        while (entries.size() > maximumSize && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final long length;
+
+        private final long lastModified;
+
+        private final SoftReference<Map> properties;
+
+        private Entry(File logFile, Map properties) {
+            this.length = logFile.length();
+            this.lastModified = logFile.lastModified();
+            this.properties = new SoftReference<Map>(properties);
+        }
+
+        private Map getProperties(File logFile) {
+            if (length != logFile.length() || lastModified != logFile.lastModified()) {
+                return null;
+            }
+            return properties.get();
+        }
+    }
+}
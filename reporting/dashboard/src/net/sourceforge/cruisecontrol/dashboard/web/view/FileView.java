@@ -73,14 +73,14 @@
 package net.sourceforge.cruisecontrol.dashboard.web.view;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.util.Map;
 
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.io.IOUtils;
+import net.sourceforge.cruisecontrol.util.HttpFileTransfer;
+import net.sourceforge.cruisecontrol.web.ServletExchange;
+
 import org.apache.commons.lang.StringUtils;
 
 public class FileView extends BaseFileView {
@@ -95,17 +95,12 @@ public class FileView extends BaseFileView {
             HttpServletResponse response) throws Exception {
         String filename = file.getName();
         long filesize = file.length();
-        String mimeType = getMimeType(filename);
-        response.setContentType(mimeType);
+        String mimeType = getMimeType(HttpFileTransfer.getServedName(file));
         if (filesize > getDownloadThreshhold()) {
             response.setHeader("Content-Disposition", "attachment; filename="
                     + filename);
         }
-
-        response.setContentLength((int) filesize);
-        ServletOutputStream out = response.getOutputStream();
-        IOUtils.copy(new FileInputStream(file), out);
-        out.flush();
+        new HttpFileTransfer(file).send(mimeType, new ServletExchange(request, response));
     }
 
     private int getDownloadThreshhold() {
@@ -132,5 +127,4 @@ public class FileView extends BaseFileView {
         File file = (File) map.get("targetFile");
         handleFile(file, httpServletRequest, httpServletResponse);
     }
-
 }
@@ -20,12 +20,13 @@ import java.io.StringWriter;
 import java.util.Map;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
 import net.sourceforge.cruisecontrol.dashboard.exception.ConfigurationException;
+import net.sourceforge.cruisecontrol.util.TemplatesCache;
 
 import org.apache.log4j.Logger;
 
@@ -47,15 +48,21 @@ public abstract class AbstractXslOutputWidget implements Widget {
                 throw new ConfigurationException("Unable to find file "
                         + xslFile.getAbsolutePath());
             }
-            Source xsltSource = new StreamSource(xslFile);
-            Source xmlSource = new StreamSource(logFile);
+            Templates templates = TemplatesCache.getTemplates(xslFile);
+            String cacheKey = WidgetOutputCache.key(getClass(), logFile);
+            Object cached = WidgetOutputCache.get(cacheKey, logFile, templates);
+            if (cached != null) {
+                return cached;
+            }
 
-            TransformerFactory transFact = TransformerFactory.newInstance();
-            Transformer trans = transFact.newTransformer(xsltSource);
+            Source xmlSource = new StreamSource(logFile);
+            Transformer trans = templates.newTransformer();
 
             StringWriter writer = new StringWriter();
             trans.transform(xmlSource, new StreamResult(writer));
-            return writer.toString();
+            String output = writer.toString();
+            WidgetOutputCache.put(cacheKey, logFile, templates, output);
+            return output;
         } catch (Exception e) {
             LOGGER.error("Failed to transform log file " + logFile
                     + " using xsl " + getXslPath(), e);
@@ -58,7 +58,13 @@ public class MergedCheckStyleWidget implements Widget {
         final String pjtName = (String) parameters.get(Widget.PARAM_PJT_NAME);
         final File logFile = (File) parameters.get(Widget.PARAM_BUILD_LOG_FILE);
         try {
-            return parseCheckStyle(logFile, pjtName);
+            final String cacheKey = WidgetOutputCache.key(getClass(), logFile) + "|" + pjtName;
+            Object output = WidgetOutputCache.get(cacheKey, logFile, null);
+            if (output == null) {
+                output = parseCheckStyle(logFile, pjtName);
+                WidgetOutputCache.put(cacheKey, logFile, null, output);
+            }
+            return output;
         } catch (Exception e) {
             return null;
         }
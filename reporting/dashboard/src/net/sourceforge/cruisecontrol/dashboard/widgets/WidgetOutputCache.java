@@ -0,0 +1,117 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.dashboard.widgets;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Output of widgets rendered from a build log, shared between the widget instances created for each
+ * request. An output is only reused while the log file has the same size and modification time, and
+ * while the widget reports the same version of whatever else it depends on (e.g. its compiled
+ * stylesheet). Widgets reading other files than the build log must not use this cache.
+ */
+final class WidgetOutputCache {
+    private static final int MAXIMUM_SIZE = 50;
+
+    private static final Map<String, Entry> OUTPUTS = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private WidgetOutputCache() {
+    }
+
+    static Object get(String key, File logFile, Object version) {
+        synchronized (OUTPUTS) {
+            Entry entry = OUTPUTS.get(key);
+            if (entry == null) {
+                return null;
+            }
+            Object output = entry.getOutput(logFile, version);
+            if (output == null) {
+                OUTPUTS.remove(key);
+            }
+            return output;
+        }
+    }
+
+    static void put(String key, File logFile, Object version, Object output) {
+        synchronized (OUTPUTS) {
+            OUTPUTS.put(key, new Entry(logFile, version, output));
+            Iterator<Entry> iter = OUTPUTS.values().iterator();
+            while (OUTPUTS.size() > MAXIMUM_SIZE && iter.hasNext()) {
+                iter.next();
+                iter.remove();
+            }
+        }
+    }
+
+    static String key(Class widget, File logFile) {
+        return widget.getName() + "|" + logFile.getAbsolutePath();
+    }
+
+    static void clear() {
+        synchronized (OUTPUTS) {
+            OUTPUTS.clear();
+        }
+    }
+
+    private static final class Entry {
+        private final long length;
+
+        private final long lastModified;
+
+        private final Object version;
+
+        private final SoftReference<Object> output;
+
+        private Entry(File logFile, Object version, Object output) {
+            this.length = logFile.length();
+            this.lastModified = logFile.lastModified();
+            this.version = version;
+            this.output = new SoftReference<Object>(output);
+        }
+
+        private Object getOutput(File logFile, Object currentVersion) {
+            if (length != logFile.length() || lastModified != logFile.lastModified() || version != currentVersion) {
+                return null;
+            }
+            return output.get();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package net.sourceforge.cruisecontrol.dashboard.repository;
+
+import net.sourceforge.cruisecontrol.dashboard.service.JMXConnectorFactory;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXServiceURL;
+
+import org.jmock.Mock;
+import org.jmock.cglib.MockObjectTestCase;
+import org.jmock.core.Invocation;
+import org.jmock.core.stub.CustomStub;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class JmxConnectionPoolTest extends MockObjectTestCase {
+
+    private static final Map<String, String> ENVIRONMENT = new HashMap<String, String>();
+
+    private Mock connectorFactory;
+
+    private Mock connector;
+
+    private Mock connection;
+
+    private JmxConnectionPool pool;
+
+    private JMXServiceURL serviceURL;
+
+    private long now;
+
+    protected void setUp() throws Exception {
+        connectorFactory = mock(JMXConnectorFactory.class);
+        connector = mock(JMXConnector.class);
+        connection = mock(MBeanServerConnection.class);
+        pool = new JmxConnectionPool((JMXConnectorFactory) connectorFactory.proxy());
+        serviceURL = new JMXServiceURL("service:jmx:rmi://server1:1099/jndi/jrmp");
+        now = System.currentTimeMillis();
+    }
+
+    public void testShouldShareOneConnectionPerBuildLoop() throws Exception {
+        expectConnect();
+        final ClosableProjectMBeanConnection first = pool.getConnection(serviceURL, ENVIRONMENT, now);
+        first.close();
+        first.close();
+        final ClosableProjectMBeanConnection second = pool.getConnection(serviceURL, ENVIRONMENT, now);
+        assertSame(connection.proxy(), second.getMBeanServerConnection());
+        assertEquals(1, pool.getOpenCount());
+        assertEquals(1, pool.getOpenedCount());
+    }
+
+    public void testShouldCloseIdleConnections() throws Exception {
+        expectConnect();
+        pool.getConnection(serviceURL, ENVIRONMENT, now).close();
+
+        connector.expects(once()).method("close");
+        pool.probe(System.currentTimeMillis() + JmxConnectionPool.IDLE_TIMEOUT + 1);
+        assertEquals(0, pool.getOpenCount());
+        assertEquals(1, pool.getClosedCount());
+
+        expectConnect();
+        pool.getConnection(serviceURL, ENVIRONMENT, now);
+        assertEquals(2, pool.getOpenedCount());
+    }
+
+    public void testShouldProbeConnectionsInUse() throws Exception {
+        expectConnect();
+        pool.getConnection(serviceURL, ENVIRONMENT, now);
+
+        connection.expects(once()).method("getMBeanCount").will(returnValue(new Integer(3)));
+        connector.expects(never()).method("close");
+        pool.probe(now + JmxConnectionPool.IDLE_TIMEOUT + 1);
+        assertEquals(1, pool.getOpenCount());
+    }
+
+    public void testShouldDropFailingConnectionAndWaitBeforeConnectingAgain() throws Exception {
+        expectConnect();
+        pool.getConnection(serviceURL, ENVIRONMENT, now);
+
+        connection.expects(once()).method("getMBeanCount").will(throwException(new IOException("gone")));
+        connector.expects(once()).method("close");
+        pool.probe(now);
+        assertEquals(0, pool.getOpenCount());
+
+        assertUnreachable(now + JmxConnectionPool.MIN_RETRY_DELAY - 1);
+        assertEquals(1, pool.getRejectedCount());
+
+        expectConnect();
+        pool.getConnection(serviceURL, ENVIRONMENT, now + JmxConnectionPool.MIN_RETRY_DELAY);
+        assertEquals(2, pool.getOpenedCount());
+    }
+
+    public void testShouldWaitLongerAfterEachFailedAttempt() throws Exception {
+        connectorFactory.expects(exactly(2)).method("connect").will(throwException(new IOException("refused")));
+        assertUnreachable(now);
+        assertUnreachable(now + JmxConnectionPool.MIN_RETRY_DELAY);
+        assertUnreachable(now + JmxConnectionPool.MIN_RETRY_DELAY * 3 - 1);
+        assertEquals(2, pool.getFailedCount());
+        assertEquals(1, pool.getRejectedCount());
+
+        expectConnect();
+        pool.getConnection(serviceURL, ENVIRONMENT, now + JmxConnectionPool.MIN_RETRY_DELAY * 3);
+    }
+
+    public void testShouldDropConnectionToBuildLoopNotAnsweringInTime() throws Exception {
+        expectConnect();
+        pool.getConnection(serviceURL, ENVIRONMENT, now);
+
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        connection.expects(once()).method("getMBeanCount").will(new CustomStub("hangs") {
+            public Object invoke(final Invocation invocation) throws Throwable {
+                try {
+                    Thread.sleep(60 * 1000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                throw new IOException("interrupted");
+            }
+        });
+        connector.expects(once()).method("close");
+        pool.setProbeTimeout(100);
+        pool.probe(now);
+        assertEquals(0, pool.getOpenCount());
+        assertEquals(1, pool.getFailedCount());
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        assertUnreachable(now + JmxConnectionPool.MIN_RETRY_DELAY - 1);
+    }
+
+    public void testShouldNotHoldUpRequestsWhileConnecting() throws Exception {
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch connected = new CountDownLatch(1);
+        connectorFactory.expects(once()).method("connect").will(new CustomStub("slow connect") {
+            public Object invoke(final Invocation invocation) throws Throwable {
+                connecting.countDown();
+                connected.await();
+                return connector.proxy();
+            }
+        });
+        connector.expects(once()).method("getMBeanServerConnection").will(returnValue(connection.proxy()));
+
+        final ClosableProjectMBeanConnection[] leased = new ClosableProjectMBeanConnection[2];
+        final Thread first = lease(leased, 0);
+        assertTrue(connecting.await(10, TimeUnit.SECONDS));
+        final Thread second = lease(leased, 1);
+
+        assertEquals(0, pool.getOpenCount());
+        pool.probe(now);
+        connected.countDown();
+        first.join(10 * 1000);
+        second.join(10 * 1000);
+        assertSame(connection.proxy(), leased[0].getMBeanServerConnection());
+        assertSame(connection.proxy(), leased[1].getMBeanServerConnection());
+        assertEquals(1, pool.getOpenedCount());
+    }
+
+    private Thread lease(final ClosableProjectMBeanConnection[] leased, final int index) {
+        final Thread thread = new Thread() {
+            public void run() {
+                try {
+                    leased[index] = pool.getConnection(serviceURL, ENVIRONMENT, now);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void expectConnect() {
+        connectorFactory.expects(once()).method("connect").with(eq(serviceURL), eq(ENVIRONMENT))
+                .will(returnValue(connector.proxy()));
+        connector.expects(once()).method("getMBeanServerConnection").will(returnValue(connection.proxy()));
+    }
+
+    private void assertUnreachable(final long time) {
+        try {
+            pool.getConnection(serviceURL, ENVIRONMENT, time);
+            fail("build loop should be unreachable");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+}
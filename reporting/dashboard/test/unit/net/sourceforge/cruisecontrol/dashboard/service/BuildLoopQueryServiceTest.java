@@ -111,6 +111,22 @@ public class BuildLoopQueryServiceTest extends MockObjectTestCase {
         assertEquals("Build Duration: 10s", output[1]);
     }
 
+    public void testShouldReturnPushedBuildOutputWithoutAskingBuildLoop() throws Exception {
+        final Mock liveOutputService = mock(LiveOutputSubscriptionService.class,
+                new Class[] {BuildInformationRepository.class}, new Object[] {null});
+        buildLoopQueryService = new BuildLoopQueryService((EnvironmentService) envService.proxy(),
+                (BuildInformationRepository) repository.proxy(),
+                (LiveOutputSubscriptionService) liveOutputService.proxy());
+        liveOutputService.expects(once()).method("getBuildOutput").with(eq(PROJECT_NAME), eq(3))
+                .will(returnValue(new String[] {"pushed"}));
+        liveOutputService.expects(once()).method("getLiveOutputID").with(eq(PROJECT_NAME))
+                .will(returnValue("PushedOutputID"));
+        repository.expects(never()).method("getJmxConnection");
+
+        assertEquals("pushed", buildLoopQueryService.getBuildOutput(PROJECT_NAME, 3)[0]);
+        assertEquals("PushedOutputID", buildLoopQueryService.getLiveOutputID(PROJECT_NAME));
+    }
+
     public void testShouldReturnLiveOutputID() throws Exception {
         repository.expects(once()).method("getJmxConnection").
                 will(returnValue(closableProjectMBeanConnection.proxy()));
@@ -78,6 +78,29 @@ public class BuildServiceTest extends MockObjectTestCase {
         assertFalse(expectedBuild.hasPassed());
     }
 
+    public void testShouldReuseParsedLogUntilTheFileChanges() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mockConfiguration.expects(once())
+                    .method("getArtifactRoot")
+                    .will(returnValue(DataUtils.getProject1ArtifactDirAsFile()));
+        }
+        LogFile logFile = DataUtils.getFailedBuildLbuildAsFile();
+        long lastModified = logFile.lastModified();
+        try {
+            BuildDetail first = buildFactory.createBuildFromFile(logFile);
+            BuildDetail second = buildFactory.createBuildFromFile(logFile);
+            assertSame(first.getTestSuites(), second.getTestSuites());
+            assertEquals(first.getArtifactFolder(), second.getArtifactFolder());
+
+            assertTrue(logFile.setLastModified(lastModified - 10000));
+            BuildDetail reparsed = buildFactory.createBuildFromFile(logFile);
+            assertNotSame(first.getTestSuites(), reparsed.getTestSuites());
+            assertEquals(first.getNumberOfTests(), reparsed.getNumberOfTests());
+        } finally {
+            logFile.setLastModified(lastModified);
+        }
+    }
+
     public void testCanReadErrorDetailFromTest() throws Exception {
         BuildDetail build = buildFactory.createBuildFromFile(DataUtils.getFailedBuildLbuildAsFile());
 
@@ -155,6 +155,21 @@ public class HistoricalBuildSummariesServiceTest extends MockObjectTestCase {
         assertEquals("log20060704155710Lbuild.489.xml.gz", ((Build) all.get(25)).getBuildLogFilename());
     }
 
+    public void testShouldPickUpLogsAddedOrRemovedAfterTheFirstQuery() throws Exception {
+        setUpConfigurationMock();
+        assertEquals("log20060704155735.xml", buildSummariesSevice.getLatest(projectName).getBuildLogFilename());
+
+        FilesystemUtils.createFile("log20060704155736Lbuild.525.xml", projectDirectory);
+        assertEquals("log20060704155736Lbuild.525.xml",
+                buildSummariesSevice.getLatest(projectName).getBuildLogFilename());
+        assertEquals(27, buildSummariesSevice.getAll(projectName).size());
+        assertEquals(5, buildSummariesSevice.getAllSucceed(projectName).size());
+
+        assertTrue(new File(projectDirectory, "log20060704155736Lbuild.525.xml").delete());
+        assertEquals("log20060704155735.xml", buildSummariesSevice.getLatest(projectName).getBuildLogFilename());
+        assertEquals(4, buildSummariesSevice.getAllSucceed(projectName).size());
+    }
+
     public void testShouldBeAbleToReturnLatestBuildSpecificProject() {
         setUpConfigurationMock();
         Build summary = buildSummariesSevice.getLatest(projectName);
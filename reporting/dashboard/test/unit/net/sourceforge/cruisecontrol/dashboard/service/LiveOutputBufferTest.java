@@ -0,0 +1,90 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.dashboard.service;
+
+import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.util.BuildOutputLogger;
+
+import java.util.Arrays;
+
+public class LiveOutputBufferTest extends TestCase {
+
+    private final LiveOutputBuffer buffer = new LiveOutputBuffer(3);
+
+    public void testShouldNotServeAnythingBeforeFirstPush() throws Exception {
+        assertNull(buffer.getOutputID());
+        assertNull(buffer.getLines(0));
+    }
+
+    public void testShouldServeLinesPushedFromTheFirstOneKnown() throws Exception {
+        buffer.append("id1", 5, new String[0]);
+        assertEquals("id1", buffer.getOutputID());
+        assertEquals(0, buffer.getLines(5).length);
+        assertNull("lines before subscription are asked for to the build loop", buffer.getLines(4));
+
+        buffer.append("id1", 5, new String[] {"five", "six"});
+        assertEquals(Arrays.asList("five", "six"), Arrays.asList(buffer.getLines(5)));
+        assertEquals(Arrays.asList("six"), Arrays.asList(buffer.getLines(6)));
+        assertEquals(0, buffer.getLines(7).length);
+        assertNull(buffer.getLines(8));
+    }
+
+    public void testShouldDropOldestLinesWhenFull() throws Exception {
+        buffer.append("id1", 0, new String[] {"zero", "one"});
+        buffer.append("id1", 2, new String[] {"two", "three", "four"});
+        assertNull(buffer.getLines(1));
+        assertEquals(Arrays.asList("two", "three", "four"), Arrays.asList(buffer.getLines(2)));
+    }
+
+    public void testShouldStartOverWhenOutputChangesOrLinesAreMissed() throws Exception {
+        buffer.append("id1", 0, new String[] {"zero", "one"});
+        buffer.append("id1", 4, new String[] {"four"});
+        assertNull(buffer.getLines(0));
+        assertEquals(Arrays.asList("four"), Arrays.asList(buffer.getLines(4)));
+
+        buffer.append("id2", 0, new String[] {"new"});
+        assertEquals("id2", buffer.getOutputID());
+        assertEquals(Arrays.asList("new"), Arrays.asList(buffer.getLines(0)));
+    }
+
+    public void testShouldServeNoMoreThanTheBuildLoopWould() throws Exception {
+        final LiveOutputBuffer large = new LiveOutputBuffer(BuildOutputLogger.MAX_LINES + 10);
+        large.append("id1", 0, new String[BuildOutputLogger.MAX_LINES + 10]);
+        assertEquals(BuildOutputLogger.MAX_LINES, large.getLines(0).length);
+        assertEquals(10, large.getLines(BuildOutputLogger.MAX_LINES).length);
+    }
+}
@@ -0,0 +1,181 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2007, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.dashboard.service;
+
+import net.sourceforge.cruisecontrol.BuildLoopInformation;
+import net.sourceforge.cruisecontrol.BuildLoopInformation.JmxInfo;
+import net.sourceforge.cruisecontrol.BuildLoopInformation.ProjectInfo;
+import net.sourceforge.cruisecontrol.Project;
+import net.sourceforge.cruisecontrol.dashboard.repository.BuildInformationRepository;
+import net.sourceforge.cruisecontrol.dashboard.repository.ClosableProjectMBeanConnection;
+import net.sourceforge.cruisecontrol.jmx.ProjectController;
+import org.jmock.Mock;
+import org.jmock.cglib.MockObjectTestCase;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.remote.JMXConnectionNotification;
+import java.util.Arrays;
+
+public class LiveOutputSubscriptionServiceTest extends MockObjectTestCase {
+    private static final String PROJECT_NAME = "connectfour";
+
+    private MBeanServer mbeanServer;
+    private Mock repository;
+    private LiveOutputSubscriptionService service;
+    private ProjectController controller;
+    private NotificationListener connectionListener;
+
+    protected void setUp() throws Exception {
+        mbeanServer = MBeanServerFactory.newMBeanServer();
+        repository = mock(BuildInformationRepository.class);
+        final BuildLoopInformation buildLoop = new BuildLoopInformation(new ProjectInfo[0],
+                new JmxInfo("localhost"), "localhost", null);
+        repository.stubs().method("hasBuildLoopInfoFor").with(eq(PROJECT_NAME)).will(returnValue(true));
+        repository.stubs().method("getBuildLoopInfo").with(eq(PROJECT_NAME)).will(returnValue(buildLoop));
+        service = new LiveOutputSubscriptionService((BuildInformationRepository) repository.proxy());
+        controller = registerController();
+    }
+
+    public void testShouldServeOutputPushedByBuildLoop() throws Exception {
+        expectConnection();
+        assertNull("nothing pushed yet", service.getBuildOutput(PROJECT_NAME, 0));
+        assertNull(service.getLiveOutputID(PROJECT_NAME));
+
+        push(controller, "id1", 0, "zero", "one");
+        assertEquals(Arrays.asList("zero", "one"), Arrays.asList(service.getBuildOutput(PROJECT_NAME, 0)));
+        assertEquals(Arrays.asList("one"), Arrays.asList(service.getBuildOutput(PROJECT_NAME, 1)));
+        assertEquals("id1", service.getLiveOutputID(PROJECT_NAME));
+    }
+
+    public void testShouldSubscribeAgainToReloadedProject() throws Exception {
+        expectConnection();
+        service.getBuildOutput(PROJECT_NAME, 0);
+        push(controller, "id1", 0, "zero");
+
+        final ProjectController reloaded = registerController();
+        assertNull("output of the old project is gone", service.getLiveOutputID(PROJECT_NAME));
+        push(reloaded, "id2", 0, "new");
+        assertEquals("id2", service.getLiveOutputID(PROJECT_NAME));
+    }
+
+    public void testShouldConnectAgainWhenConnectionFails() throws Exception {
+        expectConnection();
+        service.getBuildOutput(PROJECT_NAME, 0);
+        push(controller, "id1", 0, "zero");
+        assertEquals("id1", service.getLiveOutputID(PROJECT_NAME));
+
+        connectionListener.handleNotification(new JMXConnectionNotification(JMXConnectionNotification.FAILED,
+                this, "connection", 1, "failed", null), null);
+        expectConnection();
+        assertNull(service.getLiveOutputID(PROJECT_NAME));
+    }
+
+    public void testShouldStopListeningToOutputNobodyAskedFor() throws Exception {
+        final Project project = new Project();
+        project.setName(PROJECT_NAME);
+        final boolean[] removed = new boolean[1];
+        final ProjectController watched = new ProjectController(project) {
+            public void removeNotificationListener(final NotificationListener listener)
+                    throws ListenerNotFoundException {
+                super.removeNotificationListener(listener);
+                removed[0] = true;
+            }
+        };
+        watched.register(mbeanServer);
+        expectConnection();
+        service.getBuildOutput(PROJECT_NAME, 0);
+        push(watched, "id1", 0, "zero");
+        final long subscribed = System.currentTimeMillis();
+
+        service.expireIdle(subscribed + LiveOutputSubscriptionService.IDLE_TIMEOUT / 2);
+        assertFalse("subscription asked for lately is kept", removed[0]);
+        assertEquals("id1", service.getLiveOutputID(PROJECT_NAME));
+
+        service.expireIdle(System.currentTimeMillis() + LiveOutputSubscriptionService.IDLE_TIMEOUT);
+        assertTrue("listener of the idle subscription is removed", removed[0]);
+        assertNull("subscribes again, through the same connection", service.getLiveOutputID(PROJECT_NAME));
+        push(watched, "id2", 0, "again");
+        assertEquals("id2", service.getLiveOutputID(PROJECT_NAME));
+    }
+
+    private ProjectController registerController() throws Exception {
+        final Project project = new Project();
+        project.setName(PROJECT_NAME);
+        final ProjectController projectController = new ProjectController(project);
+        projectController.register(mbeanServer);
+        return projectController;
+    }
+
+    private void expectConnection() {
+        repository.expects(once()).method("getJmxConnection").with(eq(PROJECT_NAME))
+                .will(returnValue(new ClosableProjectMBeanConnection() {
+                    public MBeanServerConnection getMBeanServerConnection() {
+                        return mbeanServer;
+                    }
+
+                    public void addConnectionNotificationListener(final NotificationListener listener) {
+                        connectionListener = listener;
+                    }
+
+                    public void close() {
+                    }
+                }));
+    }
+
+    private static void push(final ProjectController projectController, final String outputID, final int firstLine,
+                             final String... lines) throws Exception {
+        final CompositeType type = new CompositeType("LiveOutput", "output", ProjectController.OUTPUT_ITEMS,
+                ProjectController.OUTPUT_ITEMS, new OpenType[] {SimpleType.STRING, SimpleType.INTEGER,
+                        new ArrayType<String[]>(1, SimpleType.STRING)});
+        final Notification notification = new Notification(ProjectController.OUTPUT_NOTIFICATION,
+                new ObjectName(ProjectController.OBJECT_NAME_PREFIX + PROJECT_NAME), 1);
+        notification.setUserData(new CompositeDataSupport(type, ProjectController.OUTPUT_ITEMS,
+                new Object[] {outputID, firstLine, lines}));
+        projectController.sendNotification(notification);
+    }
+}
@@ -43,6 +43,7 @@ import java.util.Map;
 import junit.framework.TestCase;
 import net.sourceforge.cruisecontrol.dashboard.testhelpers.DataUtils;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -77,6 +78,33 @@ public class AbstractXslOutputWidgetTest extends TestCase {
 
         assertContains(output, "This is my stacktrace");
     }
+
+    public void testShouldReuseOutputUntilTheLogFileChanges() throws Exception {
+        final AbstractXslOutputWidget service = new AbstractXslOutputWidget() {
+
+            protected String getXslPath() {
+                return "xsl/buildoutput.xsl";
+            }
+
+            public String getDisplayName() {
+                return null;
+            }
+        };
+        final File logFile = File.createTempFile("log", ".xml");
+        logFile.deleteOnExit();
+        FileUtils.copyFile(DataUtils.getFailedBuildLbuildAsFile(), logFile);
+        final Map params = new HashMap();
+        params.put(Widget.PARAM_BUILD_LOG_FILE, logFile);
+        params.put(Widget.PARAM_WEBAPP_ROOT, "webapp");
+
+        final Object output = service.getOutput(params);
+        assertSame(output, service.getOutput(params));
+
+        assertTrue(logFile.setLastModified(logFile.lastModified() - 60 * 1000));
+        final Object transformedAgain = service.getOutput(params);
+        assertNotSame(output, transformedAgain);
+        assertEquals(output, transformedAgain);
+    }
 
     private static void assertContains(final String output, final String textToFind) {
         assertTrue("Output did not contain expected string: \n\n" + textToFind + " \n\noutput: \n\n" + output,
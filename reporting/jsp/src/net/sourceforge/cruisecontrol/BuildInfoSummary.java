@@ -69,7 +69,7 @@ public final class BuildInfoSummary implements Serializable {
     /**
      * @return Returns the buildInfoList.
      */
-    public List getBuildInfoList() {
+    public List<BuildInfo> getBuildInfoList() {
         return buildInfoList;
     }
     /**
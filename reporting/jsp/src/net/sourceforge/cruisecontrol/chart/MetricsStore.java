@@ -0,0 +1,229 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.chart;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.cruisecontrol.BuildInfo;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+
+/**
+ * Keeps the values of the XPath expressions charted for the builds of a project, so that each log is only
+ * parsed once instead of on every chart render.
+ * <p>
+ * The values are kept in memory and appended to {@link #FILE_NAME} in the project's log directory, one
+ * <code>log name, value, expression</code> record per line. The store is filled lazily: the first render
+ * evaluates the expressions against all existing logs, later renders only against the new ones. If the log
+ * directory can't be written the values are still cached for the lifetime of the web application.
+ * </p>
+ */
+public final class MetricsStore {
+
+    public static final String FILE_NAME = "metrics.txt";
+
+    private static final Log LOG = LogFactory.getLog(MetricsStore.class);
+    private static final String ENCODING = "UTF-8";
+    private static final char SEPARATOR = '\t';
+    private static final Map<File, MetricsStore> STORES = new HashMap<File, MetricsStore>();
+
+    private final File file;
+    /** log name to (expression to value) */
+    private final Map<String, Map<String, Number>> values = new HashMap<String, Map<String, Number>>();
+    private boolean loaded;
+    private boolean writable = true;
+
+    MetricsStore(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param logDir a project's log directory
+     * @return the store shared by all the charts of that project
+     */
+    public static MetricsStore forLogDir(final File logDir) {
+        final File key = logDir.getAbsoluteFile();
+        synchronized (STORES) {
+            MetricsStore store = STORES.get(key);
+            if (store == null) {
+                store = new MetricsStore(new File(key, FILE_NAME));
+                STORES.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Gets the values of the expressions for each build, parsing only the logs of the builds not seen before.
+     * @param builds the builds to chart
+     * @param xpaths the expressions to evaluate
+     * @return one array per build, holding the values in the order of <code>xpaths</code>
+     * @throws JDOMException if a log can't be parsed or an expression can't be evaluated
+     * @throws IOException if a log can't be read
+     */
+    public synchronized List<Number[]> getValues(final List<BuildInfo> builds, final List<XPathData> xpaths)
+            throws JDOMException, IOException {
+        load();
+        final List<Number[]> result = new ArrayList<Number[]>(builds.size());
+        Writer out = null;
+        try {
+            for (final BuildInfo build : builds) {
+                Map<String, Number> known = values.get(build.getLogName());
+                if (known == null) {
+                    known = new HashMap<String, Number>();
+                    values.put(build.getLogName(), known);
+                }
+                Document log = null;
+                final Number[] row = new Number[xpaths.size()];
+                for (int i = 0; i < row.length; i++) {
+                    final XPathData xpath = xpaths.get(i);
+                    Number value = known.get(xpath.getExpression());
+                    if (value == null) {
+                        if (log == null) {
+                            log = build.getLogFile().asDocument();
+                        }
+                        value = xpath.evaluate(log);
+                        known.put(xpath.getExpression(), value);
+                        if (out == null) {
+                            out = openForAppend();
+                        }
+                        append(out, build.getLogName(), xpath.getExpression(), value);
+                    }
+                    row[i] = value;
+                }
+                result.add(row);
+            }
+        } finally {
+            close(out);
+        }
+        return result;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    parse(line);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read " + file + ", metrics will be read from the logs", e);
+        }
+    }
+
+    private void parse(final String line) {
+        final int valueStart = line.indexOf(SEPARATOR);
+        final int expressionStart = line.indexOf(SEPARATOR, valueStart + 1);
+        if (valueStart <= 0 || expressionStart < 0) {
+            return; // a record cut short by a crash; the value will be evaluated again
+        }
+        final String logName = line.substring(0, valueStart);
+        final Double value;
+        try {
+            value = Double.valueOf(line.substring(valueStart + 1, expressionStart));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        Map<String, Number> known = values.get(logName);
+        if (known == null) {
+            known = new HashMap<String, Number>();
+            values.put(logName, known);
+        }
+        known.put(line.substring(expressionStart + 1), value);
+    }
+
+    private Writer openForAppend() {
+        if (!writable) {
+            return null;
+        }
+        try {
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), ENCODING));
+        } catch (IOException e) {
+            writable = false;
+            LOG.warn("Could not write " + file + ", metrics will only be kept in memory", e);
+            return null;
+        }
+    }
+
+    private void append(final Writer out, final String logName, final String expression, final Number value) {
+        if (out == null || !writable || expression.indexOf('\n') >= 0 || expression.indexOf('\r') >= 0) {
+            return;
+        }
+        try {
+            out.write(logName + SEPARATOR + value.doubleValue() + SEPARATOR + expression + '\n');
+        } catch (IOException e) {
+            writable = false;
+            LOG.warn("Could not write " + file + ", metrics will only be kept in memory", e);
+        }
+    }
+
+    private static void close(final Writer out) {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close metrics store", e);
+            }
+        }
+    }
+}
@@ -38,17 +38,15 @@ package net.sourceforge.cruisecontrol.chart;
 
 import de.laures.cewolf.ChartPostProcessor;
 import de.laures.cewolf.DatasetProduceException;
+import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import net.sourceforge.cruisecontrol.BuildInfo;
 import net.sourceforge.cruisecontrol.BuildInfoSummary;
-import org.jdom2.Document;
 import org.jdom2.JDOMException;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
@@ -81,27 +79,30 @@ public class XPathChartData extends AbstractCruiseControlChartData implements Ch
     public Object produceDataset(final Map params) throws DatasetProduceException {
         final BuildInfoSummary summary = getBuildInfoSummary(params);
         final TimeSeriesCollection dataset = new TimeSeriesCollection();
-        final Map<XPathData, TimeSeries> timeSeries = new LinkedHashMap<XPathData, TimeSeries>(xpaths.size());
+        final List<TimeSeries> timeSeries = new ArrayList<TimeSeries>(xpaths.size());
         for (final XPathData data : xpaths) {
             final TimeSeries serie = new TimeSeries(data.getName(), Minute.class);
-            timeSeries.put(data, serie);
+            timeSeries.add(serie);
             dataset.addSeries(serie);
         }
-        for (final Iterator<BuildInfo> iter = summary.iterator(); iter.hasNext();) {
-            final BuildInfo buildInfo = iter.next();
-            final Date buildTime = buildInfo.getBuildDate();
-            final Minute timePeriod = new Minute(buildTime);
-            try {
-                final Document log = buildInfo.getLogFile().asDocument();
-                for (final Map.Entry<XPathData, TimeSeries> pair : timeSeries.entrySet()) {
-                    final TimeSeries series = pair.getValue();
-                    final Number result = pair.getKey().evaluate(log);
-                    series.addOrUpdate(timePeriod, result);
-                }
-            } catch (JDOMException jex) {
-                throw new DatasetProduceException(jex.getMessage());
-            } catch (IOException ioex) {
-                throw new DatasetProduceException(ioex.getMessage());
+        final List<BuildInfo> builds = summary.getBuildInfoList();
+        if (builds.isEmpty()) {
+            return dataset;
+        }
+        final File logDir = builds.get(0).getLogFile().getFile().getAbsoluteFile().getParentFile();
+        final List<Number[]> values;
+        try {
+            values = MetricsStore.forLogDir(logDir).getValues(builds, xpaths);
+        } catch (JDOMException jex) {
+            throw new DatasetProduceException(jex.getMessage());
+        } catch (IOException ioex) {
+            throw new DatasetProduceException(ioex.getMessage());
+        }
+        for (int i = 0; i < builds.size(); i++) {
+            final Minute timePeriod = new Minute(builds.get(i).getBuildDate());
+            final Number[] row = values.get(i);
+            for (int column = 0; column < row.length; column++) {
+                timeSeries.get(column).addOrUpdate(timePeriod, row[column]);
             }
         }
         return dataset;
@@ -39,17 +39,11 @@ package net.sourceforge.cruisecontrol.servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.Writer;
 import java.math.BigDecimal;
 import java.util.Comparator;
@@ -60,6 +54,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 
+import net.sourceforge.cruisecontrol.util.HttpFileTransfer;
+import net.sourceforge.cruisecontrol.web.ServletExchange;
+
 public class FileServlet extends HttpServlet {
 
     private File rootDir;
@@ -151,18 +148,13 @@ public class FileServlet extends HttpServlet {
         }
 
         if (file.isFile()) {
-            final String filename = file.getName();
             final String mimeType;
             if (request.getParameter("mimetype") != null) {
                 mimeType = request.getParameter("mimetype");
             } else {
-                mimeType = getMimeType(filename);
+                mimeType = getMimeType(HttpFileTransfer.getServedName(file.getFile()));
             }
-            final Date date = new Date(file.getFile().lastModified());
-            response.addDateHeader("Last-Modified", date.getTime());
-            response.setContentType(mimeType);
-            response.setContentLength((int) file.getFile().length());
-            file.write(response.getOutputStream());
+            new HttpFileTransfer(file.getFile()).send(mimeType, new ServletExchange(request, response));
             return;
         }
 
@@ -287,7 +279,6 @@ public class FileServlet extends HttpServlet {
     protected WebFile getSubWebFile(final String subFilePath) {
         return new WebFile(rootDir, subFilePath);
     }
-
 }
 
 class WebFile {
@@ -310,24 +301,6 @@ class WebFile {
         return file.isDirectory();
     }
 
-    protected InputStream getInputStream() throws IOException {
-        return new FileInputStream(file);
-    }
-
-    public void write(ServletOutputStream stream) throws IOException {
-        InputStream input = new BufferedInputStream(getInputStream());
-        OutputStream output = new BufferedOutputStream(stream);
-        try {
-            int i;
-            while ((i = input.read()) != -1) {
-                output.write(i);
-            }
-        } finally {
-            input.close();
-            output.flush();
-        }
-    }
-
     public boolean isFile() {
         return file.isFile();
     }
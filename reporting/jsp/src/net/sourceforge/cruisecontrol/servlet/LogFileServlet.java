@@ -39,8 +39,6 @@ package net.sourceforge.cruisecontrol.servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 
 import net.sourceforge.cruisecontrol.LogFile;
 
@@ -79,19 +77,6 @@ public class LogFileServlet extends FileServlet {
         return new LogFile(new File(getRootDir(), project), logName);
     }
     protected WebFile getSubWebFile(final String subFilePath) {
-        return new LogWebFile(getLogFile(subFilePath));
-    }
-
-    private static class LogWebFile extends WebFile {
-        private LogFile logfile;
-
-        public LogWebFile(LogFile file) {
-            super(file.getFile());
-            logfile = file;
-        }
-
-        protected InputStream getInputStream() throws IOException {
-            return logfile.getInputStream();
-        }
+        return new WebFile(getLogFile(subFilePath).getFile());
     }
 }
@@ -0,0 +1,139 @@
+/********************************************************************************
+ * CruiseControl, a Continuous Integration Toolkit
+ * Copyright (c) 2001, ThoughtWorks, Inc.
+ * 200 E. Randolph, 25th Floor
+ * Chicago, IL 60601 USA
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *     + Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     + Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ *     + Neither the name of ThoughtWorks, Inc., CruiseControl, nor the
+ *       names of its contributors may be used to endorse or promote
+ *       products derived from this software without specific prior
+ *       written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ ********************************************************************************/
+package net.sourceforge.cruisecontrol.chart;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sourceforge.cruisecontrol.BuildInfo;
+
+public class MetricsStoreTest extends TestCase {
+
+    private File logDir;
+    private List<XPathData> xpaths;
+
+    protected void setUp() throws Exception {
+        logDir = File.createTempFile("metrics", "dir");
+        logDir.delete();
+        logDir.mkdir();
+        xpaths = new ArrayList<XPathData>();
+        xpaths.add(new XPathData("Errors", "count(/cruisecontrol/error)"));
+        xpaths.add(new XPathData("Warnings", "count(/cruisecontrol/warning)"));
+    }
+
+    protected void tearDown() throws Exception {
+        final File[] files = logDir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            files[i].delete();
+        }
+        logDir.delete();
+    }
+
+    public void testShouldEvaluateExpressionsAgainstLogs() throws Exception {
+        final List<BuildInfo> builds = new ArrayList<BuildInfo>();
+        builds.add(writeLog("log20050708100401.xml", "<error/><error/><warning/>"));
+        builds.add(writeLog("log20050708110401LBuild.1.xml", "<warning/>"));
+
+        final List<Number[]> values = new MetricsStore(new File(logDir, MetricsStore.FILE_NAME))
+                .getValues(builds, xpaths);
+
+        assertEquals(2, values.size());
+        assertEquals(2, values.get(0)[0].intValue());
+        assertEquals(1, values.get(0)[1].intValue());
+        assertEquals(0, values.get(1)[0].intValue());
+        assertEquals(1, values.get(1)[1].intValue());
+    }
+
+    public void testShouldNotParseLogsAlreadyStored() throws Exception {
+        final List<BuildInfo> builds = new ArrayList<BuildInfo>();
+        builds.add(writeLog("log20050708100401.xml", "<error/><error/><warning/>"));
+        final File storeFile = new File(logDir, MetricsStore.FILE_NAME);
+        new MetricsStore(storeFile).getValues(builds, xpaths);
+        assertTrue(storeFile.exists());
+
+        // a log that can't be parsed anymore proves the values come from the store
+        builds.get(0).getLogFile().getFile().delete();
+        builds.add(writeLog("log20050708110401.xml", "<error/>"));
+        final List<Number[]> values = new MetricsStore(storeFile).getValues(builds, xpaths);
+
+        assertEquals(2, values.get(0)[0].intValue());
+        assertEquals(1, values.get(0)[1].intValue());
+        assertEquals(1, values.get(1)[0].intValue());
+        assertEquals(0, values.get(1)[1].intValue());
+    }
+
+    public void testShouldEvaluateOnlyNewExpressions() throws Exception {
+        final List<BuildInfo> builds = new ArrayList<BuildInfo>();
+        builds.add(writeLog("log20050708100401.xml", "<error/><warning/><info/>"));
+        final MetricsStore store = new MetricsStore(new File(logDir, MetricsStore.FILE_NAME));
+        store.getValues(builds, xpaths);
+
+        xpaths.add(new XPathData("Info", "count(/cruisecontrol/info)"));
+        final List<Number[]> values = store.getValues(builds, xpaths);
+
+        assertEquals(3, values.get(0).length);
+        assertEquals(1, values.get(0)[2].intValue());
+    }
+
+    public void testShouldSkipTruncatedRecords() throws Exception {
+        final List<BuildInfo> builds = new ArrayList<BuildInfo>();
+        builds.add(writeLog("log20050708100401.xml", "<error/>"));
+        final File storeFile = new File(logDir, MetricsStore.FILE_NAME);
+        final FileWriter writer = new FileWriter(storeFile);
+        writer.write("log20050708100401\t5.0");
+        writer.close();
+
+        final List<Number[]> values = new MetricsStore(storeFile).getValues(builds, xpaths);
+
+        assertEquals(1, values.get(0)[0].intValue());
+    }
+
+    public void testShouldShareStorePerLogDir() {
+        assertSame(MetricsStore.forLogDir(logDir), MetricsStore.forLogDir(new File(logDir.getPath())));
+    }
+
+    private BuildInfo writeLog(final String name, final String content) throws Exception {
+        final File log = new File(logDir, name);
+        final FileWriter writer = new FileWriter(log);
+        writer.write("<cruisecontrol>" + content + "</cruisecontrol>");
+        writer.close();
+        return new BuildInfo(log);
+    }
+}